@@ -59,7 +59,7 @@ public class ADMMessageHandler extends ADMMessageHandlerBase {
          return;
       
       NotificationGenerationJob notifJob = new NotificationGenerationJob(context);
-      notifJob.jsonPayload = NotificationBundleProcessor.bundleAsJSONObject(bundle);
+      notifJob.setPayload(processedResult.payload);
 
       NotificationBundleProcessor.ProcessJobForDisplay(notifJob);
    }
@@ -118,6 +118,7 @@ class ActivityLifecycleHandler {
         setCurActivity(activity);
         logCurActivity();
         handleFocus();
+        OSWebViewPool.onActivityAvailable(activity);
     }
 
     static void onActivityPaused(Activity activity) {
@@ -31,7 +31,6 @@ import android.app.NotificationManager;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.os.Bundle;
@@ -40,15 +39,38 @@ import android.support.annotation.RequiresApi;
 
 import com.onesignal.shortcutbadger.ShortcutBadger;
 
-import com.onesignal.OneSignalDbContract.NotificationTable;
-
 import static com.onesignal.NotificationLimitManager.MAX_NUMBER_OF_NOTIFICATIONS_STR;
 
 class BadgeCountUpdater {
 
+   private static final int MAX_BADGE_COUNT = Integer.parseInt(MAX_NUMBER_OF_NOTIFICATIONS_STR);
+
    // Cache for manifest setting.
    private static int badgesEnabled = -1;
 
+   // Notifications counted by the fallback badge, kept up to date as notifications are saved, opened and dismissed
+   //   so the table is only counted again when needed. -1 when a full count is needed.
+   private static int notificationCount = -1;
+   // Time in seconds when the first counted notification ages out of the count
+   private static long countValidUntil;
+   // Bumped on every change to the count, a full count is only kept if nothing changed while it ran
+   private static int countVersion;
+
+   static {
+      OneSignalDbHelper.addWriteListener(new OneSignalDbHelper.WriteListener() {
+         @Override
+         public void onWriteStarted() {
+         }
+
+         @Override
+         public void onWriteFinished(boolean committed) {
+            // Changes to the count made in the transaction were rolled back with it
+            if (!committed)
+               invalidateCount();
+         }
+      });
+   }
+
    private static boolean areBadgeSettingsEnabled(Context context) {
       if (badgesEnabled != -1)
          return (badgesEnabled == 1);
@@ -99,21 +121,90 @@ class BadgeCountUpdater {
    }
 
    private static void updateFallback(SQLiteDatabase readableDb, Context context) {
-      Cursor cursor = readableDb.query(
-         NotificationTable.TABLE_NAME,
-         null,
-         OneSignalDbHelper.recentUninteractedWithNotificationsWhere().toString(),
-         null,                                                    // Where args
-         null,                                                    // group by
-         null,                                                    // filter by row groups
-         null,                                                     // sort order, new to old
-         MAX_NUMBER_OF_NOTIFICATIONS_STR
-      );
-
-      int notificationCount = cursor.getCount();
-      cursor.close();
-
-      updateCount(notificationCount, context);
+      updateCount(getNotificationCount(readableDb, context), context);
+   }
+
+   // The table is counted without holding the class lock, the changes below are made by writers holding the DB write lock
+   private static int getNotificationCount(SQLiteDatabase readableDb, Context context) {
+      int version;
+      synchronized (BadgeCountUpdater.class) {
+         long currentTimeSec = System.currentTimeMillis() / 1_000L;
+         if (notificationCount != -1 && currentTimeSec < countValidUntil)
+            return Math.min(notificationCount, MAX_BADGE_COUNT);
+         version = countVersion;
+      }
+
+      // Full count on first use, after a change that couldn't be tracked or once a notification ages out
+      OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(context);
+      boolean startedWithoutOtherWrite = !dbHelper.isWriteInProgressOnOtherThread();
+      NotificationTableRepository.UninteractedCount count = NotificationTableRepository.countRecentUninteracted(readableDb);
+
+      synchronized (BadgeCountUpdater.class) {
+         // A write made on another thread during the count may be missing from it, only use it for this update
+         if (startedWithoutOtherWrite && !dbHelper.isWriteInProgressOnOtherThread() && version == countVersion) {
+            notificationCount = count.count;
+            countValidUntil = count.agesOutTime;
+         }
+      }
+
+      return Math.min(count.count, MAX_BADGE_COUNT);
+   }
+
+   /**
+    * A notification that wasn't opened was saved, called in the same transaction as the insert.
+    * The count is invalidated if the transaction is rolled back.
+    */
+   static synchronized void notificationSaved(long expireTime) {
+      countVersion++;
+      if (notificationCount == -1)
+         return;
+
+      long currentTimeSec = System.currentTimeMillis() / 1_000L;
+      long agesOutTime = currentTimeSec + NotificationTableRepository.RECENT_NOTIFICATION_SEC;
+      if (NotificationTableRepository.useTtlFilter())
+         agesOutTime = Math.min(agesOutTime, expireTime);
+
+      // Already expired, never counted
+      if (agesOutTime <= currentTimeSec)
+         return;
+
+      notificationCount++;
+      countValidUntil = Math.min(countValidUntil, agesOutTime);
+   }
+
+   /**
+    * The notifications with this android notification id are about to be marked as opened or dismissed,
+    * called in the same transaction before the update. Only the ones that are counted are taken off the count,
+    * summaries and notifications that aged out or expired never were.
+    * The count is invalidated if the transaction is rolled back.
+    */
+   static void beforeNotificationConsumed(SQLiteDatabase writableDb, int androidNotificationId) {
+      synchronized (BadgeCountUpdater.class) {
+         countVersion++;
+         if (notificationCount == -1)
+            return;
+      }
+
+      // Other writers wait on the transaction, the rows can't change until the caller's update
+      int countedCount = NotificationTableRepository.countRecentUninteractedByAndroidId(writableDb, androidNotificationId);
+
+      synchronized (BadgeCountUpdater.class) {
+         if (notificationCount == -1)
+            return;
+
+         notificationCount -= countedCount;
+         // Out of sync with the table, count again
+         if (notificationCount < 0)
+            notificationCount = -1;
+      }
+   }
+
+   /**
+    * Notifications changed in a way that isn't tracked, the next update counts the table again
+    */
+   static synchronized void invalidateCount() {
+      countVersion++;
+      notificationCount = -1;
    }
 
    static void updateCount(int count, Context context) {
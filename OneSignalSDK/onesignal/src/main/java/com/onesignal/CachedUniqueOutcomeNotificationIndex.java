@@ -0,0 +1,150 @@
+package com.onesignal;
+
+import android.support.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in memory index of the (outcome name, notification id) pairs stored in
+ * {@link OneSignalDbContract.CachedUniqueOutcomeNotificationTable}
+ * <p>
+ * The index is warmed lazily from the DB on first use and written through on each save.
+ * While it holds every DB row a miss means the pair was never sent, so no DB read is needed.
+ * Once entries have been evicted (LRU) or the DB held more than {@link #MAX_ENTRIES} rows, misses are checked against the DB.
+ * <p>
+ * {@link OneSignalCacheCleaner} deletes rows from the DB, so it calls {@link #invalidateAll()} and the next lookup warms again.
+ */
+class CachedUniqueOutcomeNotificationIndex {
+
+    static final int MAX_ENTRIES = 1_000;
+
+    // Bumped every time DB rows are cleaned so all indexes know to warm again
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    @NonNull
+    private final OutcomeEventsRepository outcomeEventsRepository;
+
+    private final LinkedHashMap<String, Boolean> entries = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            if (size() <= MAX_ENTRIES)
+                return false;
+
+            complete = false;
+            return true;
+        }
+    };
+
+    private boolean warmed;
+    // True when every row in the DB is also in entries
+    private boolean complete;
+    private int warmedGeneration;
+
+    CachedUniqueOutcomeNotificationIndex(@NonNull OutcomeEventsRepository outcomeEventsRepository) {
+        this.outcomeEventsRepository = outcomeEventsRepository;
+    }
+
+    /**
+     * Drop every in memory index, the next lookup will warm from the DB again
+     */
+    static void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Add pairs that were just saved to the DB
+     */
+    synchronized void addAll(JSONArray notificationIds, String name) {
+        if (notificationIds == null || !warmed)
+            return;
+
+        // Discarded by invalidateAll, it's warmed from the DB again on next lookup instead of being written to
+        if (warmedGeneration != generation.get())
+            return;
+
+        try {
+            for (int i = 0; i < notificationIds.length(); i++)
+                entries.put(key(name, notificationIds.getString(i)), Boolean.TRUE);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Create a JSONArray of the notification ids not yet cached with the unique outcome name
+     */
+    synchronized JSONArray getNotCachedUniqueOutcomeNotifications(String name, JSONArray notificationIds) {
+        warmIfNeeded();
+
+        JSONArray uniqueNotificationIds = new JSONArray();
+        if (notificationIds == null)
+            return uniqueNotificationIds;
+
+        JSONArray unknownNotificationIds = new JSONArray();
+        try {
+            for (int i = 0; i < notificationIds.length(); i++) {
+                String notificationId = notificationIds.getString(i);
+                if (entries.get(key(name, notificationId)) != null)
+                    continue;
+
+                if (complete)
+                    uniqueNotificationIds.put(notificationId);
+                else
+                    unknownNotificationIds.put(notificationId);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        if (unknownNotificationIds.length() == 0)
+            return uniqueNotificationIds;
+
+        // Part of the DB is not in memory, only the ids we know nothing about are checked there
+        JSONArray notCachedNotificationIds = outcomeEventsRepository.getNotCachedUniqueOutcomeNotifications(name, unknownNotificationIds);
+        Set<String> notCached = new HashSet<>();
+        try {
+            for (int i = 0; i < notCachedNotificationIds.length(); i++)
+                notCached.add(notCachedNotificationIds.getString(i));
+            for (int i = 0; i < unknownNotificationIds.length(); i++) {
+                String notificationId = unknownNotificationIds.getString(i);
+                if (notCached.contains(notificationId))
+                    uniqueNotificationIds.put(notificationId);
+                else
+                    entries.put(key(name, notificationId), Boolean.TRUE);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        return uniqueNotificationIds;
+    }
+
+    private void warmIfNeeded() {
+        int currentGeneration = generation.get();
+        if (warmed && warmedGeneration == currentGeneration)
+            return;
+
+        entries.clear();
+        // Read one extra row, evicting it marks the index as incomplete when the DB doesn't fit in memory
+        List<CachedUniqueOutcomeNotification> notifications = outcomeEventsRepository.getCachedUniqueOutcomeNotifications(MAX_ENTRIES + 1);
+        complete = true;
+        for (CachedUniqueOutcomeNotification notification : notifications)
+            entries.put(key(notification.getName(), notification.getNotificationId()), Boolean.TRUE);
+
+        warmed = true;
+        warmedGeneration = currentGeneration;
+    }
+
+    private static String key(String name, String notificationId) {
+        // Length prefix keeps the pair unambiguous whatever characters the outcome name contains
+        return name.length() + ":" + name + notificationId;
+    }
+}
@@ -0,0 +1,259 @@
+package com.onesignal;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.onesignal.OneSignalDbContract.NotificationTable;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In memory filter in front of the notification table to detect duplicated notification ids
+ * without querying SQLite for every received push.
+ * <p>
+ * A bloom filter of every saved notification id answers "definitely new" with no DB access.
+ * An LRU of recently seen ids answers "duplicate" for FCM redeliveries.
+ * Any other possible hit is confirmed with a notification_id query.
+ * <p>
+ * The bloom filter is warmed from the notification table on a background thread started by the first check,
+ * so the push that starts a cold process isn't held up by reading every id. Ids are checked against the DB until then.
+ * Rows deleted by {@link OneSignalCacheCleaner} only cause false positives, which fall back to the DB.
+ * No DB query runs while holding the filter lock, as ids are recorded by the save path holding the DB write lock.
+ */
+class DuplicateNotificationFilter {
+
+   private static final String OS_WARM_DUPLICATE_FILTER = "OS_WARM_DUPLICATE_FILTER";
+
+   private static final int MIN_CAPACITY = 1_000;
+   // ~1% false positive rate at capacity
+   private static final int BITS_PER_ENTRY = 10;
+   private static final int HASH_COUNT = 7;
+   static final int RECENT_IDS_SIZE = 128;
+
+   private static DuplicateNotificationFilter sInstance;
+
+   private BitSet bits;
+   private int numBits;
+   private int capacity;
+   private int count;
+   private boolean warmed;
+   private boolean warming;
+   // Over capacity, the current filter is used until a larger one is loaded
+   private boolean rebuildNeeded;
+   // Ids saved while the warm query runs, they may be missing from its results
+   private final ArrayList<String> savedWhileWarming = new ArrayList<>();
+
+   private final LinkedHashMap<String, Boolean> recentIds = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+         return size() > RECENT_IDS_SIZE;
+      }
+   };
+
+   private static synchronized DuplicateNotificationFilter getInstance() {
+      if (sInstance == null)
+         sInstance = new DuplicateNotificationFilter();
+      return sInstance;
+   }
+
+   private DuplicateNotificationFilter() {
+      this(MIN_CAPACITY);
+   }
+
+   private DuplicateNotificationFilter(int capacity) {
+      reset(capacity);
+   }
+
+   /**
+    * @return true if a notification with this id was already saved
+    */
+   @WorkerThread
+   static boolean isDuplicate(@NonNull String id, Context context) {
+      DuplicateNotificationFilter filter = getInstance();
+      filter.warmInBackgroundIfNeeded(context);
+
+      synchronized (filter) {
+         if (filter.warmed && !filter.mightContain(id))
+            return false;
+
+         if (filter.recentIds.containsKey(id))
+            return true;
+      }
+
+      // Possible hit, confirm with the DB
+      boolean exists = notificationIdExists(id, context);
+      if (exists) {
+         synchronized (filter) {
+            filter.recentIds.put(id, Boolean.TRUE);
+         }
+      }
+      return exists;
+   }
+
+   /**
+    * Must be called whenever a notification with an id is saved to the notification table,
+    * once its transaction is committed so a rolled back save isn't seen as a duplicate
+    */
+   static void notificationSaved(@NonNull String id) {
+      DuplicateNotificationFilter filter = getInstance();
+      synchronized (filter) {
+         filter.put(id);
+         filter.recentIds.put(id, Boolean.TRUE);
+         if (filter.warming)
+            filter.savedWhileWarming.add(id);
+
+         // Rebuild with a larger filter on next check so the false positive rate stays low
+         if (filter.count > filter.capacity)
+            filter.rebuildNeeded = true;
+      }
+   }
+
+   /**
+    * Called after rows are deleted from the notification table, recent ids may no longer exist
+    */
+   static void notificationsDeleted() {
+      DuplicateNotificationFilter filter = getInstance();
+      synchronized (filter) {
+         filter.recentIds.clear();
+      }
+   }
+
+   private void warmInBackgroundIfNeeded(final Context context) {
+      synchronized (this) {
+         if ((warmed && !rebuildNeeded) || warming)
+            return;
+         warming = true;
+      }
+
+      new Thread(new Runnable() {
+         @Override
+         public void run() {
+            warm(context);
+         }
+      }, OS_WARM_DUPLICATE_FILTER).start();
+   }
+
+   // Builds the new filter outside the lock and swaps it in once loaded
+   @WorkerThread
+   private void warm(Context context) {
+
+      DuplicateNotificationFilter warmFilter = null;
+      OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(context);
+      Cursor cursor = null;
+      try {
+         SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
+         cursor = readableDb.query(
+             NotificationTable.TABLE_NAME,
+             new String[] { NotificationTable.COLUMN_NAME_NOTIFICATION_ID },
+             NotificationTable.COLUMN_NAME_NOTIFICATION_ID + " IS NOT NULL",
+             null, null, null, null);
+
+         warmFilter = new DuplicateNotificationFilter(Math.max(MIN_CAPACITY, cursor.getCount() * 2));
+         while (cursor.moveToNext())
+            warmFilter.put(cursor.getString(0));
+      } catch (Throwable t) {
+         // Warming is retried on the next check
+         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Could not load notification ids, checking against the DB.", t);
+         warmFilter = null;
+      } finally {
+         if (cursor != null)
+            cursor.close();
+      }
+
+      synchronized (this) {
+         warming = false;
+         if (warmFilter != null) {
+            for (String id : savedWhileWarming)
+               warmFilter.put(id);
+
+            bits = warmFilter.bits;
+            numBits = warmFilter.numBits;
+            capacity = warmFilter.capacity;
+            count = warmFilter.count;
+            warmed = true;
+            rebuildNeeded = false;
+         }
+         savedWhileWarming.clear();
+      }
+   }
+
+   private void reset(int capacity) {
+      this.capacity = capacity;
+      numBits = capacity * BITS_PER_ENTRY;
+      bits = new BitSet(numBits);
+      count = 0;
+   }
+
+   private void put(String id) {
+      int hash1 = id.hashCode();
+      int hash2 = secondaryHash(id);
+      for (int i = 0; i < HASH_COUNT; i++)
+         bits.set(bitIndex(hash1, hash2, i));
+      count++;
+   }
+
+   private boolean mightContain(String id) {
+      int hash1 = id.hashCode();
+      int hash2 = secondaryHash(id);
+      for (int i = 0; i < HASH_COUNT; i++) {
+         if (!bits.get(bitIndex(hash1, hash2, i)))
+            return false;
+      }
+      return true;
+   }
+
+   private int bitIndex(int hash1, int hash2, int i) {
+      // Double hashing to derive each of the k hashes
+      int combined = hash1 + i * hash2;
+      return (combined & Integer.MAX_VALUE) % numBits;
+   }
+
+   // FNV-1a, independent from String.hashCode
+   private static int secondaryHash(String id) {
+      int hash = 0x811C9DC5;
+      for (int i = 0; i < id.length(); i++) {
+         hash ^= id.charAt(i);
+         hash *= 0x01000193;
+      }
+      // Odd so every step of the double hashing moves
+      return hash | 1;
+   }
+
+   private static boolean notificationIdExists(String id, Context context) {
+      boolean exists = false;
+
+      OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(context);
+      Cursor cursor = null;
+
+      try {
+         SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
+
+         String[] retColumn = {NotificationTable.COLUMN_NAME_NOTIFICATION_ID};
+         String[] whereArgs = {id};
+
+         cursor = readableDb.query(
+             NotificationTable.TABLE_NAME,
+             retColumn,
+             NotificationTable.COLUMN_NAME_NOTIFICATION_ID + " = ?",   // Where String
+             whereArgs,
+             null, null, null);
+
+         exists = cursor.moveToFirst();
+      }
+      catch (Throwable t) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Could not check for duplicate, assuming unique.", t);
+      }
+      finally {
+         if (cursor != null)
+            cursor.close();
+      }
+
+      return exists;
+   }
+}
@@ -126,30 +126,32 @@ public class GcmBroadcastReceiver extends WakefulBroadcastReceiver {
       if (processedResult.processed())
          return processedResult;
 
-      startGCMService(context, bundle);
+      startGCMService(context, bundle, processedResult.payload);
 
       return processedResult;
    }
 
-   private static void startGCMService(Context context, Bundle bundle) {
+   private static void startGCMService(Context context, Bundle bundle, ParsedPushPayload payload) {
       // If no remote resources have to be downloaded don't create a job which could add some delay.
       if (!NotificationBundleProcessor.hasRemoteResource(bundle)) {
-         BundleCompat taskExtras = setCompatBundleForServer(bundle, BundleCompatFactory.getInstance());
-         NotificationBundleProcessor.ProcessFromGCMIntentService(context, taskExtras, null);
+         // Processed in this process so the payload is passed already parsed instead of as json_payload
+         BundleCompat taskExtras = BundleCompatFactory.getInstance();
+         taskExtras.putLong("timestamp", System.currentTimeMillis() / 1000L);
+         NotificationBundleProcessor.ProcessFromGCMIntentService(context, taskExtras, null, payload);
          return;
       }
 
       boolean isHighPriority = Integer.parseInt(bundle.getString("pri", "0")) > 9;
       if (!isHighPriority && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
-          startGCMServiceWithJobIntentService(context, bundle);
+          startGCMServiceWithJobIntentService(context, payload);
       else {
          try {
-            startGCMServiceWithWakefulService(context, bundle);
+            startGCMServiceWithWakefulService(context, payload);
          } catch (IllegalStateException e) {
             // If the high priority FCM message failed to add this app to the temporary whitelist
             // https://github.com/OneSignal/OneSignal-Android-SDK/issues/498
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
-               startGCMServiceWithJobIntentService(context, bundle);
+               startGCMServiceWithJobIntentService(context, payload);
             else
                throw e;
          }
@@ -162,8 +164,8 @@ public class GcmBroadcastReceiver extends WakefulBroadcastReceiver {
     * this will process one notification sequentially like an IntentService.
     */
    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
-   private static void startGCMServiceWithJobIntentService(Context context, Bundle bundle) {
-      BundleCompat taskExtras = setCompatBundleForServer(bundle, BundleCompatFactory.getInstance());
+   private static void startGCMServiceWithJobIntentService(Context context, ParsedPushPayload payload) {
+      BundleCompat taskExtras = setCompatBundleForServer(payload, BundleCompatFactory.getInstance());
 
       Intent intent = new Intent(context, GcmIntentJobService.class);
       intent.putExtra(GcmIntentJobService.BUNDLE_EXTRA, (Parcelable) taskExtras.getBundle());
@@ -171,11 +173,11 @@ public class GcmBroadcastReceiver extends WakefulBroadcastReceiver {
       GcmIntentJobService.enqueueWork(context, intent);
    }
 
-   private static void startGCMServiceWithWakefulService(Context context, Bundle bundle) {
+   private static void startGCMServiceWithWakefulService(Context context, ParsedPushPayload payload) {
       ComponentName componentName =
          new ComponentName(context.getPackageName(), GcmIntentService.class.getName());
 
-      BundleCompat taskExtras = setCompatBundleForServer(bundle, new BundleCompatBundle());
+      BundleCompat taskExtras = setCompatBundleForServer(payload, new BundleCompatBundle());
       Intent intentForService =
          new Intent()
          .replaceExtras((Bundle)taskExtras.getBundle())
@@ -183,8 +185,8 @@ public class GcmBroadcastReceiver extends WakefulBroadcastReceiver {
       startWakefulService(context, intentForService);
    }
 
-   private static BundleCompat setCompatBundleForServer(Bundle bundle, BundleCompat taskExtras) {
-      taskExtras.putString("json_payload", NotificationBundleProcessor.bundleAsJSONObject(bundle).toString());
+   private static BundleCompat setCompatBundleForServer(ParsedPushPayload payload, BundleCompat taskExtras) {
+      taskExtras.putString("json_payload", payload.json.toString());
       taskExtras.putLong("timestamp", System.currentTimeMillis() / 1000L);
       return taskExtras;
    }
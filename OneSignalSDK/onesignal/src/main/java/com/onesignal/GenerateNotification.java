@@ -29,15 +29,12 @@ package com.onesignal;
 
 import java.lang.reflect.Field;
 import java.math.BigInteger;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 import java.security.SecureRandom;
 import java.util.Random;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -53,7 +50,6 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
@@ -64,7 +60,6 @@ import android.support.annotation.RequiresApi;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.NotificationManagerCompat;
 import android.text.SpannableString;
-import android.text.style.StyleSpan;
 import android.widget.RemoteViews;
 
 import com.onesignal.OneSignalDbContract.NotificationTable;
@@ -102,15 +97,20 @@ class GenerateNotification {
    static void fromJsonPayload(NotificationGenerationJob notifJob) {
       setStatics(notifJob.context);
 
-      if (!notifJob.restoring && notifJob.showAsAlert && ActivityLifecycleHandler.curActivity != null) {
-         showNotificationAsAlert(notifJob.jsonPayload, ActivityLifecycleHandler.curActivity, notifJob.getAndroidId());
+      if (shouldShowAsAlert(notifJob)) {
+         showNotificationAsAlert(notifJob.getPayload(), ActivityLifecycleHandler.curActivity, notifJob.getAndroidId());
          return;
       }
 
       showNotification(notifJob);
    }
 
-   private static void showNotificationAsAlert(final JSONObject gcmJson, final Activity activity, final int notificationId) {
+   static boolean shouldShowAsAlert(NotificationGenerationJob notifJob) {
+      return !notifJob.restoring && notifJob.showAsAlert && ActivityLifecycleHandler.curActivity != null;
+   }
+
+   private static void showNotificationAsAlert(final ParsedPushPayload payload, final Activity activity, final int notificationId) {
+      final JSONObject gcmJson = payload.json;
       activity.runOnUiThread(new Runnable() {
          @Override
          public void run() {
@@ -121,7 +121,7 @@ class GenerateNotification {
             List<String> buttonsLabels = new ArrayList<>();
             List<String> buttonIds = new ArrayList<>();
 
-            addAlertButtons(activity, gcmJson, buttonsLabels, buttonIds);
+            addAlertButtons(activity, payload, buttonsLabels, buttonIds);
 
             final List<String> finalButtonIds = buttonIds;
 
@@ -215,7 +215,8 @@ class GenerateNotification {
       
       NotificationCompat.Builder notifBuilder;
       try {
-         String channelId = NotificationChannelManager.createNotificationChannel(notifJob);
+         // Created ahead of time by NotificationBundleProcessor.ProcessJobForDisplay on Android 8.0+
+         String channelId = notifJob.channelId != null ? notifJob.channelId : NotificationChannelManager.createNotificationChannel(notifJob);
          // Will throw if app is using 26.0.0-beta1 or older of the support library.
          notifBuilder = new NotificationCompat.Builder(currentContext, channelId);
       } catch(Throwable t) {
@@ -257,7 +258,7 @@ class GenerateNotification {
          notifBuilder.setLargeIcon(largeIcon);
       }
 
-      Bitmap bigPictureIcon = getBitmap(gcmBundle.optString("bicon", null));
+      Bitmap bigPictureIcon = getBitmap(gcmBundle.optString("bicon", null), getScreenWidth(), dpToPx(BIG_PICTURE_HEIGHT_DP));
       if (bigPictureIcon != null)
          notifBuilder.setStyle(new NotificationCompat.BigPictureStyle().bigPicture(bigPictureIcon).setSummaryText(message));
 
@@ -347,7 +348,7 @@ class GenerateNotification {
       OneSignalNotificationBuilder oneSignalNotificationBuilder = getBaseOneSignalNotificationBuilder(notifJob);
       NotificationCompat.Builder notifBuilder = oneSignalNotificationBuilder.compatBuilder;
 
-      addNotificationActionButtons(gcmBundle, notifBuilder, notificationId, null);
+      addNotificationActionButtons(notifJob.getPayload(), notifBuilder, notificationId, null);
       
       try {
          addBackgroundImage(gcmBundle, notifBuilder);
@@ -513,84 +514,24 @@ class GenerateNotification {
       PendingIntent summaryDeleteIntent = getNewActionPendingIntent(random.nextInt(), getNewBaseDeleteIntent(0).putExtra("summary", group));
       
       Notification summaryNotification;
-      Integer summaryNotificationId = null;
-   
-      String firstFullData = null;
-      Collection<SpannableString> summaryList = null;
-      
+
       OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(currentContext);
-      Cursor cursor = null;
-      
-      try {
-         SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
-   
-         String[] retColumn = { NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID,
-             NotificationTable.COLUMN_NAME_FULL_DATA,
-             NotificationTable.COLUMN_NAME_IS_SUMMARY,
-             NotificationTable.COLUMN_NAME_TITLE,
-             NotificationTable.COLUMN_NAME_MESSAGE };
-   
-         String whereStr =  NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +   // Where String
-             NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
-             NotificationTable.COLUMN_NAME_OPENED + " = 0";
-         String[] whereArgs = { group };
-         
-         // Make sure to omit any old existing matching android ids in-case we are replacing it.
-         if (!updateSummary && notifJob.getAndroidId() != -1)
-            whereStr += " AND " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " <> " + notifJob.getAndroidId();
-         
-         cursor = readableDb.query(
-             NotificationTable.TABLE_NAME,
-             retColumn,
-             whereStr,
-             whereArgs,
-             null,                                                    // group by
-             null,                                                    // filter by row groups
-             NotificationTable._ID + " DESC"                          // sort order, new to old
-         );
-         
-         if (cursor.moveToFirst()) {
-            SpannableString spannableString;
-            summaryList = new ArrayList<>();
-
-            do {
-               if (cursor.getInt(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_IS_SUMMARY)) == 1)
-                  summaryNotificationId = cursor.getInt(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID));
-               else {
-                  String title = cursor.getString(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_TITLE));
-                  if (title == null)
-                     title = "";
-                  else
-                     title += " ";
-
-                  // Html.fromHtml("<strong>" + line1Title + "</strong> " + gcmBundle.getString("alert"));
-
-                  String msg = cursor.getString(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_MESSAGE));
-
-                  spannableString = new SpannableString(title + msg);
-                  if (title.length() > 0)
-                     spannableString.setSpan(new StyleSpan(android.graphics.Typeface.BOLD), 0, title.length(), 0);
-                  summaryList.add(spannableString);
-
-                  if (firstFullData == null)
-                     firstFullData = cursor.getString(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_FULL_DATA));
-               }
-            } while (cursor.moveToNext());
+      SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
 
-            if (updateSummary && firstFullData != null) {
-               try {
-                  gcmBundle = new JSONObject(firstFullData);
-               } catch (JSONException e) {
-                  e.printStackTrace();
-               }
-            }
+      // Make sure to omit any old existing matching android ids in-case we are replacing it.
+      int excludeAndroidId = updateSummary ? -1 : notifJob.getAndroidId();
+
+      NotificationSummaryManager.GroupSummary groupSummary = NotificationSummaryManager.getGroupSummary(readableDb, group, excludeAndroidId);
+
+      if (updateSummary && groupSummary.newestFullData != null) {
+         try {
+            gcmBundle = new JSONObject(groupSummary.newestFullData);
+         } catch (JSONException e) {
+            e.printStackTrace();
          }
       }
-      finally {
-         if (cursor != null && !cursor.isClosed())
-            cursor.close();
-      }
       
+      Integer summaryNotificationId = groupSummary.summaryAndroidId;
       if (summaryNotificationId == null) {
          summaryNotificationId = random.nextInt();
          createSummaryIdDatabaseEntry(dbHelper, group, summaryNotificationId);
@@ -599,10 +540,9 @@ class GenerateNotification {
       PendingIntent summaryContentIntent = getNewActionPendingIntent(random.nextInt(), createBaseSummaryIntent(summaryNotificationId, gcmBundle, group));
       
       // 2 or more notifications with a group received, group them together as a single notification.
-      if (summaryList != null &&
-          ((updateSummary && summaryList.size() > 1) ||
-           (!updateSummary && summaryList.size() > 0))) {
-         int notificationCount = summaryList.size() + (updateSummary ? 0 : 1);
+      if ((updateSummary && groupSummary.notificationCount > 1) ||
+          (!updateSummary && groupSummary.notificationCount > 0)) {
+         int notificationCount = groupSummary.notificationCount + (updateSummary ? 0 : 1);
 
          String summaryMessage = gcmBundle.optString("grp_msg", null);
          if (summaryMessage == null)
@@ -654,20 +594,12 @@ class GenerateNotification {
             if (notifJob.getTitle() != null)
                line1Title = notifJob.getTitle().toString();
 
-            if (line1Title == null)
-               line1Title = "";
-            else
-               line1Title += " ";
-            
             String message = notifJob.getBody().toString();
-            
-            SpannableString spannableString = new SpannableString(line1Title + message);
-            if (line1Title.length() > 0)
-               spannableString.setSpan(new StyleSpan(android.graphics.Typeface.BOLD), 0, line1Title.length(), 0);
-            inboxStyle.addLine(spannableString);
+            inboxStyle.addLine(NotificationSummaryManager.createSummaryLine(line1Title, message));
          }
 
-         for(SpannableString line : summaryList)
+         // Only the newest notifications of the group are cached, the inbox style doesn't display more
+         for(SpannableString line : groupSummary.lines)
             inboxStyle.addLine(line);
          inboxStyle.setBigContentTitle(summaryMessage);
          summaryBuilder.setStyle(inboxStyle);
@@ -682,7 +614,7 @@ class GenerateNotification {
          //    extender setup all the settings will carry over.
          // Note: However their buttons will not carry over as we need to be setup with this new summaryNotificationId.
          summaryBuilder.mActions.clear();
-         addNotificationActionButtons(gcmBundle, summaryBuilder, summaryNotificationId, group);
+         addNotificationActionButtons(notifJob.getPayload(), summaryBuilder, summaryNotificationId, group);
 
          summaryBuilder.setContentIntent(summaryContentIntent)
                        .setDeleteIntent(summaryDeleteIntent)
@@ -760,31 +692,20 @@ class GenerateNotification {
      return getNewBaseIntent(summaryNotificationId).putExtra("onesignal_data", gcmBundle.toString()).putExtra("summary", group);
    }
    
-   private static void createSummaryIdDatabaseEntry(OneSignalDbHelper dbHelper, String group, int id) {
+   private static void createSummaryIdDatabaseEntry(OneSignalDbHelper dbHelper, final String group, final int id) {
       // There currently isn't a visible notification from for this groupid.
       // Save the group summary notification id so it can be updated later.
-      SQLiteDatabase writableDb = null;
-      try {
-         writableDb = dbHelper.getWritableDbWithRetries();
-         writableDb.beginTransaction();
-      
-         ContentValues values = new ContentValues();
-         values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, id);
-         values.put(NotificationTable.COLUMN_NAME_GROUP_ID, group);
-         values.put(NotificationTable.COLUMN_NAME_IS_SUMMARY, 1);
-         writableDb.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
-         writableDb.setTransactionSuccessful();
-      } catch (Throwable t) {
-         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error adding summary notification record! ", t);
-      } finally {
-         if (writableDb != null) {
-            try {
-               writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
-            } catch (Throwable t) {
-               OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
-            }
+      dbHelper.executeWrite("Error adding summary notification record! ", new OneSignalDbHelper.WriteOperation() {
+         @Override
+         public void run(SQLiteDatabase writableDb) {
+            ContentValues values = new ContentValues();
+            values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, id);
+            values.put(NotificationTable.COLUMN_NAME_GROUP_ID, group);
+            values.put(NotificationTable.COLUMN_NAME_IS_SUMMARY, 1);
+            writableDb.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
+            NotificationSummaryManager.onSummarySaved(group, id);
          }
-      }
+      });
    }
 
    // Keep 'throws Throwable' as 'onesignal_bgimage_notif_layout' may not be available
@@ -800,7 +721,7 @@ class GenerateNotification {
 
       if (jsonStrBgImage != null) {
          jsonBgImage = new JSONObject(jsonStrBgImage);
-         bg_image = getBitmap(jsonBgImage.optString("img", null));
+         bg_image = getBitmap(jsonBgImage.optString("img", null), getScreenWidth(), dpToPx(BACKGROUND_IMAGE_HEIGHT_DP));
       }
 
       if (bg_image == null)
@@ -862,8 +783,12 @@ class GenerateNotification {
       return null;
    }
 
+   // Heights the big picture and background image are displayed at
+   private static final int BIG_PICTURE_HEIGHT_DP = 256;
+   private static final int BACKGROUND_IMAGE_HEIGHT_DP = 64;
+
    private static Bitmap getLargeIcon(JSONObject gcmBundle) {
-      Bitmap bitmap = getBitmap(gcmBundle.optString("licon"));
+      Bitmap bitmap = getBitmap(gcmBundle.optString("licon"), getLargeIconWidth(), getLargeIconHeight());
       if (bitmap == null)
          bitmap = getBitmapFromAssetsOrResourceName("ic_onesignal_large_icon_default");
       
@@ -884,8 +809,8 @@ class GenerateNotification {
          return null;
       
       try {
-         int systemLargeIconHeight = (int) contextResources.getDimension(android.R.dimen.notification_large_icon_height);
-         int systemLargeIconWidth = (int) contextResources.getDimension(android.R.dimen.notification_large_icon_width);
+         int systemLargeIconHeight = getLargeIconHeight();
+         int systemLargeIconWidth = getLargeIconWidth();
          int bitmapHeight = bitmap.getHeight();
          int bitmapWidth = bitmap.getWidth();
       
@@ -934,27 +859,34 @@ class GenerateNotification {
       return null;
    }
 
-   private static Bitmap getBitmapFromURL(String location) {
-      try {
-         return BitmapFactory.decodeStream(new URL(location).openConnection().getInputStream());
-      } catch (Throwable t) {
-         OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not download image!", t);
-      }
-
-      return null;
-   }
-
-   private static Bitmap getBitmap(String name) {
+   // Remote images are sampled down to at least the target size, local ones are used as is
+   private static Bitmap getBitmap(String name, int targetWidth, int targetHeight) {
       if (name == null)
          return null;
       String trimmedName = name.trim();
       
-      if (trimmedName.startsWith("http://") || trimmedName.startsWith("https://"))
-         return getBitmapFromURL(trimmedName);
+      if (NotificationImageLoader.isRemoteUrl(trimmedName))
+         return NotificationImageLoader.getBitmap(currentContext, trimmedName, targetWidth, targetHeight);
 
       return getBitmapFromAssetsOrResourceName(name);
    }
 
+   private static int getLargeIconWidth() {
+      return (int) contextResources.getDimension(android.R.dimen.notification_large_icon_width);
+   }
+
+   private static int getLargeIconHeight() {
+      return (int) contextResources.getDimension(android.R.dimen.notification_large_icon_height);
+   }
+
+   private static int getScreenWidth() {
+      return contextResources.getDisplayMetrics().widthPixels;
+   }
+
+   private static int dpToPx(int dp) {
+      return (int) (dp * contextResources.getDisplayMetrics().density);
+   }
+
    private static int getResourceIcon(String iconName) {
       if (iconName == null)
          return 0;
@@ -1026,22 +958,14 @@ class GenerateNotification {
       return null;
    }
 
-   private static void addNotificationActionButtons(JSONObject gcmBundle, NotificationCompat.Builder mBuilder, int notificationId, String groupSummary) {
+   private static void addNotificationActionButtons(ParsedPushPayload payload, NotificationCompat.Builder mBuilder, int notificationId, String groupSummary) {
       try {
-         JSONObject customJson = new JSONObject(gcmBundle.optString("custom"));
-         
-         if (!customJson.has("a"))
-            return;
-         
-         JSONObject additionalDataJSON = customJson.getJSONObject("a");
-         if (!additionalDataJSON.has("actionButtons"))
-            return;
-
-         JSONArray buttons = additionalDataJSON.getJSONArray("actionButtons");
+         JSONObject gcmBundle = payload.json;
+         List<JSONObject> buttons = payload.getActionButtons();
 
-         for (int i = 0; i < buttons.length(); i++) {
-            JSONObject button = buttons.optJSONObject(i);
-            JSONObject bundle = new JSONObject(gcmBundle.toString());
+         for (int i = 0; i < buttons.size(); i++) {
+            JSONObject button = buttons.get(i);
+            JSONObject bundle = payload.copyJson();
 
             Intent buttonIntent = getNewBaseIntent(notificationId);
             buttonIntent.setAction("" + i); // Required to keep each action button from replacing extras of each other
@@ -1066,11 +990,10 @@ class GenerateNotification {
       }
    }
 
-   private static void addAlertButtons(Context context, JSONObject gcmBundle, List<String> buttonsLabels, List<String> buttonsIds) {
-      try {
-         addCustomAlertButtons(context, gcmBundle, buttonsLabels, buttonsIds);
-      } catch (Throwable t) {
-         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Failed to parse JSON for custom buttons for alert dialog.", t);
+   private static void addAlertButtons(Context context, ParsedPushPayload payload, List<String> buttonsLabels, List<String> buttonsIds) {
+      for (JSONObject button : payload.getActionButtons()) {
+         buttonsLabels.add(button.optString("text"));
+         buttonsIds.add(button.optString("id"));
       }
 
       if (buttonsLabels.size() == 0 || buttonsLabels.size() < 3) {
@@ -1078,26 +1001,6 @@ class GenerateNotification {
          buttonsIds.add(NotificationBundleProcessor.DEFAULT_ACTION);
       }
    }
-
-   private static void addCustomAlertButtons(Context context, JSONObject gcmBundle, List<String> buttonsLabels, List<String> buttonsIds) throws JSONException {
-      JSONObject customJson = new JSONObject(gcmBundle.optString("custom"));
-
-      if (!customJson.has("a"))
-         return;
-
-      JSONObject additionalDataJSON = customJson.getJSONObject("a");
-      if (!additionalDataJSON.has("actionButtons"))
-         return;
-
-      JSONArray buttons = additionalDataJSON.optJSONArray("actionButtons");
-
-      for (int i = 0; i < buttons.length(); i++) {
-         JSONObject button = buttons.getJSONObject(i);
-
-         buttonsLabels.add(button.optString("text"));
-         buttonsIds.add(button.optString("id"));
-      }
-   }
    
    private static int convertOSToAndroidPriority(int priority) {
       if (priority > 9)
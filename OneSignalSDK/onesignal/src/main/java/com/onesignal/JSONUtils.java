@@ -2,11 +2,13 @@ package com.onesignal;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.JsonReader;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -247,6 +249,64 @@ class JSONUtils {
         return true;
     }
 
+    /**
+     * Reads the next JSON object from the reader into a JSONObject.
+     * Used to parse straight from a stream instead of reading it into a String first.
+     */
+    static @NonNull JSONObject readJSONObject(@NonNull JsonReader reader) throws IOException, JSONException {
+        JSONObject jsonObject = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext())
+            jsonObject.put(reader.nextName(), readJSONValue(reader));
+        reader.endObject();
+        return jsonObject;
+    }
+
+    /**
+     * Reads the next JSON array from the reader into a JSONArray.
+     */
+    static @NonNull JSONArray readJSONArray(@NonNull JsonReader reader) throws IOException, JSONException {
+        JSONArray jsonArray = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext())
+            jsonArray.put(readJSONValue(reader));
+        reader.endArray();
+        return jsonArray;
+    }
+
+    // Numbers are converted to the same types JSONTokener would give, Integer, Long or Double
+    private static @NonNull Object readJSONValue(@NonNull JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readJSONObject(reader);
+            case BEGIN_ARRAY:
+                return readJSONArray(reader);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            case NUMBER:
+                return parseJSONNumber(reader.nextString());
+            default:
+                return reader.nextString();
+        }
+    }
+
+    private static @NonNull Object parseJSONNumber(@NonNull String number) {
+        if (number.indexOf('.') == -1 && number.indexOf('e') == -1 && number.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(number);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE)
+                    return (int) longValue;
+                return longValue;
+            } catch (NumberFormatException e) {
+                // Too large for a long, fall through to a double
+            }
+        }
+        return Double.valueOf(number);
+    }
+
     // Converts Java types that are equivalent in the JSON format to the same types.
     // This allows for assertEquals on two values from JSONObject.get to test values as long as it
     //   returns in the same JSON output.
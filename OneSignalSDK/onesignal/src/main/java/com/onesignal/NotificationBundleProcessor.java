@@ -36,7 +36,6 @@ import com.onesignal.OneSignalDbContract.NotificationTable;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.os.Bundle;
@@ -45,6 +44,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import static com.onesignal.NotificationExtenderService.EXTENDER_SERVICE_JOB_ID;
 
@@ -61,10 +61,17 @@ class NotificationBundleProcessor {
 
 
    static void ProcessFromGCMIntentService(Context context, BundleCompat bundle, NotificationExtenderService.OverrideSettings overrideSettings) {
+      ProcessFromGCMIntentService(context, bundle, overrideSettings, null);
+   }
+
+   /**
+    * @param payload json_payload of the bundle already parsed, null to parse it from the bundle
+    */
+   static void ProcessFromGCMIntentService(Context context, BundleCompat bundle, NotificationExtenderService.OverrideSettings overrideSettings, @Nullable ParsedPushPayload payload) {
       OneSignal.setAppContext(context);
       try {
          String jsonStrPayload = bundle.getString("json_payload");
-         if (jsonStrPayload == null) {
+         if (payload == null && jsonStrPayload == null) {
             OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "json_payload key is nonexistent from mBundle passed to ProcessFromGCMIntentService: " + bundle);
             return;
          }
@@ -72,12 +79,12 @@ class NotificationBundleProcessor {
          NotificationGenerationJob notifJob = new NotificationGenerationJob(context);
          notifJob.restoring = bundle.getBoolean("restoring", false);
          notifJob.shownTimeStamp = bundle.getLong("timestamp");
-         notifJob.jsonPayload = new JSONObject(jsonStrPayload);
-         notifJob.isInAppPreviewPush = inAppPreviewPushUUID(notifJob.jsonPayload) != null;
+         notifJob.setPayload(payload != null ? payload : ParsedPushPayload.fromJson(new JSONObject(jsonStrPayload)));
+         notifJob.isInAppPreviewPush = inAppPreviewPushUUID(notifJob.getPayload()) != null;
 
          if (!notifJob.restoring &&
              !notifJob.isInAppPreviewPush &&
-             OneSignal.notValidOrDuplicated(context, notifJob.jsonPayload))
+             OneSignal.notValidOrDuplicated(context, notifJob.getApiNotificationId()))
             return;
 
          if (bundle.containsKey("android_notif_id")) {
@@ -88,36 +95,74 @@ class NotificationBundleProcessor {
          
          notifJob.overrideSettings = overrideSettings;
          ProcessJobForDisplay(notifJob);
-
-         // Delay to prevent CPU spikes.
-         //    Normally more than one notification is restored at a time.
-         if (notifJob.restoring)
-            OSUtils.sleep(100);
       } catch (JSONException e) {
          e.printStackTrace();
       }
    }
 
-   static int ProcessJobForDisplay(NotificationGenerationJob notifJob) {
+   /**
+    * Displays the notification in stages, timed by {@link NotificationDisplayTimings}.
+    * <p>
+    * Image downloads don't depend on the collapse key lookup or channel creation, so they run in the background while
+    * those are done on the job's thread and are joined before the notification is built. The notification is saved after it is displayed.
+    */
+   static int ProcessJobForDisplay(final NotificationGenerationJob notifJob) {
+      final NotificationDisplayTimings timings = new NotificationDisplayTimings();
+
       notifJob.showAsAlert = OneSignal.getInAppAlertNotificationEnabled() && OneSignal.isAppActive();
+      boolean doDisplay = shouldDisplayNotif(notifJob);
+
+      final long prepareStartTime = SystemClock.elapsedRealtime();
+      List<NotificationImageLoader.ImageDownload> imageDownloads = null;
+      boolean createChannel = false;
+      if (doDisplay && !GenerateNotification.shouldShowAsAlert(notifJob)) {
+         imageDownloads = NotificationImageLoader.startPrefetch(notifJob.context, notifJob.jsonPayload);
+         createChannel = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+      }
+
       processCollapseKey(notifJob);
+      timings.record(NotificationDisplayTimings.Stage.COLLAPSE_KEY, prepareStartTime);
 
-      boolean doDisplay = shouldDisplayNotif(notifJob);
-      if (doDisplay)
-            GenerateNotification.fromJsonPayload(notifJob);
+      if (createChannel) {
+         createNotificationChannel(notifJob);
+         timings.record(NotificationDisplayTimings.Stage.CHANNEL, prepareStartTime);
+      }
+
+      if (imageDownloads != null && !imageDownloads.isEmpty()) {
+         NotificationImageLoader.awaitPrefetch(imageDownloads);
+         timings.record(NotificationDisplayTimings.Stage.IMAGES, prepareStartTime);
+      }
+      timings.record(NotificationDisplayTimings.Stage.PREPARE, prepareStartTime);
+
+      if (doDisplay) {
+         long displayStartTime = SystemClock.elapsedRealtime();
+         GenerateNotification.fromJsonPayload(notifJob);
+         timings.record(NotificationDisplayTimings.Stage.DISPLAY, displayStartTime);
+      }
 
       if (!notifJob.restoring && !notifJob.isInAppPreviewPush) {
+         long saveStartTime = SystemClock.elapsedRealtime();
          processNotification(notifJob, false);
+         timings.record(NotificationDisplayTimings.Stage.SAVE, saveStartTime);
          try {
-            JSONObject jsonObject = new JSONObject(notifJob.jsonPayload.toString());
-            jsonObject.put("notificationId", notifJob.getAndroidId());
-            OneSignal.handleNotificationReceived(newJsonArray(jsonObject), true, notifJob.showAsAlert);
+            OneSignal.handleNotificationReceived(notifJob.getPayload().withAndroidNotificationId(notifJob.getAndroidId()), true, notifJob.showAsAlert);
          } catch(Throwable t) {}
       }
 
+      timings.finish();
       return notifJob.getAndroidId();
    }
 
+   // Creating a channel is an IPC to the NotificationManager, done while the images download
+   private static void createNotificationChannel(NotificationGenerationJob notifJob) {
+      try {
+         notifJob.channelId = NotificationChannelManager.createNotificationChannel(notifJob);
+      } catch (Throwable t) {
+         // Created again when building the notification, falling back to a builder without a channel
+         OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not create notification channel ahead of display", t);
+      }
+   }
+
    private static boolean shouldDisplayNotif(NotificationGenerationJob notifJob) {
       // Validate that the current Android device is Android 4.4 or higher and the current job is a
       //    preview push
@@ -129,15 +174,9 @@ class NotificationBundleProcessor {
               shouldDisplay(notifJob.jsonPayload.optString("alert"));
    }
 
-   private static JSONArray bundleAsJsonArray(Bundle bundle) {
-      JSONArray jsonArray = new JSONArray();
-      jsonArray.put(bundleAsJSONObject(bundle));
-      return jsonArray;
-   }
-
-   private static void saveAndProcessNotification(Context context, Bundle bundle, boolean opened, int notificationId) {
+   private static void saveAndProcessNotification(Context context, ParsedPushPayload payload, boolean opened, int notificationId) {
       NotificationGenerationJob notifJob = new NotificationGenerationJob(context);
-      notifJob.jsonPayload = bundleAsJSONObject(bundle);
+      notifJob.setPayload(payload);
       notifJob.overrideSettings = new NotificationExtenderService.OverrideSettings();
       notifJob.overrideSettings.androidNotificationId = notificationId;
 
@@ -163,111 +202,93 @@ class NotificationBundleProcessor {
    //   * Collapse key / id support - Used to lookup the android notification id later
    //   * Redisplay notifications after reboot, upgrade of app, or cold boot after a force kill.
    //   * Future - Public API to get a list of notifications
-   private static void saveNotification(NotificationGenerationJob notifiJob, boolean opened) {
-      Context context = notifiJob.context;
-      JSONObject jsonPayload = notifiJob.jsonPayload;
+   private static void saveNotification(final NotificationGenerationJob notifiJob, final boolean opened) {
+      final Context context = notifiJob.context;
+      final JSONObject jsonPayload = notifiJob.jsonPayload;
       
       try {
-         JSONObject customJSON = getCustomJSONObject(notifiJob.jsonPayload);
+         final JSONObject customJSON = notifiJob.getPayload().custom;
+         if (customJSON == null)
+            throw new JSONException("No valid custom field in payload");
    
          OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(notifiJob.context);
-         SQLiteDatabase writableDb = null;
+         boolean saved = dbHelper.executeWrite("Error saving notification record! ", new OneSignalDbHelper.WriteOperation() {
+            @Override
+            public void run(SQLiteDatabase writableDb) {
+               // Count any notifications with duplicated android notification ids as dismissed.
+               // -1 is used to note never displayed
+               if (notifiJob.isNotificationToDisplay()) {
+                  BadgeCountUpdater.beforeNotificationConsumed(writableDb, notifiJob.getAndroidIdWithoutCreate());
+                  int dismissedCount = NotificationTableRepository.markDismissedByAndroidId(writableDb, notifiJob.getAndroidIdWithoutCreate());
+                  if (dismissedCount > 0)
+                     NotificationSummaryManager.onNotificationConsumed(notifiJob.getAndroidIdWithoutCreate());
+               }
 
-         try {
-            writableDb = dbHelper.getWritableDbWithRetries();
-   
-            writableDb.beginTransaction();
-            
-            // Count any notifications with duplicated android notification ids as dismissed.
-            // -1 is used to note never displayed
-            if (notifiJob.isNotificationToDisplay()) {
-               String whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + notifiJob.getAndroidIdWithoutCreate();
-   
+               // Save just received notification to DB
                ContentValues values = new ContentValues();
-               values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
-   
-               writableDb.update(NotificationTable.TABLE_NAME, values, whereStr, null);
-               BadgeCountUpdater.update(writableDb, context);
-            }
-
-            // Save just received notification to DB
-            ContentValues values = new ContentValues();
-            values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, customJSON.optString("i"));
-            if (jsonPayload.has("grp"))
-               values.put(NotificationTable.COLUMN_NAME_GROUP_ID, jsonPayload.optString("grp"));
-            if (jsonPayload.has("collapse_key") && !"do_not_collapse".equals(jsonPayload.optString("collapse_key")))
-               values.put(NotificationTable.COLUMN_NAME_COLLAPSE_ID, jsonPayload.optString("collapse_key"));
-
-            values.put(NotificationTable.COLUMN_NAME_OPENED, opened ? 1 : 0);
-            if (!opened)
-               values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, notifiJob.getAndroidIdWithoutCreate());
-            
-            if (notifiJob.getTitle() != null)
-               values.put(NotificationTable.COLUMN_NAME_TITLE, notifiJob.getTitle().toString());
-            if (notifiJob.getBody() != null)
-               values.put(NotificationTable.COLUMN_NAME_MESSAGE, notifiJob.getBody().toString());
-
-            // Set expire_time
-            long sentTime = jsonPayload.optLong("google.sent_time", SystemClock.currentThreadTimeMillis()) / 1_000L;
-            int ttl = jsonPayload.optInt("google.ttl", NotificationRestorer.DEFAULT_TTL_IF_NOT_IN_PAYLOAD);
-            long expireTime = sentTime + ttl;
-            values.put(NotificationTable.COLUMN_NAME_EXPIRE_TIME, expireTime);
-
-            values.put(NotificationTable.COLUMN_NAME_FULL_DATA, jsonPayload.toString());
-
-            writableDb.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
-
-            if (!opened)
-               BadgeCountUpdater.update(writableDb, context);
-            writableDb.setTransactionSuccessful();
-         } catch (Exception e) {
-            OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error saving notification record! ", e);
-         } finally {
-            if (writableDb != null) {
-               try {
-                  writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
-               } catch (Throwable t) {
-                  OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
+               values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, customJSON.optString("i"));
+               if (jsonPayload.has("grp"))
+                  values.put(NotificationTable.COLUMN_NAME_GROUP_ID, jsonPayload.optString("grp"));
+               if (jsonPayload.has("collapse_key") && !"do_not_collapse".equals(jsonPayload.optString("collapse_key")))
+                  values.put(NotificationTable.COLUMN_NAME_COLLAPSE_ID, jsonPayload.optString("collapse_key"));
+
+               values.put(NotificationTable.COLUMN_NAME_OPENED, opened ? 1 : 0);
+               if (!opened)
+                  values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, notifiJob.getAndroidIdWithoutCreate());
+
+               if (notifiJob.getTitle() != null)
+                  values.put(NotificationTable.COLUMN_NAME_TITLE, notifiJob.getTitle().toString());
+               if (notifiJob.getBody() != null)
+                  values.put(NotificationTable.COLUMN_NAME_MESSAGE, notifiJob.getBody().toString());
+
+               // Set expire_time
+               long sentTime = jsonPayload.optLong("google.sent_time", SystemClock.currentThreadTimeMillis()) / 1_000L;
+               int ttl = jsonPayload.optInt("google.ttl", NotificationRestorer.DEFAULT_TTL_IF_NOT_IN_PAYLOAD);
+               long expireTime = sentTime + ttl;
+               values.put(NotificationTable.COLUMN_NAME_EXPIRE_TIME, expireTime);
+
+               values.put(NotificationTable.COLUMN_NAME_FULL_DATA, jsonPayload.toString());
+
+               writableDb.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
+
+               if (!opened) {
+                  BadgeCountUpdater.notificationSaved(expireTime);
+                  if (jsonPayload.has("grp"))
+                     NotificationSummaryManager.onGroupNotificationSaved(
+                        jsonPayload.optString("grp"),
+                        notifiJob.getAndroidIdWithoutCreate(),
+                        values.getAsString(NotificationTable.COLUMN_NAME_TITLE),
+                        values.getAsString(NotificationTable.COLUMN_NAME_MESSAGE),
+                        values.getAsString(NotificationTable.COLUMN_NAME_FULL_DATA));
                }
+
+               if (notifiJob.isNotificationToDisplay() || !opened)
+                  BadgeCountUpdater.update(writableDb, context);
             }
-         }
+         });
+
+         if (saved)
+            DuplicateNotificationFilter.notificationSaved(customJSON.optString("i"));
       } catch (JSONException e) {
          e.printStackTrace();
       }
    }
 
-   static void markRestoredNotificationAsDismissed(NotificationGenerationJob notifiJob) {
+   static void markRestoredNotificationAsDismissed(final NotificationGenerationJob notifiJob) {
       if (notifiJob.getAndroidIdWithoutCreate() == -1)
          return;
 
-      String whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + notifiJob.getAndroidIdWithoutCreate();
-
       OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(notifiJob.context);
-      SQLiteDatabase writableDb = null;
-
-      try {
-         writableDb = dbHelper.getWritableDbWithRetries();
-         writableDb.beginTransaction();
-
-         ContentValues values = new ContentValues();
-         values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
-
-         writableDb.update(NotificationTable.TABLE_NAME, values, whereStr, null);
-         BadgeCountUpdater.update(writableDb, notifiJob.context);
-
-         writableDb.setTransactionSuccessful();
-
-      } catch (Exception e) {
-         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error saving notification record! ", e);
-      } finally {
-         if (writableDb != null) {
-            try {
-               writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
-            } catch (Throwable t) {
-               OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
-            }
+      dbHelper.executeWrite("Error saving notification record! ", new OneSignalDbHelper.WriteOperation() {
+         @Override
+         public void run(SQLiteDatabase writableDb) {
+            BadgeCountUpdater.beforeNotificationConsumed(writableDb, notifiJob.getAndroidIdWithoutCreate());
+            int dismissedCount = NotificationTableRepository.markDismissedByAndroidId(writableDb, notifiJob.getAndroidIdWithoutCreate());
+            if (dismissedCount > 0)
+               NotificationSummaryManager.onNotificationConsumed(notifiJob.getAndroidIdWithoutCreate());
+            BadgeCountUpdater.update(writableDb, notifiJob.context);
          }
-      }
+      });
    }
 
    static @NonNull JSONObject bundleAsJSONObject(Bundle bundle) {
@@ -285,63 +306,25 @@ class NotificationBundleProcessor {
       return json;
    }
 
-   // Format our short keys into more readable ones.
-   private static void unMinifyBundle(Bundle gcmBundle) {
-      if (!gcmBundle.containsKey("o"))
-         return;
-      
-      try {
-         JSONObject customJSON = new JSONObject(gcmBundle.getString("custom"));
-         JSONObject additionalDataJSON;
-
-         if (customJSON.has(PUSH_ADDITIONAL_DATE_KEY))
-            additionalDataJSON = customJSON.getJSONObject(PUSH_ADDITIONAL_DATE_KEY);
-         else
-            additionalDataJSON = new JSONObject();
-
-         JSONArray buttons = new JSONArray(gcmBundle.getString("o"));
-         gcmBundle.remove("o");
-         for (int i = 0; i < buttons.length(); i++) {
-            JSONObject button = buttons.getJSONObject(i);
-
-            String buttonText = button.getString("n");
-            button.remove("n");
-            String buttonId;
-            if (button.has("i")) {
-               buttonId = button.getString("i");
-               button.remove("i");
-            } else
-               buttonId = buttonText;
-
-            button.put("id", buttonId);
-            button.put("text", buttonText);
-
-            if (button.has("p")) {
-               button.put("icon", button.getString("p"));
-               button.remove("p");
-            }
-         }
-
-         additionalDataJSON.put("actionButtons", buttons);
-         additionalDataJSON.put("actionSelected", DEFAULT_ACTION);
-         if (!customJSON.has(PUSH_ADDITIONAL_DATE_KEY))
-            customJSON.put(PUSH_ADDITIONAL_DATE_KEY, additionalDataJSON);
-
-         gcmBundle.putString("custom", customJSON.toString());
-      } catch (JSONException e) {
-         e.printStackTrace();
-      }
+   static OSNotificationPayload OSNotificationPayloadFrom(JSONObject currentJsonPayload) {
+      return OSNotificationPayloadFrom(ParsedPushPayload.fromJson(currentJsonPayload));
    }
 
-   static OSNotificationPayload OSNotificationPayloadFrom(JSONObject currentJsonPayload) {
+   static OSNotificationPayload OSNotificationPayloadFrom(ParsedPushPayload payload) {
       OSNotificationPayload notification = new OSNotificationPayload();
+      JSONObject currentJsonPayload = payload.json;
       try {
-         JSONObject customJson = getCustomJSONObject(currentJsonPayload);
+         JSONObject customJson = payload.custom;
+         if (customJson == null)
+            throw new JSONException("No valid custom field in payload");
          notification.notificationID = customJson.optString("i");
          notification.templateId = customJson.optString("ti");
          notification.templateName = customJson.optString("tn");
          notification.rawPayload = currentJsonPayload.toString();
-         notification.additionalData = customJson.optJSONObject(PUSH_ADDITIONAL_DATE_KEY);
+         // Copied as action buttons are removed from it, custom is shared with the rest of the payload
+         JSONObject additionalData = customJson.optJSONObject(PUSH_ADDITIONAL_DATE_KEY);
+         if (additionalData != null)
+            notification.additionalData = ParsedPushPayload.copyOf(additionalData);
          notification.launchURL = customJson.optString("u", null);
 
          notification.body = currentJsonPayload.optString("alert", null);
@@ -420,30 +403,15 @@ class NotificationBundleProcessor {
 
 
       OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(notifJob.context);
-      Cursor cursor = null;
 
       try {
          SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
-         cursor = readableDb.query(
-               NotificationTable.TABLE_NAME,
-               new String[]{NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID}, // retColumn
-               NotificationTable.COLUMN_NAME_COLLAPSE_ID + " = ? AND " +
-                     NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
-                     NotificationTable.COLUMN_NAME_OPENED + " = 0 ",
-               new String[] {collapse_id},
-               null, null, null);
-
-         if (cursor.moveToFirst()) {
-            int androidNotificationId = cursor.getInt(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID));
+         Integer androidNotificationId = NotificationTableRepository.getAndroidIdForCollapseId(readableDb, collapse_id);
+         if (androidNotificationId != null)
             notifJob.setAndroidIdWithOutOverriding(androidNotificationId);
-         }
       } catch (Throwable t) {
          OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Could not read DB to find existing collapse_key!", t);
       }
-      finally {
-         if (cursor != null && !cursor.isClosed())
-            cursor.close();
-      }
    }
 
    //  Process bundle passed from gcm / adm broadcast receiver.
@@ -451,16 +419,14 @@ class NotificationBundleProcessor {
       ProcessedBundleResult result = new ProcessedBundleResult();
       
       // Not a OneSignal GCM message
-      if (OneSignal.getNotificationIdFromGCMBundle(bundle) == null)
+      final ParsedPushPayload payload = ParsedPushPayload.fromBundle(bundle);
+      if (payload == null)
          return result;
       result.isOneSignalPayload = true;
-
-      unMinifyBundle(bundle);
-
-      JSONObject pushPayloadJson = bundleAsJSONObject(bundle);
+      result.payload = payload;
 
       // Show In-App message preview it is in the payload & the app is in focus
-      String previewUUID = inAppPreviewPushUUID(pushPayloadJson);
+      String previewUUID = inAppPreviewPushUUID(payload);
       if (previewUUID != null) {
          // If app is in focus display the IAMs preview now
          if (OneSignal.isAppActive()) {
@@ -471,11 +437,11 @@ class NotificationBundleProcessor {
          return result;
       }
 
-      if (startExtenderService(context, bundle, result))
+      if (startExtenderService(context, bundle, payload, result))
          return result;
 
-      // We already ran a getNotificationIdFromGCMBundle == null check above so this will only be true for dups
-      result.isDup = OneSignal.notValidOrDuplicated(context, pushPayloadJson);
+      // We already checked this is a OneSignal payload above so this will only be true for dups
+      result.isDup = OneSignal.notValidOrDuplicated(context, payload.getNotificationId());
       if (result.isDup)
          return result;
 
@@ -483,12 +449,12 @@ class NotificationBundleProcessor {
 
       // Save as a opened notification to prevent duplicates.
       if (!shouldDisplay(alert)) {
-         saveAndProcessNotification(context, bundle, true, -1);
+         saveAndProcessNotification(context, payload, true, -1);
          // Current thread is meant to be short lived.
          //    Make a new thread to do our OneSignal work on.
          new Thread(new Runnable() {
             public void run() {
-               OneSignal.handleNotificationReceived(bundleAsJsonArray(bundle), false, false);
+               OneSignal.handleNotificationReceived(payload, false, false);
             }
          }, "OS_PROC_BUNDLE").start();
       }
@@ -496,30 +462,17 @@ class NotificationBundleProcessor {
       return result;
    }
 
-   static @Nullable String inAppPreviewPushUUID(JSONObject payload) {
-      JSONObject osCustom;
-      try {
-         osCustom = getCustomJSONObject(payload);
-      } catch (JSONException e) {
-         return null;
-      }
-
-      if (!osCustom.has(PUSH_ADDITIONAL_DATE_KEY))
-         return null;
-
-      JSONObject additionalData = osCustom.optJSONObject(PUSH_ADDITIONAL_DATE_KEY);
-      if (additionalData.has(IAM_PREVIEW_KEY))
-         return additionalData.optString(IAM_PREVIEW_KEY);
-      return null;
+   static @Nullable String inAppPreviewPushUUID(ParsedPushPayload payload) {
+      return payload.getAdditionalDataString(IAM_PREVIEW_KEY);
    }
 
    // NotificationExtenderService still makes additional checks such as notValidOrDuplicated
-   private static boolean startExtenderService(Context context, Bundle bundle, ProcessedBundleResult result) {
+   private static boolean startExtenderService(Context context, Bundle bundle, ParsedPushPayload payload, ProcessedBundleResult result) {
       Intent intent = NotificationExtenderService.getIntent(context);
       if (intent == null)
          return false;
 
-      intent.putExtra("json_payload", bundleAsJSONObject(bundle).toString());
+      intent.putExtra("json_payload", payload.json.toString());
       intent.putExtra("timestamp", System.currentTimeMillis() / 1000L);
 
       boolean isHighPriority = Integer.parseInt(bundle.getString("pri", "0")) > 9;
@@ -552,10 +505,6 @@ class NotificationBundleProcessor {
    static @NonNull JSONArray newJsonArray(JSONObject jsonObject) {
       return new JSONArray().put(jsonObject);
    }
-
-   static JSONObject getCustomJSONObject(JSONObject jsonObject) throws JSONException {
-      return new JSONObject(jsonObject.optString("custom"));
-   }
    
    static boolean hasRemoteResource(Bundle bundle) {
       return isBuildKeyRemote(bundle, "licon")
@@ -564,8 +513,7 @@ class NotificationBundleProcessor {
    }
    
    private static boolean isBuildKeyRemote(Bundle bundle, String key) {
-      String value = bundle.getString(key, "").trim();
-      return value.startsWith("http://") || value.startsWith("https://");
+      return NotificationImageLoader.isRemoteUrl(bundle.getString(key, ""));
    }
    
    static class ProcessedBundleResult {
@@ -573,6 +521,8 @@ class NotificationBundleProcessor {
       boolean hasExtenderService;
       boolean isDup;
       boolean inAppPreviewShown;
+      // Set when isOneSignalPayload
+      ParsedPushPayload payload;
       
       boolean processed() {
          return !isOneSignalPayload || hasExtenderService || isDup || inAppPreviewShown;
@@ -0,0 +1,78 @@
+package com.onesignal;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Time spent in each stage of displaying a push, from {@link NotificationBundleProcessor#ProcessJobForDisplay}.
+ * <p>
+ * {@link Stage#IMAGES} download while {@link Stage#COLLAPSE_KEY} and {@link Stage#CHANNEL} run on the job's thread.
+ * These stages are timed from the start of the preparation, {@link Stage#PREPARE} is the time until all of them finished.
+ */
+class NotificationDisplayTimings {
+
+   enum Stage {
+      COLLAPSE_KEY,
+      IMAGES,
+      CHANNEL,
+      PREPARE,
+      DISPLAY,
+      SAVE,
+      TOTAL
+   }
+
+   private static NotificationDisplayTimings lastTimings;
+
+   private final long startTime = SystemClock.elapsedRealtime();
+   // -1 for stages that didn't run
+   private final long[] durations = new long[Stage.values().length];
+
+   NotificationDisplayTimings() {
+      for (int i = 0; i < durations.length; i++)
+         durations[i] = -1;
+   }
+
+   long getStartTime() {
+      return startTime;
+   }
+
+   synchronized void record(@NonNull Stage stage, long stageStartTime) {
+      durations[stage.ordinal()] = SystemClock.elapsedRealtime() - stageStartTime;
+   }
+
+   /**
+    * @return time spent in the stage in ms, -1 if it didn't run
+    */
+   synchronized long get(@NonNull Stage stage) {
+      return durations[stage.ordinal()];
+   }
+
+   void finish() {
+      record(Stage.TOTAL, startTime);
+      synchronized (NotificationDisplayTimings.class) {
+         lastTimings = this;
+      }
+      OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Notification display timings: " + this);
+   }
+
+   /**
+    * Timings of the last push processed for display
+    */
+   static synchronized @Nullable NotificationDisplayTimings getLast() {
+      return lastTimings;
+   }
+
+   @Override
+   public synchronized String toString() {
+      StringBuilder builder = new StringBuilder();
+      for (Stage stage : Stage.values()) {
+         if (durations[stage.ordinal()] == -1)
+            continue;
+         if (builder.length() > 0)
+            builder.append(", ");
+         builder.append(stage.name().toLowerCase()).append(": ").append(durations[stage.ordinal()]).append("ms");
+      }
+      return builder.toString();
+   }
+}
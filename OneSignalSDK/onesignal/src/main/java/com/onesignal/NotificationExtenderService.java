@@ -89,7 +89,7 @@ public abstract class NotificationExtenderService extends JobIntentService {
    }
 
    private OSNotificationDisplayedResult osNotificationDisplayedResult;
-   private JSONObject currentJsonPayload;
+   private ParsedPushPayload currentPayload;
    private boolean currentlyRestoring;
    private Long restoreTimestamp;
    private OverrideSettings currentBaseOverrideSettings = null;
@@ -141,26 +141,30 @@ public abstract class NotificationExtenderService extends JobIntentService {
       }
 
       try {
-         currentJsonPayload = new JSONObject(jsonStrPayload);
+         currentPayload = ParsedPushPayload.fromJson(new JSONObject(jsonStrPayload));
          currentlyRestoring = bundle.getBoolean("restoring", false);
          if (bundle.containsKey("android_notif_id")) {
             currentBaseOverrideSettings = new OverrideSettings();
             currentBaseOverrideSettings.androidNotificationId = bundle.getInt("android_notif_id");
          }
 
-         if (!currentlyRestoring && OneSignal.notValidOrDuplicated(this, currentJsonPayload))
+         if (!currentlyRestoring && OneSignal.notValidOrDuplicated(this, currentPayload.getNotificationId()))
             return;
 
          restoreTimestamp = bundle.getLong("timestamp");
-         processJsonObject(currentJsonPayload, currentlyRestoring);
+         if (currentlyRestoring)
+            NotificationRestorer.beforeExtenderRestore(bundle);
+         processPayload(currentPayload, currentlyRestoring);
+         if (currentlyRestoring)
+            NotificationRestorer.afterExtenderRestore(bundle);
       } catch (JSONException e) {
          e.printStackTrace();
       }
    }
 
-   void processJsonObject(JSONObject currentJsonPayload, boolean restoring) {
+   void processPayload(ParsedPushPayload currentPayload, boolean restoring) {
       OSNotificationReceivedResult receivedResult = new OSNotificationReceivedResult();
-      receivedResult.payload = NotificationBundleProcessor.OSNotificationPayloadFrom(currentJsonPayload);
+      receivedResult.payload = NotificationBundleProcessor.OSNotificationPayloadFrom(currentPayload);
       receivedResult.restoring = restoring;
       receivedResult.isAppInFocus = OneSignal.isAppActive();
 
@@ -181,17 +185,17 @@ public abstract class NotificationExtenderService extends JobIntentService {
          // Save as processed to prevent possible duplicate calls from canonical ids.
 
          boolean display = !developerProcessed &&
-               NotificationBundleProcessor.shouldDisplay(currentJsonPayload.optString("alert"));
+               NotificationBundleProcessor.shouldDisplay(currentPayload.json.optString("alert"));
 
          if (!display) {
             if (!restoring) {
                NotificationGenerationJob notifJob = new NotificationGenerationJob(this);
-               notifJob.jsonPayload = currentJsonPayload;
+               notifJob.setPayload(currentPayload);
                notifJob.overrideSettings = new OverrideSettings();
                notifJob.overrideSettings.androidNotificationId = -1;
 
                NotificationBundleProcessor.processNotification(notifJob, true);
-               OneSignal.handleNotificationReceived(NotificationBundleProcessor.newJsonArray(currentJsonPayload), false, false);
+               OneSignal.handleNotificationReceived(currentPayload, false, false);
             }
             // If are are not displaying a restored notification make sure we mark it as dismissed
             //   This will prevent it from being restored again.
@@ -223,7 +227,7 @@ public abstract class NotificationExtenderService extends JobIntentService {
    private NotificationGenerationJob createNotifJobFromCurrent() {
       NotificationGenerationJob notifJob = new NotificationGenerationJob(this);
       notifJob.restoring = currentlyRestoring;
-      notifJob.jsonPayload = currentJsonPayload;
+      notifJob.setPayload(currentPayload);
       notifJob.shownTimeStamp = restoreTimestamp;
       notifJob.overrideSettings = currentBaseOverrideSettings;
 
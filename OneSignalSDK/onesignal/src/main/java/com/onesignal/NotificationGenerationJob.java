@@ -51,12 +51,29 @@ class NotificationGenerationJob {
    Integer overriddenFlags;
    Integer orgFlags;
    Uri orgSound;
+
+   // Notification channel, when created before the notification is built
+   String channelId;
    
    NotificationGenerationJob(Context context) {
       this.context = context;
    }
    
    NotificationExtenderService.OverrideSettings overrideSettings;
+
+   // jsonPayload with custom parsed, built once per payload
+   private ParsedPushPayload parsedPayload;
+
+   ParsedPushPayload getPayload() {
+      if (parsedPayload == null || parsedPayload.json != jsonPayload)
+         parsedPayload = ParsedPushPayload.fromJson(jsonPayload);
+      return parsedPayload;
+   }
+
+   void setPayload(ParsedPushPayload payload) {
+      parsedPayload = payload;
+      jsonPayload = payload.json;
+   }
    
    CharSequence getTitle() {
       if (overriddenTitleFromExtender != null)
@@ -94,7 +111,7 @@ class NotificationGenerationJob {
    }
 
    String getApiNotificationId() {
-      return OneSignal.getNotificationIdFromGCMJson(jsonPayload);
+      return getPayload().getNotificationId();
    }
 
    void setAndroidIdWithOutOverriding(Integer id) {
@@ -0,0 +1,342 @@
+package com.onesignal;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LruCache;
+
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads and decodes the remote images of notifications, the large icon, big picture and background image.
+ * <p>
+ * Downloads are saved to a size bounded disk cache so the same image sent to every push of a campaign,
+ * or displayed again when restoring, is only downloaded once. Decoded bitmaps are sampled down to the size
+ * they are displayed at and kept in a memory LRU.
+ * <p>
+ * {@link #startPrefetch(Context, JSONObject)} downloads all images of a payload in parallel while the rest of the
+ * notification is prepared.
+ */
+class NotificationImageLoader {
+
+   private static final int CONNECT_TIMEOUT_MS = 10_000;
+   private static final int READ_TIMEOUT_MS = 15_000;
+   // Longest time a notification waits on an image before being displayed without it, counted from the start of its download
+   private static final int DOWNLOAD_TIMEOUT_MS = 20_000;
+   // A payload has at most a large icon, a big picture and a background image
+   private static final int MAX_CONCURRENT_DOWNLOADS = 3;
+   private static final long EXECUTOR_KEEP_ALIVE_MS = 10_000;
+
+   private static final String DISK_CACHE_DIR = "onesignal_notification_images";
+   static final long DISK_CACHE_BYTES = 10 * 1024 * 1024;
+   private static final int MEMORY_CACHE_BYTES = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 8 * 1024 * 1024);
+
+   private static final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_BYTES) {
+      @Override
+      protected int sizeOf(String key, Bitmap bitmap) {
+         return bitmap.getRowBytes() * bitmap.getHeight();
+      }
+   };
+
+   // Downloads in progress, so a prefetch and a display of the same url share one download
+   private static final Map<String, ImageDownload> downloads = new HashMap<>();
+
+   private static ThreadPoolExecutor downloadExecutor;
+
+   /**
+    * A download to the disk cache, waits on it share the deadline set when it started
+    */
+   static class ImageDownload extends FutureTask<File> {
+      private final long deadline;
+
+      private ImageDownload(Callable<File> callable) {
+         super(callable);
+         deadline = SystemClock.elapsedRealtime() + DOWNLOAD_TIMEOUT_MS;
+      }
+
+      /**
+       * @return the downloaded file, null if the download failed or didn't finish before the deadline
+       */
+      @WorkerThread
+      @Nullable File await() {
+         try {
+            return get(Math.max(0, deadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+         } catch (Throwable t) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not download notification image!", t);
+            return null;
+         }
+      }
+   }
+
+   static boolean isRemoteUrl(@Nullable String value) {
+      if (value == null)
+         return false;
+      String trimmedValue = value.trim();
+      return trimmedValue.startsWith("http://") || trimmedValue.startsWith("https://");
+   }
+
+   /**
+    * Starts downloading every remote image of the payload without waiting on them,
+    * so other work can run while the images download
+    * @return the downloads to pass to {@link #awaitPrefetch(List)}
+    */
+   static @NonNull List<ImageDownload> startPrefetch(@NonNull Context context, @NonNull JSONObject payload) {
+      List<String> urls = new ArrayList<>();
+      for (String key : new String[] { "licon", "bicon" }) {
+         String value = payload.optString(key, null);
+         if (isRemoteUrl(value))
+            urls.add(value.trim());
+      }
+
+      JSONObject backgroundImage = null;
+      try {
+         String backgroundImageStr = payload.optString("bg_img", null);
+         if (backgroundImageStr != null)
+            backgroundImage = new JSONObject(backgroundImageStr);
+      } catch (Throwable t) {}
+      if (backgroundImage != null && isRemoteUrl(backgroundImage.optString("img", null)))
+         urls.add(backgroundImage.optString("img").trim());
+
+      List<ImageDownload> pending = new ArrayList<>(urls.size());
+      for (String url : urls)
+         pending.add(startDownload(context, url));
+      return pending;
+   }
+
+   /**
+    * Waits until the downloads from {@link #startPrefetch(Context, JSONObject)} are in the disk cache or timed out
+    */
+   @WorkerThread
+   static void awaitPrefetch(@NonNull List<ImageDownload> pending) {
+      for (ImageDownload download : pending)
+         download.await();
+   }
+
+   /**
+    * Image at the url decoded to at least the target size, sampled down from larger images
+    * @return null if the image could not be downloaded or decoded
+    */
+   @WorkerThread
+   static @Nullable Bitmap getBitmap(@NonNull Context context, @NonNull String url, int targetWidth, int targetHeight) {
+      String memoryKey = url + "@" + targetWidth + "x" + targetHeight;
+      Bitmap bitmap = memoryCache.get(memoryKey);
+      if (bitmap != null)
+         return bitmap;
+
+      File file = getDiskCacheFile(getDiskCacheDir(context), url);
+      if (file.exists()) {
+         // Last modified is the LRU order of the disk cache
+         file.setLastModified(System.currentTimeMillis());
+      }
+      else {
+         // A download already waited on by the prefetch isn't given more time
+         file = startDownload(context, url).await();
+         if (file == null)
+            return null;
+      }
+
+      bitmap = decodeSampledBitmap(file, targetWidth, targetHeight);
+      if (bitmap != null)
+         memoryCache.put(memoryKey, bitmap);
+      return bitmap;
+   }
+
+   private static ImageDownload startDownload(final Context context, final String url) {
+      synchronized (downloads) {
+         ImageDownload download = downloads.get(url);
+         if (download != null)
+            return download;
+
+         download = new ImageDownload(new Callable<File>() {
+            @Override
+            public File call() {
+               try {
+                  return getOrDownloadFile(context, url);
+               } finally {
+                  synchronized (downloads) {
+                     downloads.remove(url);
+                  }
+               }
+            }
+         });
+         downloads.put(url, download);
+         getDownloadExecutor().execute(download);
+         return download;
+      }
+   }
+
+   private static synchronized ThreadPoolExecutor getDownloadExecutor() {
+      if (downloadExecutor == null) {
+         downloadExecutor = new ThreadPoolExecutor(
+            MAX_CONCURRENT_DOWNLOADS,
+            MAX_CONCURRENT_DOWNLOADS,
+            EXECUTOR_KEEP_ALIVE_MS,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+               @Override
+               public Thread newThread(@NonNull Runnable runnable) {
+                  Thread newThread = new Thread(runnable);
+                  newThread.setName("OSNotificationImage_" + newThread.getId());
+                  return newThread;
+               }
+            }
+         );
+         downloadExecutor.allowCoreThreadTimeOut(true);
+      }
+      return downloadExecutor;
+   }
+
+   private static @Nullable File getOrDownloadFile(Context context, String url) {
+      File cacheDir = getDiskCacheDir(context);
+      File file = getDiskCacheFile(cacheDir, url);
+      if (file.exists()) {
+         // Last modified is the LRU order of the disk cache
+         file.setLastModified(System.currentTimeMillis());
+         return file;
+      }
+
+      File tempFile = new File(cacheDir, file.getName() + ".tmp");
+      InputStream inputStream = null;
+      OutputStream outputStream = null;
+      try {
+         URLConnection connection = new URL(url).openConnection();
+         connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+         connection.setReadTimeout(READ_TIMEOUT_MS);
+
+         inputStream = connection.getInputStream();
+         outputStream = new FileOutputStream(tempFile);
+         byte[] buffer = new byte[8 * 1024];
+         int read;
+         while ((read = inputStream.read(buffer)) != -1)
+            outputStream.write(buffer, 0, read);
+         outputStream.close();
+         outputStream = null;
+
+         if (!tempFile.renameTo(file))
+            return null;
+      } catch (Throwable t) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not download image!", t);
+         return null;
+      } finally {
+         closeQuietly(inputStream);
+         closeQuietly(outputStream);
+         if (tempFile.exists())
+            tempFile.delete();
+      }
+
+      trimDiskCache(cacheDir);
+      return file;
+   }
+
+   static @Nullable Bitmap decodeSampledBitmap(@NonNull File file, int targetWidth, int targetHeight) {
+      try {
+         BitmapFactory.Options options = new BitmapFactory.Options();
+         options.inJustDecodeBounds = true;
+         BitmapFactory.decodeFile(file.getPath(), options);
+
+         options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+         options.inJustDecodeBounds = false;
+         return BitmapFactory.decodeFile(file.getPath(), options);
+      } catch (Throwable t) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not decode image!", t);
+         return null;
+      }
+   }
+
+   // Largest power of 2 that keeps both sides at least the target size, the caller scales the rest of the way
+   static int calculateInSampleSize(int width, int height, int targetWidth, int targetHeight) {
+      int inSampleSize = 1;
+      if (targetWidth <= 0 || targetHeight <= 0)
+         return inSampleSize;
+
+      while (width / (inSampleSize * 2) >= targetWidth && height / (inSampleSize * 2) >= targetHeight)
+         inSampleSize *= 2;
+      return inSampleSize;
+   }
+
+   static File getDiskCacheDir(Context context) {
+      File cacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+      if (!cacheDir.exists())
+         cacheDir.mkdirs();
+      return cacheDir;
+   }
+
+   static File getDiskCacheFile(File cacheDir, String url) {
+      String name;
+      try {
+         name = OSUtils.hexDigest(url, "SHA-1");
+      } catch (Throwable t) {
+         name = Integer.toHexString(url.hashCode());
+      }
+      return new File(cacheDir, name);
+   }
+
+   private static synchronized void trimDiskCache(File cacheDir) {
+      File[] files = cacheDir.listFiles();
+      if (files == null)
+         return;
+
+      long totalBytes = 0;
+      for (File file : files)
+         totalBytes += file.length();
+      // Downloads in progress are written to .tmp files first, they are not part of the cache yet
+      if (totalBytes <= DISK_CACHE_BYTES)
+         return;
+
+      // Least recently used first
+      Arrays.sort(files, new Comparator<File>() {
+         @Override
+         public int compare(File lhs, File rhs) {
+            long lhsModified = lhs.lastModified(), rhsModified = rhs.lastModified();
+            return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+         }
+      });
+
+      for (File file : files) {
+         if (totalBytes <= DISK_CACHE_BYTES)
+            break;
+         if (file.getName().endsWith(".tmp"))
+            continue;
+         long length = file.length();
+         if (file.delete())
+            totalBytes -= length;
+      }
+   }
+
+   static void clearMemoryCache() {
+      memoryCache.evictAll();
+   }
+
+   private static void closeQuietly(Closeable closeable) {
+      if (closeable == null)
+         return;
+      try {
+         closeable.close();
+      } catch (Throwable t) {}
+   }
+}
@@ -70,10 +70,10 @@ class NotificationOpenedProcessor {
       }
    }
 
-   static void processIntent(Context context, Intent intent) {
-      String summaryGroup = intent.getStringExtra("summary");
+   static void processIntent(final Context context, final Intent intent) {
+      final String summaryGroup = intent.getStringExtra("summary");
 
-      boolean dismissed = intent.getBooleanExtra("dismissed", false);
+      final boolean dismissed = intent.getBooleanExtra("dismissed", false);
 
       JSONArray dataArray = null;
       JSONObject jsonData = null;
@@ -92,37 +92,25 @@ class NotificationOpenedProcessor {
          }
       }
 
+      final JSONArray openedDataArray = dataArray;
       OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(context);
-      SQLiteDatabase writableDb = null;
-
-      try {
-         writableDb = dbHelper.getWritableDbWithRetries();
-         writableDb.beginTransaction();
-
-         // We just opened a summary notification.
-         if (!dismissed && summaryGroup != null)
-            addChildNotifications(dataArray, summaryGroup, writableDb);
-
-         markNotificationsConsumed(context, intent, writableDb, dismissed);
-
-         // Notification is not a summary type but a single notification part of a group.
-         if (summaryGroup == null) {
-            String group = intent.getStringExtra("grp");
-            if (group != null)
-               NotificationSummaryManager.updateSummaryNotificationAfterChildRemoved(context, writableDb, group, dismissed);
-         }
-         writableDb.setTransactionSuccessful();
-      } catch (Exception e) {
-         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error processing notification open or dismiss record! ", e);
-      } finally {
-         if (writableDb != null) {
-            try {
-               writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
-            } catch (Throwable t) {
-               OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
+      dbHelper.executeWrite("Error processing notification open or dismiss record! ", new OneSignalDbHelper.WriteOperation() {
+         @Override
+         public void run(SQLiteDatabase writableDb) {
+            // We just opened a summary notification.
+            if (!dismissed && summaryGroup != null)
+               addChildNotifications(openedDataArray, summaryGroup, writableDb);
+
+            markNotificationsConsumed(context, intent, writableDb, dismissed);
+
+            // Notification is not a summary type but a single notification part of a group.
+            if (summaryGroup == null) {
+               String group = intent.getStringExtra("grp");
+               if (group != null)
+                  NotificationSummaryManager.updateSummaryNotificationAfterChildRemoved(context, writableDb, group, dismissed);
             }
          }
-      }
+      });
 
       if (!dismissed)
          OneSignal.handleNotificationOpen(context, dataArray,
@@ -130,7 +118,7 @@ class NotificationOpenedProcessor {
    }
 
    private static boolean handleIAMPreviewOpen(@NonNull Context context, @NonNull JSONObject jsonData) {
-      String previewUUID = NotificationBundleProcessor.inAppPreviewPushUUID(jsonData);
+      String previewUUID = NotificationBundleProcessor.inAppPreviewPushUUID(ParsedPushPayload.fromJson(jsonData));
       if (previewUUID == null)
          return false;
 
@@ -195,12 +183,28 @@ class NotificationOpenedProcessor {
                        new String[]{ summaryGroup, mostRecentId };
             }
          }
-      } else
-         whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + intent.getIntExtra("notificationId", 0);
+      } else {
+         // Consumed rows are left as is so the rows updated can be taken off the badge count
+         whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + intent.getIntExtra("notificationId", 0) + " AND " +
+                 NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+                 NotificationTable.COLUMN_NAME_OPENED + " = 0";
+      }
 
 
       clearStatusBarNotifications(context, writableDb, summaryGroup);
-      writableDb.update(NotificationTable.TABLE_NAME, newContentValuesWithConsumed(intent), whereStr, whereArgs);
+      if (summaryGroup == null)
+         BadgeCountUpdater.beforeNotificationConsumed(writableDb, intent.getIntExtra("notificationId", 0));
+      int consumedCount = writableDb.update(NotificationTable.TABLE_NAME, newContentValuesWithConsumed(intent), whereStr, whereArgs);
+
+      // A summary group also updates its summary row, which isn't part of the badge count
+      if (summaryGroup == null) {
+         if (consumedCount > 0)
+            NotificationSummaryManager.onNotificationConsumed(intent.getIntExtra("notificationId", 0));
+      }
+      else {
+         BadgeCountUpdater.invalidateCount();
+         NotificationSummaryManager.invalidateGroup(summaryGroup);
+      }
       BadgeCountUpdater.update(writableDb, context);
    }
 
@@ -0,0 +1,101 @@
+package com.onesignal;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+
+/**
+ * Latency of restoring notifications, from the restore query to each notification being displayed again.
+ * <p>
+ * Counters cover every restore since the app started. A summary of each restore run is logged once the last
+ * notification of its last batch is restored. Runs are keyed on the time their notifications were queued, which every
+ * batch of the run carries, so batches restored after a process restart or across several jobs are still matched.
+ * Notifications restored by an earlier process are not part of the summary.
+ */
+class NotificationRestoreMetrics {
+
+   private static class RunMetrics {
+      private int batchCount;
+      private int restoredCount;
+      private long rateLimitWaitMs;
+      private long maxLatencyMs;
+      private long totalLatencyMs;
+   }
+
+   private static HashMap<Long, RunMetrics> runs = new HashMap<>();
+
+   private static int restoredCount;
+   private static int batchCount;
+   private static long rateLimitWaitMs;
+   private static long maxLatencyMs;
+
+   private static RunMetrics getRun(long queuedAt) {
+      RunMetrics run = runs.get(queuedAt);
+      if (run == null) {
+         run = new RunMetrics();
+         runs.put(queuedAt, run);
+      }
+      return run;
+   }
+
+   /**
+    * @param queuedAt {@link SystemClock#elapsedRealtime()} when the notifications were read from the DB
+    */
+   static synchronized void onRestoreQueued(long queuedAt, int batches) {
+      batchCount += batches;
+      getRun(queuedAt).batchCount += batches;
+   }
+
+   /**
+    * Restores were scheduled again to wait on the restore rate limit
+    */
+   static synchronized void onRestoreDelayed(long queuedAt, long waitMs) {
+      rateLimitWaitMs += waitMs;
+      getRun(queuedAt).rateLimitWaitMs += waitMs;
+   }
+
+   static synchronized void onNotificationRestored(long queuedAt) {
+      long latencyMs = SystemClock.elapsedRealtime() - queuedAt;
+
+      restoredCount++;
+      if (latencyMs > maxLatencyMs)
+         maxLatencyMs = latencyMs;
+
+      RunMetrics run = getRun(queuedAt);
+      run.restoredCount++;
+      run.totalLatencyMs += latencyMs;
+      if (latencyMs > run.maxLatencyMs)
+         run.maxLatencyMs = latencyMs;
+   }
+
+   /**
+    * The last notification of a restore run was restored
+    */
+   static synchronized void onRestoreFinished(long queuedAt) {
+      RunMetrics run = runs.remove(queuedAt);
+      if (run == null || run.restoredCount == 0)
+         return;
+
+      OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG,
+         "Restored " + run.restoredCount + " notifications in " + run.batchCount + " batches" +
+         ", average latency: " + (run.totalLatencyMs / run.restoredCount) + "ms" +
+         ", max latency: " + run.maxLatencyMs + "ms" +
+         ", waited on rate limit: " + run.rateLimitWaitMs + "ms");
+   }
+
+   static synchronized int getRestoredCount() {
+      return restoredCount;
+   }
+
+   static synchronized int getBatchCount() {
+      return batchCount;
+   }
+
+   static synchronized long getRateLimitWaitMs() {
+      return rateLimitWaitMs;
+   }
+
+   static synchronized long getMaxLatencyMs() {
+      return maxLatencyMs;
+   }
+}
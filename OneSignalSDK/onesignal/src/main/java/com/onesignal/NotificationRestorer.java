@@ -38,7 +38,9 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Process;
+import android.os.SystemClock;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
@@ -46,6 +48,7 @@ import android.text.TextUtils;
 import com.onesignal.OneSignalDbContract.NotificationTable;
 
 import java.util.ArrayList;
+import java.util.List;
 
 // Purpose:
 // Restore any notifications not interacted by the user back into the notification shade.
@@ -69,6 +72,9 @@ import java.util.ArrayList;
 //   - Android 6+ Marshmallow - We check the notification shade if the notification is already there
 //                              and skip generating it again.
 //   - Up to the most recent 50 notifications will be restored.
+//   - Notifications are restored in batches of RESTORE_BATCH_SIZE per RestoreJobService work item.
+//     Every batch is queued as durable work up front. Restores are paced with a token bucket inside the job,
+//     so notifications not restored yet stay in the job queue if the process is killed.
 
 // TTL Cutoff Notes:
 //   - Filtering restores when paste TTL cutoff time creates an inconsistency
@@ -92,7 +98,16 @@ class NotificationRestorer {
    // Delay to prevent logcat messages and possibly skipping some notifications
    //    This prevents the following error;
    // E/NotificationService: Package enqueue rate is 10.56985. Shedding events. package=####
-   private static final int DELAY_BETWEEN_NOTIFICATION_RESTORES_MS = 200;
+   // Used as the refill interval of the restore rate limit, time spent generating a notification counts towards it.
+   static final int DELAY_BETWEEN_NOTIFICATION_RESTORES_MS = 200;
+   // Notifications that can be restored back to back before the rate limit applies
+   static final int RESTORE_BURST = 3;
+
+   static final int RESTORE_BATCH_SIZE = 10;
+   static final String EXTRA_RESTORE_BATCH = "restore_batch";
+   static final String EXTRA_RESTORE_QUEUED_AT = "restore_queued_at";
+   static final String EXTRA_RESTORE_RATE_LIMITED = "restore_rate_limited";
+   static final String EXTRA_RESTORE_LAST_BATCH = "restore_last_batch";
 
    static final int DEFAULT_TTL_IF_NOT_IN_PAYLOAD = 259_200;
 
@@ -149,7 +164,9 @@ class NotificationRestorer {
             NotificationTable._ID + " DESC", // sort order, new to old
             NotificationLimitManager.MAX_NUMBER_OF_NOTIFICATIONS_STR // limit
          );
-         showNotificationsFromCursor(context, cursor, DELAY_BETWEEN_NOTIFICATION_RESTORES_MS);
+         showNotificationsFromCursor(context, cursor, true);
+         // Reconcile the badge with a full count on startup
+         BadgeCountUpdater.invalidateCount();
          BadgeCountUpdater.update(readableDb, context);
       } catch (Throwable t) {
          OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error restoring notification records! ", t);
@@ -184,48 +201,156 @@ class NotificationRestorer {
 
    /**
     * Restores a set of notifications back to the notification shade based on an SQL cursor.
+    * Notifications are queued in batches and this returns without waiting for them to be displayed.
     * @param context - Context required to start JobIntentService
     * @param cursor - Source cursor to generate notifications from
-    * @param delay - Delay to slow down process to ensure we don't spike CPU and I/O on the device.
+    * @param rateLimited - Pace displaying to ensure we don't spike CPU and I/O on the device.
     */
-   static void showNotificationsFromCursor(Context context, Cursor cursor, int delay) {
+   static void showNotificationsFromCursor(Context context, Cursor cursor, boolean rateLimited) {
       if (!cursor.moveToFirst())
          return;
 
-      boolean useExtender = (NotificationExtenderService.getIntent(context) != null);
+      if (NotificationExtenderService.getIntent(context) != null) {
+         showNotificationsFromCursorWithExtender(context, cursor, rateLimited);
+         return;
+      }
+
+      long queuedAt = SystemClock.elapsedRealtime();
+      ArrayList<Bundle> batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+      int notificationCount = 0;
+      int batchCount = 0;
 
       do {
-         if (useExtender) {
-            Intent intent = NotificationExtenderService.getIntent(context);
-            addRestoreExtras(intent, cursor);
-            NotificationExtenderService.enqueueWork(context,
-                  intent.getComponent(),
-                  NotificationExtenderService.EXTENDER_SERVICE_JOB_ID,
-                  intent,
-                  false);
-         }
-         else {
-            Intent intent = addRestoreExtras(new Intent(), cursor);
-            ComponentName componentName = new ComponentName(context, RestoreJobService.class);
-            RestoreJobService.enqueueWork(context, componentName, RestoreJobService.RESTORE_SERVICE_JOB_ID, intent, false);
+         batch.add(getRestoreExtras(cursor));
+         notificationCount++;
+
+         if (batch.size() == RESTORE_BATCH_SIZE || cursor.isLast()) {
+            Intent intent = new Intent()
+                  .putParcelableArrayListExtra(EXTRA_RESTORE_BATCH, batch)
+                  .putExtra(EXTRA_RESTORE_QUEUED_AT, queuedAt)
+                  .putExtra(EXTRA_RESTORE_RATE_LIMITED, rateLimited)
+                  .putExtra(EXTRA_RESTORE_LAST_BATCH, cursor.isLast());
+            enqueueRestoreBatch(context, intent);
+            batchCount++;
+            batch = new ArrayList<>(RESTORE_BATCH_SIZE);
          }
+      } while (cursor.moveToNext());
 
-         if (delay > 0)
-            OSUtils.sleep(delay);
+      NotificationRestoreMetrics.onRestoreQueued(queuedAt, batchCount);
+   }
+
+   // The extender service handles one notification per work item so these can't be batched,
+   //   each work item is paced by the extender service with beforeExtenderRestore instead.
+   private static void showNotificationsFromCursorWithExtender(Context context, Cursor cursor, boolean rateLimited) {
+      long queuedAt = SystemClock.elapsedRealtime();
+      int notificationCount = 0;
+
+      do {
+         Intent intent = NotificationExtenderService.getIntent(context);
+         intent.putExtras(getRestoreExtras(cursor))
+               .putExtra(EXTRA_RESTORE_QUEUED_AT, queuedAt)
+               .putExtra(EXTRA_RESTORE_RATE_LIMITED, rateLimited)
+               .putExtra(EXTRA_RESTORE_LAST_BATCH, cursor.isLast());
+         NotificationExtenderService.enqueueWork(context,
+               intent.getComponent(),
+               NotificationExtenderService.EXTENDER_SERVICE_JOB_ID,
+               intent,
+               false);
+         notificationCount++;
       } while (cursor.moveToNext());
+
+      NotificationRestoreMetrics.onRestoreQueued(queuedAt, notificationCount);
+   }
+
+   /**
+    * Called by the extender service before it restores a notification queued by
+    * {@link #showNotificationsFromCursorWithExtender(Context, Cursor, boolean)}
+    */
+   @WorkerThread
+   static void beforeExtenderRestore(Bundle extras) {
+      if (!extras.containsKey(EXTRA_RESTORE_QUEUED_AT))
+         return;
+
+      if (extras.getBoolean(EXTRA_RESTORE_RATE_LIMITED, true))
+         awaitRestoreToken(extras.getLong(EXTRA_RESTORE_QUEUED_AT));
+   }
+
+   /**
+    * Called by the extender service once it restored a notification queued by
+    * {@link #showNotificationsFromCursorWithExtender(Context, Cursor, boolean)}
+    */
+   static void afterExtenderRestore(Bundle extras) {
+      if (!extras.containsKey(EXTRA_RESTORE_QUEUED_AT))
+         return;
+
+      long queuedAt = extras.getLong(EXTRA_RESTORE_QUEUED_AT);
+      NotificationRestoreMetrics.onNotificationRestored(queuedAt);
+      if (extras.getBoolean(EXTRA_RESTORE_LAST_BATCH, true))
+         NotificationRestoreMetrics.onRestoreFinished(queuedAt);
+   }
+
+   /**
+    * Waits on the job's thread until the restore rate limit allows the next notification.
+    * Jobs restore one notification at a time, so a wait is at most {@link #DELAY_BETWEEN_NOTIFICATION_RESTORES_MS}.
+    */
+   @WorkerThread
+   private static void awaitRestoreToken(long queuedAt) {
+      long waitMs;
+      while ((waitMs = RestoreJobService.getRateLimiter().tryAcquire()) > 0) {
+         NotificationRestoreMetrics.onRestoreDelayed(queuedAt, waitMs);
+         waitForRestoreToken(waitMs);
+      }
+   }
+
+   static void waitForRestoreToken(long waitMs) {
+      OSUtils.sleep((int)waitMs);
+   }
+
+   static void enqueueRestoreBatch(Context context, Intent intent) {
+      ComponentName componentName = new ComponentName(context, RestoreJobService.class);
+      RestoreJobService.enqueueWork(context, componentName, RestoreJobService.RESTORE_SERVICE_JOB_ID, intent, false);
+   }
+
+   /**
+    * Displays a batch queued by {@link #showNotificationsFromCursor(Context, Cursor, boolean)}.
+    * The whole batch is restored within the job, waiting on the rate limit between notifications,
+    * so the job stays queued until every notification of the batch is displayed.
+    */
+   @WorkerThread
+   static void restoreBatch(Context context, Intent intent) {
+      List<Bundle> batch = intent.getParcelableArrayListExtra(EXTRA_RESTORE_BATCH);
+      long queuedAt = intent.getLongExtra(EXTRA_RESTORE_QUEUED_AT, SystemClock.elapsedRealtime());
+      boolean rateLimited = intent.getBooleanExtra(EXTRA_RESTORE_RATE_LIMITED, true);
+
+      for (Bundle restore : batch) {
+         if (rateLimited)
+            awaitRestoreToken(queuedAt);
+
+         NotificationBundleProcessor.ProcessFromGCMIntentService(
+               context,
+               new BundleCompatBundle(restore),
+               null
+         );
+
+         NotificationRestoreMetrics.onNotificationRestored(queuedAt);
+      }
+
+      if (intent.getBooleanExtra(EXTRA_RESTORE_LAST_BATCH, true))
+         NotificationRestoreMetrics.onRestoreFinished(queuedAt);
    }
 
-   private static Intent addRestoreExtras(Intent intent, Cursor cursor) {
+   private static Bundle getRestoreExtras(Cursor cursor) {
       int existingId = cursor.getInt(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID));
       String fullData = cursor.getString(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_FULL_DATA));
       Long datetime = cursor.getLong(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_CREATED_TIME));
 
-      intent.putExtra("json_payload", fullData)
-            .putExtra("android_notif_id", existingId)
-            .putExtra("restoring", true)
-            .putExtra("timestamp", datetime);
+      Bundle extras = new Bundle();
+      extras.putString("json_payload", fullData);
+      extras.putInt("android_notif_id", existingId);
+      extras.putBoolean("restoring", true);
+      extras.putLong("timestamp", datetime);
 
-      return intent;
+      return extras;
    }
 
    private static final int RESTORE_NOTIFICATIONS_DELAY_MS = 15_000;
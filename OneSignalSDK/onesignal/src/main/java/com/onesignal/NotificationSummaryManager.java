@@ -6,14 +6,314 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
+import android.text.SpannableString;
+import android.text.style.StyleSpan;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.onesignal.OneSignalDbContract.NotificationTable;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 class NotificationSummaryManager {
+
+   // Lines kept per group, the inbox style of a summary notification doesn't display more than this
+   static final int SUMMARY_LINES = 7;
+   private static final int GROUPS_CACHED = 50;
+
+   private static class SummaryLine {
+      final int androidNotificationId;
+      final SpannableString text;
+      final String fullData;
+
+      SummaryLine(int androidNotificationId, SpannableString text, String fullData) {
+         this.androidNotificationId = androidNotificationId;
+         this.text = text;
+         this.fullData = fullData;
+      }
+   }
+
+   // Active notifications of a group as they are in the notification table
+   private static class CachedGroup {
+      Integer summaryAndroidId;
+      final Set<Integer> androidNotificationIds = new HashSet<>();
+      // The newest notifications of the group, new to old, up to SUMMARY_LINES
+      final LinkedList<SummaryLine> lines = new LinkedList<>();
+
+      boolean hasAllLines() {
+         return lines.size() == androidNotificationIds.size();
+      }
+   }
+
+   /**
+    * What {@link GenerateNotification} needs to build the summary notification of a group
+    */
+   static class GroupSummary {
+      // null if the group doesn't have a summary notification yet
+      final @Nullable Integer summaryAndroidId;
+      final int notificationCount;
+      // Up to SUMMARY_LINES lines, new to old
+      final @NonNull List<SpannableString> lines;
+      // Payload of the newest notification in the group
+      final @Nullable String newestFullData;
+
+      GroupSummary(@Nullable Integer summaryAndroidId, int notificationCount, @NonNull List<SpannableString> lines, @Nullable String newestFullData) {
+         this.summaryAndroidId = summaryAndroidId;
+         this.notificationCount = notificationCount;
+         this.lines = lines;
+         this.newestFullData = newestFullData;
+      }
+   }
+
+   // Groups are loaded from the notification table once, then kept in sync as notifications are saved and consumed.
+   // Groups are loaded without holding the class lock, as writers holding the DB write lock also take it.
+   private static final LinkedHashMap<String, CachedGroup> cachedGroups = new LinkedHashMap<String, CachedGroup>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, CachedGroup> eldest) {
+         return size() > GROUPS_CACHED;
+      }
+   };
+
+   // Changes made inside the current write transaction, applied to the cache once it commits
+   private static final ArrayList<Runnable> pendingChanges = new ArrayList<>();
+   // Thread running OneSignalDbHelper.executeWrite, null if no write is in progress
+   private static Thread writingThread;
+   // Writes nest when an operation calls executeWrite, a nested rollback rolls back the outer transaction too
+   private static int writeDepth;
+   private static boolean writeRolledBack;
+   // Bumped on every change to the cache, a loaded group is only cached if nothing changed while it loaded
+   private static int cacheVersion;
+
+   static {
+      OneSignalDbHelper.addWriteListener(new OneSignalDbHelper.WriteListener() {
+         @Override
+         public void onWriteStarted() {
+            NotificationSummaryManager.onWriteStarted();
+         }
+
+         @Override
+         public void onWriteFinished(boolean committed) {
+            NotificationSummaryManager.onWriteFinished(committed);
+         }
+      });
+   }
+
+   /**
+    * Summary of the active notifications in a group, from the cache when the group was already loaded.
+    * @param excludeAndroidId android notification id to leave out, -1 to include all
+    */
+   static @NonNull GroupSummary getGroupSummary(@NonNull SQLiteDatabase readableDb, @NonNull String group, int excludeAndroidId) {
+      int version;
+      boolean canCache;
+      synchronized (NotificationSummaryManager.class) {
+         // Inside a transaction that changed the cache, the DB has rows the cache won't have until it commits
+         boolean hasUncommittedChanges = writingThread == Thread.currentThread() && !pendingChanges.isEmpty();
+         CachedGroup cachedGroup = hasUncommittedChanges ? null : cachedGroups.get(group);
+         if (cachedGroup != null)
+            return summarize(cachedGroup, excludeAndroidId);
+
+         version = cacheVersion;
+         canCache = writingThread == null;
+      }
+
+      CachedGroup loadedGroup = loadGroup(readableDb, group);
+
+      synchronized (NotificationSummaryManager.class) {
+         // A write during the load may not be part of it yet
+         if (canCache && writingThread == null && version == cacheVersion)
+            cachedGroups.put(group, loadedGroup);
+         return summarize(loadedGroup, excludeAndroidId);
+      }
+   }
+
+   private static GroupSummary summarize(CachedGroup cachedGroup, int excludeAndroidId) {
+      int notificationCount = cachedGroup.androidNotificationIds.size();
+      if (cachedGroup.androidNotificationIds.contains(excludeAndroidId))
+         notificationCount--;
+
+      List<SpannableString> lines = new ArrayList<>(cachedGroup.lines.size());
+      String newestFullData = null;
+      for (SummaryLine line : cachedGroup.lines) {
+         if (line.androidNotificationId == excludeAndroidId)
+            continue;
+         lines.add(line.text);
+         if (newestFullData == null)
+            newestFullData = line.fullData;
+      }
+
+      return new GroupSummary(cachedGroup.summaryAndroidId, notificationCount, lines, newestFullData);
+   }
+
+   private static CachedGroup loadGroup(SQLiteDatabase readableDb, String group) {
+      CachedGroup cachedGroup = new CachedGroup();
+
+      Cursor cursor = NotificationTableRepository.queryGroupNotifications(readableDb, group, -1);
+      try {
+         while (cursor.moveToNext()) {
+            int androidNotificationId = cursor.getInt(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID));
+            if (cursor.getInt(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_IS_SUMMARY)) == 1) {
+               cachedGroup.summaryAndroidId = androidNotificationId;
+               continue;
+            }
+
+            cachedGroup.androidNotificationIds.add(androidNotificationId);
+
+            // Only the newest lines are shown, older rows are just counted
+            if (cachedGroup.lines.size() < SUMMARY_LINES) {
+               cachedGroup.lines.add(new SummaryLine(
+                  androidNotificationId,
+                  createSummaryLine(
+                     cursor.getString(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_TITLE)),
+                     cursor.getString(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_MESSAGE))),
+                  cursor.getString(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_FULL_DATA))));
+            }
+         }
+      } finally {
+         cursor.close();
+      }
+
+      return cachedGroup;
+   }
+
+   static @NonNull SpannableString createSummaryLine(@Nullable String title, @Nullable String message) {
+      if (title == null)
+         title = "";
+      else
+         title += " ";
+
+      SpannableString spannableString = new SpannableString(title + message);
+      if (title.length() > 0)
+         spannableString.setSpan(new StyleSpan(android.graphics.Typeface.BOLD), 0, title.length(), 0);
+      return spannableString;
+   }
+
+   /**
+    * Called by {@link OneSignalDbHelper#executeWrite} once it holds the write lock
+    */
+   private static synchronized void onWriteStarted() {
+      writingThread = Thread.currentThread();
+      writeDepth++;
+   }
+
+   /**
+    * Called by {@link OneSignalDbHelper#executeWrite} before it releases the write lock
+    * @param committed false if the transaction was rolled back, its changes are dropped
+    */
+   private static synchronized void onWriteFinished(boolean committed) {
+      if (!committed)
+         writeRolledBack = true;
+      if (--writeDepth > 0)
+         return;
+
+      if (!writeRolledBack) {
+         for (Runnable change : pendingChanges)
+            change.run();
+      }
+      pendingChanges.clear();
+      writeRolledBack = false;
+      writingThread = null;
+      cacheVersion++;
+   }
+
+   // Changes made inside a transaction wait for it to commit
+   private static void applyAfterCommit(Runnable change) {
+      if (writingThread == Thread.currentThread())
+         pendingChanges.add(change);
+      else {
+         change.run();
+         cacheVersion++;
+      }
+   }
+
+   // A notification in a group was saved to the notification table as not opened
+   static synchronized void onGroupNotificationSaved(@NonNull final String group, final int androidNotificationId, @Nullable final String title, @Nullable final String message, @NonNull final String fullData) {
+      applyAfterCommit(new Runnable() {
+         @Override
+         public void run() {
+            applyGroupNotificationSaved(group, androidNotificationId, title, message, fullData);
+         }
+      });
+   }
+
+   private static void applyGroupNotificationSaved(String group, int androidNotificationId, String title, String message, String fullData) {
+      CachedGroup cachedGroup = cachedGroups.get(group);
+      if (cachedGroup == null)
+         return;
+
+      cachedGroup.androidNotificationIds.add(androidNotificationId);
+      cachedGroup.lines.addFirst(new SummaryLine(androidNotificationId, createSummaryLine(title, message), fullData));
+      if (cachedGroup.lines.size() > SUMMARY_LINES)
+         cachedGroup.lines.removeLast();
+   }
+
+   // A summary notification row was saved for a group
+   static synchronized void onSummarySaved(@NonNull final String group, final int summaryAndroidId) {
+      applyAfterCommit(new Runnable() {
+         @Override
+         public void run() {
+            CachedGroup cachedGroup = cachedGroups.get(group);
+            if (cachedGroup != null)
+               cachedGroup.summaryAndroidId = summaryAndroidId;
+         }
+      });
+   }
+
+   // The notifications with this android notification id were opened or dismissed
+   static synchronized void onNotificationConsumed(final int androidNotificationId) {
+      applyAfterCommit(new Runnable() {
+         @Override
+         public void run() {
+            applyNotificationConsumed(androidNotificationId);
+         }
+      });
+   }
+
+   private static void applyNotificationConsumed(int androidNotificationId) {
+      Iterator<CachedGroup> iterator = cachedGroups.values().iterator();
+      while (iterator.hasNext()) {
+         CachedGroup cachedGroup = iterator.next();
+         if (!cachedGroup.androidNotificationIds.contains(androidNotificationId))
+            continue;
+
+         boolean hadAllLines = cachedGroup.hasAllLines();
+         cachedGroup.androidNotificationIds.remove(androidNotificationId);
+
+         Iterator<SummaryLine> lines = cachedGroup.lines.iterator();
+         while (lines.hasNext()) {
+            if (lines.next().androidNotificationId != androidNotificationId)
+               continue;
+
+            // The next older line isn't cached, load the group again next time it is needed
+            if (!hadAllLines) {
+               iterator.remove();
+               break;
+            }
+            lines.remove();
+         }
+      }
+   }
+
+   // Used after notifications of a group are consumed or deleted in bulk
+   static synchronized void invalidateGroup(@NonNull String group) {
+      cachedGroups.remove(group);
+      cacheVersion++;
+   }
+
+   static synchronized void invalidateAllGroups() {
+      cachedGroups.clear();
+      cacheVersion++;
+   }
    
    // A notification was just dismissed, check if it was a child to a summary notification and update it.
    static void updatePossibleDependentSummaryOnDismiss(Context context, SQLiteDatabase writableDb, int androidNotificationId) {
@@ -83,6 +383,7 @@ class NotificationSummaryManager {
              values,
              NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + androidNotifId,
              null);
+         invalidateGroup(group);
          return cursor;
       }
    
@@ -147,7 +448,7 @@ class NotificationSummaryManager {
              null
          );
    
-         NotificationRestorer.showNotificationsFromCursor(context, cursor, 0);
+         NotificationRestorer.showNotificationsFromCursor(context, cursor, false);
       } catch (Throwable t) {
          OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error restoring notification records! ", t);
       } finally {
@@ -0,0 +1,212 @@
+package com.onesignal;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.onesignal.OneSignalDbContract.NotificationTable;
+
+/**
+ * Queries on {@link NotificationTable} that run for every push received.
+ * <p>
+ * The SQL of each query is a constant and every value is bound, so SQLite's prepared statement cache
+ * compiles each statement once instead of once per notification id.
+ * <p>
+ * The dismiss update is also kept compiled as a {@link SQLiteStatement}. It only runs inside
+ * {@link OneSignalDbHelper#executeWrite}, so its lock is only taken by the thread already holding the DB write lock.
+ * The other queries keep no state and are safe to call from any thread.
+ */
+class NotificationTableRepository {
+
+   private static final String SQL_ANDROID_ID_FOR_COLLAPSE_ID =
+      "SELECT " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID +
+      " FROM " + NotificationTable.TABLE_NAME +
+      " WHERE " + NotificationTable.COLUMN_NAME_COLLAPSE_ID + " = ? AND " +
+         NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+         NotificationTable.COLUMN_NAME_OPENED + " = 0" +
+      " LIMIT 1";
+
+   // Consumed rows are left as is so the number of rows updated is the number of notifications dismissed
+   private static final String SQL_MARK_DISMISSED_BY_ANDROID_ID =
+      "UPDATE " + NotificationTable.TABLE_NAME +
+      " SET " + NotificationTable.COLUMN_NAME_DISMISSED + " = 1" +
+      " WHERE " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = ? AND " +
+         NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+         NotificationTable.COLUMN_NAME_OPENED + " = 0";
+
+   // Same rows as OneSignalDbHelper.recentUninteractedWithNotificationsWhere
+   private static final String RECENT_UNINTERACTED_WHERE =
+      NotificationTable.COLUMN_NAME_CREATED_TIME + " > ? AND " +
+      NotificationTable.COLUMN_NAME_DISMISSED    + " = 0 AND " +
+      NotificationTable.COLUMN_NAME_OPENED       + " = 0 AND " +
+      NotificationTable.COLUMN_NAME_IS_SUMMARY   + " = 0";
+
+   static final long RECENT_NOTIFICATION_SEC = 604_800L; // 1 Week
+
+   private static final String CREATED_TIME_AGES_OUT =
+      NotificationTable.COLUMN_NAME_CREATED_TIME + " + " + RECENT_NOTIFICATION_SEC;
+
+   private static final String SQL_COUNT_RECENT_UNINTERACTED =
+      "SELECT COUNT(*), MIN(" + CREATED_TIME_AGES_OUT + ")" +
+      " FROM " + NotificationTable.TABLE_NAME +
+      " WHERE " + RECENT_UNINTERACTED_WHERE;
+
+   private static final String SQL_COUNT_RECENT_UNINTERACTED_NOT_EXPIRED =
+      "SELECT COUNT(*), MIN(CASE WHEN " + NotificationTable.COLUMN_NAME_EXPIRE_TIME + " < " + CREATED_TIME_AGES_OUT +
+         " THEN " + NotificationTable.COLUMN_NAME_EXPIRE_TIME + " ELSE " + CREATED_TIME_AGES_OUT + " END)" +
+      " FROM " + NotificationTable.TABLE_NAME +
+      " WHERE " + RECENT_UNINTERACTED_WHERE + " AND " + NotificationTable.COLUMN_NAME_EXPIRE_TIME + " > ?";
+
+   private static final String SQL_COUNT_RECENT_UNINTERACTED_BY_ANDROID_ID =
+      "SELECT COUNT(*)" +
+      " FROM " + NotificationTable.TABLE_NAME +
+      " WHERE " + RECENT_UNINTERACTED_WHERE + " AND " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = ?";
+
+   private static final String SQL_COUNT_RECENT_UNINTERACTED_NOT_EXPIRED_BY_ANDROID_ID =
+      SQL_COUNT_RECENT_UNINTERACTED_BY_ANDROID_ID + " AND " + NotificationTable.COLUMN_NAME_EXPIRE_TIME + " > ?";
+
+   private static final String SQL_GROUP_NOTIFICATIONS_SELECT =
+      "SELECT " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + ", " +
+         NotificationTable.COLUMN_NAME_FULL_DATA + ", " +
+         NotificationTable.COLUMN_NAME_IS_SUMMARY + ", " +
+         NotificationTable.COLUMN_NAME_TITLE + ", " +
+         NotificationTable.COLUMN_NAME_MESSAGE +
+      " FROM " + NotificationTable.TABLE_NAME +
+      " WHERE " + NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
+         NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+         NotificationTable.COLUMN_NAME_OPENED + " = 0";
+
+   private static final String SQL_GROUP_NOTIFICATIONS =
+      SQL_GROUP_NOTIFICATIONS_SELECT +
+      " ORDER BY " + NotificationTable._ID + " DESC";
+
+   private static final String SQL_GROUP_NOTIFICATIONS_EXCLUDING_ANDROID_ID =
+      SQL_GROUP_NOTIFICATIONS_SELECT +
+      " AND " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " <> ?" +
+      " ORDER BY " + NotificationTable._ID + " DESC";
+
+   private static final Object markDismissedLock = new Object();
+   // Compiled on the DB it belongs to, compiled again if the DB is reopened
+   private static SQLiteDatabase markDismissedDb;
+   private static SQLiteStatement markDismissedStatement;
+
+   /**
+    * @return the android notification id of the active notification with this collapse id, null if there is none
+    */
+   static @Nullable Integer getAndroidIdForCollapseId(@NonNull SQLiteDatabase db, @NonNull String collapseId) {
+      Cursor cursor = db.rawQuery(SQL_ANDROID_ID_FOR_COLLAPSE_ID, new String[] { collapseId });
+      try {
+         return cursor.moveToFirst() ? cursor.getInt(0) : null;
+      } finally {
+         cursor.close();
+      }
+   }
+
+   /**
+    * Counts the active notifications with this android notification id as dismissed.
+    * Must be called inside {@link OneSignalDbHelper#executeWrite}.
+    * @return number of notifications dismissed
+    */
+   static int markDismissedByAndroidId(@NonNull SQLiteDatabase writableDb, int androidNotificationId) {
+      synchronized (markDismissedLock) {
+         SQLiteStatement statement = getMarkDismissedStatement(writableDb);
+         statement.bindLong(1, androidNotificationId);
+         try {
+            return statement.executeUpdateDelete();
+         } finally {
+            statement.clearBindings();
+         }
+      }
+   }
+
+   private static SQLiteStatement getMarkDismissedStatement(SQLiteDatabase writableDb) {
+      if (markDismissedStatement != null && markDismissedDb == writableDb)
+         return markDismissedStatement;
+
+      if (markDismissedStatement != null) {
+         try {
+            markDismissedStatement.close();
+         } catch (Throwable t) {
+            // The DB it belongs to may already be closed
+         }
+      }
+
+      markDismissedStatement = writableDb.compileStatement(SQL_MARK_DISMISSED_BY_ANDROID_ID);
+      markDismissedDb = writableDb;
+      return markDismissedStatement;
+   }
+
+   static class UninteractedCount {
+      final int count;
+      // Time in seconds when the first of the counted notifications stops being counted
+      final long agesOutTime;
+
+      UninteractedCount(int count, long agesOutTime) {
+         this.count = count;
+         this.agesOutTime = agesOutTime;
+      }
+   }
+
+   /**
+    * Counts the notifications still in the shade, the rows matched by {@link OneSignalDbHelper#recentUninteractedWithNotificationsWhere()}
+    */
+   static @NonNull UninteractedCount countRecentUninteracted(@NonNull SQLiteDatabase db) {
+      long currentTimeSec = System.currentTimeMillis() / 1_000L;
+      String createdAtCutoff = String.valueOf(currentTimeSec - RECENT_NOTIFICATION_SEC);
+
+      Cursor cursor;
+      if (useTtlFilter())
+         cursor = db.rawQuery(SQL_COUNT_RECENT_UNINTERACTED_NOT_EXPIRED, new String[] { createdAtCutoff, String.valueOf(currentTimeSec) });
+      else
+         cursor = db.rawQuery(SQL_COUNT_RECENT_UNINTERACTED, new String[] { createdAtCutoff });
+
+      try {
+         cursor.moveToFirst();
+         int count = cursor.getInt(0);
+         long agesOutTime = cursor.isNull(1) ? Long.MAX_VALUE : cursor.getLong(1);
+         return new UninteractedCount(count, agesOutTime);
+      } finally {
+         cursor.close();
+      }
+   }
+
+   /**
+    * Counts the notifications with this android notification id that {@link #countRecentUninteracted(SQLiteDatabase)} counts
+    */
+   static int countRecentUninteractedByAndroidId(@NonNull SQLiteDatabase db, int androidNotificationId) {
+      long currentTimeSec = System.currentTimeMillis() / 1_000L;
+      String createdAtCutoff = String.valueOf(currentTimeSec - RECENT_NOTIFICATION_SEC);
+      String androidId = String.valueOf(androidNotificationId);
+
+      Cursor cursor;
+      if (useTtlFilter())
+         cursor = db.rawQuery(SQL_COUNT_RECENT_UNINTERACTED_NOT_EXPIRED_BY_ANDROID_ID, new String[] { createdAtCutoff, androidId, String.valueOf(currentTimeSec) });
+      else
+         cursor = db.rawQuery(SQL_COUNT_RECENT_UNINTERACTED_BY_ANDROID_ID, new String[] { createdAtCutoff, androidId });
+
+      try {
+         cursor.moveToFirst();
+         return cursor.getInt(0);
+      } finally {
+         cursor.close();
+      }
+   }
+
+   static boolean useTtlFilter() {
+      return OneSignalPrefs.getBool(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_RESTORE_TTL_FILTER,true);
+   }
+
+   /**
+    * Active notifications in a group, new to old, with the columns needed to build its summary.
+    * Caller must close the cursor.
+    * @param excludeAndroidId android notification id to leave out, -1 to include all
+    */
+   static @NonNull Cursor queryGroupNotifications(@NonNull SQLiteDatabase db, @NonNull String group, int excludeAndroidId) {
+      if (excludeAndroidId == -1)
+         return db.rawQuery(SQL_GROUP_NOTIFICATIONS, new String[] { group });
+
+      return db.rawQuery(SQL_GROUP_NOTIFICATIONS_EXCLUDING_ANDROID_ID, new String[] { group, String.valueOf(excludeAndroidId) });
+   }
+}
@@ -1,7 +1,14 @@
 package com.onesignal;
 
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 import java.util.TimerTask;
 
 import com.onesignal.OSTrigger.OSTriggerOperator;
@@ -18,9 +25,16 @@ class OSDynamicTriggerController {
     private static final double REQUIRED_ACCURACY = 0.3;
     // Assume last time an In-App Message was displayed a very very long time ago.
     private static final long DEFAULT_LAST_IN_APP_TIME_AGO = 999_999;
+    // Timers firing within this window of the last observer call are merged into one call at the end of it
+    private static final long TRIGGER_FIRING_COALESCE_WINDOW_MS = 100;
+    private static final String COALESCED_FIRING_TIMER_ID = "os_coalesced_trigger_firing";
 
     private final ArrayList<String> scheduledMessages;
 
+    // Elapsed realtime of the last observer call, starts a full window ago so the first firing is passed on right away
+    private long lastConditionChangedTime = -TRIGGER_FIRING_COALESCE_WINDOW_MS;
+    private boolean coalescedFiringScheduled;
+
     static Date sessionLaunchTime = new Date();
 
     OSDynamicTriggerController(OSDynamicTriggerControllerObserver triggerObserver) {
@@ -68,8 +82,10 @@ class OSDynamicTriggerController {
             OSDynamicTriggerTimer.scheduleTrigger(new TimerTask() {
                 @Override
                 public void run() {
-                    scheduledMessages.remove(trigger.triggerId);
-                    observer.messageTriggerConditionChanged();
+                    synchronized (scheduledMessages) {
+                        scheduledMessages.remove(trigger.triggerId);
+                    }
+                    onTriggerTimerFired();
                 }
             }, trigger.triggerId, offset);
 
@@ -79,6 +95,65 @@ class OSDynamicTriggerController {
         return false;
     }
 
+    private void onTriggerTimerFired() {
+        long delay;
+        synchronized (scheduledMessages) {
+            if (coalescedFiringScheduled)
+                return;
+
+            long now = SystemClock.elapsedRealtime();
+            delay = lastConditionChangedTime + TRIGGER_FIRING_COALESCE_WINDOW_MS - now;
+            if (delay <= 0)
+                lastConditionChangedTime = now;
+            else
+                coalescedFiringScheduled = true;
+        }
+
+        if (delay <= 0) {
+            observer.messageTriggerConditionChanged();
+            return;
+        }
+
+        OSDynamicTriggerTimer.scheduleTrigger(new TimerTask() {
+            @Override
+            public void run() {
+                synchronized (scheduledMessages) {
+                    coalescedFiringScheduled = false;
+                    lastConditionChangedTime = SystemClock.elapsedRealtime();
+                }
+                observer.messageTriggerConditionChanged();
+            }
+        }, COALESCED_FIRING_TIMER_ID, delay);
+    }
+
+    /**
+     * Cancels the timers of triggers that none of the given messages use anymore,
+     * such as the triggers of messages that were removed or already displayed
+     */
+    void cancelTimersNotUsedBy(@NonNull Collection<OSInAppMessage> messages) {
+        synchronized (scheduledMessages) {
+            if (scheduledMessages.isEmpty())
+                return;
+
+            Set<String> usedTriggerIds = new HashSet<>();
+            for (OSInAppMessage message : messages) {
+                for (ArrayList<OSTrigger> andConditions : message.triggers) {
+                    for (OSTrigger trigger : andConditions)
+                        usedTriggerIds.add(trigger.triggerId);
+                }
+            }
+
+            Iterator<String> iterator = scheduledMessages.iterator();
+            while (iterator.hasNext()) {
+                String triggerId = iterator.next();
+                if (usedTriggerIds.contains(triggerId))
+                    continue;
+                iterator.remove();
+                OSDynamicTriggerTimer.cancelTrigger(triggerId);
+            }
+        }
+    }
+
     private static boolean evaluateTimeIntervalWithOperator(double timeInterval, double currentTimeInterval, OSTriggerOperator operator) {
         switch (operator) {
             case LESS_THAN:
@@ -1,13 +1,104 @@
 package com.onesignal;
 
-import java.util.Timer;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
 import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 // Due to issues with testing the Java utility Timer class, we've created a wrapper class
 // that schedules the timer.
+// All trigger timers, and the trigger debounce of OSInAppMessageController, are timed on one shared scheduler thread
+// instead of a thread per timer. Due timers run on their own thread as they can evaluate and display messages,
+// which may block on downloading the message html.
 class OSDynamicTriggerTimer {
-    static void scheduleTrigger(TimerTask task, String triggerId, long delay) {
-        Timer timer = new Timer("trigger_timer:" + triggerId);
-        timer.schedule(task, delay);
+
+    private static final String TRIGGER_TIMER_THREAD_NAME = "trigger_timer";
+    private static final String OS_TRIGGER_TIMER_TASK = "OS_TRIGGER_TIMER_TASK";
+    // The scheduler thread stops once it has been idle this long and is restarted with the next timer
+    private static final long IDLE_THREAD_KEEP_ALIVE_MS = 30_000;
+
+    // Package-private so tests can run the timers on their own executor
+    static ScheduledThreadPoolExecutor scheduler;
+    static final HashMap<String, ScheduledTrigger> scheduledTriggers = new HashMap<>();
+
+    static class ScheduledTrigger implements Runnable {
+        private final String triggerId;
+        private final TimerTask task;
+        private ScheduledFuture<?> future;
+
+        ScheduledTrigger(String triggerId, TimerTask task) {
+            this.triggerId = triggerId;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (OSDynamicTriggerTimer.class) {
+                // Cancelled or replaced after it was already due
+                if (scheduledTriggers.get(triggerId) != this)
+                    return;
+                scheduledTriggers.remove(triggerId);
+            }
+            runOffScheduler(task);
+        }
+    }
+
+    /**
+     * Runs the task after the delay, unless a timer for the same trigger is already scheduled
+     */
+    static synchronized void scheduleTrigger(TimerTask task, String triggerId, long delay) {
+        if (scheduledTriggers.containsKey(triggerId))
+            return;
+
+        ScheduledTrigger scheduledTrigger = new ScheduledTrigger(triggerId, task);
+        scheduledTrigger.future = getScheduler().schedule(scheduledTrigger, delay, TimeUnit.MILLISECONDS);
+        scheduledTriggers.put(triggerId, scheduledTrigger);
+    }
+
+    /**
+     * Runs the task once after the delay, timed by the same scheduler, for SDK timers that aren't trigger timers
+     */
+    static synchronized void schedule(@NonNull final Runnable task, long delay) {
+        getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                runOffScheduler(task);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    static synchronized void cancelTrigger(String triggerId) {
+        ScheduledTrigger scheduledTrigger = scheduledTriggers.remove(triggerId);
+        if (scheduledTrigger == null)
+            return;
+
+        scheduledTrigger.future.cancel(false);
+        // Cancelled timers otherwise stay in the queue until their delay ends
+        scheduler.purge();
+    }
+
+    // Keeps the scheduler thread free to time the other timers while the task runs
+    private static void runOffScheduler(@NonNull Runnable task) {
+        new Thread(task, OS_TRIGGER_TIMER_TASK).start();
+    }
+
+    private static @NonNull ScheduledThreadPoolExecutor getScheduler() {
+        if (scheduler == null) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, TRIGGER_TIMER_THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            scheduler.setKeepAliveTime(IDLE_THREAD_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS);
+            scheduler.allowCoreThreadTimeOut(true);
+        }
+        return scheduler;
     }
-}
\ No newline at end of file
+}
@@ -33,10 +33,18 @@ import org.json.JSONObject;
 
 public class OSEmailSubscriptionState implements Cloneable {
 
-    OSObservable<Object, OSEmailSubscriptionState> observable;
+    private static final OSObservable.Dispatcher<OSEmailSubscriptionChangedInternalObserver, OSEmailSubscriptionState> CHANGED_DISPATCHER =
+        new OSObservable.Dispatcher<OSEmailSubscriptionChangedInternalObserver, OSEmailSubscriptionState>() {
+            @Override
+            public void dispatch(OSEmailSubscriptionChangedInternalObserver observer, OSEmailSubscriptionState state) {
+                observer.changed(state);
+            }
+        };
+
+    OSObservable<OSEmailSubscriptionChangedInternalObserver, OSEmailSubscriptionState> observable;
 
     OSEmailSubscriptionState(boolean asFrom) {
-        observable = new OSObservable<>("changed", false);
+        observable = new OSObservable<>(CHANGED_DISPATCHER, false);
 
         if (asFrom) {
             emailUserId = OneSignalPrefs.getString(OneSignalPrefs.PREFS_ONESIGNAL,
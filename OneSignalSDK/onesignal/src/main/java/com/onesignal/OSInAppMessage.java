@@ -8,7 +8,9 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Set;
 
 class OSInAppMessage {
 
@@ -34,6 +36,18 @@ class OSInAppMessage {
     @NonNull
     public ArrayList<ArrayList<OSTrigger>> triggers;
 
+    /**
+     * The triggers compiled once into a predicate tree, see {@link OSTriggerPredicate}
+     */
+    private OSTriggerPredicate compiledTriggers;
+
+    /**
+     * Display order of messages queued at the same time, higher first. Set from on_session,
+     * messages without one have {@link #DEFAULT_PRIORITY}
+     */
+    int priority = DEFAULT_PRIORITY;
+    static final int DEFAULT_PRIORITY = 0;
+
     private double displayDuration;
 
     private boolean actionTaken;
@@ -49,6 +63,8 @@ class OSInAppMessage {
         this.messageId = json.getString("id");
         this.variants = parseVariants(json.getJSONObject("variants"));
         this.triggers = parseTriggerJson(json.getJSONArray("triggers"));
+        this.priority = json.optInt("priority", DEFAULT_PRIORITY);
+        this.compiledTriggers = OSTriggerPredicate.compile(this.triggers);
     }
 
     private static HashMap<String, HashMap<String, String>> parseVariants(JSONObject json) throws JSONException {
@@ -88,6 +104,38 @@ class OSInAppMessage {
         return parsedTriggers;
     }
 
+    @NonNull
+    OSTriggerPredicate getCompiledTriggers() {
+        if (compiledTriggers == null)
+            compiledTriggers = OSTriggerPredicate.compile(triggers);
+        return compiledTriggers;
+    }
+
+    /**
+     * The properties of the custom triggers this message depends on
+     */
+    @NonNull
+    Set<String> getCustomTriggerKeys() {
+        Set<String> keys = new HashSet<>();
+        for (ArrayList<OSTrigger> andConditions : triggers) {
+            for (OSTrigger trigger : andConditions) {
+                if (trigger.kind == OSTrigger.OSTriggerKind.CUSTOM && trigger.property != null)
+                    keys.add(trigger.property);
+            }
+        }
+        return keys;
+    }
+
+    boolean hasTriggerKind(@NonNull OSTrigger.OSTriggerKind kind) {
+        for (ArrayList<OSTrigger> andConditions : triggers) {
+            for (OSTrigger trigger : andConditions) {
+                if (trigger.kind == kind)
+                    return true;
+            }
+        }
+        return false;
+    }
+
     JSONObject toJSONObject() {
         JSONObject json = new JSONObject();
 
@@ -107,6 +155,7 @@ class OSInAppMessage {
 
             json.put("variants", variants);
             json.put("display_duration", this.displayDuration);
+            json.put("priority", this.priority);
 
             JSONArray orConditions = new JSONArray();
             for (ArrayList<OSTrigger> andArray : this.triggers) {
@@ -151,6 +200,7 @@ class OSInAppMessage {
                 "messageId='" + messageId + '\'' +
                 ", variants=" + variants +
                 ", triggers=" + triggers +
+                ", priority=" + priority +
                 ", displayDuration=" + displayDuration +
                 ", actionTaken=" + actionTaken +
                 '}';
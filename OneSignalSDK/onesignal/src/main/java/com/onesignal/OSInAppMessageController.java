@@ -13,11 +13,16 @@ import org.json.JSONObject;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OSSystemConditionController.OSSystemConditionObserver {
     private static ArrayList<String> PREFERRED_VARIANT_ORDER = new ArrayList<String>() {{
@@ -28,12 +33,32 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
 
     public static final String IN_APP_MESSAGES_JSON_KEY = "in_app_messages";
 
+    // Trigger changes made within this window of the last evaluation are coalesced into one evaluation
+    static final int TRIGGER_DEBOUNCE_WINDOW_MS = 100;
+
+    private static final String OS_IAM_HTML_PREFETCH = "OS_IAM_HTML_PREFETCH_";
+    // Html downloads running at once while prefetching, the rest wait in the executor queue
+    static final int HTML_PREFETCH_MAX_CONCURRENT = 2;
+    // Prefetching is a burst after on_session, idle threads are released right after it
+    private static final long HTML_PREFETCH_KEEP_ALIVE_MS = 10;
+    // Only the first messages that were not displayed yet are prefetched
+    static final int HTML_PREFETCH_MAX_MESSAGES = 10;
+
     OSTriggerController triggerController;
     private OSSystemConditionController systemConditionController;
 
     // IAMs loaded remotely from on_session
     //   If on_session won't be called this will be loaded from cache
     @NonNull private ArrayList<OSInAppMessage> messages;
+    // IAMs that depend on each custom trigger key, in the same order as messages
+    //   Used so a trigger change only re-evaluates the messages that reference the changed keys
+    @NonNull private HashMap<String, ArrayList<OSInAppMessage>> messagesByTriggerKey;
+    // IAMs with a time since last in-app trigger, in the same order as messages
+    //   Used so a dismissal only re-evaluates the messages it can make displayable
+    @NonNull private ArrayList<OSInAppMessage> messagesUsingLastInAppTime;
+    // Set when an evaluation was skipped as system conditions weren't available
+    //   A dismissal then re-evaluates every message instead of only messagesUsingLastInAppTime
+    private volatile boolean evaluationSkipped;
     // IAMs that have had their trigger(s) evaluated to true;
     //   This mean they have been added to the queue to display, or have already displayed
     @NonNull final private Set<String> triggeredMessages;
@@ -42,13 +67,23 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
     @NonNull final private Set<String> impressionedMessages;
     // IAM clicks that have been successfully posted to our backend and should not be counted again
     @NonNull final private Set<String> clickedClickIds;
-    // Ordered IAMs queued to display, includes the message currently displaying, if any.
-    @NonNull final ArrayList<OSInAppMessage> messageDisplayQueue;
+    // IAMs queued to display by priority, includes the message currently displaying, if any.
+    @NonNull final OSInAppMessageDisplayQueue messageDisplayQueue;
 
     private boolean inAppMessagingEnabled = true;
 
+    // Trigger keys changed while the debounce window is open, evaluated when it ends
+    @NonNull final private Set<String> pendingTriggerKeys = new HashSet<>();
+    private boolean triggerDebounceScheduled;
+
     @Nullable Date lastTimeInAppDismissed;
 
+    // Shared by every on_session so prefetching never runs more than HTML_PREFETCH_MAX_CONCURRENT downloads
+    private static ThreadPoolExecutor htmlPrefetchExecutor;
+    // Message variants queued or being downloaded by htmlPrefetchExecutor, a variant is only queued once
+    //   Only accessed through startPrefetching and finishPrefetching
+    private static HashSet<String> prefetchingVariants = new HashSet<>();
+
     @Nullable private static OSInAppMessageController sharedInstance;
     public static OSInAppMessageController getController() {
         // Make sure only Android 4.4 devices and higher can use IAMs
@@ -64,10 +99,12 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
 
     protected OSInAppMessageController() {
         messages = new ArrayList<>();
+        messagesByTriggerKey = new HashMap<>();
+        messagesUsingLastInAppTime = new ArrayList<>();
         triggeredMessages = OSUtils.newConcurrentSet();
         impressionedMessages = OSUtils.newConcurrentSet();
         clickedClickIds = OSUtils.newConcurrentSet();
-        messageDisplayQueue = new ArrayList<>();
+        messageDisplayQueue = new OSInAppMessageDisplayQueue();
         triggerController = new OSTriggerController(this);
         systemConditionController = new OSSystemConditionController(this);
 
@@ -127,6 +164,7 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
         OneSignalPrefs.saveString(OneSignalPrefs.PREFS_ONESIGNAL,
            OneSignalPrefs.PREFS_OS_CACHED_IAMS, json.toString());
         processInAppMessageJson(json);
+        prefetchMessageHtml();
     }
 
     private void processInAppMessageJson(@NonNull JSONArray json) throws JSONException {
@@ -136,18 +174,110 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
             OSInAppMessage message = new OSInAppMessage(messageJson);
             newMessages.add(message);
         }
+        messagesByTriggerKey = buildMessagesByTriggerKey(newMessages);
+        messagesUsingLastInAppTime = filterByTriggerKind(newMessages, OSTrigger.OSTriggerKind.TIME_SINCE_LAST_IN_APP);
         messages = newMessages;
 
+        cancelUnusedTriggerTimers();
+        if (!newMessages.isEmpty())
+            OSWebViewPool.requestWarmUp();
         evaluateInAppMessages();
     }
 
-    private void evaluateInAppMessages() {
-        if (systemConditionController.systemConditionsAvailable()) {
-            for (OSInAppMessage message : messages) {
-                if (triggerController.evaluateMessageTriggers(message))
-                    messageCanBeDisplayed(message);
+    private static HashMap<String, ArrayList<OSInAppMessage>> buildMessagesByTriggerKey(@NonNull ArrayList<OSInAppMessage> messages) {
+        HashMap<String, ArrayList<OSInAppMessage>> messagesByTriggerKey = new HashMap<>();
+        for (OSInAppMessage message : messages) {
+            for (String key : message.getCustomTriggerKeys()) {
+                ArrayList<OSInAppMessage> keyMessages = messagesByTriggerKey.get(key);
+                if (keyMessages == null) {
+                    keyMessages = new ArrayList<>();
+                    messagesByTriggerKey.put(key, keyMessages);
+                }
+                keyMessages.add(message);
             }
         }
+        return messagesByTriggerKey;
+    }
+
+    private static ArrayList<OSInAppMessage> filterByTriggerKind(@NonNull ArrayList<OSInAppMessage> messages, @NonNull OSTrigger.OSTriggerKind kind) {
+        ArrayList<OSInAppMessage> kindMessages = new ArrayList<>();
+        for (OSInAppMessage message : messages) {
+            if (message.hasTriggerKind(kind))
+                kindMessages.add(message);
+        }
+        return kindMessages;
+    }
+
+    private void evaluateInAppMessages() {
+        // Cleared first so a skip while evaluating sets it again
+        evaluationSkipped = false;
+        evaluateInAppMessages(messages);
+    }
+
+    /**
+     * Only re-evaluate the messages that can still display and have a time since last in-app trigger.
+     * Those triggers are false while a message is displaying, any other message that became displayable
+     * since was already queued, unless an evaluation was skipped. All messages are evaluated again then.
+     */
+    private void evaluateInAppMessagesAfterDismissal() {
+        if (evaluationSkipped) {
+            evaluateInAppMessages();
+            return;
+        }
+
+        ArrayList<OSInAppMessage> candidates = new ArrayList<>();
+        for (OSInAppMessage message : messagesUsingLastInAppTime) {
+            if (!triggeredMessages.contains(message.messageId))
+                candidates.add(message);
+        }
+        evaluateInAppMessages(candidates);
+    }
+
+    private void evaluateInAppMessages(@NonNull Collection<OSInAppMessage> messagesToEvaluate) {
+        if (!systemConditionController.systemConditionsAvailable()) {
+            // Messages that became displayable meanwhile are found by the next full evaluation
+            evaluationSkipped = true;
+            return;
+        }
+
+        for (OSInAppMessage message : messagesToEvaluate) {
+            if (triggerController.evaluateMessageTriggers(message))
+                messageCanBeDisplayed(message);
+        }
+    }
+
+    /**
+     * Only re-evaluate the messages with custom triggers on the changed keys.
+     * Messages without custom triggers can't change state from a trigger update, session and
+     * time based triggers are re-evaluated from messageTriggerConditionChanged instead.
+     */
+    private void evaluateInAppMessagesForTriggerKeys(@NonNull Collection<String> keys) {
+        HashMap<String, ArrayList<OSInAppMessage>> messagesByTriggerKey = this.messagesByTriggerKey;
+
+        if (keys.size() == 1) {
+            ArrayList<OSInAppMessage> keyMessages = messagesByTriggerKey.get(keys.iterator().next());
+            if (keyMessages != null)
+                evaluateInAppMessages(keyMessages);
+            return;
+        }
+
+        Set<OSInAppMessage> affectedMessages = new HashSet<>();
+        for (String key : keys) {
+            ArrayList<OSInAppMessage> keyMessages = messagesByTriggerKey.get(key);
+            if (keyMessages != null)
+                affectedMessages.addAll(keyMessages);
+        }
+
+        if (affectedMessages.isEmpty())
+            return;
+
+        // Keep the original message order so the display queue order is unchanged
+        ArrayList<OSInAppMessage> orderedMessages = new ArrayList<>(affectedMessages.size());
+        for (OSInAppMessage message : messages) {
+            if (affectedMessages.contains(message))
+                orderedMessages.add(message);
+        }
+        evaluateInAppMessages(orderedMessages);
     }
 
     private static @Nullable String variantIdForMessage(@NonNull OSInAppMessage message) {
@@ -175,6 +305,8 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
     }
 
     void onMessageWasShown(@NonNull final OSInAppMessage message) {
+        OSInAppMessageDisplayMetrics.onMessageShown(message);
+
         if (message.isPreview)
             return;
 
@@ -324,15 +456,18 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
     // Display message now or add it to the queue to be displayed.
     private void queueMessageForDisplay(@NonNull OSInAppMessage message) {
         synchronized (messageDisplayQueue) {
-            messageDisplayQueue.add(message);
-            if (!message.isPreview)
+            boolean displayNow = messageDisplayQueue.add(message);
+            if (!message.isPreview) {
                 triggeredMessages.add(message.messageId);
+                cancelUnusedTriggerTimers();
+            }
 
             OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG, "queueMessageForDisplay: " + messageDisplayQueue);
 
-            if (messageDisplayQueue.size() > 1) {
+            if (!displayNow) {
                 // means we are already displaying a message
-                // this message will be displayed afterwards
+                // this message will be displayed afterwards, by priority
+                preloadNextQueuedMessage();
                 return;
             }
 
@@ -340,19 +475,29 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
         }
     }
 
+    // Time-based trigger timers are only kept for messages that can still be displayed
+    private void cancelUnusedTriggerTimers() {
+        ArrayList<OSInAppMessage> pendingMessages = new ArrayList<>();
+        for (OSInAppMessage message : messages) {
+            if (!triggeredMessages.contains(message.messageId))
+                pendingMessages.add(message);
+        }
+        triggerController.cancelUnusedTriggerTimers(pendingMessages);
+    }
+
     boolean isDisplayingInApp() {
-        return messageDisplayQueue.size() > 0;
+        return !messageDisplayQueue.isEmpty();
     }
 
     @Nullable
     OSInAppMessage getCurrentDisplayedInAppMessage() {
-        return isDisplayingInApp() ? messageDisplayQueue.get(0) : null;
+        return messageDisplayQueue.getDisplayedMessage();
     }
 
     // Called after an In-App message is closed and it's dismiss animation has completed
     void messageWasDismissed(@NonNull OSInAppMessage message) {
         synchronized (messageDisplayQueue) {
-            if (!messageDisplayQueue.remove(message)) {
+            if (!messageDisplayQueue.removeDisplayed(message)) {
                 if (!message.isPreview)
                     OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "An in-app message was removed from the display queue before it was finished displaying.");
                 return;
@@ -362,11 +507,14 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
                 persistDisplayedIams();
 
             // Display the next message in the queue, if any
-            if (messageDisplayQueue.size() > 0)
-                displayMessage(messageDisplayQueue.get(0));
+            OSInAppMessage nextMessage = messageDisplayQueue.getDisplayedMessage();
+            if (nextMessage != null) {
+                displayMessage(nextMessage);
+                preloadNextQueuedMessage();
+            }
             else {
                 lastTimeInAppDismissed = new Date();
-                evaluateInAppMessages();
+                evaluateInAppMessagesAfterDismissal();
             }
         }
     }
@@ -385,47 +533,169 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
     private @NonNull Set<String> getAllDismissedIams() {
         Set<String> dismissedIams = new HashSet<>(triggeredMessages);
         synchronized (messageDisplayQueue) {
-            for (OSInAppMessage message : messageDisplayQueue)
+            for (OSInAppMessage message : messageDisplayQueue.getMessages())
                 dismissedIams.remove(message.messageId);
         }
         return dismissedIams;
     }
 
-    private static @Nullable
-    String htmlPathForMessage(OSInAppMessage message) {
-        String variantId = variantIdForMessage(message);
+    private static @NonNull
+    String htmlPathForVariant(@NonNull OSInAppMessage message, @NonNull String variantId) {
+        return "in_app_messages/" + message.messageId + "/variants/" + variantId + "/html?app_id=" + OneSignal.appId;
+    }
 
-        if (variantId == null) {
-            OneSignal.onesignalLog(OneSignal.LOG_LEVEL.ERROR, "Unable to find a variant for in-app message " + message.messageId);
-            return null;
+    /**
+     * Requests the html of the message's variant, revalidating the copy in {@link OSInAppMessageHtmlCache} if there is one.
+     * A 200 response replaces the cached copy.
+     */
+    private static void getMessageHtml(@NonNull OSInAppMessage message, @NonNull String variantId, @NonNull ResponseHandler responseHandler) {
+        String htmlPath = htmlPathForVariant(message, variantId);
+        OSInAppMessageHtmlCache.VariantResponseCache responseCache = OSInAppMessageHtmlCache.forVariant(message.messageId, variantId);
+        if (responseCache != null)
+            OneSignalRestClient.getSyncWithCache(htmlPath, responseHandler, responseCache);
+        else
+            OneSignalRestClient.getSync(htmlPath, responseHandler, null);
+    }
+
+    static synchronized ThreadPoolExecutor getHtmlPrefetchExecutor() {
+        if (htmlPrefetchExecutor == null) {
+            htmlPrefetchExecutor = new ThreadPoolExecutor(
+               HTML_PREFETCH_MAX_CONCURRENT,
+               HTML_PREFETCH_MAX_CONCURRENT,
+               HTML_PREFETCH_KEEP_ALIVE_MS,
+               TimeUnit.MILLISECONDS,
+               new LinkedBlockingQueue<Runnable>(),
+               new ThreadFactory() {
+                   @Override
+                   public Thread newThread(@NonNull Runnable runnable) {
+                       Thread newThread = new Thread(runnable);
+                       newThread.setName(OS_IAM_HTML_PREFETCH + newThread.getId());
+                       return newThread;
+                   }
+               }
+            );
+            htmlPrefetchExecutor.allowCoreThreadTimeOut(true);
         }
+        return htmlPrefetchExecutor;
+    }
 
-        return "in_app_messages/" + message.messageId + "/variants/" + variantId + "/html?app_id=" + OneSignal.appId;
+    private static synchronized boolean startPrefetching(@NonNull String variantKey) {
+        return prefetchingVariants.add(variantKey);
+    }
+
+    private static synchronized void finishPrefetching(@NonNull String variantKey) {
+        prefetchingVariants.remove(variantKey);
+    }
+
+    /**
+     * Downloads the html of messages that were not displayed yet so they can be displayed
+     * from the cache once triggered, without waiting on the network
+     */
+    void prefetchMessageHtml() {
+        int queuedCount = 0;
+        for (final OSInAppMessage message : messages) {
+            if (queuedCount == HTML_PREFETCH_MAX_MESSAGES)
+                break;
+            if (triggeredMessages.contains(message.messageId))
+                continue;
+
+            final String variantId = variantIdForMessage(message);
+            if (variantId == null)
+                continue;
+
+            queuedCount++;
+            // Already queued by an earlier on_session that has not finished downloading it
+            final String variantKey = message.messageId + "/" + variantId;
+            if (!startPrefetching(variantKey))
+                continue;
+
+            getHtmlPrefetchExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        getMessageHtml(message, variantId, new ResponseHandler() {
+                            @Override
+                            void onFailure(int statusCode, String response, Throwable throwable) {
+                                printHttpErrorForInAppMessageRequest("html prefetch", statusCode, response);
+                            }
+                        });
+                    } finally {
+                        finishPrefetching(variantKey);
+                    }
+                }
+            });
+        }
     }
 
     public void displayMessage(@NonNull final OSInAppMessage message) {
-        String htmlPath = htmlPathForMessage(message);
-        OneSignalRestClient.getSync(htmlPath, new ResponseHandler() {
+        String variantId = variantIdForMessage(message);
+        if (variantId == null) {
+            OneSignal.onesignalLog(OneSignal.LOG_LEVEL.ERROR, "Unable to find a variant for in-app message " + message.messageId);
+            return;
+        }
+
+        final OSInAppMessageHtmlCache.VariantResponseCache responseCache = OSInAppMessageHtmlCache.forVariant(message.messageId, variantId);
+        String cachedResponse = responseCache != null ? responseCache.getFreshResponse() : null;
+        OSInAppMessageDisplayMetrics.onDisplayStarted(message, cachedResponse != null);
+        if (cachedResponse != null) {
+            showMessageHtml(message, cachedResponse);
+            return;
+        }
+
+        // A stale cached copy is revalidated with its etag
+        getMessageHtml(message, variantId, new ResponseHandler() {
             @Override
             void onFailure(int statusCode, String response, Throwable throwable) {
                 printHttpErrorForInAppMessageRequest("html", statusCode, response);
+
+                // Offline, the stale copy is better than not displaying the message
+                String savedResponse = throwable != null && responseCache != null ? responseCache.getSavedResponse() : null;
+                if (savedResponse != null)
+                    showMessageHtml(message, savedResponse);
             }
 
             @Override
             void onSuccess(String response) {
-                try {
-                    JSONObject jsonResponse = new JSONObject(response);
-                    String htmlStr = jsonResponse.getString("html");
+                showMessageHtml(message, response);
+            }
+        });
+    }
 
-                    double displayDuration = jsonResponse.optDouble("display_duration");
-                    message.setDisplayDuration(displayDuration);
+    // Renders the message displayed after the current one off-screen so it shows as soon as the current one is dismissed.
+    // Only done from the html cache, no request is made for a message that may still be dropped.
+    private void preloadNextQueuedMessage() {
+        OSInAppMessage nextMessage = messageDisplayQueue.peekNext();
+        if (nextMessage == null)
+            return;
 
-                    WebViewManager.showHTMLString(message, htmlStr);
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
-            }
-        }, null);
+        String variantId = variantIdForMessage(nextMessage);
+        if (nextMessage.isPreview || variantId == null)
+            return;
+
+        String cachedResponse = OSInAppMessageHtmlCache.getFreshResponse(nextMessage.messageId, variantId);
+        if (cachedResponse == null)
+            return;
+
+        try {
+            String htmlStr = new JSONObject(cachedResponse).getString("html");
+            WebViewManager.preloadHTMLString(nextMessage, htmlStr);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void showMessageHtml(@NonNull OSInAppMessage message, @NonNull String response) {
+        try {
+            JSONObject jsonResponse = new JSONObject(response);
+            String htmlStr = jsonResponse.getString("html");
+
+            double displayDuration = jsonResponse.optDouble("display_duration");
+            message.setDisplayDuration(displayDuration);
+
+            WebViewManager.showHTMLString(message, htmlStr);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
     }
 
     void displayPreviewMessage(@NonNull String previewUUID) {
@@ -470,13 +740,62 @@ class OSInAppMessageController implements OSDynamicTriggerControllerObserver, OS
      * conditions have changed.
      */
     void addTriggers(Map<String, Object> newTriggers) {
-        triggerController.addTriggers(newTriggers);
-        evaluateInAppMessages();
+        updateTriggers(newTriggers, Collections.<String>emptyList());
     }
 
     void removeTriggersForKeys(Collection<String> keys) {
-        triggerController.removeTriggersForKeys(keys);
-        evaluateInAppMessages();
+        updateTriggers(Collections.<String, Object>emptyMap(), keys);
+    }
+
+    /**
+     * Apply added and removed triggers together, messages are evaluated once for all changed keys
+     */
+    void updateTriggers(@NonNull Map<String, Object> newTriggers, @NonNull Collection<String> removedKeys) {
+        triggerController.addTriggers(newTriggers);
+        triggerController.removeTriggersForKeys(removedKeys);
+
+        Set<String> changedKeys = new HashSet<>(newTriggers.keySet());
+        changedKeys.addAll(removedKeys);
+        if (changedKeys.isEmpty())
+            return;
+
+        synchronized (pendingTriggerKeys) {
+            if (triggerDebounceScheduled) {
+                // Evaluated together with the other changes once the debounce window ends
+                pendingTriggerKeys.addAll(changedKeys);
+                return;
+            }
+            triggerDebounceScheduled = true;
+        }
+
+        // First change after a quiet period is evaluated right away so single trigger updates stay synchronous
+        evaluateInAppMessagesForTriggerKeys(changedKeys);
+        scheduleTriggerDebounce();
+    }
+
+    /**
+     * Keeps the debounce window open while trigger changes keep coming in,
+     * each window with changes ends with a single evaluation of all keys changed in it
+     */
+    private void scheduleTriggerDebounce() {
+        OSDynamicTriggerTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Set<String> changedKeys;
+                synchronized (pendingTriggerKeys) {
+                    changedKeys = new HashSet<>(pendingTriggerKeys);
+                    pendingTriggerKeys.clear();
+                    // Close the window once nothing changed during it
+                    if (changedKeys.isEmpty()) {
+                        triggerDebounceScheduled = false;
+                        return;
+                    }
+                }
+
+                evaluateInAppMessagesForTriggerKeys(changedKeys);
+                scheduleTriggerDebounce();
+            }
+        }, TRIGGER_DEBOUNCE_WINDOW_MS);
     }
 
     void setInAppMessagingEnabled(boolean enabled) {
@@ -0,0 +1,89 @@
+package com.onesignal;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Html cache hits and misses of displayed in-app messages, and their time to display.
+ * <p>
+ * Time to display runs from {@link OSInAppMessageController#displayMessage} until the message view is shown.
+ * It's averaged separately for messages shown on a warm WebView, one created or rendered ahead of time by
+ * {@link OSWebViewPool} or while the message was queued, and cold ones created when the message is displayed.
+ * Counters cover every message displayed since the app started.
+ */
+class OSInAppMessageDisplayMetrics {
+
+    private static int htmlCacheHits;
+    private static int htmlCacheMisses;
+    private static int displayedCount;
+    private static long lastTimeToDisplayMs = -1;
+    private static long totalTimeToDisplayMs;
+    private static int warmDisplayedCount;
+    private static long totalWarmTimeToDisplayMs;
+
+    // Messages being prepared for display, by message id
+    private static final HashMap<String, Long> displayStartTimes = new HashMap<>();
+    // Messages being prepared for display on a warm WebView, by message id
+    private static final HashSet<String> warmWebViewMessages = new HashSet<>();
+
+    static synchronized void onDisplayStarted(@NonNull OSInAppMessage message, boolean htmlCacheHit) {
+        if (htmlCacheHit)
+            htmlCacheHits++;
+        else
+            htmlCacheMisses++;
+        displayStartTimes.put(message.messageId, SystemClock.elapsedRealtime());
+        warmWebViewMessages.remove(message.messageId);
+    }
+
+    static synchronized void onWarmWebViewUsed(@NonNull OSInAppMessage message) {
+        if (displayStartTimes.containsKey(message.messageId))
+            warmWebViewMessages.add(message.messageId);
+    }
+
+    static synchronized void onMessageShown(@NonNull OSInAppMessage message) {
+        Long startTime = displayStartTimes.remove(message.messageId);
+        boolean warmWebView = warmWebViewMessages.remove(message.messageId);
+        // Previews and messages shown again after an activity change are not timed
+        if (startTime == null)
+            return;
+
+        lastTimeToDisplayMs = SystemClock.elapsedRealtime() - startTime;
+        totalTimeToDisplayMs += lastTimeToDisplayMs;
+        displayedCount++;
+        if (warmWebView) {
+            totalWarmTimeToDisplayMs += lastTimeToDisplayMs;
+            warmDisplayedCount++;
+        }
+
+        int coldDisplayedCount = displayedCount - warmDisplayedCount;
+        OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG,
+            "In-app message " + message.messageId + " displayed in " + lastTimeToDisplayMs + "ms" +
+            " on a " + (warmWebView ? "warm" : "cold") + " WebView" +
+            ", average: " + (totalTimeToDisplayMs / displayedCount) + "ms" +
+            ", warm: " + (warmDisplayedCount > 0 ? totalWarmTimeToDisplayMs / warmDisplayedCount : 0) + "ms" +
+            ", cold: " + (coldDisplayedCount > 0 ? (totalTimeToDisplayMs - totalWarmTimeToDisplayMs) / coldDisplayedCount : 0) + "ms" +
+            ", html cache hits: " + htmlCacheHits + ", misses: " + htmlCacheMisses);
+    }
+
+    static synchronized int getHtmlCacheHits() {
+        return htmlCacheHits;
+    }
+
+    static synchronized int getHtmlCacheMisses() {
+        return htmlCacheMisses;
+    }
+
+    static synchronized int getWarmDisplayedCount() {
+        return warmDisplayedCount;
+    }
+
+    /**
+     * @return time to display of the last message shown in ms, -1 if none was shown yet
+     */
+    static synchronized long getLastTimeToDisplayMs() {
+        return lastTimeToDisplayMs;
+    }
+}
@@ -0,0 +1,118 @@
+package com.onesignal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * In-app messages queued to display, including the message currently displaying, if any.
+ * <p>
+ * Messages waiting behind the displayed one are kept in a heap, so queueing a message and moving to the next
+ * one are O(log n) however many messages trigger together. Higher {@link OSInAppMessage#priority} displays first,
+ * messages with the same priority display in the order they were queued. Previews always display next.
+ * <p>
+ * Not thread safe on its own, callers synchronize on the queue.
+ */
+class OSInAppMessageDisplayQueue {
+
+    private static class QueuedMessage {
+        private final OSInAppMessage message;
+        private final int priority;
+        // Order the message was queued in, breaks priority ties
+        private final long sequence;
+
+        QueuedMessage(OSInAppMessage message, long sequence) {
+            this.message = message;
+            this.priority = message.isPreview ? Integer.MAX_VALUE : message.priority;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final Comparator<QueuedMessage> DISPLAY_ORDER = new Comparator<QueuedMessage>() {
+        @Override
+        public int compare(QueuedMessage lhs, QueuedMessage rhs) {
+            if (lhs.priority != rhs.priority)
+                return lhs.priority > rhs.priority ? -1 : 1;
+            return lhs.sequence < rhs.sequence ? -1 : (lhs.sequence == rhs.sequence ? 0 : 1);
+        }
+    };
+
+    // Read without the queue lock by isDisplayingInApp
+    @Nullable private volatile OSInAppMessage displayedMessage;
+    @NonNull private final PriorityQueue<QueuedMessage> pendingMessages = new PriorityQueue<>(11, DISPLAY_ORDER);
+    private long nextSequence;
+
+    /**
+     * @return true if no message was displaying, the message is then the displayed one
+     */
+    boolean add(@NonNull OSInAppMessage message) {
+        if (displayedMessage == null) {
+            displayedMessage = message;
+            return true;
+        }
+
+        pendingMessages.add(new QueuedMessage(message, nextSequence++));
+        return false;
+    }
+
+    /**
+     * Removes the displayed message, the next pending message becomes the displayed one
+     * @return false if the message wasn't the one displayed
+     */
+    boolean removeDisplayed(@NonNull OSInAppMessage message) {
+        if (displayedMessage != message)
+            return false;
+
+        QueuedMessage next = pendingMessages.poll();
+        displayedMessage = next != null ? next.message : null;
+        return true;
+    }
+
+    @Nullable OSInAppMessage getDisplayedMessage() {
+        return displayedMessage;
+    }
+
+    /**
+     * @return the message displayed after the current one, null if there is none
+     */
+    @Nullable OSInAppMessage peekNext() {
+        QueuedMessage next = pendingMessages.peek();
+        return next != null ? next.message : null;
+    }
+
+    boolean isEmpty() {
+        return displayedMessage == null;
+    }
+
+    int size() {
+        return displayedMessage == null ? 0 : pendingMessages.size() + 1;
+    }
+
+    void clear() {
+        displayedMessage = null;
+        pendingMessages.clear();
+    }
+
+    /**
+     * @return the displayed message followed by the pending ones, pending messages are in no particular order
+     */
+    @NonNull List<OSInAppMessage> getMessages() {
+        List<OSInAppMessage> messages = new ArrayList<>(size());
+        if (displayedMessage == null)
+            return messages;
+
+        messages.add(displayedMessage);
+        for (QueuedMessage queuedMessage : pendingMessages)
+            messages.add(queuedMessage.message);
+        return messages;
+    }
+
+    @Override
+    public String toString() {
+        return getMessages().toString();
+    }
+}
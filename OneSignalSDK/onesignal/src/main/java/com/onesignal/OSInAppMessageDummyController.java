@@ -55,6 +55,9 @@ class OSInAppMessageDummyController extends OSInAppMessageController {
     @Override
     void removeTriggersForKeys(Collection<String> keys) { }
 
+    @Override
+    void updateTriggers(@NonNull Map<String, Object> newTriggers, @NonNull Collection<String> removedKeys) { }
+
     @Override
     void setInAppMessagingEnabled(boolean enabled) { }
 
@@ -0,0 +1,232 @@
+package com.onesignal;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache of the html responses of in-app message variants.
+ * <p>
+ * Messages are prefetched into it once received from on_session so they can be displayed without waiting on the
+ * network when triggered. Each variant is saved with its ETag so a prefetch of an unchanged message only costs a 304.
+ * A response is displayed straight from the cache for {@link #FRESH_FOR_MS} after it was downloaded or revalidated,
+ * after that it is revalidated first and only displayed as is when offline.
+ * Files are evicted least recently used first past {@link #DISK_CACHE_BYTES}.
+ */
+class OSInAppMessageHtmlCache {
+
+    static final String DISK_CACHE_DIR = "onesignal_iam_html";
+    static final long DISK_CACHE_BYTES = 2 * 1024 * 1024;
+    static final long FRESH_FOR_MS = 60 * 60 * 1_000;
+
+    private static final String RESPONSE_FILE_SUFFIX = ".json";
+    private static final String ETAG_FILE_SUFFIX = ".etag";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // Response and etag of one variant, used as the cache of its html request.
+    // The etag file is written even when empty, its last modified is when the response was last validated.
+    static class VariantResponseCache implements OneSignalRestClient.ResponseCache {
+        private final File responseFile;
+        private final File eTagFile;
+
+        private VariantResponseCache(@NonNull File cacheDir, @NonNull String messageId, @NonNull String variantId) {
+            String name = fileNameFor(messageId, variantId);
+            responseFile = new File(cacheDir, name + RESPONSE_FILE_SUFFIX);
+            eTagFile = new File(cacheDir, name + ETAG_FILE_SUFFIX);
+        }
+
+        @Override
+        public @Nullable String getETag() {
+            // An etag without its response can't be used for a 304
+            if (!responseFile.exists())
+                return null;
+            String eTag = readFile(eTagFile);
+            return eTag == null || eTag.isEmpty() ? null : eTag;
+        }
+
+        @Override
+        public @Nullable String getCachedResponse() {
+            String response = getSavedResponse();
+            if (response != null)
+                eTagFile.setLastModified(System.currentTimeMillis());
+            return response;
+        }
+
+        // Responses without an etag are kept too, they are requested again in full once stale
+        @Override
+        public boolean shouldCache(@Nullable String eTag) {
+            return true;
+        }
+
+        @Override
+        public void saveResponse(@Nullable String eTag, @NonNull String response) {
+            synchronized (OSInAppMessageHtmlCache.class) {
+                if (!writeFile(responseFile, response))
+                    return;
+
+                if (!writeFile(eTagFile, eTag != null ? eTag : ""))
+                    eTagFile.delete();
+
+                trimDiskCache(responseFile.getParentFile());
+            }
+        }
+
+        /**
+         * @return the saved response if it was downloaded or revalidated less than {@link #FRESH_FOR_MS} ago
+         */
+        @Nullable String getFreshResponse() {
+            long validatedTime = eTagFile.lastModified();
+            if (validatedTime == 0 || System.currentTimeMillis() - validatedTime > FRESH_FOR_MS)
+                return null;
+            return getSavedResponse();
+        }
+
+        /**
+         * @return the saved response, even if it is stale
+         */
+        @Nullable String getSavedResponse() {
+            String response = readFile(responseFile);
+            // Last modified is the LRU order of the disk cache
+            if (response != null)
+                responseFile.setLastModified(System.currentTimeMillis());
+            return response;
+        }
+    }
+
+    /**
+     * @return null if the SDK was not initialized with a context yet
+     */
+    static @Nullable VariantResponseCache forVariant(@NonNull String messageId, @NonNull String variantId) {
+        Context context = OneSignal.appContext;
+        if (context == null)
+            return null;
+        return new VariantResponseCache(getDiskCacheDir(context), messageId, variantId);
+    }
+
+    /**
+     * @return the cached html response of the variant, null if it was never downloaded, was evicted or is stale
+     */
+    @WorkerThread
+    static @Nullable String getFreshResponse(@NonNull String messageId, @NonNull String variantId) {
+        VariantResponseCache responseCache = forVariant(messageId, variantId);
+        if (responseCache == null)
+            return null;
+        return responseCache.getFreshResponse();
+    }
+
+    private static File getDiskCacheDir(Context context) {
+        File cacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        if (!cacheDir.exists())
+            cacheDir.mkdirs();
+        return cacheDir;
+    }
+
+    private static String fileNameFor(String messageId, String variantId) {
+        String key = messageId + "_" + variantId;
+        try {
+            return OSUtils.hexDigest(key, "SHA-1");
+        } catch (Throwable t) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static @Nullable String readFile(File file) {
+        if (!file.exists())
+            return null;
+
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            StringBuilder content = new StringBuilder((int) file.length());
+            char[] buffer = new char[4_096];
+            int read;
+            while ((read = reader.read(buffer)) != -1)
+                content.append(buffer, 0, read);
+            return content.toString();
+        } catch (IOException e) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not read cached in-app message html!", e);
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    // Written to a temp file first so a partly written file is never read as the cached response
+    private static boolean writeFile(File file, String content) {
+        File tempFile = new File(file.getParentFile(), file.getName() + TEMP_FILE_SUFFIX);
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+            writer.write(content);
+            writer.close();
+            writer = null;
+            return tempFile.renameTo(file);
+        } catch (IOException e) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not cache in-app message html!", e);
+            return false;
+        } finally {
+            closeQuietly(writer);
+            if (tempFile.exists())
+                tempFile.delete();
+        }
+    }
+
+    private static void trimDiskCache(File cacheDir) {
+        File[] files = cacheDir.listFiles();
+        if (files == null)
+            return;
+
+        long totalBytes = 0;
+        for (File file : files)
+            totalBytes += file.length();
+        if (totalBytes <= DISK_CACHE_BYTES)
+            return;
+
+        // Least recently used first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified(), rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            if (totalBytes <= DISK_CACHE_BYTES)
+                break;
+            if (!file.getName().endsWith(RESPONSE_FILE_SUFFIX))
+                continue;
+
+            long length = file.length();
+            if (!file.delete())
+                continue;
+            totalBytes -= length;
+
+            File eTagFile = new File(cacheDir, file.getName().replace(RESPONSE_FILE_SUFFIX, ETAG_FILE_SUFFIX));
+            long eTagLength = eTagFile.length();
+            if (eTagFile.delete())
+                totalBytes -= eTagLength;
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (Throwable t) {}
+    }
+}
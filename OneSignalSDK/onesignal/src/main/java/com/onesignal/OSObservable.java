@@ -28,78 +28,116 @@
 package com.onesignal;
 
 import java.lang.ref.WeakReference;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Observers are notified through a {@link Dispatcher} that calls the observer's callback directly.
+ * <p>
+ * The observer list is copy-on-write so observers can be added and removed from any thread, including from
+ * a callback, while a change is being notified. Weakly held observers that were garbage collected are removed
+ * as they are found when notifying or adding.
+ */
 class OSObservable<ObserverType, StateType> {
-   private String methodName;
-   private List<Object> observers;
-   private boolean fireOnMainThread;
+
+   interface Dispatcher<ObserverType, StateType> {
+      void dispatch(ObserverType observer, StateType state);
+   }
+
+   private static class ObserverRef<ObserverType> {
+      private final WeakReference<ObserverType> weakObserver;
+      private final ObserverType strongObserver;
+
+      ObserverRef(ObserverType observer, boolean strong) {
+         weakObserver = strong ? null : new WeakReference<>(observer);
+         strongObserver = strong ? observer : null;
+      }
+
+      ObserverType get() {
+         return strongObserver != null ? strongObserver : weakObserver.get();
+      }
+   }
+
+   private final Dispatcher<ObserverType, StateType> dispatcher;
+   private final List<ObserverRef<ObserverType>> observers = new CopyOnWriteArrayList<>();
+   private final boolean fireOnMainThread;
    
-   OSObservable(String methodName, boolean fireOnMainThread) {
-      this.methodName = methodName;
+   OSObservable(Dispatcher<ObserverType, StateType> dispatcher, boolean fireOnMainThread) {
+      this.dispatcher = dispatcher;
       this.fireOnMainThread = fireOnMainThread;
-      observers = new ArrayList<>();
    }
    
    void addObserver(ObserverType observer) {
-      observers.add(new WeakReference<>(observer));
+      getLiveObservers();
+      observers.add(new ObserverRef<>(observer, false));
    }
    
    void addObserverStrong(ObserverType observer){
-      observers.add(observer);
+      observers.add(new ObserverRef<>(observer, true));
    }
    
    void removeObserver(ObserverType observer) {
-      for(int i = 0; i < observers.size(); i++) {
-         Object anObserver = ((WeakReference)observers.get(i)).get();
-         if (anObserver.equals(observer)) {
-            observers.remove(i);
+      for (ObserverRef<ObserverType> observerRef : observers) {
+         ObserverType anObserver = observerRef.get();
+         if (anObserver != null && anObserver.equals(observer)) {
+            observers.remove(observerRef);
             break;
          }
       }
    }
+
+   int getObserverCount() {
+      return observers.size();
+   }
    
    boolean notifyChange(final StateType state) {
-      boolean notified = false;
-      
-      for(Object observer : observers) {
-         final Object strongRefObserver;
-         if (observer instanceof WeakReference)
-            strongRefObserver = ((WeakReference)observer).get();
-         else
-            strongRefObserver = observer;
-         
-         if (strongRefObserver != null) {
-            try {
-               Class<?> clazz = strongRefObserver.getClass();
-               final Method method = clazz.getDeclaredMethod(methodName, state.getClass());
-               method.setAccessible(true);
-               if (fireOnMainThread) {
-                  OSUtils.runOnMainUIThread(
-                     new Runnable() {
-                        @Override
-                        public void run() {
-                           try {
-                              method.invoke(strongRefObserver, state);
-                           }
-                           catch (Throwable t) {
-                              t.printStackTrace();
-                           }
-                        }
-                     });
-                  
-               }
-               else
-                  method.invoke(strongRefObserver, state);
-               notified = true;
-            } catch (Throwable t) {
-               t.printStackTrace();
+      // Only observers added before the change was notified are called
+      final List<ObserverType> liveObservers = getLiveObservers();
+      if (liveObservers.isEmpty())
+         return false;
+
+      if (fireOnMainThread) {
+         OSUtils.runOnMainUIThread(new Runnable() {
+            @Override
+            public void run() {
+               dispatchToAll(liveObservers, state);
             }
+         });
+      }
+      else
+         dispatchToAll(liveObservers, state);
+
+      return true;
+   }
+
+   private void dispatchToAll(List<ObserverType> liveObservers, StateType state) {
+      for (ObserverType observer : liveObservers) {
+         try {
+            dispatcher.dispatch(observer, state);
+         } catch (Throwable t) {
+            t.printStackTrace();
+         }
+      }
+   }
+
+   // Observers not garbage collected, removing the ones that were
+   private List<ObserverType> getLiveObservers() {
+      List<ObserverType> liveObservers = new ArrayList<>(observers.size());
+      List<ObserverRef<ObserverType>> collected = null;
+      for (ObserverRef<ObserverType> observerRef : observers) {
+         ObserverType observer = observerRef.get();
+         if (observer != null)
+            liveObservers.add(observer);
+         else {
+            if (collected == null)
+               collected = new ArrayList<>();
+            collected.add(observerRef);
          }
       }
-      
-      return notified;
+      // One copy of the list for all of them
+      if (collected != null)
+         observers.removeAll(collected);
+      return liveObservers;
    }
 }
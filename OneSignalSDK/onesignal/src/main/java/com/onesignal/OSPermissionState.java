@@ -31,12 +31,21 @@ import org.json.JSONObject;
 
 public class OSPermissionState implements Cloneable {
    
+   // Observed by OSPermissionChangedInternalObserver and OSSubscriptionState
+   private static final OSObservable.Dispatcher<Object, OSPermissionState> CHANGED_DISPATCHER = new OSObservable.Dispatcher<Object, OSPermissionState>() {
+      @Override
+      public void dispatch(Object observer, OSPermissionState state) {
+         if (observer instanceof OSPermissionChangedInternalObserver)
+            ((OSPermissionChangedInternalObserver) observer).changed(state);
+         else if (observer instanceof OSSubscriptionState)
+            ((OSSubscriptionState) observer).changed(state);
+      }
+   };
+   
    OSObservable<Object, OSPermissionState> observable;
    
    OSPermissionState(boolean asFrom) {
-      // Java 8 method reference can be used in the future with Android Studio 2.4.0
-      //   OSPermissionChangedInternalObserver::changed
-      observable = new OSObservable<>("changed", false);
+      observable = new OSObservable<>(CHANGED_DISPATCHER, false);
       
       if (asFrom) {
          enabled = OneSignalPrefs.getBool(OneSignalPrefs.PREFS_ONESIGNAL,
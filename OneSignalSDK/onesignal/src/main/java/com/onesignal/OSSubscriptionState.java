@@ -32,10 +32,18 @@ import org.json.JSONObject;
 
 public class OSSubscriptionState implements Cloneable {
    
-   OSObservable<Object, OSSubscriptionState> observable;
+   private static final OSObservable.Dispatcher<OSSubscriptionChangedInternalObserver, OSSubscriptionState> CHANGED_DISPATCHER =
+      new OSObservable.Dispatcher<OSSubscriptionChangedInternalObserver, OSSubscriptionState>() {
+         @Override
+         public void dispatch(OSSubscriptionChangedInternalObserver observer, OSSubscriptionState state) {
+            observer.changed(state);
+         }
+      };
+   
+   OSObservable<OSSubscriptionChangedInternalObserver, OSSubscriptionState> observable;
    
    OSSubscriptionState(boolean asFrom, boolean permissionAccepted) {
-      observable = new OSObservable<>("changed", false);
+      observable = new OSObservable<>(CHANGED_DISPATCHER, false);
       
       if (asFrom) {
          userSubscriptionSetting = OneSignalPrefs.getBool(OneSignalPrefs.PREFS_ONESIGNAL,
@@ -0,0 +1,287 @@
+package com.onesignal;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.onesignal.OSTrigger.OSTriggerOperator;
+
+/**
+ * A message's triggers compiled once into a tree of predicates.
+ * The outer OR and inner AND arrays become {@link Or} and {@link And} nodes, each trigger becomes a leaf
+ * with its operator already dispatched to a dedicated class and numeric values already parsed.
+ * <p>
+ * Evaluation gives the same result, in the same order, as walking the raw trigger arrays so dynamic
+ * triggers are still only checked (and timers scheduled) when reached.
+ */
+abstract class OSTriggerPredicate {
+
+    static final OSTriggerPredicate ALWAYS_TRUE = new Constant(true);
+    static final OSTriggerPredicate ALWAYS_FALSE = new Constant(false);
+
+    abstract boolean evaluate(@NonNull Map<String, Object> triggers, @NonNull OSDynamicTriggerController dynamicTriggerController);
+
+    /**
+     * Compile the triggers of a message. The outer list represents OR conditions
+     * and the inner lists represent AND conditions.
+     */
+    static @NonNull OSTriggerPredicate compile(@NonNull List<ArrayList<OSTrigger>> orConditions) {
+        // If there are no triggers then we display the In-App when a new session is triggered
+        if (orConditions.size() == 0)
+            return ALWAYS_TRUE;
+
+        OSTriggerPredicate[] ors = new OSTriggerPredicate[orConditions.size()];
+        for (int i = 0; i < ors.length; i++) {
+            ArrayList<OSTrigger> andConditions = orConditions.get(i);
+
+            OSTriggerPredicate[] ands = new OSTriggerPredicate[andConditions.size()];
+            for (int j = 0; j < ands.length; j++)
+                ands[j] = compile(andConditions.get(j));
+
+            ors[i] = ands.length == 1 ? ands[0] : new And(ands);
+        }
+
+        return ors.length == 1 ? ors[0] : new Or(ors);
+    }
+
+    static @NonNull OSTriggerPredicate compile(@NonNull OSTrigger trigger) {
+        // Assume all unknown trigger kinds to be false to be safe.
+        if (trigger.kind == OSTrigger.OSTriggerKind.UNKNOWN)
+            return ALWAYS_FALSE;
+
+        if (trigger.kind != OSTrigger.OSTriggerKind.CUSTOM)
+            return new Dynamic(trigger);
+
+        switch (trigger.operatorType) {
+            case EXISTS:
+                return new Exists(trigger.property, true);
+            case NOT_EXISTS:
+                return new Exists(trigger.property, false);
+            case CONTAINS:
+                return new Contains(trigger.property, trigger.value);
+            case EQUAL_TO:
+                return new Equality(trigger.property, trigger.value, true);
+            case NOT_EQUAL_TO:
+                return new Equality(trigger.property, trigger.value, false);
+            default:
+                if (trigger.value instanceof Number)
+                    return new NumericComparison(trigger.property, ((Number) trigger.value).doubleValue(), trigger.operatorType);
+                return new InvalidComparison(trigger.property, trigger.value, trigger.operatorType);
+        }
+    }
+
+    private static class Constant extends OSTriggerPredicate {
+        private final boolean value;
+
+        Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        boolean evaluate(@NonNull Map<String, Object> triggers, @NonNull OSDynamicTriggerController dynamicTriggerController) {
+            return value;
+        }
+    }
+
+    private static class Or extends OSTriggerPredicate {
+        private final OSTriggerPredicate[] conditions;
+
+        Or(OSTriggerPredicate[] conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        boolean evaluate(@NonNull Map<String, Object> triggers, @NonNull OSDynamicTriggerController dynamicTriggerController) {
+            for (OSTriggerPredicate condition : conditions) {
+                if (condition.evaluate(triggers, dynamicTriggerController))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private static class And extends OSTriggerPredicate {
+        private final OSTriggerPredicate[] conditions;
+
+        And(OSTriggerPredicate[] conditions) {
+            this.conditions = conditions;
+        }
+
+        @Override
+        boolean evaluate(@NonNull Map<String, Object> triggers, @NonNull OSDynamicTriggerController dynamicTriggerController) {
+            for (OSTriggerPredicate condition : conditions) {
+                if (!condition.evaluate(triggers, dynamicTriggerController))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Session time and time since last in app triggers, evaluated by {@link OSDynamicTriggerController}
+     */
+    private static class Dynamic extends OSTriggerPredicate {
+        private final OSTrigger trigger;
+
+        Dynamic(OSTrigger trigger) {
+            this.trigger = trigger;
+        }
+
+        @Override
+        boolean evaluate(@NonNull Map<String, Object> triggers, @NonNull OSDynamicTriggerController dynamicTriggerController) {
+            return dynamicTriggerController.dynamicTriggerShouldFire(trigger);
+        }
+    }
+
+    private static abstract class Custom extends OSTriggerPredicate {
+        @Nullable
+        private final String property;
+
+        Custom(@Nullable String property) {
+            this.property = property;
+        }
+
+        @Override
+        final boolean evaluate(@NonNull Map<String, Object> triggers, @NonNull OSDynamicTriggerController dynamicTriggerController) {
+            // ConcurrentHashMap does not accept null keys
+            Object deviceValue = property == null ? null : triggers.get(property);
+            return evaluate(deviceValue);
+        }
+
+        abstract boolean evaluate(@Nullable Object deviceValue);
+    }
+
+    private static class Exists extends Custom {
+        private final boolean exists;
+
+        Exists(@Nullable String property, boolean exists) {
+            super(property);
+            this.exists = exists;
+        }
+
+        @Override
+        boolean evaluate(@Nullable Object deviceValue) {
+            return (deviceValue != null) == exists;
+        }
+    }
+
+    private static class Contains extends Custom {
+        @Nullable
+        private final Object triggerValue;
+
+        Contains(@Nullable String property, @Nullable Object triggerValue) {
+            super(property);
+            this.triggerValue = triggerValue;
+        }
+
+        @Override
+        boolean evaluate(@Nullable Object deviceValue) {
+            return deviceValue instanceof Collection && ((Collection) deviceValue).contains(triggerValue);
+        }
+    }
+
+    /**
+     * Numeric values are compared as doubles, anything else is compared on its toString value
+     * to allow triggers to be more forgiving with types.
+     */
+    private static class Equality extends Custom {
+        @Nullable
+        private final String triggerString;
+        private final boolean triggerIsNumber;
+        private final double triggerDouble;
+        private final boolean equal;
+
+        Equality(@Nullable String property, @Nullable Object triggerValue, boolean equal) {
+            super(property);
+            this.triggerString = triggerValue == null ? null : triggerValue.toString();
+            this.triggerIsNumber = triggerValue instanceof Number;
+            this.triggerDouble = triggerIsNumber ? ((Number) triggerValue).doubleValue() : 0;
+            this.equal = equal;
+        }
+
+        @Override
+        boolean evaluate(@Nullable Object deviceValue) {
+            // Without a local value only not equal to a specific value can be true
+            if (deviceValue == null)
+                return !equal && triggerString != null;
+
+            if (triggerIsNumber && deviceValue instanceof Number) {
+                double deviceDouble = ((Number) deviceValue).doubleValue();
+                if ((deviceDouble == triggerDouble) == equal)
+                    return true;
+            }
+
+            if (triggerString == null)
+                return false;
+
+            return triggerString.equals(deviceValue.toString()) == equal;
+        }
+    }
+
+    private static class NumericComparison extends Custom {
+        private final double triggerDouble;
+        @NonNull
+        private final OSTriggerOperator operator;
+
+        NumericComparison(@Nullable String property, double triggerDouble, @NonNull OSTriggerOperator operator) {
+            super(property);
+            this.triggerDouble = triggerDouble;
+            this.operator = operator;
+        }
+
+        @Override
+        boolean evaluate(@Nullable Object deviceValue) {
+            double deviceDouble;
+            if (deviceValue instanceof Number)
+                deviceDouble = ((Number) deviceValue).doubleValue();
+            else if (deviceValue instanceof String) {
+                try {
+                    deviceDouble = Double.parseDouble((String) deviceValue);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            else
+                return false;
+
+            switch (operator) {
+                case LESS_THAN:
+                    return deviceDouble < triggerDouble;
+                case GREATER_THAN:
+                    return deviceDouble > triggerDouble;
+                case LESS_THAN_OR_EQUAL_TO:
+                    return deviceDouble < triggerDouble || deviceDouble == triggerDouble;
+                case GREATER_THAN_OR_EQUAL_TO:
+                    return deviceDouble > triggerDouble || deviceDouble == triggerDouble;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * A comparison operator with a non numeric trigger value never matches
+     */
+    private static class InvalidComparison extends Custom {
+        private final boolean triggerIsString;
+        @NonNull
+        private final OSTriggerOperator operator;
+
+        InvalidComparison(@Nullable String property, @Nullable Object triggerValue, @NonNull OSTriggerOperator operator) {
+            super(property);
+            this.triggerIsString = triggerValue instanceof String;
+            this.operator = operator;
+        }
+
+        @Override
+        boolean evaluate(@Nullable Object deviceValue) {
+            if (triggerIsString && deviceValue instanceof String)
+                OneSignal.onesignalLog(OneSignal.LOG_LEVEL.ERROR, "Attempted to use an invalid operator for a string trigger comparison: " + operator.toString());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.onesignal;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Keeps one OSWebView created ahead of time so displaying an in-app message doesn't wait on creating it.
+ * <p>
+ * The first WebView of the process is the slowest to create since it loads the WebView implementation.
+ * Once in-app messages were received, the pooled WebView is created when the main thread is idle after an activity
+ * is available, and again each time it's taken. It's created on a {@link MutableContextWrapper} of the application
+ * context so it doesn't hold on to an activity, the activity showing the message is swapped in when it's taken.
+ * Apps can turn it off with the {@link #WEB_VIEW_POOL_META_DATA} manifest meta-data.
+ */
+class OSWebViewPool {
+
+    // <meta-data android:name="com.onesignal.InAppMessageWebViewPool" android:value="DISABLE" />
+    private static final String WEB_VIEW_POOL_META_DATA = "com.onesignal.InAppMessageWebViewPool";
+
+    // Read from the manifest the first time a WebView could be created
+    @Nullable private static Boolean enabled;
+    // Set once there are messages to display, nothing is created for apps without in-app messages
+    private static volatile boolean warmUpRequested;
+    private static boolean warmUpScheduled;
+    @Nullable private static OSWebView pooledWebView;
+
+    /**
+     * Creates the pooled WebView once an activity is available, if it wasn't already
+     */
+    static void requestWarmUp() {
+        warmUpRequested = true;
+        final Activity activity = ActivityLifecycleHandler.curActivity;
+        if (activity == null)
+            return;
+
+        OSUtils.runOnMainUIThread(new Runnable() {
+            @Override
+            public void run() {
+                warmUpWhenIdle(activity);
+            }
+        });
+    }
+
+    @MainThread
+    static void onActivityAvailable(@NonNull Activity activity) {
+        if (warmUpRequested)
+            warmUpWhenIdle(activity);
+    }
+
+    @MainThread
+    private static void warmUpWhenIdle(@NonNull final Context context) {
+        if (!canWarmUp(context) || warmUpScheduled)
+            return;
+
+        warmUpScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                warmUpScheduled = false;
+                warmUp(context);
+                return false;
+            }
+        });
+    }
+
+    @MainThread
+    static void warmUp(@NonNull Context context) {
+        if (!canWarmUp(context))
+            return;
+
+        try {
+            pooledWebView = new OSWebView(new MutableContextWrapper(context.getApplicationContext()));
+        } catch (Throwable t) {
+            // WebView can be missing or being updated, the message creates it's own WebView when displayed
+            OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not create a WebView ahead of time for in-app messages", t);
+        }
+    }
+
+    private static boolean canWarmUp(@NonNull Context context) {
+        return pooledWebView == null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && isEnabled(context);
+    }
+
+    private static boolean isEnabled(@NonNull Context context) {
+        if (enabled == null)
+            enabled = isEnabledInManifest(context);
+        return enabled;
+    }
+
+    private static boolean isEnabledInManifest(@NonNull Context context) {
+        try {
+            ApplicationInfo ai = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+            Bundle bundle = ai.metaData;
+            return bundle == null || !"DISABLE".equals(bundle.getString(WEB_VIEW_POOL_META_DATA));
+        } catch (Throwable t) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error reading meta-data tag '" + WEB_VIEW_POOL_META_DATA + "'. WebView pool enabled.", t);
+        }
+        return true;
+    }
+
+    static boolean hasPooledWebView() {
+        return pooledWebView != null;
+    }
+
+    /**
+     * Takes the pooled WebView and starts creating the next one, the activity becomes it's context
+     * @return null if no WebView was ready
+     */
+    @MainThread
+    static @Nullable OSWebView takePooledWebView(@NonNull Activity activity) {
+        OSWebView webView = pooledWebView;
+        if (webView == null)
+            return null;
+
+        pooledWebView = null;
+        ((MutableContextWrapper) webView.getContext()).setBaseContext(activity);
+        warmUpWhenIdle(activity);
+        return webView;
+    }
+}
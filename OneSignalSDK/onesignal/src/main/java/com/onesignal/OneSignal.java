@@ -487,7 +487,12 @@ public class OneSignal {
    private static OSObservable<OSPermissionObserver, OSPermissionStateChanges> permissionStateChangesObserver;
    static OSObservable<OSPermissionObserver, OSPermissionStateChanges> getPermissionStateChangesObserver() {
       if (permissionStateChangesObserver == null)
-         permissionStateChangesObserver = new OSObservable<>("onOSPermissionChanged", true);
+         permissionStateChangesObserver = new OSObservable<>(new OSObservable.Dispatcher<OSPermissionObserver, OSPermissionStateChanges>() {
+            @Override
+            public void dispatch(OSPermissionObserver observer, OSPermissionStateChanges stateChanges) {
+               observer.onOSPermissionChanged(stateChanges);
+            }
+         }, true);
       return permissionStateChangesObserver;
    }
    // End PermissionState
@@ -521,7 +526,12 @@ public class OneSignal {
    private static OSObservable<OSSubscriptionObserver, OSSubscriptionStateChanges> subscriptionStateChangesObserver;
    static OSObservable<OSSubscriptionObserver, OSSubscriptionStateChanges> getSubscriptionStateChangesObserver() {
       if (subscriptionStateChangesObserver == null)
-         subscriptionStateChangesObserver = new OSObservable<>("onOSSubscriptionChanged", true);
+         subscriptionStateChangesObserver = new OSObservable<>(new OSObservable.Dispatcher<OSSubscriptionObserver, OSSubscriptionStateChanges>() {
+            @Override
+            public void dispatch(OSSubscriptionObserver observer, OSSubscriptionStateChanges stateChanges) {
+               observer.onOSSubscriptionChanged(stateChanges);
+            }
+         }, true);
       return subscriptionStateChangesObserver;
    }
    // End SubscriptionState
@@ -555,7 +565,12 @@ public class OneSignal {
    private static OSObservable<OSEmailSubscriptionObserver, OSEmailSubscriptionStateChanges> emailSubscriptionStateChangesObserver;
    static OSObservable<OSEmailSubscriptionObserver, OSEmailSubscriptionStateChanges> getEmailSubscriptionStateChangesObserver() {
       if (emailSubscriptionStateChangesObserver == null)
-         emailSubscriptionStateChangesObserver = new OSObservable<>("onOSEmailSubscriptionChanged", true);
+         emailSubscriptionStateChangesObserver = new OSObservable<>(new OSObservable.Dispatcher<OSEmailSubscriptionObserver, OSEmailSubscriptionStateChanges>() {
+            @Override
+            public void dispatch(OSEmailSubscriptionObserver observer, OSEmailSubscriptionStateChanges stateChanges) {
+               observer.onOSEmailSubscriptionChanged(stateChanges);
+            }
+         }, true);
       return emailSubscriptionStateChangesObserver;
    }
    // End EmailSubscriptionState
@@ -660,6 +675,7 @@ public class OneSignal {
       mInitBuilder = createInitBuilder(notificationOpenedHandler, notificationReceivedHandler);
       OneSignal.setAppContext(context);
       setupPrivacyConsent(context);
+      OneSignalRestClient.setupGzipRequests(context);
 
       if (requiresUserPrivacyConsent()) {
          OneSignal.Log(LOG_LEVEL.VERBOSE, "OneSignal SDK initialization delayed, user privacy consent is set to required for this application.");
@@ -1998,7 +2014,6 @@ public class OneSignal {
 
       boolean firstMessage = true;
 
-      OSNotificationOpenResult openResult = new OSNotificationOpenResult();
       OSNotification notification = new OSNotification();
       notification.isAppInFocus = isAppActive();
       notification.shown = shown;
@@ -2026,6 +2041,23 @@ public class OneSignal {
          }
       }
 
+      return newOpenResult(notification, actionSelected, fromAlert);
+   }
+
+   @NonNull
+   private static OSNotificationOpenResult generateOsNotificationReceivedResult(ParsedPushPayload payload, boolean shown, boolean fromAlert) {
+      OSNotification notification = new OSNotification();
+      notification.isAppInFocus = isAppActive();
+      notification.shown = shown;
+      notification.androidNotificationId = payload.json.optInt("notificationId");
+      notification.payload = NotificationBundleProcessor.OSNotificationPayloadFrom(payload);
+
+      return newOpenResult(notification, payload.json.optString("actionSelected", null), fromAlert);
+   }
+
+   @NonNull
+   private static OSNotificationOpenResult newOpenResult(OSNotification notification, String actionSelected, boolean fromAlert) {
+      OSNotificationOpenResult openResult = new OSNotificationOpenResult();
       openResult.notification = notification;
       openResult.action = new OSNotificationAction();
       openResult.action.actionID = actionSelected;
@@ -2050,8 +2082,8 @@ public class OneSignal {
    // Called when receiving GCM/ADM message after it has been displayed.
    // Or right when it is received if it is a silent one
    //   If a NotificationExtenderService is present in the developers app this will not fire for silent notifications.
-   static void handleNotificationReceived(JSONArray data, boolean displayed, boolean fromAlert) {
-      OSNotificationOpenResult openResult = generateOsNotificationOpenResult(data, displayed, fromAlert);
+   static void handleNotificationReceived(ParsedPushPayload payload, boolean displayed, boolean fromAlert) {
+      OSNotificationOpenResult openResult = generateOsNotificationReceivedResult(payload, displayed, fromAlert);
       if(trackFirebaseAnalytics != null && getFirebaseAnalyticsEnabled())
          trackFirebaseAnalytics.trackReceivedEvent(openResult);
 
@@ -2522,27 +2554,17 @@ public class OneSignal {
 
 
                // Mark all notifications as dismissed unless they were already opened.
-               SQLiteDatabase writableDb = null;
-               try {
-                  writableDb = dbHelper.getWritableDbWithRetries();
-                  writableDb.beginTransaction();
-
-                  String whereStr = NotificationTable.COLUMN_NAME_OPENED + " = 0";
-                  ContentValues values = new ContentValues();
-                  values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
-                  writableDb.update(NotificationTable.TABLE_NAME, values, whereStr, null);
-                  writableDb.setTransactionSuccessful();
-               } catch (Throwable t) {
-                  OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error marking all notifications as dismissed! ", t);
-               } finally {
-                  if (writableDb != null) {
-                     try {
-                        writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
-                     } catch (Throwable t) {
-                        OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
-                     }
+               dbHelper.executeWrite("Error marking all notifications as dismissed! ", new OneSignalDbHelper.WriteOperation() {
+                  @Override
+                  public void run(SQLiteDatabase writableDb) {
+                     String whereStr = NotificationTable.COLUMN_NAME_OPENED + " = 0";
+                     ContentValues values = new ContentValues();
+                     values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
+                     writableDb.update(NotificationTable.TABLE_NAME, values, whereStr, null);
+                     BadgeCountUpdater.invalidateCount();
+                     NotificationSummaryManager.invalidateAllGroups();
                   }
-               }
+               });
 
                BadgeCountUpdater.updateCount(0, appContext);
             } catch (Throwable t) {
@@ -2576,36 +2598,19 @@ public class OneSignal {
          @Override
          public void run() {
             OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(appContext);
-            SQLiteDatabase writableDb = null;
-            try {
-               writableDb = dbHelper.getWritableDbWithRetries();
-               writableDb.beginTransaction();
-
-               String whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + id + " AND " +
-                       NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
-                       NotificationTable.COLUMN_NAME_DISMISSED + " = 0";
-
-               ContentValues values = new ContentValues();
-               values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
-
-               int records = writableDb.update(NotificationTable.TABLE_NAME, values, whereStr, null);
-
-               if (records > 0)
-                  NotificationSummaryManager.updatePossibleDependentSummaryOnDismiss(appContext, writableDb, id);
-               BadgeCountUpdater.update(writableDb, appContext);
+            dbHelper.executeWrite("Error marking a notification id " + id + " as dismissed! ", new OneSignalDbHelper.WriteOperation() {
+               @Override
+               public void run(SQLiteDatabase writableDb) {
+                  BadgeCountUpdater.beforeNotificationConsumed(writableDb, id);
+                  int records = NotificationTableRepository.markDismissedByAndroidId(writableDb, id);
 
-               writableDb.setTransactionSuccessful();
-            } catch (Throwable t) {
-               OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error marking a notification id " + id + " as dismissed! ", t);
-            } finally {
-               if (writableDb != null) {
-                  try {
-                     writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
-                  } catch (Throwable t) {
-                     OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
+                  if (records > 0) {
+                     NotificationSummaryManager.onNotificationConsumed(id);
+                     NotificationSummaryManager.updatePossibleDependentSummaryOnDismiss(appContext, writableDb, id);
                   }
+                  BadgeCountUpdater.update(writableDb, appContext);
                }
-            }
+            });
 
             NotificationManager notificationManager = OneSignalNotificationManager.getNotificationManager(appContext);
             notificationManager.cancel(id);
@@ -2670,34 +2675,24 @@ public class OneSignal {
                   cursor.close();
             }
 
-            SQLiteDatabase writableDb = null;
-            try {
-               writableDb = dbHelper.getWritableDbWithRetries();
-               writableDb.beginTransaction();
-
-               String whereStr = NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
-                       NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
-                       NotificationTable.COLUMN_NAME_DISMISSED + " = 0";
-               String[] whereArgs = { group };
-
-               ContentValues values = new ContentValues();
-               values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
+            dbHelper.executeWrite("Error marking a notifications with group " + group + " as dismissed! ", new OneSignalDbHelper.WriteOperation() {
+               @Override
+               public void run(SQLiteDatabase writableDb) {
+                  String whereStr = NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
+                          NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
+                          NotificationTable.COLUMN_NAME_DISMISSED + " = 0";
+                  String[] whereArgs = { group };
 
-               writableDb.update(NotificationTable.TABLE_NAME, values, whereStr, whereArgs);
-               BadgeCountUpdater.update(writableDb, appContext);
+                  ContentValues values = new ContentValues();
+                  values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
 
-               writableDb.setTransactionSuccessful();
-            } catch (Throwable t) {
-               OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error marking a notifications with group " + group + " as dismissed! ", t);
-            } finally {
-               if (writableDb != null) {
-                  try {
-                     writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
-                  } catch (Throwable t) {
-                     OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
-                  }
+                  writableDb.update(NotificationTable.TABLE_NAME, values, whereStr, whereArgs);
+                  NotificationSummaryManager.invalidateGroup(group);
+                  // The group's summary row is updated too, which isn't part of the badge count
+                  BadgeCountUpdater.invalidateCount();
+                  BadgeCountUpdater.update(writableDb, appContext);
                }
-            }
+            });
          }
       };
 
@@ -2863,6 +2858,58 @@ public class OneSignal {
 
    /** In-App Message Triggers */
 
+   /**
+    * Collects trigger changes and applies them together on {@link #commit()}.
+    * In-app messages are only evaluated once for the whole batch instead of once per change.
+    * Create one with {@link OneSignal#editTriggers()}.
+    */
+   public static class TriggersEditor {
+      private final HashMap<String, Object> addedTriggers = new HashMap<>();
+      private final HashSet<String> removedKeys = new HashSet<>();
+
+      private TriggersEditor() {
+      }
+
+      public TriggersEditor addTrigger(String key, Object object) {
+         removedKeys.remove(key);
+         addedTriggers.put(key, object);
+         return this;
+      }
+
+      public TriggersEditor addTriggers(Map<String, Object> triggers) {
+         for (Map.Entry<String, Object> trigger : triggers.entrySet())
+            addTrigger(trigger.getKey(), trigger.getValue());
+         return this;
+      }
+
+      public TriggersEditor removeTriggerForKey(String key) {
+         addedTriggers.remove(key);
+         removedKeys.add(key);
+         return this;
+      }
+
+      public TriggersEditor removeTriggersForKeys(Collection<String> keys) {
+         for (String key : keys)
+            removeTriggerForKey(key);
+         return this;
+      }
+
+      /** Applies all changes made with this editor */
+      public void commit() {
+         OSInAppMessageController.getController().updateTriggers(addedTriggers, removedKeys);
+         addedTriggers.clear();
+         removedKeys.clear();
+      }
+   }
+
+   /**
+    * Starts a batch of trigger changes, use this when setting many triggers at once.
+    * Changes are applied when {@link TriggersEditor#commit()} is called.
+    */
+   public static TriggersEditor editTriggers() {
+      return new TriggersEditor();
+   }
+
    /**
     * Allows you to set multiple trigger key/value pairs simultaneously with a Map
     * Triggers are used for targeting in-app messages.
@@ -2945,35 +2992,7 @@ public class OneSignal {
       if (id == null || "".equals(id))
          return false;
 
-      boolean exists = false;
-
-      OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(context);
-      Cursor cursor = null;
-
-      try {
-         SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
-
-         String[] retColumn = {NotificationTable.COLUMN_NAME_NOTIFICATION_ID};
-         String[] whereArgs = {id};
-
-         cursor = readableDb.query(
-             NotificationTable.TABLE_NAME,
-             retColumn,
-             NotificationTable.COLUMN_NAME_NOTIFICATION_ID + " = ?",   // Where String
-             whereArgs,
-             null, null, null);
-
-         exists = cursor.moveToFirst();
-      }
-      catch (Throwable t) {
-         OneSignal.Log(LOG_LEVEL.ERROR, "Could not check for duplicate, assuming unique.", t);
-      }
-      finally {
-         if (cursor != null)
-            cursor.close();
-      }
-
-      if (exists) {
+      if (DuplicateNotificationFilter.isDuplicate(id, context)) {
          Log(LOG_LEVEL.DEBUG, "Duplicate GCM message received, skip processing of " + id);
          return true;
       }
@@ -2981,9 +3000,8 @@ public class OneSignal {
       return false;
    }
 
-   static boolean notValidOrDuplicated(Context context, JSONObject jsonPayload) {
-      String id = getNotificationIdFromGCMJsonPayload(jsonPayload);
-      return id == null || OneSignal.isDuplicateNotification(id, context);
+   static boolean notValidOrDuplicated(Context context, @Nullable String notificationId) {
+      return notificationId == null || OneSignal.isDuplicateNotification(notificationId, context);
    }
 
    static String getNotificationIdFromGCMJson(@Nullable JSONObject jsonObject) {
@@ -3003,36 +3021,6 @@ public class OneSignal {
       return null;
    }
 
-    static String getNotificationIdFromGCMBundle(@Nullable Bundle bundle) {
-        if (bundle == null || bundle.isEmpty())
-            return null;
-
-      try {
-         if (bundle.containsKey("custom")) {
-            JSONObject customJSON = new JSONObject(bundle.getString("custom"));
-
-            if (customJSON.has("i"))
-               return customJSON.optString("i", null);
-            else
-               Log(LOG_LEVEL.DEBUG, "Not a OneSignal formatted GCM message. No 'i' field in custom.");
-         }
-         else
-            Log(LOG_LEVEL.DEBUG, "Not a OneSignal formatted GCM message. No 'custom' field in the bundle.");
-      } catch (Throwable t) {
-         Log(LOG_LEVEL.DEBUG, "Could not parse bundle, probably not a OneSignal notification.", t);
-      }
-
-      return null;
-   }
-
-   private static String getNotificationIdFromGCMJsonPayload(JSONObject jsonPayload) {
-      try {
-         JSONObject customJSON = new JSONObject(jsonPayload.optString("custom"));
-         return customJSON.optString("i", null);
-      } catch(Throwable t) {}
-      return null;
-   }
-
    static boolean isAppActive() {
       return initDone && isForeground();
    }
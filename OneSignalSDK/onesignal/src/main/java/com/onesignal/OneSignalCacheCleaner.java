@@ -23,10 +23,14 @@ class OneSignalCacheCleaner {
             public void run() {
                 Thread.currentThread().setPriority(Process.THREAD_PRIORITY_BACKGROUND);
                 OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(context);
-                SQLiteDatabase writableDb = dbHelper.getWritableDbWithRetries();
 
                 cleanInAppMessagingCache();
-                cleanNotificationCache(writableDb);
+                dbHelper.executeWrite("Error cleaning old cached data! ", new OneSignalDbHelper.WriteOperation() {
+                    @Override
+                    public void run(SQLiteDatabase writableDb) {
+                        cleanNotificationCache(writableDb);
+                    }
+                });
             }
         }, OS_DELETE_OLD_CACHED_DATA).start();
     }
@@ -56,6 +60,10 @@ class OneSignalCacheCleaner {
         writableDb.delete(NotificationTable.TABLE_NAME,
                 NotificationTable.COLUMN_NAME_CREATED_TIME + " < " + ((System.currentTimeMillis() / 1_000L) - 604_800L),
                 null);
+
+        DuplicateNotificationFilter.notificationsDeleted();
+        BadgeCountUpdater.invalidateCount();
+        NotificationSummaryManager.invalidateAllGroups();
     }
 
     /**
@@ -67,6 +75,9 @@ class OneSignalCacheCleaner {
                         " n WHERE" +
                         " n." + NotificationTable.COLUMN_NAME_NOTIFICATION_ID  + " = " + CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID + ")",
                 null);
+
+        // In memory indexes warm again from the cleaned table on next use
+        CachedUniqueOutcomeNotificationIndex.invalidateAll();
     }
 
 }
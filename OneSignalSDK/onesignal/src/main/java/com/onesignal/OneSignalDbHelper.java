@@ -27,11 +27,16 @@
 
 package com.onesignal;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.os.Bundle;
 import android.os.SystemClock;
 
 import com.onesignal.OneSignalDbContract.NotificationTable;
@@ -40,6 +45,7 @@ import com.onesignal.OneSignalDbContract.CachedUniqueOutcomeNotificationTable;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class OneSignalDbHelper extends SQLiteOpenHelper {
    static final int DATABASE_VERSION = 6;
@@ -99,8 +105,35 @@ public class OneSignalDbHelper extends SQLiteOpenHelper {
       NotificationTable.INDEX_CREATE_EXPIRE_TIME
    };
 
+   // <meta-data android:name="com.onesignal.DatabaseWriteAheadLogging" android:value="ENABLE" />
+   private static final String WRITE_AHEAD_LOGGING_META_DATA = "com.onesignal.DatabaseWriteAheadLogging";
+
+   interface WriteOperation {
+      void run(SQLiteDatabase writableDb) throws Exception;
+   }
+
+   /**
+    * Notified of every {@link #executeWrite}, so in memory caches of a table only keep committed changes.
+    * Writes nest when an operation calls executeWrite, each start is followed by one finish.
+    */
+   interface WriteListener {
+      // Called once the write lock is held
+      void onWriteStarted();
+      // Called before the write lock is released, committed is false if the transaction was rolled back
+      void onWriteFinished(boolean committed);
+   }
+
+   private static final ArrayList<WriteListener> writeListeners = new ArrayList<>();
+
    private static OneSignalDbHelper sInstance;
 
+   private final boolean writeAheadLoggingEnabled;
+
+   // Single writer, every write made through executeWrite is serialized on this lock in arrival order
+   private final ReentrantLock writeLock = new ReentrantLock(true);
+   // Listeners of the write in progress, only used by the thread holding writeLock
+   private final ArrayList<WriteListener> activeWriteListeners = new ArrayList<>();
+
    private static int getDbVersion() {
       return DATABASE_VERSION;
    }
@@ -108,6 +141,36 @@ public class OneSignalDbHelper extends SQLiteOpenHelper {
    OneSignalDbHelper(Context context) {
       super(context, DATABASE_NAME, null, getDbVersion());
 
+      writeAheadLoggingEnabled = isWriteAheadLoggingEnabled(context);
+   }
+
+   private static boolean isWriteAheadLoggingEnabled(Context context) {
+      try {
+         ApplicationInfo ai = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+         Bundle bundle = ai.metaData;
+         return bundle != null && "ENABLE".equals(bundle.getString(WRITE_AHEAD_LOGGING_META_DATA));
+      } catch (Throwable t) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error reading meta-data tag '" + WRITE_AHEAD_LOGGING_META_DATA + "'. Write-ahead logging disabled.", t);
+      }
+      return false;
+   }
+
+   /**
+    * Adds a listener for every write from now on. Added during a write on this thread,
+    * it is told about the writes already started so it gets their finish.
+    */
+   static void addWriteListener(WriteListener listener) {
+      OneSignalDbHelper instance;
+      synchronized (OneSignalDbHelper.class) {
+         writeListeners.add(listener);
+         instance = sInstance;
+      }
+
+      if (instance != null && instance.writeLock.isHeldByCurrentThread()) {
+         instance.activeWriteListeners.add(listener);
+         for (int i = 0; i < instance.writeLock.getHoldCount(); i++)
+            listener.onWriteStarted();
+      }
    }
 
    public static synchronized OneSignalDbHelper getInstance(Context context) {
@@ -144,6 +207,63 @@ public class OneSignalDbHelper extends SQLiteOpenHelper {
       }
    }
 
+   /**
+    * Runs a write inside a transaction, holding the single writer lock for its whole duration.
+    * Readers don't take the lock, with write-ahead logging enabled they also keep reading while a write is in progress.
+    * <p>
+    * The shared DB is never closed here, other threads may be using it.
+    * <p>
+    * {@link WriteListener}s are told when the write starts and whether it committed before the lock is released.
+    * @return true if the transaction was committed
+    */
+   boolean executeWrite(String errorMessage, WriteOperation operation) {
+      writeLock.lock();
+      // Nested writes keep the listeners of the outermost one
+      if (writeLock.getHoldCount() == 1) {
+         synchronized (OneSignalDbHelper.class) {
+            activeWriteListeners.addAll(writeListeners);
+         }
+      }
+      for (WriteListener listener : activeWriteListeners)
+         listener.onWriteStarted();
+
+      SQLiteDatabase writableDb = null;
+      boolean committed = false;
+      try {
+         SQLiteDatabase db = getWritableDbWithRetries();
+         db.beginTransaction();
+         writableDb = db;
+
+         operation.run(writableDb);
+         writableDb.setTransactionSuccessful();
+         committed = true;
+      } catch (Throwable t) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, errorMessage, t);
+      } finally {
+         if (writableDb != null) {
+            try {
+               writableDb.endTransaction(); // May throw if the DB is full.
+            } catch (Throwable t) {
+               committed = false;
+               OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
+            }
+         }
+         for (WriteListener listener : activeWriteListeners)
+            listener.onWriteFinished(committed);
+         if (writeLock.getHoldCount() == 1)
+            activeWriteListeners.clear();
+         writeLock.unlock();
+      }
+      return committed;
+   }
+
+   /**
+    * @return true if another thread is in {@link #executeWrite}, a read started now may miss its changes
+    */
+   boolean isWriteInProgressOnOtherThread() {
+      return writeLock.isLocked() && !writeLock.isHeldByCurrentThread();
+   }
+
    @Override
    public void onCreate(SQLiteDatabase db) {
       db.execSQL(SQL_CREATE_ENTRIES);
@@ -284,14 +404,15 @@ public class OneSignalDbHelper extends SQLiteOpenHelper {
       onCreate(db);
    }
 
-   // Could enable WAL in the future but requires Android API 11
-   /*
+   // Opt-in as WAL keeps extra -wal and -shm files next to the DB.
+   // Only called on Android API 16+, older devices keep the default rollback journal.
+   @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
    @Override
    public void onConfigure(SQLiteDatabase db) {
       super.onConfigure(db);
-      db.enableWriteAheadLogging();
+      if (writeAheadLoggingEnabled && !db.enableWriteAheadLogging())
+         OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not enable write-ahead logging on " + DATABASE_NAME);
    }
-   */
 
    static StringBuilder recentUninteractedWithNotificationsWhere() {
       long currentTimeSec = System.currentTimeMillis() / 1_000L;
@@ -312,6 +433,11 @@ public class OneSignalDbHelper extends SQLiteOpenHelper {
    }
 
    public void cleanOutcomeDatabase() {
-      this.getWritableDatabase().delete(OneSignalDbContract.OutcomeEventsTable.TABLE_NAME, null, null);
+      executeWrite("Error cleaning outcome events! ", new WriteOperation() {
+         @Override
+         public void run(SQLiteDatabase writableDb) {
+            writableDb.delete(OneSignalDbContract.OutcomeEventsTable.TABLE_NAME, null, null);
+         }
+      });
    }
 }
@@ -3,7 +3,6 @@ package com.onesignal;
 import android.support.annotation.NonNull;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.net.HttpURLConnection;
@@ -52,7 +51,7 @@ class OneSignalRemoteParams {
    static final int DEFAULT_NOTIFICATION_LIMIT = 10;
 
    static void makeAndroidParamsRequest(final @NonNull CallBack callBack) {
-      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
+      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.JSONResponseHandler() {
          @Override
          void onFailure(int statusCode, String response, Throwable throwable) {
             if (statusCode == HttpURLConnection.HTTP_FORBIDDEN) {
@@ -75,7 +74,11 @@ class OneSignalRemoteParams {
          }
 
          @Override
-         void onSuccess(String response) {
+         void onSuccess(JSONObject response) {
+            if (response == null) {
+               OneSignal.Log(OneSignal.LOG_LEVEL.FATAL, "Error parsing android_params!");
+               return;
+            }
             processJson(response, callBack);
          }
       };
@@ -89,17 +92,7 @@ class OneSignalRemoteParams {
       OneSignalRestClient.get(params_url, responseHandler, OneSignalRestClient.CACHE_KEY_REMOTE_PARAMS);
    }
 
-   static private void processJson(String json, final @NonNull CallBack callBack) {
-      final JSONObject responseJson;
-      try {
-         responseJson = new JSONObject(json);
-      }
-      catch (NullPointerException | JSONException t) {
-         OneSignal.Log(OneSignal.LOG_LEVEL.FATAL, "Error parsing android_params!: ", t);
-         OneSignal.Log(OneSignal.LOG_LEVEL.FATAL, "Response that errored from android_params!: " + json);
-         return;
-      }
-
+   static private void processJson(final @NonNull JSONObject responseJson, final @NonNull CallBack callBack) {
       Params params = new Params() {{
          enterprise = responseJson.optBoolean("enterp", false);
          useEmailAuth = responseJson.optBoolean("use_email_auth", false);
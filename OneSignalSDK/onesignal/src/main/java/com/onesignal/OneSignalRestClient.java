@@ -27,18 +27,35 @@
 
 package com.onesignal;
 
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
 import android.net.TrafficStats;
+import android.os.Bundle;
 import android.os.Build;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.JsonReader;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 class OneSignalRestClient {
@@ -47,6 +64,86 @@ class OneSignalRestClient {
       void onFailure(int statusCode, String response, Throwable throwable) {}
    }
 
+   // Use for large responses, the body is parsed straight from the network stream into a JSONObject
+   //   instead of being read into a String and parsed again by the caller.
+   // onSuccess(String) is kept as an adapter for responses that are already a String, such as cached 304 responses.
+   static abstract class JSONResponseHandler extends ResponseHandler {
+      // response is null if the request succeeded but its body isn't valid JSON, it's still a success for the server
+      void onSuccess(@Nullable JSONObject response) {}
+
+      @Override
+      void onSuccess(String response) {
+         JSONObject jsonResponse = null;
+         try {
+            jsonResponse = new JSONObject(response);
+         } catch (NullPointerException | JSONException e) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "OneSignalRestClient: Error parsing JSON response: " + response, e);
+         }
+         onSuccess(jsonResponse);
+      }
+   }
+
+   // Saves the response of a GET with its etag, the saved response is used when the server replies 304
+   interface ResponseCache {
+      @Nullable String getETag();
+      // Called when the server replied 304, the saved response is still valid
+      @Nullable String getCachedResponse();
+      // Whether a successful response is worth saving, eTag is null if the server did not send one
+      boolean shouldCache(@Nullable String eTag);
+      void saveResponse(@Nullable String eTag, @NonNull String response);
+   }
+
+   // Default cache for the small responses of a cacheKey, kept in the SharedPreferences
+   private static class PrefsResponseCache implements ResponseCache {
+      private final String cacheKey;
+
+      PrefsResponseCache(@NonNull String cacheKey) {
+         this.cacheKey = cacheKey;
+      }
+
+      @Override
+      public @Nullable String getETag() {
+         return OneSignalPrefs.getString(
+            OneSignalPrefs.PREFS_ONESIGNAL,
+            OneSignalPrefs.PREFS_OS_ETAG_PREFIX + cacheKey,
+            null
+         );
+      }
+
+      @Override
+      public @Nullable String getCachedResponse() {
+         return OneSignalPrefs.getString(
+            OneSignalPrefs.PREFS_ONESIGNAL,
+            OneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + cacheKey,
+            null
+         );
+      }
+
+      // Responses that can't be revalidated are not worth keeping in the SharedPreferences
+      @Override
+      public boolean shouldCache(@Nullable String eTag) {
+         return eTag != null;
+      }
+
+      @Override
+      public void saveResponse(@Nullable String eTag, @NonNull String response) {
+         OneSignalPrefs.saveString(
+            OneSignalPrefs.PREFS_ONESIGNAL,
+            OneSignalPrefs.PREFS_OS_ETAG_PREFIX + cacheKey,
+            eTag
+         );
+         OneSignalPrefs.saveString(
+            OneSignalPrefs.PREFS_ONESIGNAL,
+            OneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + cacheKey,
+            response
+         );
+      }
+   }
+
+   private static @Nullable ResponseCache responseCacheFor(@Nullable String cacheKey) {
+      return cacheKey == null ? null : new PrefsResponseCache(cacheKey);
+   }
+
    static final String CACHE_KEY_GET_TAGS = "CACHE_KEY_GET_TAGS";
    static final String CACHE_KEY_REMOTE_PARAMS = "CACHE_KEY_REMOTE_PARAMS";
    
@@ -55,38 +152,163 @@ class OneSignalRestClient {
    private static final int THREAD_ID = 10000;
    private static final int TIMEOUT = 120_000;
    private static final int GET_TIMEOUT = 60_000;
-   
+
+   // Upper bound on concurrent HTTP calls, extra requests wait in the executor queues.
+   static final int MAX_CONCURRENT_REQUESTS = 4;
+   // Idle pooled threads are released after this so the SDK does not keep threads alive in the background.
+   private static final long EXECUTOR_KEEP_ALIVE_MS = 30_000;
+
+   private static ThreadPoolExecutor asyncRequestExecutor;
+   private static ThreadPoolExecutor connectionExecutor;
+
+   // When enabled, responses are fully read and closed instead of calling disconnect() so
+   //   HttpURLConnection can return the socket to it's keep-alive pool and skip the TLS handshake on the next request.
+   // The platform pool is what evicts sockets once they have been idle for too long.
+   private static boolean connectionReuseEnabled = true;
+
+   static void setConnectionReuseEnabled(boolean enabled) {
+      connectionReuseEnabled = enabled;
+   }
+
+   // Timings of a finished request, logged and kept for the last request so they can be compared
+   static class RequestTiming {
+      final String url;
+      final String method;
+      // Time since the previous request finished, a warm keep-alive connection is likely if this is short
+      final long idleBeforeMs;
+      // Time until the response code was received, this includes connecting and sending the body
+      final long responseMs;
+      // Time until the response body was read and the connection released
+      final long totalMs;
+
+      RequestTiming(String url, String method, long idleBeforeMs, long responseMs, long totalMs) {
+         this.url = url;
+         this.method = method;
+         this.idleBeforeMs = idleBeforeMs;
+         this.responseMs = responseMs;
+         this.totalMs = totalMs;
+      }
+
+      @Override
+      public String toString() {
+         return "RequestTiming{" +
+            "url='" + url + '\'' +
+            ", method='" + method + '\'' +
+            ", idleBeforeMs=" + idleBeforeMs +
+            ", responseMs=" + responseMs +
+            ", totalMs=" + totalMs +
+            '}';
+      }
+   }
+
+   private static volatile RequestTiming lastRequestTiming;
+   private static long lastRequestFinishedTime;
+
+   static RequestTiming getLastRequestTiming() {
+      return lastRequestTiming;
+   }
+
+   // Request bodies smaller than this are sent as is, gzip overhead isn't worth it for them
+   static final int GZIP_REQUEST_MIN_CHARS = 1_024;
+
+   // <meta-data android:name="com.onesignal.GzipRequests" android:value="ENABLE" />
+   private static final String GZIP_REQUESTS_META_DATA = "com.onesignal.GzipRequests";
+
+   // Opt-in as the request body is only gzipped if this is set, responses are always accepted gzipped
+   private static boolean gzipRequestsEnabled = false;
+
+   static void setGzipRequestsEnabled(boolean enabled) {
+      gzipRequestsEnabled = enabled;
+   }
+
+   static void setupGzipRequests(Context context) {
+      setGzipRequestsEnabled(isGzipRequestsEnabled(context));
+   }
+
+   private static boolean isGzipRequestsEnabled(Context context) {
+      try {
+         ApplicationInfo ai = context.getPackageManager().getApplicationInfo(context.getPackageName(), PackageManager.GET_META_DATA);
+         Bundle bundle = ai.metaData;
+         return bundle != null && "ENABLE".equals(bundle.getString(GZIP_REQUESTS_META_DATA));
+      } catch (Throwable t) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error reading meta-data tag '" + GZIP_REQUESTS_META_DATA + "'. Gzip requests disabled.", t);
+      }
+      return false;
+   }
+
    private static int getThreadTimeout(int timeout) {
       return timeout + 5_000;
    }
 
-   public static void put(final String url, final JSONObject jsonBody, final ResponseHandler responseHandler) {
+   private static long getExecutorKeepAlive() {
+      return EXECUTOR_KEEP_ALIVE_MS;
+   }
 
-      new Thread(new Runnable() {
+   private static ThreadPoolExecutor newBoundedExecutor(final String threadNamePrefix) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+         MAX_CONCURRENT_REQUESTS,
+         MAX_CONCURRENT_REQUESTS,
+         getExecutorKeepAlive(),
+         TimeUnit.MILLISECONDS,
+         new LinkedBlockingQueue<Runnable>(),
+         new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+               Thread newThread = new Thread(runnable);
+               newThread.setName(threadNamePrefix + newThread.getId());
+               return newThread;
+            }
+         }
+      );
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+   }
+
+   // Runs async put, post and get calls, waiting on the connection is done on these threads
+   private static synchronized ThreadPoolExecutor getAsyncRequestExecutor() {
+      if (asyncRequestExecutor == null)
+         asyncRequestExecutor = newBoundedExecutor("OS_REST_ASYNC_");
+      return asyncRequestExecutor;
+   }
+
+   // Runs the network calls themselves so a hung connection can be interrupted by the requesting thread
+   private static synchronized ThreadPoolExecutor getConnectionExecutor() {
+      if (connectionExecutor == null)
+         connectionExecutor = newBoundedExecutor("OS_HTTPConnection_");
+      return connectionExecutor;
+   }
+
+   public static void put(final String url, final JSONObject jsonBody, final ResponseHandler responseHandler) {
+      getAsyncRequestExecutor().execute(new Runnable() {
          public void run() {
             makeRequest(url, "PUT", jsonBody, responseHandler, TIMEOUT, null);
          }
-      }, "OS_REST_ASYNC_PUT").start();
+      });
    }
 
    public static void post(final String url, final JSONObject jsonBody, final ResponseHandler responseHandler) {
-      new Thread(new Runnable() {
+      getAsyncRequestExecutor().execute(new Runnable() {
          public void run() {
             makeRequest(url, "POST", jsonBody, responseHandler, TIMEOUT, null);
          }
-      }, "OS_REST_ASYNC_POST").start();
+      });
    }
 
    public static void get(final String url, final ResponseHandler responseHandler, @NonNull final String cacheKey) {
-      new Thread(new Runnable() {
+      getAsyncRequestExecutor().execute(new Runnable() {
          public void run() {
-            makeRequest(url, null, null, responseHandler, GET_TIMEOUT, cacheKey);
+            makeRequest(url, null, null, responseHandler, GET_TIMEOUT, responseCacheFor(cacheKey));
          }
-      }, "OS_REST_ASYNC_GET").start();
+      });
    }
 
    public static void getSync(final String url, final ResponseHandler responseHandler, @NonNull String cacheKey) {
-      makeRequest(url, null, null, responseHandler, GET_TIMEOUT, cacheKey);
+      makeRequest(url, null, null, responseHandler, GET_TIMEOUT, responseCacheFor(cacheKey));
+   }
+
+   // Same as getSync for responses too large for the SharedPreferences, the caller decides where they are saved
+   public static void getSyncWithCache(final String url, final ResponseHandler responseHandler, @NonNull ResponseCache responseCache) {
+      makeRequest(url, null, null, responseHandler, GET_TIMEOUT, responseCache);
    }
 
    public static void putSync(String url, JSONObject jsonBody, ResponseHandler responseHandler) {
@@ -97,36 +319,109 @@ class OneSignalRestClient {
       makeRequest(url, "POST", jsonBody, responseHandler, TIMEOUT, null);
    }
    
-   private static void makeRequest(final String url, final String method, final JSONObject jsonBody, final ResponseHandler responseHandler, final int timeout, final String cacheKey) {
+   private static void makeRequest(final String url, final String method, final JSONObject jsonBody, final ResponseHandler responseHandler, final int timeout, final ResponseCache responseCache) {
       // If not a GET request, check if the user provided privacy consent if the application is set to require user privacy consent
       if (method != null && OneSignal.shouldLogUserPrivacyConsentErrorMessageForMethodName(null))
          return;
-   
-      final Thread[] callbackThread = new Thread[1];
-      Thread connectionThread = new Thread(new Runnable() {
-         public void run() {
-            callbackThread[0] = startHTTPConnection(url, method, jsonBody, responseHandler, timeout, cacheKey);
+
+      ConnectionTask connectionTask = new ConnectionTask(url, method, jsonBody, responseHandler, timeout, responseCache);
+      getConnectionExecutor().execute(connectionTask);
+
+      // Callback is fired after the wait so it does not count towards the fallback timer.
+      Runnable callback = connectionTask.awaitCallback(getThreadTimeout(timeout));
+      if (callback != null)
+         callback.run();
+   }
+
+   // Wraps a single request run on a pooled connection thread.
+   // getResponseCode() can hang past it's timeout setting so the requesting thread times the task
+   //   from the moment a worker picks it up and interrupts that worker if it goes over.
+   private static class ConnectionTask implements Runnable {
+      private final String url;
+      private final String method;
+      private final JSONObject jsonBody;
+      private final ResponseHandler responseHandler;
+      private final int timeout;
+      private final ResponseCache responseCache;
+
+      private final CountDownLatch started = new CountDownLatch(1);
+      private final CountDownLatch finished = new CountDownLatch(1);
+
+      private Thread workerThread;
+      private Runnable callback;
+      private boolean done;
+      // Set when the requesting thread stops waiting, callback is then fired once the request finishes
+      private boolean abandoned;
+
+      ConnectionTask(String url, String method, JSONObject jsonBody, ResponseHandler responseHandler, int timeout, ResponseCache responseCache) {
+         this.url = url;
+         this.method = method;
+         this.jsonBody = jsonBody;
+         this.responseHandler = responseHandler;
+         this.timeout = timeout;
+         this.responseCache = responseCache;
+      }
+
+      @Override
+      public void run() {
+         synchronized (this) {
+            workerThread = Thread.currentThread();
          }
-      }, "OS_HTTPConnection");
-      
-      connectionThread.start();
-      
-      // getResponseCode() can hang past it's timeout setting so join it's thread to ensure it is timing out.
-      try {
-         connectionThread.join(getThreadTimeout(timeout));
-         if (connectionThread.getState() != Thread.State.TERMINATED)
-            connectionThread.interrupt();
-         if (callbackThread[0] != null)
-            callbackThread[0].join();
-      } catch (InterruptedException e) {
-         e.printStackTrace();
+         started.countDown();
+
+         Runnable result = startHTTPConnection(url, method, jsonBody, responseHandler, timeout, responseCache);
+
+         boolean fireCallback;
+         synchronized (this) {
+            workerThread = null;
+            callback = result;
+            done = true;
+            fireCallback = abandoned;
+         }
+         finished.countDown();
+
+         // Not fired on this thread as it may make another request and block a connection worker
+         if (fireCallback && result != null)
+            getAsyncRequestExecutor().execute(result);
+      }
+
+      // Returns the callback for the requesting thread to run, or null if it will be fired later by the task itself
+      Runnable awaitCallback(long timeoutMs) {
+         try {
+            started.await();
+            if (finished.await(timeoutMs, TimeUnit.MILLISECONDS))
+               return getCallback();
+            return abandon(true);
+         } catch (InterruptedException e) {
+            e.printStackTrace();
+            return abandon(false);
+         }
+      }
+
+      private synchronized Runnable getCallback() {
+         return callback;
+      }
+
+      private synchronized Runnable abandon(boolean interruptWorker) {
+         // Task finished while we were giving up on it
+         if (done)
+            return callback;
+
+         abandoned = true;
+         if (interruptWorker && workerThread != null)
+            workerThread.interrupt();
+         return null;
       }
    }
    
-   private static Thread startHTTPConnection(String url, String method, JSONObject jsonBody, ResponseHandler responseHandler, int timeout, @Nullable String cacheKey) {
+   private static Runnable startHTTPConnection(String url, String method, JSONObject jsonBody, ResponseHandler responseHandler, int timeout, @Nullable ResponseCache responseCache) {
       int httpResponse = -1;
       HttpURLConnection con = null;
-      Thread callbackThread;
+      Runnable callback;
+      // Set once the response body has been read and closed so the connection can be kept alive
+      boolean responseConsumed = false;
+      long startTime = SystemClock.elapsedRealtime();
+      long responseTime = -1;
 
       if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
          TrafficStats.setThreadStatsTag(THREAD_ID);
@@ -140,6 +435,8 @@ class OneSignalRestClient {
          con.setConnectTimeout(timeout);
          con.setReadTimeout(timeout);
          con.setRequestProperty("SDK-Version", "onesignal/android/" + OneSignal.VERSION);
+         // Set explicitly so gzip responses are decoded by readResponseBody the same way on every network stack
+         con.setRequestProperty("Accept-Encoding", "gzip");
 
          if (jsonBody != null)
             con.setDoInput(true);
@@ -154,19 +451,27 @@ class OneSignalRestClient {
             String strJsonBody = jsonBody.toString();
             OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: " + method + " SEND JSON: " + strJsonBody);
 
-            byte[] sendBytes = strJsonBody.getBytes("UTF-8");
-            con.setFixedLengthStreamingMode(sendBytes.length);
+            if (gzipRequestsEnabled && strJsonBody.length() >= GZIP_REQUEST_MIN_CHARS) {
+               // Compressed size isn't known up front so the body is streamed in chunks
+               con.setRequestProperty("Content-Encoding", "gzip");
+               con.setChunkedStreamingMode(0);
 
-            OutputStream outputStream = con.getOutputStream();
-            outputStream.write(sendBytes);
+               Writer writer = new OutputStreamWriter(new GZIPOutputStream(con.getOutputStream()), "UTF-8");
+               writer.write(strJsonBody);
+               writer.close();
+            }
+            else {
+               byte[] sendBytes = strJsonBody.getBytes("UTF-8");
+               con.setFixedLengthStreamingMode(sendBytes.length);
+
+               OutputStream outputStream = con.getOutputStream();
+               outputStream.write(sendBytes);
+               outputStream.close();
+            }
          }
 
-         if (cacheKey != null) {
-            String eTag = OneSignalPrefs.getString(
-               OneSignalPrefs.PREFS_ONESIGNAL,
-               OneSignalPrefs.PREFS_OS_ETAG_PREFIX + cacheKey,
-               null
-            );
+         if (responseCache != null) {
+            String eTag = responseCache.getETag();
             if (eTag != null) {
                con.setRequestProperty("if-none-match", eTag);
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Adding header if-none-match: " + eTag);
@@ -175,64 +480,72 @@ class OneSignalRestClient {
 
          // Network request is made from getResponseCode()
          httpResponse = con.getResponseCode();
+         responseTime = SystemClock.elapsedRealtime();
 
          OneSignal.Log(OneSignal.LOG_LEVEL.VERBOSE, "OneSignalRestClient: After con.getResponseCode to: " + BASE_URL + url);
 
          switch (httpResponse) {
            case HttpURLConnection.HTTP_NOT_MODIFIED: // 304
-               String cachedResponse = OneSignalPrefs.getString(
-                  OneSignalPrefs.PREFS_ONESIGNAL,
-                  OneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + cacheKey,
-                  null
-               );
+               String cachedResponse = responseCache != null ? responseCache.getCachedResponse() : null;
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: " + (method == null ? "GET" : method) + " - Using Cached response due to 304: " + cachedResponse);
-               callbackThread = callResponseHandlerOnSuccess(responseHandler, cachedResponse);
+               // 304 responses have no body so there is nothing to read before the connection can be reused
+               responseConsumed = true;
+               callback = responseHandlerOnSuccess(responseHandler, cachedResponse);
             break;
             case HttpURLConnection.HTTP_ACCEPTED:
             case HttpURLConnection.HTTP_OK: // 200
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Successfully finished request to: " + BASE_URL + url);
 
-               InputStream inputStream = con.getInputStream();
-               Scanner scanner = new Scanner(inputStream, "UTF-8");
-               String json = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
-               scanner.close();
+               if (responseHandler instanceof JSONResponseHandler) {
+                  JSONObject jsonResponse;
+                  try {
+                     jsonResponse = readJSONResponseBody(con, con.getInputStream());
+                  } catch (JSONException e) {
+                     // The request still succeeded, the connection isn't reused as the body may not be fully read
+                     OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "OneSignalRestClient: Error parsing JSON response from: " + BASE_URL + url, e);
+                     callback = responseHandlerOnSuccess((JSONResponseHandler) responseHandler, (JSONObject) null);
+                     break;
+                  }
+                  responseConsumed = true;
+                  if (OneSignal.atLogLevel(OneSignal.LOG_LEVEL.DEBUG))
+                     OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: " + (method == null ? "GET" : method) + " RECEIVED JSON: " + jsonResponse);
+
+                  // Only serialized back to a String if the response will be cached
+                  String eTag = responseCache != null ? con.getHeaderField("etag") : null;
+                  if (responseCache != null && responseCache.shouldCache(eTag))
+                     saveCachedResponse(responseCache, eTag, jsonResponse.toString());
+
+                  callback = responseHandlerOnSuccess((JSONResponseHandler) responseHandler, jsonResponse);
+                  break;
+               }
+
+               String json = readResponseBody(con, con.getInputStream());
+               responseConsumed = true;
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: " + (method == null ? "GET" : method) + " RECEIVED JSON: " + json);
 
-               if (cacheKey != null) {
+               if (responseCache != null) {
                   String eTag = con.getHeaderField("etag");
-                  if (eTag != null) {
-                     OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Response has etag of " + eTag + " so caching the response.");
-                     OneSignalPrefs.saveString(
-                        OneSignalPrefs.PREFS_ONESIGNAL,
-                        OneSignalPrefs.PREFS_OS_ETAG_PREFIX + cacheKey,
-                        eTag
-                     );
-                     OneSignalPrefs.saveString(
-                        OneSignalPrefs.PREFS_ONESIGNAL,
-                        OneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + cacheKey,
-                        json
-                     );
-                  }
+                  if (responseCache.shouldCache(eTag))
+                     saveCachedResponse(responseCache, eTag, json);
                }
 
-               callbackThread = callResponseHandlerOnSuccess(responseHandler, json);
+               callback = responseHandlerOnSuccess(responseHandler, json);
                break;
             default: // Request failed
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Failed request to: " + BASE_URL + url);
-               inputStream = con.getErrorStream();
+               InputStream inputStream = con.getErrorStream();
                if (inputStream == null)
                   inputStream = con.getInputStream();
 
                if (inputStream != null) {
-                  scanner = new Scanner(inputStream, "UTF-8");
-                  json = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
-                  scanner.close();
+                  json = readResponseBody(con, inputStream);
+                  responseConsumed = true;
                   OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OneSignalRestClient: " + method + " RECEIVED JSON: " + json);
                }
                else
                   OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OneSignalRestClient: " + method + " HTTP Code: " + httpResponse + " No response body!");
 
-               callbackThread = callResponseHandlerOnFailure(responseHandler, httpResponse, null, null);
+               callback = responseHandlerOnFailure(responseHandler, httpResponse, null, null);
          }
       } catch (Throwable t) {
          if (t instanceof java.net.ConnectException || t instanceof java.net.UnknownHostException)
@@ -240,45 +553,106 @@ class OneSignalRestClient {
          else
             OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OneSignalRestClient: " + method + " Error thrown from network stack. ", t);
    
-         callbackThread = callResponseHandlerOnFailure(responseHandler, httpResponse, null, t);
+         callback = responseHandlerOnFailure(responseHandler, httpResponse, null, t);
       }
       finally {
-         if (con != null)
+         // Connections that hit an error or still have unread data can't be reused so they are dropped
+         if (con != null && !(connectionReuseEnabled && responseConsumed))
             con.disconnect();
+
+         trackRequestTiming(url, method, startTime, responseTime);
       }
       
-      return callbackThread;
+      return callback;
+   }
+
+   private static void saveCachedResponse(ResponseCache responseCache, String eTag, String response) {
+      OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Response has etag of " + eTag + " so caching the response.");
+      responseCache.saveResponse(eTag, response);
+   }
+
+   // Decodes the body if the server sent it gzipped
+   private static Reader newResponseReader(HttpURLConnection con, InputStream inputStream) throws IOException {
+      if ("gzip".equalsIgnoreCase(con.getContentEncoding()))
+         inputStream = new GZIPInputStream(inputStream);
+      return new InputStreamReader(inputStream, "UTF-8");
+   }
+
+   // Parses the body as it is read, without holding the full response as a String, then closes the stream
+   private static JSONObject readJSONResponseBody(HttpURLConnection con, InputStream inputStream) throws IOException, JSONException {
+      JsonReader reader = new JsonReader(newResponseReader(con, inputStream));
+      try {
+         return JSONUtils.readJSONObject(reader);
+      } finally {
+         reader.close();
+      }
+   }
+
+   // Reads the whole body and closes the stream
+   private static String readResponseBody(HttpURLConnection con, InputStream inputStream) throws IOException {
+      Reader reader = newResponseReader(con, inputStream);
+      try {
+         StringBuilder body = new StringBuilder();
+         char[] buffer = new char[4_096];
+         int read;
+         while ((read = reader.read(buffer)) != -1)
+            body.append(buffer, 0, read);
+         return body.toString();
+      } finally {
+         reader.close();
+      }
+   }
+
+   private static void trackRequestTiming(String url, String method, long startTime, long responseTime) {
+      long finishedTime = SystemClock.elapsedRealtime();
+      long idleBeforeMs;
+      synchronized (OneSignalRestClient.class) {
+         idleBeforeMs = lastRequestFinishedTime == 0 ? -1 : Math.max(0, startTime - lastRequestFinishedTime);
+         lastRequestFinishedTime = finishedTime;
+      }
+
+      RequestTiming timing = new RequestTiming(
+         url,
+         method == null ? "GET" : method,
+         idleBeforeMs,
+         responseTime == -1 ? -1 : responseTime - startTime,
+         finishedTime - startTime
+      );
+      lastRequestTiming = timing;
+      OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Request finished with " + timing);
    }
    
    
-   // These helper methods run the callback a new thread so they don't count towards the fallback thread join timer.
+   // These helper methods wrap the callback so it can be run by the requesting thread once the connection task is done.
    
-   private static Thread callResponseHandlerOnSuccess(final ResponseHandler handler, final String response) {
+   private static Runnable responseHandlerOnSuccess(final ResponseHandler handler, final String response) {
       if (handler == null)
          return null;
       
-      Thread thread = new Thread(new Runnable() {
+      return new Runnable() {
          public void run() {
             handler.onSuccess(response);
          }
-      }, "OS_REST_SUCCESS_CALLBACK");
-      thread.start();
-      
-      return thread;
+      };
    }
    
-   private static Thread callResponseHandlerOnFailure(final ResponseHandler handler, final int statusCode, final String response, final Throwable throwable) {
+   private static Runnable responseHandlerOnSuccess(final JSONResponseHandler handler, final JSONObject response) {
+      return new Runnable() {
+         public void run() {
+            handler.onSuccess(response);
+         }
+      };
+   }
+   
+   private static Runnable responseHandlerOnFailure(final ResponseHandler handler, final int statusCode, final String response, final Throwable throwable) {
       if (handler == null)
          return null;
    
-      Thread thread = new Thread(new Runnable() {
+      return new Runnable() {
          public void run() {
             handler.onFailure(statusCode, response, throwable);
          }
-      }, "OS_REST_FAILURE_CALLBACK");
-      thread.start();
-      
-      return thread;
+      };
    }
 
    private static HttpURLConnection newHttpURLConnection(String url) throws IOException {
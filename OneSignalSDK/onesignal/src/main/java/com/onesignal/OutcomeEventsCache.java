@@ -12,33 +12,29 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 class OutcomeEventsCache {
 
+    // Stays below SQLite's default limit of 999 bound variables per statement, leaving room for the name arg
+    private static final int UNIQUE_OUTCOME_QUERY_CHUNK_SIZE = 500;
+
     /**
-     * Delete event from the DB
+     * Delete events from the DB in a single transaction
      */
     @WorkerThread
-    synchronized static void deleteOldOutcomeEvent(OutcomeEvent event, OneSignalDbHelper dbHelper) {
-        SQLiteDatabase writableDb = dbHelper.getWritableDbWithRetries();
-
-        try {
-            writableDb.beginTransaction();
-            writableDb.delete(OutcomeEventsTable.TABLE_NAME,
-                    OutcomeEventsTable.COLUMN_NAME_TIMESTAMP + " = ?", new String[]{String.valueOf(event.getTimestamp())});
-            writableDb.setTransactionSuccessful();
-        } catch (Throwable t) {
-            OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error deleting old outcome event records! ", t);
-        } finally {
-            if (writableDb != null) {
-                try {
-                    writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
-                } catch (Throwable t) {
-                    OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error closing transaction! ", t);
+    synchronized static void deleteOldOutcomeEvents(final List<OutcomeEvent> events, OneSignalDbHelper dbHelper) {
+        dbHelper.executeWrite("Error deleting old outcome event records! ", new OneSignalDbHelper.WriteOperation() {
+            @Override
+            public void run(SQLiteDatabase writableDb) {
+                for (OutcomeEvent event : events) {
+                    writableDb.delete(OutcomeEventsTable.TABLE_NAME,
+                            OutcomeEventsTable.COLUMN_NAME_TIMESTAMP + " = ?", new String[]{String.valueOf(event.getTimestamp())});
                 }
             }
-        }
+        });
     }
 
     /**
@@ -48,18 +44,21 @@ class OutcomeEventsCache {
      */
     @WorkerThread
     synchronized static void saveOutcomeEvent(OutcomeEvent event, OneSignalDbHelper dbHelper) {
-        SQLiteDatabase writableDb = dbHelper.getWritableDbWithRetries();
         String notificationIds = event.getNotificationIds() != null ? event.getNotificationIds().toString() : "[]";
 
-        ContentValues values = new ContentValues();
+        final ContentValues values = new ContentValues();
         values.put(OutcomeEventsTable.COLUMN_NAME_NOTIFICATION_IDS, notificationIds);
         values.put(OutcomeEventsTable.COLUMN_NAME_SESSION, event.getSession().toString().toLowerCase());
         values.put(OutcomeEventsTable.COLUMN_NAME_NAME, event.getName());
         values.put(OutcomeEventsTable.COLUMN_NAME_TIMESTAMP, event.getTimestamp());
         values.put(OutcomeEventsTable.COLUMN_NAME_WEIGHT, event.getWeight());
 
-        writableDb.insert(OutcomeEventsTable.TABLE_NAME, null, values);
-        writableDb.close();
+        dbHelper.executeWrite("Error saving outcome event! ", new OneSignalDbHelper.WriteOperation() {
+            @Override
+            public void run(SQLiteDatabase writableDb) {
+                writableDb.insert(OutcomeEventsTable.TABLE_NAME, null, values);
+            }
+        });
     }
 
     /**
@@ -112,75 +111,139 @@ class OutcomeEventsCache {
 
     /**
      * Save a JSONArray of notification ids as separate items with the unique outcome name
+     * <p>
+     * All rows are inserted in a single transaction
      */
     @WorkerThread
-    synchronized static void saveUniqueOutcomeNotifications(JSONArray notificationIds, String outcomeName, OneSignalDbHelper dbHelper) {
-        if (notificationIds == null)
+    synchronized static void saveUniqueOutcomeNotifications(final JSONArray notificationIds, final String outcomeName, OneSignalDbHelper dbHelper) {
+        if (notificationIds == null || notificationIds.length() == 0)
             return;
 
-        SQLiteDatabase writableDb = dbHelper.getWritableDbWithRetries();
-        try {
-            for (int i = 0; i < notificationIds.length(); i++) {
+        dbHelper.executeWrite("Error saving unique outcome notifications! ", new OneSignalDbHelper.WriteOperation() {
+            @Override
+            public void run(SQLiteDatabase writableDb) throws JSONException {
                 ContentValues values = new ContentValues();
+                for (int i = 0; i < notificationIds.length(); i++) {
+                    values.clear();
+                    values.put(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID, notificationIds.getString(i));
+                    values.put(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NAME, outcomeName);
 
-                String notificationId = notificationIds.getString(i);
-                values.put(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID, notificationId);
-                values.put(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NAME, outcomeName);
-
-                writableDb.insert(CachedUniqueOutcomeNotificationTable.TABLE_NAME, null, values);
+                    writableDb.insert(CachedUniqueOutcomeNotificationTable.TABLE_NAME, null, values);
+                }
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
+        });
+    }
+
+    /**
+     * Get up to limit cached unique outcome notifications, most recently saved first
+     */
+    @WorkerThread
+    synchronized static List<CachedUniqueOutcomeNotification> getCachedUniqueOutcomeNotifications(int limit, OneSignalDbHelper dbHelper) {
+        List<CachedUniqueOutcomeNotification> notifications = new ArrayList<>();
+        Cursor cursor = null;
+
+        try {
+            SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
+            cursor = readableDb.query(
+                    CachedUniqueOutcomeNotificationTable.TABLE_NAME,
+                    new String[]{CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID, CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NAME},
+                    null,
+                    null,
+                    null,
+                    null,
+                    CachedUniqueOutcomeNotificationTable._ID + " DESC",
+                    String.valueOf(limit)
+            );
+
+            int idColumn = cursor.getColumnIndex(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID);
+            int nameColumn = cursor.getColumnIndex(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NAME);
+            while (cursor.moveToNext())
+                notifications.add(new CachedUniqueOutcomeNotification(cursor.getString(idColumn), cursor.getString(nameColumn)));
+        } finally {
+            if (cursor != null && !cursor.isClosed())
+                cursor.close();
         }
 
-        writableDb.close();
+        return notifications;
     }
 
     /**
      * Create a JSONArray of not cached notification ids from the unique outcome notifications SQL table
+     * <p>
+     * Cached ids are looked up with one IN (...) query per chunk of {@link #UNIQUE_OUTCOME_QUERY_CHUNK_SIZE} ids
+     * instead of one query per notification id
      */
     @WorkerThread
     synchronized static JSONArray getNotCachedUniqueOutcomeNotifications(String name, JSONArray notificationIds, OneSignalDbHelper dbHelper) {
         JSONArray uniqueNotificationIds = new JSONArray();
+        if (notificationIds == null || notificationIds.length() == 0)
+            return uniqueNotificationIds;
 
-        SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
-        Cursor cursor = null;
-
+        List<String> ids = new ArrayList<>(notificationIds.length());
         try {
-            for (int i = 0; i < notificationIds.length(); i++) {
-                String notificationId = notificationIds.getString(i);
-                CachedUniqueOutcomeNotification notification = new CachedUniqueOutcomeNotification(notificationId, name);
+            for (int i = 0; i < notificationIds.length(); i++)
+                ids.add(notificationIds.getString(i));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return uniqueNotificationIds;
+        }
+
+        Set<String> cachedIds = getCachedUniqueOutcomeNotificationIds(name, ids, dbHelper);
+
+        // Keep the original order, adding only the items that are not cached
+        for (String notificationId : ids) {
+            if (!cachedIds.contains(notificationId))
+                uniqueNotificationIds.put(notificationId);
+        }
+
+        return uniqueNotificationIds;
+    }
 
-                String[] columns = new String[]{};
+    /**
+     * Query the subset of ids already cached for the unique outcome name
+     */
+    private static Set<String> getCachedUniqueOutcomeNotificationIds(String name, List<String> ids, OneSignalDbHelper dbHelper) {
+        Set<String> cachedIds = new HashSet<>();
+        SQLiteDatabase readableDb = dbHelper.getReadableDbWithRetries();
 
-                String where = CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID +  " = ? AND " +
-                        CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NAME +  " = ?";
+        String[] columns = new String[]{CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID};
 
-                String[] args = new String[]{notification.getNotificationId(), notification.getName()};
+        for (int start = 0; start < ids.size(); start += UNIQUE_OUTCOME_QUERY_CHUNK_SIZE) {
+            List<String> chunk = ids.subList(start, Math.min(start + UNIQUE_OUTCOME_QUERY_CHUNK_SIZE, ids.size()));
 
+            StringBuilder where = new StringBuilder(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NAME)
+                    .append(" = ? AND ")
+                    .append(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID)
+                    .append(" IN (");
+            String[] args = new String[chunk.size() + 1];
+            args[0] = name;
+            for (int i = 0; i < chunk.size(); i++) {
+                where.append(i == 0 ? "?" : ",?");
+                args[i + 1] = chunk.get(i);
+            }
+            where.append(")");
+
+            Cursor cursor = null;
+            try {
                 cursor = readableDb.query(
-                        OneSignalDbContract.CachedUniqueOutcomeNotificationTable.TABLE_NAME,
+                        CachedUniqueOutcomeNotificationTable.TABLE_NAME,
                         columns,
-                        where,
+                        where.toString(),
                         args,
                         null,
                         null,
-                        null,
-                        "1"
+                        null
                 );
 
-                // Item is not cached, add it to the JSONArray
-                if (cursor.getCount() == 0)
-                    uniqueNotificationIds.put(notificationId);
-
+                int idColumn = cursor.getColumnIndex(CachedUniqueOutcomeNotificationTable.COLUMN_NAME_NOTIFICATION_ID);
+                while (cursor.moveToNext())
+                    cachedIds.add(cursor.getString(idColumn));
+            } finally {
+                if (cursor != null && !cursor.isClosed())
+                    cursor.close();
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
-        } finally {
-            if (cursor != null && !cursor.isClosed())
-                cursor.close();
         }
 
-        return uniqueNotificationIds;
+        return cachedIds;
     }
 }
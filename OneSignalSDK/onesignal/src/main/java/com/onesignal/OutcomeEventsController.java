@@ -3,12 +3,17 @@ package com.onesignal;
 import android.os.Process;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 class OutcomeEventsController {
 
@@ -16,6 +21,17 @@ class OutcomeEventsController {
     private static final String OS_SEND_SAVED_OUTCOMES = "OS_SEND_SAVED_OUTCOMES";
     private static final String OS_SAVE_UNIQUE_OUTCOME_NOTIFICATIONS = "OS_SAVE_UNIQUE_OUTCOME_NOTIFICATIONS";
 
+    // Max saved outcomes sent at once, the next batch is only sent once all requests of the current one finish
+    static final int SAVED_OUTCOMES_BATCH_SIZE = 10;
+    // Batches with failures in a row before giving up, remaining outcomes stay cached for the next cold start
+    static final int SAVED_OUTCOMES_MAX_FAILED_BATCHES = 4;
+    private static final int SAVED_OUTCOMES_BASE_BACKOFF_MS = 5_000;
+    private static final int SAVED_OUTCOMES_MAX_BACKOFF_MS = 60_000;
+    // Longer than the OneSignalRestClient request timeout so the batch isn't abandoned before it's requests
+    private static final int SAVED_OUTCOMES_BATCH_TIMEOUT_MS = 130_000;
+
+    private final Random backoffJitter = new Random();
+
     // Keeps track of unique outcome events sent for UNATTRIBUTED sessions on a per session level
     private Set<String> unattributedUniqueOutcomeEventsSentSet;
 
@@ -23,10 +39,14 @@ class OutcomeEventsController {
     private final OutcomeEventsRepository outcomeEventsRepository;
     @NonNull
     private final OSSessionManager osSessionManager;
+    // In memory view of the ATTRIBUTED unique outcome notifications saved to SQL
+    @NonNull
+    private final CachedUniqueOutcomeNotificationIndex uniqueOutcomeNotificationIndex;
 
     public OutcomeEventsController(@NonNull OSSessionManager osSessionManager, @NonNull OutcomeEventsRepository outcomeEventsRepository) {
         this.osSessionManager = osSessionManager;
         this.outcomeEventsRepository = outcomeEventsRepository;
+        this.uniqueOutcomeNotificationIndex = new CachedUniqueOutcomeNotificationIndex(outcomeEventsRepository);
 
         initUniqueOutcomeEventsSentSets();
     }
@@ -34,6 +54,7 @@ class OutcomeEventsController {
     OutcomeEventsController(@NonNull OSSessionManager osSessionManager, @NonNull OneSignalDbHelper dbHelper) {
         this.outcomeEventsRepository = new OutcomeEventsRepository(dbHelper);
         this.osSessionManager = osSessionManager;
+        this.uniqueOutcomeNotificationIndex = new CachedUniqueOutcomeNotificationIndex(outcomeEventsRepository);
 
         initUniqueOutcomeEventsSentSets();
     }
@@ -71,36 +92,131 @@ class OutcomeEventsController {
                 Thread.currentThread().setPriority(Process.THREAD_PRIORITY_BACKGROUND);
 
                 List<OutcomeEvent> outcomeEvents = outcomeEventsRepository.getSavedOutcomeEvents();
-                for (OutcomeEvent event : outcomeEvents) {
-                    sendSavedOutcomeEvent(event);
-                }
+                sendSavedOutcomesInBatches(outcomeEvents);
             }
         }, OS_SEND_SAVED_OUTCOMES).start();
     }
 
-    private void sendSavedOutcomeEvent(@NonNull final OutcomeEvent event) {
+    /**
+     * Send saved outcomes a batch at a time instead of all at once so a large cache doesn't flood the network on reconnect.
+     * Sent outcomes of a batch are removed from the DB together, and a batch with failures backs off before the next one.
+     */
+    @WorkerThread
+    private void sendSavedOutcomesInBatches(@NonNull List<OutcomeEvent> outcomeEvents) {
+        List<OutcomeEvent> pendingEvents = new ArrayList<>(outcomeEvents);
+        int failedBatches = 0;
+
+        while (!pendingEvents.isEmpty()) {
+            List<OutcomeEvent> batch = new ArrayList<>(pendingEvents.subList(0, Math.min(SAVED_OUTCOMES_BATCH_SIZE, pendingEvents.size())));
+            pendingEvents.subList(0, batch.size()).clear();
+
+            // Split by position in the batch, equal outcomes can be saved more than once
+            boolean[] sent = sendSavedOutcomeBatch(batch);
+            List<OutcomeEvent> sentEvents = new ArrayList<>();
+            List<OutcomeEvent> failedEvents = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (sent[i])
+                    sentEvents.add(batch.get(i));
+                else
+                    failedEvents.add(batch.get(i));
+            }
+
+            if (!sentEvents.isEmpty())
+                outcomeEventsRepository.removeEvents(sentEvents);
+
+            if (failedEvents.isEmpty()) {
+                failedBatches = 0;
+                continue;
+            }
+
+            failedBatches++;
+            if (failedBatches >= SAVED_OUTCOMES_MAX_FAILED_BATCHES) {
+                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Sending saved outcomes failed " + failedBatches + " times in a row, will retry on next cold start");
+                return;
+            }
+
+            // Retry the failed outcomes first after waiting
+            pendingEvents.addAll(0, failedEvents);
+
+            int backoffMs = getSavedOutcomesBackoffMs(failedBatches);
+            OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Sending saved outcomes failed, trying again in " + backoffMs + "ms");
+            OSUtils.sleep(backoffMs);
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter, so devices coming back online at the same time don't retry together
+     */
+    int getSavedOutcomesBackoffMs(int failedBatches) {
+        int backoffMs = Math.min(SAVED_OUTCOMES_MAX_BACKOFF_MS, SAVED_OUTCOMES_BASE_BACKOFF_MS << (failedBatches - 1));
+        return backoffMs / 2 + backoffJitter.nextInt(backoffMs / 2 + 1);
+    }
+
+    /**
+     * Send all outcomes of the batch and wait for their responses
+     * @return for each outcome of the batch, true if it was sent successfully
+     */
+    @WorkerThread
+    private @NonNull boolean[] sendSavedOutcomeBatch(@NonNull List<OutcomeEvent> batch) {
+        final boolean[] sent = new boolean[batch.size()];
+        final CountDownLatch responsesLatch = new CountDownLatch(batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            final OutcomeEvent event = batch.get(i);
+            final int index = i;
+            OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
+                @Override
+                void onSuccess(String response) {
+                    super.onSuccess(response);
+                    synchronized (sent) {
+                        sent[index] = true;
+                    }
+                    responsesLatch.countDown();
+                }
+
+                @Override
+                void onFailure(int statusCode, String response, Throwable throwable) {
+                    super.onFailure(statusCode, response, throwable);
+                    responsesLatch.countDown();
+                }
+            };
+
+            if (!sendSavedOutcomeEvent(event, responseHandler))
+                responsesLatch.countDown();
+        }
+
+        try {
+            responsesLatch.await(SAVED_OUTCOMES_BATCH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        // Responses arriving after the timeout are not counted as sent, the outcome stays saved
+        synchronized (sent) {
+            return sent.clone();
+        }
+    }
+
+    /**
+     * @return false if no request was made for the event's session
+     */
+    private boolean sendSavedOutcomeEvent(@NonNull final OutcomeEvent event, @NonNull OneSignalRestClient.ResponseHandler responseHandler) {
         OSSessionManager.Session session = event.getSession();
         int deviceType = new OSUtils().getDeviceType();
         String appId = OneSignal.appId;
 
-        OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
-            @Override
-            void onSuccess(String response) {
-                super.onSuccess(response);
-                outcomeEventsRepository.removeEvent(event);
-            }
-        };
-
         switch (session) {
             case DIRECT:
                 outcomeEventsRepository.requestMeasureDirectOutcomeEvent(appId, deviceType, event, responseHandler);
-                break;
+                return true;
             case INDIRECT:
                 outcomeEventsRepository.requestMeasureIndirectOutcomeEvent(appId, deviceType, event, responseHandler);
-                break;
+                return true;
             case UNATTRIBUTED:
                 outcomeEventsRepository.requestMeasureUnattributedOutcomeEvent(appId, deviceType, event, responseHandler);
-                break;
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -224,6 +340,9 @@ class OutcomeEventsController {
      * Save the ATTRIBUTED JSONArray of notification ids with unique outcome names to SQL
      */
     private void saveAttributedUniqueOutcomeNotifications(final JSONArray notificationIds, final String name) {
+        // Write through so repeated calls don't send again while the DB insert is still pending
+        uniqueOutcomeNotificationIndex.addAll(notificationIds, name);
+
         new Thread(new Runnable() {
             @Override
             public void run() {
@@ -248,7 +367,7 @@ class OutcomeEventsController {
      * Get the unique notifications that have not been cached/sent before with the current unique outcome name
      */
     private JSONArray getUniqueNotificationIds(String name, JSONArray notificationIds) {
-        JSONArray uniqueNotificationIds = outcomeEventsRepository.getNotCachedUniqueOutcomeNotifications(name, notificationIds);
+        JSONArray uniqueNotificationIds = uniqueOutcomeNotificationIndex.getNotCachedUniqueOutcomeNotifications(name, notificationIds);
         if (uniqueNotificationIds.length() == 0)
             return null;
 
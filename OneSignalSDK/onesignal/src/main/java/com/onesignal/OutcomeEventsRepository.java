@@ -33,8 +33,8 @@ class OutcomeEventsRepository {
         OutcomeEventsCache.saveOutcomeEvent(event, dbHelper);
     }
 
-    void removeEvent(OutcomeEvent outcomeEvent) {
-        OutcomeEventsCache.deleteOldOutcomeEvent(outcomeEvent, dbHelper);
+    void removeEvents(List<OutcomeEvent> outcomeEvents) {
+        OutcomeEventsCache.deleteOldOutcomeEvents(outcomeEvents, dbHelper);
     }
 
     void requestMeasureDirectOutcomeEvent(String appId, int deviceType, OutcomeEvent event, OneSignalRestClient.ResponseHandler responseHandler) {
@@ -85,4 +85,8 @@ class OutcomeEventsRepository {
     JSONArray getNotCachedUniqueOutcomeNotifications(String name, JSONArray notificationIds) {
         return OutcomeEventsCache.getNotCachedUniqueOutcomeNotifications(name, notificationIds, dbHelper);
     }
+
+    List<CachedUniqueOutcomeNotification> getCachedUniqueOutcomeNotifications(int limit) {
+        return OutcomeEventsCache.getCachedUniqueOutcomeNotifications(limit, dbHelper);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+package com.onesignal;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A push payload with its {@code custom} field parsed once.
+ * <p>
+ * {@code custom} is a JSON string inside the payload. It is parsed when the push is received and
+ * the result is carried with the payload through {@link NotificationGenerationJob}, so the notification id,
+ * additional data and action buttons are read without parsing the string again.
+ * <p>
+ * {@link #json} keeps {@code custom} as a string since it is what is saved to the DB and passed to other components.
+ * Neither object should be modified after parsing.
+ */
+class ParsedPushPayload {
+
+   static final String CUSTOM_KEY = "custom";
+   private static final String NOTIFICATION_ID_KEY = "i";
+   private static final String ADDITIONAL_DATA_KEY = "a";
+   private static final String MINIFIED_BUTTONS_KEY = "o";
+   static final String ACTION_BUTTONS_KEY = "actionButtons";
+   static final String ACTION_SELECTED_KEY = "actionSelected";
+
+   final @NonNull JSONObject json;
+   // null if the payload has no custom field or it isn't valid JSON
+   final @Nullable JSONObject custom;
+
+   private ParsedPushPayload(@NonNull JSONObject json, @Nullable JSONObject custom) {
+      this.json = json;
+      this.custom = custom;
+   }
+
+   static @NonNull ParsedPushPayload fromJson(@NonNull JSONObject json) {
+      JSONObject custom = null;
+      String customStr = json.optString(CUSTOM_KEY, null);
+      if (customStr != null) {
+         try {
+            custom = new JSONObject(customStr);
+         } catch (JSONException e) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Not a OneSignal formatted GCM message. Could not parse 'custom' field.");
+         }
+      }
+      return new ParsedPushPayload(json, custom);
+   }
+
+   /**
+    * Converts a bundle from a GCM / ADM receiver in one pass, parsing custom and unminifying its action buttons.
+    * The bundle is updated with the unminified buttons too.
+    * @return null if the bundle is not a OneSignal push
+    */
+   static @Nullable ParsedPushPayload fromBundle(@NonNull Bundle bundle) {
+      if (bundle.isEmpty())
+         return null;
+
+      String customStr = bundle.getString(CUSTOM_KEY);
+      if (customStr == null) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Not a OneSignal formatted GCM message. No 'custom' field in the bundle.");
+         return null;
+      }
+
+      JSONObject custom;
+      try {
+         custom = new JSONObject(customStr);
+      } catch (JSONException e) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Could not parse bundle, probably not a OneSignal notification.", e);
+         return null;
+      }
+
+      if (!custom.has(NOTIFICATION_ID_KEY)) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Not a OneSignal formatted GCM message. No 'i' field in custom.");
+         return null;
+      }
+
+      if (bundle.containsKey(MINIFIED_BUTTONS_KEY))
+         unMinifyActionButtons(bundle, custom);
+
+      return new ParsedPushPayload(NotificationBundleProcessor.bundleAsJSONObject(bundle), custom);
+   }
+
+   // Format our short button keys into more readable ones.
+   private static void unMinifyActionButtons(Bundle bundle, JSONObject custom) {
+      try {
+         Object additionalDataValue = custom.opt(ADDITIONAL_DATA_KEY);
+         if (additionalDataValue != null && !(additionalDataValue instanceof JSONObject))
+            throw new JSONException("'" + ADDITIONAL_DATA_KEY + "' in custom is not a JSONObject");
+
+         JSONArray buttons = new JSONArray(bundle.getString(MINIFIED_BUTTONS_KEY));
+         for (int i = 0; i < buttons.length(); i++) {
+            JSONObject button = buttons.getJSONObject(i);
+
+            String buttonText = button.getString("n");
+            button.remove("n");
+            String buttonId;
+            if (button.has("i")) {
+               buttonId = button.getString("i");
+               button.remove("i");
+            } else
+               buttonId = buttonText;
+
+            button.put("id", buttonId);
+            button.put("text", buttonText);
+
+            if (button.has("p")) {
+               button.put("icon", button.getString("p"));
+               button.remove("p");
+            }
+         }
+
+         // Custom is only changed once all buttons were read
+         JSONObject additionalData = additionalDataValue != null ? (JSONObject) additionalDataValue : new JSONObject();
+         additionalData.put(ACTION_BUTTONS_KEY, buttons);
+         additionalData.put(ACTION_SELECTED_KEY, NotificationBundleProcessor.DEFAULT_ACTION);
+         if (additionalDataValue == null)
+            custom.put(ADDITIONAL_DATA_KEY, additionalData);
+
+         bundle.remove(MINIFIED_BUTTONS_KEY);
+         bundle.putString(CUSTOM_KEY, custom.toString());
+      } catch (JSONException e) {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * @return the OneSignal notification id, null if this is not a OneSignal push
+    */
+   @Nullable String getNotificationId() {
+      if (custom == null)
+         return null;
+      return custom.optString(NOTIFICATION_ID_KEY, null);
+   }
+
+   @Nullable JSONObject getAdditionalData() {
+      if (custom == null)
+         return null;
+      return custom.optJSONObject(ADDITIONAL_DATA_KEY);
+   }
+
+   @Nullable String getAdditionalDataString(@NonNull String key) {
+      JSONObject additionalData = getAdditionalData();
+      if (additionalData == null || !additionalData.has(key))
+         return null;
+      return additionalData.optString(key);
+   }
+
+   /**
+    * Action buttons as id, text and icon objects
+    * @return empty if the push has none
+    */
+   @NonNull List<JSONObject> getActionButtons() {
+      List<JSONObject> actionButtons = new ArrayList<>();
+      JSONObject additionalData = getAdditionalData();
+      if (additionalData == null)
+         return actionButtons;
+
+      JSONArray buttons = additionalData.optJSONArray(ACTION_BUTTONS_KEY);
+      if (buttons == null)
+         return actionButtons;
+
+      for (int i = 0; i < buttons.length(); i++) {
+         JSONObject button = buttons.optJSONObject(i);
+         if (button != null)
+            actionButtons.add(button);
+      }
+      return actionButtons;
+   }
+
+   /**
+    * Shallow copy of {@link #json} that can be modified without changing this payload
+    */
+   @NonNull JSONObject copyJson() {
+      return copyOf(json);
+   }
+
+   static @NonNull JSONObject copyOf(@NonNull JSONObject jsonObject) {
+      JSONObject copy = new JSONObject();
+      Iterator<String> keys = jsonObject.keys();
+      while (keys.hasNext()) {
+         String key = keys.next();
+         try {
+            copy.put(key, jsonObject.opt(key));
+         } catch (JSONException e) {
+            // Keys of a JSONObject are never null
+         }
+      }
+      return copy;
+   }
+
+   /**
+    * Same payload with the android notification id added to its json, custom stays shared
+    */
+   @NonNull ParsedPushPayload withAndroidNotificationId(int androidNotificationId) {
+      JSONObject jsonCopy = copyJson();
+      try {
+         jsonCopy.put("notificationId", androidNotificationId);
+      } catch (JSONException e) {
+         // Key is not null
+      }
+      return new ParsedPushPayload(jsonCopy, custom);
+   }
+}
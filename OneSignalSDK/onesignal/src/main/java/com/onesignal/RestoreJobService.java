@@ -34,6 +34,15 @@ public class RestoreJobService extends JobIntentService {
 
    static final int RESTORE_SERVICE_JOB_ID = 2071862122;
 
+   // Shared by every restore so batches queued back to back are still paced together
+   private static TokenBucket rateLimiter;
+
+   static synchronized TokenBucket getRateLimiter() {
+      if (rateLimiter == null)
+         rateLimiter = new TokenBucket(NotificationRestorer.RESTORE_BURST, NotificationRestorer.DELAY_BETWEEN_NOTIFICATION_RESTORES_MS);
+      return rateLimiter;
+   }
+
    protected final void onHandleWork(Intent intent) {
       if (intent == null)
          return;
@@ -43,6 +52,11 @@ public class RestoreJobService extends JobIntentService {
       if (extras == null)
          return;
 
+      if (extras.containsKey(NotificationRestorer.EXTRA_RESTORE_BATCH)) {
+         NotificationRestorer.restoreBatch(getApplicationContext(), intent);
+         return;
+      }
+
       NotificationBundleProcessor.ProcessFromGCMIntentService(
             getApplicationContext(),
             new BundleCompatBundle(extras),
@@ -0,0 +1,43 @@
+package com.onesignal;
+
+import android.os.SystemClock;
+
+/**
+ * Paces work to a steady rate while still allowing a small burst.
+ * <p>
+ * One token is added every {@code intervalMs} up to {@code capacity} tokens. Time spent doing the work
+ * counts towards the next token so callers only wait for the part of the interval not already spent.
+ * Nothing blocks here, callers wait on their own thread until the next token is available.
+ */
+class TokenBucket {
+
+   private final int capacity;
+   private final long intervalMs;
+
+   // Time at which the next token is available
+   private long nextTokenAt;
+
+   TokenBucket(int capacity, long intervalMs) {
+      this.capacity = capacity;
+      this.intervalMs = intervalMs;
+   }
+
+   /**
+    * Takes a token if one is available now
+    * @return 0 if a token was taken, otherwise time in ms until the next token is available
+    */
+   synchronized long tryAcquire() {
+      long now = SystemClock.elapsedRealtime();
+
+      // Unused tokens accumulate up to capacity while idle
+      long earliestTokenAt = now - (capacity - 1) * intervalMs;
+      if (nextTokenAt < earliestTokenAt)
+         nextTokenAt = earliestTokenAt;
+
+      if (nextTokenAt > now)
+         return nextTokenAt - now;
+
+      nextTokenAt += intervalMs;
+      return 0;
+   }
+}
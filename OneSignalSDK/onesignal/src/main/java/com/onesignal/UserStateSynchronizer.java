@@ -325,7 +325,7 @@ abstract class UserStateSynchronizer {
 
         waitingForSessionResponse = true;
         addOnSessionOrCreateExtras(jsonBody);
-        OneSignalRestClient.postSync(urlStr, jsonBody, new OneSignalRestClient.ResponseHandler() {
+        OneSignalRestClient.postSync(urlStr, jsonBody, new OneSignalRestClient.JSONResponseHandler() {
             @Override
             void onFailure(int statusCode, String response, Throwable throwable) {
                 synchronized (syncLock) {
@@ -339,15 +339,22 @@ abstract class UserStateSynchronizer {
                 }
             }
 
+            // IAM lists in this response can be large, so it is parsed straight from the network stream
             @Override
-            void onSuccess(String response) {
+            void onSuccess(JSONObject jsonResponse) {
                 synchronized (syncLock) {
                     waitingForSessionResponse = false;
                     currentUserState.persistStateAfterSync(dependDiff, jsonBody);
 
+                    // The server applied the update even if its response can't be read
+                    if (jsonResponse == null) {
+                        OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "ERROR parsing on_session or create JSON Response.");
+                        return;
+                    }
+
                     try {
-                        OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG, "doCreateOrNewSession:response: " + response);
-                        JSONObject jsonResponse = new JSONObject(response);
+                        if (OneSignal.atLogLevel(OneSignal.LOG_LEVEL.DEBUG))
+                            OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG, "doCreateOrNewSession:response: " + jsonResponse);
 
                         if (jsonResponse.has("id")) {
                             String newUserId = jsonResponse.optString("id");
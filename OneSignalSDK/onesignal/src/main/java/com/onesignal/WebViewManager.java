@@ -60,12 +60,22 @@ class WebViewManager extends ActivityLifecycleHandler.ActivityAvailableListener
     @Nullable private InAppMessageView messageView;
 
     @Nullable protected static WebViewManager lastInstance = null;
+    // Queued message rendered off-screen ahead of being displayed
+    @Nullable private static WebViewManager preloadedInstance = null;
 
     @NonNull private Activity activity;
     @NonNull private OSInAppMessage message;
 
     private boolean firstShow = true;
 
+    // Set while rendered ahead of display, the message view is only created once it's displayed
+    private boolean preloading;
+    // Result of rendering_complete while preloading, null until then
+    @Nullable private Position renderedDisplayLocation;
+    private int renderedPageHeight;
+    // Set on the main thread once a preloaded instance is discarded, its WebView is destroyed or never created
+    private boolean destroyed;
+
     interface OneSignalGenericCallback {
         void onComplete();
     }
@@ -87,9 +97,15 @@ class WebViewManager extends ActivityLifecycleHandler.ActivityAvailableListener
         /* IMPORTANT
          * This is the starting route for grabbing the current Activity and passing it to InAppMessageView */
         if (currentActivity != null) {
+            // Already rendered off-screen while it was queued
+            WebViewManager preloaded = takePreloadedInstance(message, currentActivity);
+            if (preloaded != null) {
+                lastInstance = preloaded;
+                preloaded.showPreloaded();
+            }
             // Only a preview will be dismissed, this prevents normal messages from being
             // removed when a preview is sent into the app
-            if (lastInstance != null && message.isPreview) {
+            else if (lastInstance != null && message.isPreview) {
                 // Created a callback for dismissing a message and preparing the next one
                 lastInstance.dismissAndAwaitNextMessage(new OneSignalGenericCallback() {
                     @Override
@@ -115,27 +131,112 @@ class WebViewManager extends ActivityLifecycleHandler.ActivityAvailableListener
         }, IN_APP_MESSAGE_INIT_DELAY);
     }
 
-    private static void initInAppMessage(@NonNull final Activity currentActivity, @NonNull OSInAppMessage message, @NonNull String htmlStr) {
-        try {
-            final String base64Str = Base64.encodeToString(
-                    htmlStr.getBytes("UTF-8"),
-                    Base64.NO_WRAP
-            );
+    private static void initInAppMessage(@NonNull final Activity currentActivity, @NonNull OSInAppMessage message, @NonNull final String htmlStr) {
+        final WebViewManager webViewManager = new WebViewManager(message, currentActivity);
+        lastInstance = webViewManager;
 
-            final WebViewManager webViewManager = new WebViewManager(message, currentActivity);
-            lastInstance = webViewManager;
+        // Web view must be created on the main thread.
+        OSUtils.runOnMainUIThread(new Runnable() {
+            @Override
+            public void run() {
+                webViewManager.setupWebView(currentActivity, htmlStr);
+            }
+        });
+    }
 
-            // Web view must be created on the main thread.
-            OSUtils.runOnMainUIThread(new Runnable() {
-                @Override
-                public void run() {
-                    webViewManager.setupWebView(currentActivity, base64Str);
-                }
-            });
-        } catch (UnsupportedEncodingException e) {
-            OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Catch on initInAppMessage: ", e);
-            e.printStackTrace();
+    /**
+     * Loads and renders a queued message off-screen so {@link #showHTMLString} can show it
+     * without waiting on the WebView once it's displayed
+     *
+     * @param message the message displayed after the current one
+     * @param htmlStr the html to display on the WebView
+     */
+    static void preloadHTMLString(@NonNull final OSInAppMessage message, @NonNull final String htmlStr) {
+        final Activity currentActivity = ActivityLifecycleHandler.curActivity;
+        if (currentActivity == null || message.isPreview)
+            return;
+
+        synchronized (WebViewManager.class) {
+            if (preloadedInstance != null && preloadedInstance.message.messageId.equals(message.messageId))
+                return;
+        }
+
+        final WebViewManager webViewManager = new WebViewManager(message, currentActivity);
+        webViewManager.preloading = true;
+        WebViewManager replaced;
+        synchronized (WebViewManager.class) {
+            replaced = preloadedInstance;
+            preloadedInstance = webViewManager;
+        }
+        if (replaced != null)
+            replaced.destroyPreloaded();
+
+        OSUtils.runOnMainUIThread(new Runnable() {
+            @Override
+            public void run() {
+                webViewManager.setupWebView(currentActivity, htmlStr);
+            }
+        });
+    }
+
+    // The preloaded instance of the message, if it was rendered for the activity still showing
+    private static @Nullable WebViewManager takePreloadedInstance(@NonNull OSInAppMessage message, @NonNull Activity currentActivity) {
+        WebViewManager preloaded;
+        synchronized (WebViewManager.class) {
+            preloaded = preloadedInstance;
+            if (preloaded == null || message.isPreview || !preloaded.message.messageId.equals(message.messageId))
+                return null;
+            preloadedInstance = null;
+        }
+
+        // The WebView holds the activity it was created with, it's rendered again for the new one
+        if (preloaded.activity != currentActivity) {
+            preloaded.destroyPreloaded();
+            return null;
         }
+        return preloaded;
+    }
+
+    // Releases the WebView of a preloaded instance that won't be displayed
+    private void destroyPreloaded() {
+        OSUtils.runOnMainUIThread(new Runnable() {
+            @Override
+            public void run() {
+                destroyed = true;
+                if (webView == null)
+                    return;
+                webView.destroy();
+                webView = null;
+            }
+        });
+    }
+
+    private void showPreloaded() {
+        OSInAppMessageDisplayMetrics.onWarmWebViewUsed(message);
+
+        Position displayLocation;
+        int pageHeight;
+        synchronized (this) {
+            preloading = false;
+            displayLocation = renderedDisplayLocation;
+            pageHeight = renderedPageHeight;
+        }
+
+        // Still rendering, the message view is created once rendering_complete fires
+        if (displayLocation == null)
+            return;
+        createNewInAppMessageView(displayLocation, pageHeight);
+    }
+
+    private void onRenderComplete(@NonNull Position displayLocation, int pageHeight) {
+        synchronized (this) {
+            if (preloading) {
+                renderedDisplayLocation = displayLocation;
+                renderedPageHeight = pageHeight;
+                return;
+            }
+        }
+        createNewInAppMessageView(displayLocation, pageHeight);
     }
 
     // Lets JS from the page send JSON payloads to this class
@@ -173,7 +274,7 @@ class WebViewManager extends ActivityLifecycleHandler.ActivityAvailableListener
         private void handleRenderComplete(JSONObject jsonObject) {
             Position displayType = getDisplayLocation(jsonObject);
             int pageHeight = displayType == Position.FULL_SCREEN ? -1 : getPageHeightData(jsonObject);
-            createNewInAppMessageView(displayType, pageHeight);
+            onRenderComplete(displayType, pageHeight);
         }
 
         private int getPageHeightData(JSONObject jsonObject) {
@@ -289,10 +390,20 @@ class WebViewManager extends ActivityLifecycleHandler.ActivityAvailableListener
     }
 
     @SuppressLint({"SetJavaScriptEnabled", "AddJavascriptInterface"})
-    private void setupWebView(@NonNull final Activity currentActivity, final @NonNull String base64Message) {
+    private void setupWebView(@NonNull final Activity currentActivity, final @NonNull String htmlStr) {
+       if (destroyed)
+          return;
+
        enableWebViewRemoteDebugging();
 
-       webView = new OSWebView(currentActivity);
+       // Creating the first WebView of the process is slow, use the one created ahead of time if ready
+       webView = OSWebViewPool.takePooledWebView(currentActivity);
+       if (webView != null) {
+          if (!preloading)
+             OSInAppMessageDisplayMetrics.onWarmWebViewUsed(message);
+       }
+       else
+          webView = new OSWebView(currentActivity);
 
        webView.setOverScrollMode(View.OVER_SCROLL_NEVER);
        webView.setVerticalScrollBarEnabled(false);
@@ -307,12 +418,40 @@ class WebViewManager extends ActivityLifecycleHandler.ActivityAvailableListener
        OSViewUtils.decorViewReady(currentActivity, new Runnable() {
           @Override
           public void run() {
+             // Preloaded for a message that won't be displayed
+             if (destroyed)
+                return;
              setWebViewToMaxSize(currentActivity);
-             webView.loadData(base64Message,"text/html; charset=utf-8","base64");
+             loadHtml(webView, htmlStr);
           }
        });
     }
 
+    /**
+     * Loads the html string as is, the WebView reads it without it being copied first.
+     * If it can't be loaded directly it's encoded as base64 into a data URI instead,
+     * making a byte array and a base64 copy of the whole page.
+     */
+    static void loadHtml(@NonNull WebView webView, @NonNull String htmlStr) {
+        try {
+            webView.loadDataWithBaseURL(null, htmlStr, "text/html", "UTF-8", null);
+            return;
+        } catch (Throwable t) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "Could not load in-app message html directly, loading it as base64", t);
+        }
+
+        try {
+            String base64Str = Base64.encodeToString(
+                    htmlStr.getBytes("UTF-8"),
+                    Base64.NO_WRAP
+            );
+            webView.loadData(base64Str, "text/html; charset=utf-8", "base64");
+        } catch (UnsupportedEncodingException e) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Catch on loadHtml: ", e);
+            e.printStackTrace();
+        }
+    }
+
     private void blurryRenderingWebViewForKitKatWorkAround(@NonNull WebView webView) {
         // Android 4.4 has a rendering bug that cause the whole WebView to by extremely blurry
         // This is due to a bug with hardware rending so ensure it is disabled.
@@ -5,8 +5,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
+import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.onesignal.OneSignalPackagePrivateHelper.OSTestTrigger;
 import static com.onesignal.OneSignalPackagePrivateHelper.OSTestInAppMessage;
@@ -17,22 +23,193 @@ public class InAppMessagingHelpers {
     public static final String TEST_ENGLISH_ANDROID_VARIANT_ID = "11e4-bed1-df8f05be55ba-a4b3gj7f-d8cc";
     public static final String ONESIGNAL_APP_ID = "b2f7f966-d8cc-11e4-bed1-df8f05be55ba";
     public static final String IAM_CLICK_ID = "12345678-1234-1234-1234-123456789012";
+    public static final int HTML_PREFETCH_MAX_CONCURRENT = OSInAppMessageController.HTML_PREFETCH_MAX_CONCURRENT;
 
     public static boolean evaluateMessage(OSInAppMessage message) {
         return OSInAppMessageController.getController().triggerController.evaluateMessageTriggers(message);
     }
 
+    public static boolean evaluateCompiledTriggers(OSInAppMessage message, Map<String, Object> triggers) {
+        return message.getCompiledTriggers().evaluate(triggers, OSInAppMessageController.getController().triggerController.dynamicTriggerController);
+    }
+
+    /**
+     * Reference implementation walking the raw trigger arrays the way OSTriggerController did
+     * before triggers were compiled, used to check and benchmark OSTriggerPredicate
+     */
+    public static boolean evaluateInterpretedTriggers(OSInAppMessage message, Map<String, Object> triggers) {
+        if (message.triggers.size() == 0)
+            return true;
+
+        for (ArrayList<OSTrigger> andConditions : message.triggers) {
+            boolean allTrue = true;
+            for (OSTrigger trigger : andConditions) {
+                if (!evaluateInterpretedTrigger(trigger, triggers)) {
+                    allTrue = false;
+                    break;
+                }
+            }
+            if (allTrue)
+                return true;
+        }
+
+        return false;
+    }
+
+    private static boolean evaluateInterpretedTrigger(OSTrigger trigger, Map<String, Object> triggers) {
+        if (trigger.kind == OSTrigger.OSTriggerKind.UNKNOWN)
+            return false;
+
+        if (trigger.kind != OSTrigger.OSTriggerKind.CUSTOM)
+            return dynamicTriggerShouldFire(trigger);
+
+        OSTrigger.OSTriggerOperator operatorType = trigger.operatorType;
+        Object deviceValue = triggers.get(trigger.property);
+
+        if (deviceValue == null) {
+            if (operatorType == OSTrigger.OSTriggerOperator.NOT_EXISTS)
+                return true;
+            return operatorType == OSTrigger.OSTriggerOperator.NOT_EQUAL_TO && trigger.value != null;
+        }
+
+        if (operatorType == OSTrigger.OSTriggerOperator.EXISTS)
+            return true;
+        if (operatorType == OSTrigger.OSTriggerOperator.NOT_EXISTS)
+            return false;
+
+        if (operatorType == OSTrigger.OSTriggerOperator.CONTAINS)
+            return deviceValue instanceof Collection && ((Collection) deviceValue).contains(trigger.value);
+
+        if (deviceValue instanceof String && trigger.value instanceof String &&
+                interpretedStringMatch(trigger.value.toString(), deviceValue.toString(), operatorType))
+            return true;
+
+        if (trigger.value instanceof Number && deviceValue instanceof Number &&
+                interpretedNumericMatch(((Number) trigger.value).doubleValue(), ((Number) deviceValue).doubleValue(), operatorType))
+            return true;
+
+        if (trigger.value == null)
+            return false;
+
+        if (operatorType.checksEquality())
+            return interpretedStringMatch(trigger.value.toString(), deviceValue.toString(), operatorType);
+
+        if (deviceValue instanceof String && trigger.value instanceof Number) {
+            try {
+                return interpretedNumericMatch(((Number) trigger.value).doubleValue(), Double.parseDouble((String) deviceValue), operatorType);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean interpretedStringMatch(String triggerValue, String deviceValue, OSTrigger.OSTriggerOperator operator) {
+        switch (operator) {
+            case EQUAL_TO:
+                return triggerValue.equals(deviceValue);
+            case NOT_EQUAL_TO:
+                return !triggerValue.equals(deviceValue);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean interpretedNumericMatch(double triggerValue, double deviceValue, OSTrigger.OSTriggerOperator operator) {
+        switch (operator) {
+            case EQUAL_TO:
+                return deviceValue == triggerValue;
+            case NOT_EQUAL_TO:
+                return deviceValue != triggerValue;
+            case LESS_THAN:
+                return deviceValue < triggerValue;
+            case GREATER_THAN:
+                return deviceValue > triggerValue;
+            case LESS_THAN_OR_EQUAL_TO:
+                return deviceValue <= triggerValue;
+            case GREATER_THAN_OR_EQUAL_TO:
+                return deviceValue >= triggerValue;
+            default:
+                return false;
+        }
+    }
+
     public static boolean dynamicTriggerShouldFire(OSTrigger trigger) {
         return OSInAppMessageController.getController().triggerController.dynamicTriggerController.dynamicTriggerShouldFire(trigger);
     }
 
+    /**
+     * Evaluates the time-based triggers on a new dynamic trigger controller,
+     * conditionChangedCount counts the calls to its observer once the trigger timers fire
+     */
+    public static void dynamicTriggersShouldFire(Collection<? extends OSTrigger> triggers, final AtomicInteger conditionChangedCount) {
+        OSDynamicTriggerController dynamicTriggerController = new OSDynamicTriggerController(new OSDynamicTriggerController.OSDynamicTriggerControllerObserver() {
+            @Override
+            public void messageTriggerConditionChanged() {
+                conditionChangedCount.incrementAndGet();
+            }
+        });
+        for (OSTrigger trigger : triggers)
+            dynamicTriggerController.dynamicTriggerShouldFire(trigger);
+    }
+
+    /**
+     * Trigger timers run on the given executor, use with ShadowDynamicTimer.useRealScheduler.
+     * The executor is shut down when the test ends.
+     */
+    public static void setTriggerTimerScheduler(ScheduledThreadPoolExecutor scheduler) {
+        synchronized (OSDynamicTriggerTimer.class) {
+            OSDynamicTriggerTimer.scheduler = scheduler;
+        }
+    }
+
+    public static void scheduleTriggerTimer(TimerTask task, String triggerId, long delay) {
+        OSDynamicTriggerTimer.scheduleTrigger(task, triggerId, delay);
+    }
+
+    public static void scheduleTimer(Runnable task, long delay) {
+        OSDynamicTriggerTimer.schedule(task, delay);
+    }
+
+    public static void cancelTriggerTimer(String triggerId) {
+        OSDynamicTriggerTimer.cancelTrigger(triggerId);
+    }
+
     public static void resetSessionLaunchTime() {
         OSDynamicTriggerController.sessionLaunchTime = new Date();
     }
 
+    public static void prefetchMessageHtml() {
+        OSInAppMessageController.getController().prefetchMessageHtml();
+    }
+
+    // Occupies every html prefetch thread until the returned latch is counted down
+    public static CountDownLatch holdHtmlPrefetch() {
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        for (int i = 0; i < HTML_PREFETCH_MAX_CONCURRENT; i++) {
+            OSInAppMessageController.getHtmlPrefetchExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        releaseLatch.await();
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+        return releaseLatch;
+    }
+
+    public static int htmlPrefetchThreadCount() {
+        return OSInAppMessageController.getHtmlPrefetchExecutor().getPoolSize();
+    }
+
     public static void clearTestState() {
         OneSignal.pauseInAppMessages(false);
         ShadowOSInAppMessageController.displayedMessages.clear();
+        ShadowOSTriggerController.evaluatedMessages.clear();
         OSInAppMessageController.getController().messageDisplayQueue.clear();
     }
 
@@ -28,21 +28,34 @@
 package com.onesignal;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 public class MockHttpURLConnection extends HttpURLConnection {
    private boolean didInterruptMockHang;
+   private boolean didDisconnect;
+   private ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 
    public boolean getDidInterruptMockHang() {
       return didInterruptMockHang;
    }
 
+   public boolean getDidDisconnect() {
+      return didDisconnect;
+   }
+
+   public byte[] getOutputBytes() {
+      return outputStream.toByteArray();
+   }
+
    public static class MockResponse {
       public String responseBody;
       public boolean mockThreadHang;
@@ -59,7 +72,7 @@ public class MockHttpURLConnection extends HttpURLConnection {
 
    @Override
    public void disconnect() {
-
+      didDisconnect = true;
    }
 
    @Override
@@ -93,6 +106,19 @@ public class MockHttpURLConnection extends HttpURLConnection {
 
    @Override
    public InputStream getInputStream() throws IOException {
-      return new ByteArrayInputStream(StandardCharsets.UTF_8.encode(mockResponse.responseBody).array());
+      byte[] body = StandardCharsets.UTF_8.encode(mockResponse.responseBody).array();
+      if ("gzip".equals(mockResponse.mockProps.get("content-encoding"))) {
+         ByteArrayOutputStream gzippedBody = new ByteArrayOutputStream();
+         GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzippedBody);
+         gzipOutputStream.write(body);
+         gzipOutputStream.close();
+         body = gzippedBody.toByteArray();
+      }
+      return new ByteArrayInputStream(body);
+   }
+
+   @Override
+   public OutputStream getOutputStream() throws IOException {
+      return outputStream;
    }
 }
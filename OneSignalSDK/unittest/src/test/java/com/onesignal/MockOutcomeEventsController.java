@@ -5,6 +5,9 @@ import android.support.annotation.Nullable;
 
 public class MockOutcomeEventsController extends OutcomeEventsController {
 
+    public static final int SAVED_OUTCOMES_BATCH_SIZE = OutcomeEventsController.SAVED_OUTCOMES_BATCH_SIZE;
+    public static final int SAVED_OUTCOMES_MAX_FAILED_BATCHES = OutcomeEventsController.SAVED_OUTCOMES_MAX_FAILED_BATCHES;
+
     public MockOutcomeEventsController(MockSessionManager sessionManager, MockOutcomeEventsRepository repository) {
         super(sessionManager, repository);
     }
@@ -19,6 +22,12 @@ public class MockOutcomeEventsController extends OutcomeEventsController {
         super.sendSavedOutcomes();
     }
 
+    // Don't wait between failed saved outcome batches in tests
+    @Override
+    int getSavedOutcomesBackoffMs(int failedBatches) {
+        return 0;
+    }
+
     public void sendOutcomeEvent(@NonNull String name) {
         sendOutcomeEvent(name, null);
     }
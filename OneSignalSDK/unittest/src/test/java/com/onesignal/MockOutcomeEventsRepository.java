@@ -2,14 +2,32 @@ package com.onesignal;
 
 import org.json.JSONArray;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class MockOutcomeEventsRepository extends OutcomeEventsRepository {
 
+    private List<Integer> removedEventBatchSizes = new ArrayList<>();
+    private int uniqueOutcomeNotificationQueries = 0;
+
     public MockOutcomeEventsRepository(OutcomeEventsService outcomeEventsService, OneSignalDbHelper dbHelper) {
         super(outcomeEventsService, dbHelper);
     }
 
+    public List<Integer> getRemovedEventBatchSizes() {
+        return removedEventBatchSizes;
+    }
+
+    public int getUniqueOutcomeNotificationQueries() {
+        return uniqueOutcomeNotificationQueries;
+    }
+
+    @Override
+    void removeEvents(List<OutcomeEvent> outcomeEvents) {
+        removedEventBatchSizes.add(outcomeEvents.size());
+        super.removeEvents(outcomeEvents);
+    }
+
     @Override
     public void saveOutcomeEvent(OutcomeEvent event) {
         super.saveOutcomeEvent(event);
@@ -20,6 +38,23 @@ public class MockOutcomeEventsRepository extends OutcomeEventsRepository {
         return super.getSavedOutcomeEvents();
     }
 
+    @Override
+    public void saveUniqueOutcomeNotifications(JSONArray notificationIds, String name) {
+        super.saveUniqueOutcomeNotifications(notificationIds, name);
+    }
+
+    @Override
+    public JSONArray getNotCachedUniqueOutcomeNotifications(String name, JSONArray notificationIds) {
+        uniqueOutcomeNotificationQueries++;
+        return super.getNotCachedUniqueOutcomeNotifications(name, notificationIds);
+    }
+
+    @Override
+    List<CachedUniqueOutcomeNotification> getCachedUniqueOutcomeNotifications(int limit) {
+        uniqueOutcomeNotificationQueries++;
+        return super.getCachedUniqueOutcomeNotifications(limit);
+    }
+
     @Override
     void requestMeasureDirectOutcomeEvent(String appId, int deviceType, OutcomeEvent event, OneSignalRestClient.ResponseHandler responseHandler) {
         super.requestMeasureDirectOutcomeEvent(appId, deviceType, event, responseHandler);
@@ -9,6 +9,8 @@ public class MockOutcomeEventsService extends OutcomeEventsService {
 
     private boolean success;
     private JSONObject lastJsonObjectSent = new JSONObject();
+    private int sendCount;
+    private int failNextSends;
 
     /**
      * Set to fail or success the api service call
@@ -17,6 +19,13 @@ public class MockOutcomeEventsService extends OutcomeEventsService {
         this.success = success;
     }
 
+    /**
+     * Fail the next sends regardless of setSuccess
+     */
+    public void setFailNextSends(int failNextSends) {
+        this.failNextSends = failNextSends;
+    }
+
     public void resetLastJsonObjectSent() {
         this.lastJsonObjectSent = null;
     }
@@ -25,10 +34,19 @@ public class MockOutcomeEventsService extends OutcomeEventsService {
         return lastJsonObjectSent.toString();
     }
 
+    public int getSendCount() {
+        return sendCount;
+    }
+
     @Override
     void sendOutcomeEvent(JSONObject object, OneSignalRestClient.ResponseHandler responseHandler) {
         lastJsonObjectSent = object;
-        if (success)
+        sendCount++;
+        if (failNextSends > 0) {
+            failNextSends--;
+            responseHandler.onFailure(FAIL_STATUS_CODE, FAIL_STRING_RESPONSE, null);
+        }
+        else if (success)
             responseHandler.onSuccess("");
         else
             responseHandler.onFailure(FAIL_STATUS_CODE, FAIL_STRING_RESPONSE, null);
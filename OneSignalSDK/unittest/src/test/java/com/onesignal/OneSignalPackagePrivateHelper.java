@@ -3,19 +3,25 @@ package com.onesignal;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.webkit.WebView;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.robolectric.util.Scheduler;
 
+import java.io.File;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -168,6 +174,36 @@ public class OneSignalPackagePrivateHelper {
       receiver.onReceive(context,intent);
    }
 
+   public static int OneSignal_getPermissionObserverCount() {
+      return OneSignal.getPermissionStateChangesObserver().getObserverCount();
+   }
+
+   // Clears the weak reference OneSignal holds to the observer, as if it was garbage collected
+   public static void OneSignal_clearWeakPermissionObserver(OSPermissionObserver observer) throws Exception {
+      Field observersField = OSObservable.class.getDeclaredField("observers");
+      observersField.setAccessible(true);
+      for (Object observerRef : (List<?>)observersField.get(OneSignal.getPermissionStateChangesObserver())) {
+         Field weakObserverField = observerRef.getClass().getDeclaredField("weakObserver");
+         weakObserverField.setAccessible(true);
+         WeakReference<?> weakObserver = (WeakReference<?>)weakObserverField.get(observerRef);
+         if (weakObserver != null && weakObserver.get() == observer)
+            weakObserver.clear();
+      }
+   }
+
+   public static boolean OneSignal_notifyPermissionObservers(OSPermissionStateChanges stateChanges) {
+      return OneSignal.getPermissionStateChangesObserver().notifyChange(stateChanges);
+   }
+
+   public static OSNotificationPayload NotificationBundleProcessor_OSNotificationPayloadFrom(JSONObject jsonPayload) {
+      return NotificationBundleProcessor.OSNotificationPayloadFrom(jsonPayload);
+   }
+
+   public static OSNotificationPayload ParsedPushPayload_fromBundle(Bundle bundle) {
+      ParsedPushPayload payload = ParsedPushPayload.fromBundle(bundle);
+      return payload != null ? NotificationBundleProcessor.OSNotificationPayloadFrom(payload) : null;
+   }
+
    public static int NotificationBundleProcessor_Process(Context context, boolean restoring, JSONObject jsonPayload, NotificationExtenderService.OverrideSettings overrideSettings) {
       NotificationGenerationJob notifJob = new NotificationGenerationJob(context);
       notifJob.jsonPayload = jsonPayload;
@@ -196,12 +232,47 @@ public class OneSignalPackagePrivateHelper {
    public static class PushRegistratorGCM extends com.onesignal.PushRegistratorGCM {}
 
    public static class OneSignalRestClient extends com.onesignal.OneSignalRestClient {
+      public static final int MAX_CONCURRENT_REQUESTS = com.onesignal.OneSignalRestClient.MAX_CONCURRENT_REQUESTS;
+
+      public static final int GZIP_REQUEST_MIN_CHARS = com.onesignal.OneSignalRestClient.GZIP_REQUEST_MIN_CHARS;
+
+      public static void setGzipRequestsEnabled(boolean enabled) {
+         com.onesignal.OneSignalRestClient.setGzipRequestsEnabled(enabled);
+      }
+
+      public static void setupGzipRequests(Context context) {
+         com.onesignal.OneSignalRestClient.setupGzipRequests(context);
+      }
+
+      public static void setConnectionReuseEnabled(boolean enabled) {
+         com.onesignal.OneSignalRestClient.setConnectionReuseEnabled(enabled);
+      }
+
+      public static String getLastRequestTimingUrl() {
+         return com.onesignal.OneSignalRestClient.getLastRequestTiming().url;
+      }
+
+      public static long getLastRequestTimingTotalMs() {
+         return com.onesignal.OneSignalRestClient.getLastRequestTiming().totalMs;
+      }
+
+      public static long getLastRequestTimingResponseMs() {
+         return com.onesignal.OneSignalRestClient.getLastRequestTiming().responseMs;
+      }
+
       public static abstract class ResponseHandler extends com.onesignal.OneSignalRestClient.ResponseHandler {
          @Override
          public void onSuccess(String response) {}
          @Override
          public void onFailure(int statusCode, String response, Throwable throwable) {}
       }
+
+      public static abstract class JSONResponseHandler extends com.onesignal.OneSignalRestClient.JSONResponseHandler {
+         @Override
+         public void onSuccess(JSONObject response) {}
+         @Override
+         public void onFailure(int statusCode, String response, Throwable throwable) {}
+      }
    }
 
    public static String NotificationChannelManager_createNotificationChannel(Context context, JSONObject payload) {
@@ -222,8 +293,85 @@ public class OneSignalPackagePrivateHelper {
       NotificationSummaryManager.updateSummaryNotificationAfterChildRemoved(context, writableDb, group, dismissed);
    }
 
+   public static int NotificationSummaryManager_getGroupNotificationCount(Context context, String group) {
+      SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(context).getReadableDbWithRetries();
+      return NotificationSummaryManager.getGroupSummary(readableDb, group, -1).notificationCount;
+   }
+
+   public static ArrayList<String> NotificationSummaryManager_getGroupSummaryLines(Context context, String group) {
+      SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(context).getReadableDbWithRetries();
+      ArrayList<String> lines = new ArrayList<>();
+      for (CharSequence line : NotificationSummaryManager.getGroupSummary(readableDb, group, -1).lines)
+         lines.add(line.toString());
+      return lines;
+   }
+
+   public static Bitmap NotificationImageLoader_getBitmap(Context context, String url, int targetWidth, int targetHeight) {
+      return NotificationImageLoader.getBitmap(context, url, targetWidth, targetHeight);
+   }
+
+   public static File NotificationImageLoader_getDiskCacheFile(Context context, String url) {
+      return NotificationImageLoader.getDiskCacheFile(NotificationImageLoader.getDiskCacheDir(context), url);
+   }
+
+   public static void NotificationImageLoader_clearMemoryCache() {
+      NotificationImageLoader.clearMemoryCache();
+   }
+
+   public static void NotificationSummaryManager_invalidateAllGroups() {
+      NotificationSummaryManager.invalidateAllGroups();
+   }
+
+   public static void NotificationSummaryManager_onNotificationConsumed(int androidNotificationId) {
+      NotificationSummaryManager.onNotificationConsumed(androidNotificationId);
+   }
+
+   public static void GenerateNotification_updateSummaryNotification(Context context, String group) throws JSONException {
+      NotificationGenerationJob notifJob = new NotificationGenerationJob(context);
+      notifJob.restoring = true;
+      notifJob.jsonPayload = new JSONObject().put("grp", group);
+      GenerateNotification.updateSummaryNotification(notifJob);
+   }
+
    public class OneSignalPrefs extends com.onesignal.OneSignalPrefs {}
 
+   public static void OneSignalCacheCleaner_cleanNotificationCache(SQLiteDatabase writableDb) {
+      OneSignalCacheCleaner.cleanNotificationCache(writableDb);
+   }
+
+   public static abstract class OneSignalDbWriteOperation implements OneSignalDbHelper.WriteOperation {}
+
+   public static boolean OneSignalDbHelper_executeWrite(Context context, String errorMessage, OneSignalDbWriteOperation operation) {
+      return OneSignalDbHelper.getInstance(context).executeWrite(errorMessage, operation);
+   }
+
+   public static void OutcomeEventsCache_saveOutcomeEvent(Context context, OutcomeEvent event) {
+      OutcomeEventsCache.saveOutcomeEvent(event, OneSignalDbHelper.getInstance(context));
+   }
+
+   public static Integer NotificationTableRepository_getAndroidIdForCollapseId(SQLiteDatabase db, String collapseId) {
+      return NotificationTableRepository.getAndroidIdForCollapseId(db, collapseId);
+   }
+
+   public static int NotificationTableRepository_markDismissedByAndroidId(SQLiteDatabase writableDb, int androidNotificationId) {
+      return NotificationTableRepository.markDismissedByAndroidId(writableDb, androidNotificationId);
+   }
+
+   // Compiled dismiss update of the repository, null if it wasn't used yet
+   public static Object NotificationTableRepository_getMarkDismissedStatement() throws Exception {
+      Field statementField = NotificationTableRepository.class.getDeclaredField("markDismissedStatement");
+      statementField.setAccessible(true);
+      return statementField.get(null);
+   }
+
+   public static int NotificationTableRepository_countRecentUninteracted(SQLiteDatabase db) {
+      return NotificationTableRepository.countRecentUninteracted(db).count;
+   }
+
+   public static Cursor NotificationTableRepository_queryGroupNotifications(SQLiteDatabase db, String group, int excludeAndroidId) {
+      return NotificationTableRepository.queryGroupNotifications(db, group, excludeAndroidId);
+   }
+
    public static void OneSignal_onAppLostFocus() {
       OneSignal.onAppLostFocus();
    }
@@ -253,6 +401,74 @@ public class OneSignalPackagePrivateHelper {
       public static void update(SQLiteDatabase readableDb, Context context) {
          com.onesignal.BadgeCountUpdater.update(readableDb, context);
       }
+
+      public static void invalidateCount() {
+         com.onesignal.BadgeCountUpdater.invalidateCount();
+      }
+
+      public static void beforeNotificationConsumed(SQLiteDatabase writableDb, int androidNotificationId) {
+         com.onesignal.BadgeCountUpdater.beforeNotificationConsumed(writableDb, androidNotificationId);
+      }
+   }
+
+   static public class NotificationRestoreMetrics extends com.onesignal.NotificationRestoreMetrics {
+      public static int getRestoredCount() {
+         return com.onesignal.NotificationRestoreMetrics.getRestoredCount();
+      }
+
+      public static int getBatchCount() {
+         return com.onesignal.NotificationRestoreMetrics.getBatchCount();
+      }
+
+      public static long getRateLimitWaitMs() {
+         return com.onesignal.NotificationRestoreMetrics.getRateLimitWaitMs();
+      }
+   }
+
+   static public class NotificationDisplayTimings {
+      // -1 if the stage didn't run for the last push processed for display
+      public static long getLastStageMs(String stage) {
+         com.onesignal.NotificationDisplayTimings timings = com.onesignal.NotificationDisplayTimings.getLast();
+         if (timings == null)
+            return -1;
+         return timings.get(com.onesignal.NotificationDisplayTimings.Stage.valueOf(stage.toUpperCase()));
+      }
+   }
+
+   static public class OSInAppMessageDisplayMetrics {
+      public static int getHtmlCacheHits() {
+         return com.onesignal.OSInAppMessageDisplayMetrics.getHtmlCacheHits();
+      }
+
+      public static int getHtmlCacheMisses() {
+         return com.onesignal.OSInAppMessageDisplayMetrics.getHtmlCacheMisses();
+      }
+
+      public static int getWarmDisplayedCount() {
+         return com.onesignal.OSInAppMessageDisplayMetrics.getWarmDisplayedCount();
+      }
+   }
+
+   static public class OSInAppMessageHtmlCache {
+      // Every cached html becomes stale, as if it was last validated before FRESH_FOR_MS
+      public static void expireAll() {
+         File[] files = new File(OneSignal.appContext.getCacheDir(), com.onesignal.OSInAppMessageHtmlCache.DISK_CACHE_DIR).listFiles();
+         if (files == null)
+            return;
+         long staleTime = System.currentTimeMillis() - com.onesignal.OSInAppMessageHtmlCache.FRESH_FOR_MS - 1_000;
+         for (File file : files)
+            file.setLastModified(staleTime);
+      }
+   }
+
+   static public class OSWebViewPool {
+      public static void warmUp(Context context) {
+         com.onesignal.OSWebViewPool.warmUp(context);
+      }
+
+      public static boolean hasPooledWebView() {
+         return com.onesignal.OSWebViewPool.hasPooledWebView();
+      }
    }
 
    static public class NotificationLimitManager extends com.onesignal.NotificationLimitManager {
@@ -299,6 +515,10 @@ public class OneSignalPackagePrivateHelper {
       public JSONObject toJSONObject() {
          return super.toJSONObject();
       }
+
+      public void setPriority(int priority) {
+         this.priority = priority;
+      }
    }
 
    public static class OSTestTrigger extends com.onesignal.OSTrigger {
@@ -318,6 +538,23 @@ public class OneSignalPackagePrivateHelper {
       }
    }
 
+   public static void WebViewManager_preloadHTMLString(OSTestInAppMessage message, String htmlStr) {
+      WebViewManager.preloadHTMLString(message, htmlStr);
+   }
+
+   // WebView of the message rendered off-screen, null if there is none
+   public static WebView WebViewManager_getPreloadedWebView() throws Exception {
+      Field preloadedInstanceField = WebViewManager.class.getDeclaredField("preloadedInstance");
+      preloadedInstanceField.setAccessible(true);
+      Object preloadedInstance = preloadedInstanceField.get(null);
+      if (preloadedInstance == null)
+         return null;
+
+      Field webViewField = WebViewManager.class.getDeclaredField("webView");
+      webViewField.setAccessible(true);
+      return (WebView)webViewField.get(preloadedInstance);
+   }
+
    public static void dismissCurrentMessage() {
       com.onesignal.OSInAppMessage message = com.onesignal.OSInAppMessageController.getController().getCurrentDisplayedInAppMessage();
       com.onesignal.OSInAppMessageController.getController().messageWasDismissed(message);
@@ -363,6 +600,10 @@ public class OneSignalPackagePrivateHelper {
          lastInstance.dismissAndAwaitNextMessage(null);
       }
 
+      public static void loadHtml(@NonNull WebView webView, @NonNull String htmlStr) {
+         com.onesignal.WebViewManager.loadHtml(webView, htmlStr);
+      }
+
       public void dismissAndAwaitNextMessage(@Nullable final OneSignalGenericCallback callback) {
          super.dismissAndAwaitNextMessage(callback);
       }
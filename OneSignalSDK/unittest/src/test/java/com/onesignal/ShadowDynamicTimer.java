@@ -2,8 +2,13 @@ package com.onesignal;
 
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -13,6 +18,12 @@ public class ShadowDynamicTimer {
     /** Allows you to control if trigger timers actually get scheduled */
     public static boolean shouldScheduleTimers = true;
 
+    /** Trigger timers wait for runPendingTimers instead of their delay */
+    public static boolean runTimersManually = false;
+
+    /** Timers are scheduled by the real OSDynamicTriggerTimer, see InAppMessagingHelpers.setTriggerTimerScheduler */
+    public static boolean useRealScheduler = false;
+
     /** Allows us to simply check if a timer was scheduled at all */
     public static boolean hasScheduledTimer = false;
 
@@ -22,10 +33,26 @@ public class ShadowDynamicTimer {
     // Timers are recorded and force stopped after test to ensure they don't carry over.
     private static ArrayList<Timer> timers = new ArrayList<>();
     private static ArrayList<TimerTask> timerTasks = new ArrayList<>();
+    // Timers that have not fired or been cancelled yet, by trigger id
+    private static HashMap<String, TimerTask> pendingTimerTasks = new HashMap<>();
+    // Timers waiting for runPendingTimers
+    private static ArrayList<ManualTimer> manualTimers = new ArrayList<>();
+
+    private static class ManualTimer {
+        private final TimerTask task;
+        private final long delay;
+
+        ManualTimer(TimerTask task, long delay) {
+            this.task = task;
+            this.delay = delay;
+        }
+    }
 
     public static void resetStatics() {
         cancelTimers();
         shouldScheduleTimers = true;
+        runTimersManually = false;
+        useRealScheduler = false;
         hasScheduledTimer = false;
         mostRecentlyScheduledTimerDelay = 0;
     }
@@ -37,20 +64,121 @@ public class ShadowDynamicTimer {
         for(TimerTask timerTask : timerTasks)
             timerTask.cancel();
         timerTasks = new ArrayList<>();
+        pendingTimerTasks = new HashMap<>();
+        manualTimers = new ArrayList<>();
+
+        synchronized (OSDynamicTriggerTimer.class) {
+            if (OSDynamicTriggerTimer.scheduler != null)
+                OSDynamicTriggerTimer.scheduler.shutdownNow();
+            OSDynamicTriggerTimer.scheduler = null;
+            OSDynamicTriggerTimer.scheduledTriggers.clear();
+        }
     }
 
     /** Allows us to see when the OSDynamicTriggerController schedules a timer */
     @Implementation
-    public static void scheduleTrigger(TimerTask task, String triggerId, long delay) {
+    public static void scheduleTrigger(final TimerTask task, final String triggerId, long delay) {
         mostRecentlyScheduledTimerDelay = delay;
 
+        if (useRealScheduler) {
+            hasScheduledTimer = true;
+            Shadow.directlyOn(OSDynamicTriggerTimer.class, "scheduleTrigger",
+                ClassParameter.from(TimerTask.class, task),
+                ClassParameter.from(String.class, triggerId),
+                ClassParameter.from(long.class, delay));
+            return;
+        }
+
         if (shouldScheduleTimers) {
             hasScheduledTimer = true;
+            TimerTask pendingTask = new TimerTask() {
+                @Override
+                public void run() {
+                    synchronized (ShadowDynamicTimer.class) {
+                        // Cancelled or replaced
+                        if (pendingTimerTasks.get(triggerId) != this)
+                            return;
+                        pendingTimerTasks.remove(triggerId);
+                    }
+                    task.run();
+                }
+            };
+            synchronized (ShadowDynamicTimer.class) {
+                pendingTimerTasks.put(triggerId, pendingTask);
+                if (runTimersManually) {
+                    manualTimers.add(new ManualTimer(pendingTask, delay));
+                    return;
+                }
+            }
             Timer timer = new Timer("trigger_test:" + triggerId);
-            timer.schedule(task, delay);
+            timer.schedule(pendingTask, delay);
             timers.add(timer);
-            timerTasks.add(task);
+            timerTasks.add(pendingTask);
+        }
+    }
+
+    @Implementation
+    public static void cancelTrigger(String triggerId) {
+        if (useRealScheduler) {
+            Shadow.directlyOn(OSDynamicTriggerTimer.class, "cancelTrigger", ClassParameter.from(String.class, triggerId));
+            return;
+        }
+
+        TimerTask pendingTask;
+        synchronized (ShadowDynamicTimer.class) {
+            pendingTask = pendingTimerTasks.remove(triggerId);
+        }
+        if (pendingTask != null)
+            pendingTask.cancel();
+    }
+
+    /** Runs on an OS_ thread so threadAndTaskWait waits for it like the other SDK threads */
+    @Implementation
+    public static void schedule(final Runnable task, final long delay) {
+        if (useRealScheduler) {
+            Shadow.directlyOn(OSDynamicTriggerTimer.class, "schedule",
+                ClassParameter.from(Runnable.class, task),
+                ClassParameter.from(long.class, delay));
+            return;
         }
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.run();
+            }
+        }, "OS_TEST_SCHEDULED_TASK").start();
+    }
+
+    /**
+     * Runs the pending timers in the order they are due, when runTimersManually is set.
+     * Timers scheduled while running them wait for the next call.
+     */
+    public static void runPendingTimers() {
+        ArrayList<ManualTimer> dueTimers;
+        synchronized (ShadowDynamicTimer.class) {
+            dueTimers = manualTimers;
+            manualTimers = new ArrayList<>();
+        }
+
+        Collections.sort(dueTimers, new Comparator<ManualTimer>() {
+            @Override
+            public int compare(ManualTimer lhs, ManualTimer rhs) {
+                return lhs.delay < rhs.delay ? -1 : (lhs.delay == rhs.delay ? 0 : 1);
+            }
+        });
+        for (ManualTimer timer : dueTimers)
+            timer.task.run();
+    }
+
+    /** Number of timers that have not fired or been cancelled yet */
+    public static synchronized int pendingTimerCount() {
+        return pendingTimerTasks.size();
     }
 
     public static double mostRecentTimerDelaySeconds() {
@@ -3,14 +3,36 @@ package com.onesignal;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.SystemClock;
 
+import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Implements(NotificationRestorer.class)
 public class ShadowNotificationRestorer {
-   public static void startService(Context context, Intent intent) {
-      NotificationBundleProcessor.ProcessFromGCMIntentService(context,
-          new BundleCompatBundle(intent),
-          null);
+
+   public static List<Intent> enqueuedBatches = new ArrayList<>();
+   public static List<Long> rateLimitWaits = new ArrayList<>();
+
+   public static void resetStatics() {
+      enqueuedBatches = new ArrayList<>();
+      rateLimitWaits = new ArrayList<>();
+   }
+
+   /** Records each batch and restores it right away instead of starting RestoreJobService */
+   @Implementation
+   public static void enqueueRestoreBatch(Context context, Intent intent) {
+      enqueuedBatches.add(intent);
+      NotificationRestorer.restoreBatch(context, intent);
+   }
+
+   /** Records the wait and moves the clock forward by it */
+   @Implementation
+   public static void waitForRestoreToken(long waitMs) {
+      rateLimitWaits.add(waitMs);
+      SystemClock.sleep(waitMs);
    }
 }
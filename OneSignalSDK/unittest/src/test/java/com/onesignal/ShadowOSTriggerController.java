@@ -0,0 +1,23 @@
+package com.onesignal;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.RealObject;
+import org.robolectric.shadow.api.Shadow;
+
+import java.util.ArrayList;
+
+@Implements(OSTriggerController.class)
+public class ShadowOSTriggerController {
+
+    @RealObject private OSTriggerController realObject;
+
+    public static ArrayList<String> evaluatedMessages = new ArrayList<>();
+
+    @Implementation
+    public boolean evaluateMessageTriggers(OSInAppMessage message) {
+        evaluatedMessages.add(message.messageId);
+        // Call original method
+        return Shadow.directlyOn(realObject, OSTriggerController.class).evaluateMessageTriggers(message);
+    }
+}
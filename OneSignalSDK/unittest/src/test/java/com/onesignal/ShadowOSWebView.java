@@ -19,10 +19,12 @@ import java.util.List;
 public class ShadowOSWebView extends ShadowWebView {
 
    public static String lastData;
+   public static int loadDataCount;
    private static List<ValueCallback<String>> evalJSCallbacks;
 
    public static void resetStatics() {
       lastData = null;
+      loadDataCount = 0;
       evalJSCallbacks = new ArrayList<>();
    }
 
@@ -52,8 +54,17 @@ public class ShadowOSWebView extends ShadowWebView {
    }
 
    public void loadData(String data, String mimeType, String encoding) {
+      onDataLoaded(data);
+   }
+
+   public void loadDataWithBaseURL(String baseUrl, String data, String mimeType, String encoding, String historyUrl) {
+      onDataLoaded(data);
+   }
+
+   private void onDataLoaded(String data) {
       TestHelpers.assertMainThread();
       lastData = data;
+      loadDataCount++;
 
       OSJavaScriptInterface jsInterface = (OSJavaScriptInterface)getJavascriptInterface(WebViewManager.OSJavaScriptInterface.JS_OBJ_NAME);
       jsInterface.postMessage(MOCK_IAM_RENDERING_COMPLETE_TOP_BANNER);
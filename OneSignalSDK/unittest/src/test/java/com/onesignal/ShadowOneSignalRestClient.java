@@ -337,6 +337,23 @@ public class ShadowOneSignalRestClient {
       responseHandler.onSuccess("{}");
    }
 
+   // Like the real client, every successful response is saved to the cache
+   public static void getSyncWithCache(final String url, final OneSignalRestClient.ResponseHandler responseHandler, final OneSignalRestClient.ResponseCache responseCache) throws JSONException {
+      getSync(url, new OneSignalRestClient.ResponseHandler() {
+         @Override
+         void onSuccess(String response) {
+            if (responseCache.shouldCache(null))
+               responseCache.saveResponse(null, response);
+            responseHandler.onSuccess(response);
+         }
+
+         @Override
+         void onFailure(int statusCode, String response, Throwable throwable) {
+            responseHandler.onFailure(statusCode, response, throwable);
+         }
+      }, null);
+   }
+
    private static boolean doNextSuccessfulGETResponse(final String url, final OneSignalRestClient.ResponseHandler responseHandler) {
       if (nextSuccessfulGETResponse != null &&
          (nextSuccessfulGETResponsePattern == null || nextSuccessfulGETResponsePattern.matcher(url).matches())) {
@@ -51,6 +51,11 @@ public class ShadowOneSignalRestClientWithMockConnection {
       return 1;
    }
 
+   // Let idle pooled threads exit right away so TestHelpers does not wait on them
+   public static long getExecutorKeepAlive() {
+      return 1;
+   }
+
    public static HttpURLConnection newHttpURLConnection(String url) throws IOException {
       lastConnection = new MockHttpURLConnection(
          new URL("https://onesignal.com/api/v1/" + url),
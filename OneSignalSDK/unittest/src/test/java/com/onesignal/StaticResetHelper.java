@@ -41,6 +41,14 @@ public class StaticResetHelper {
       
       classes.add(new ClassState(OneSignalChromeTabAndroidFrame.class, null));
       classes.add(new ClassState(OneSignalDbHelper.class, null));
+      classes.add(new ClassState(OneSignalRestClient.class, null));
+      classes.add(new ClassState(DuplicateNotificationFilter.class, null));
+      classes.add(new ClassState(BadgeCountUpdater.class, null));
+      classes.add(new ClassState(NotificationRestoreMetrics.class, null));
+      classes.add(new ClassState(NotificationDisplayTimings.class, null));
+      classes.add(new ClassState(OSInAppMessageDisplayMetrics.class, null));
+      classes.add(new ClassState(OSWebViewPool.class, null));
+      classes.add(new ClassState(RestoreJobService.class, null));
       classes.add(new ClassState(LocationGMS.class, null));
       classes.add(new ClassState(OSInAppMessageController.class, null));
       classes.add(new ClassState(ActivityLifecycleListener.class, null));
@@ -118,11 +126,17 @@ public class StaticResetHelper {
             aClass.restSetStaticFields();
 
       clearWebViewManger();
+      // Cached groups are in a final map and would outlive each test's DB
+      NotificationSummaryManager.invalidateAllGroups();
    }
 
    private static void clearWebViewManger() throws NoSuchFieldException, IllegalAccessException {
       Field field = WebViewManager.class.getDeclaredField("lastInstance");
       field.setAccessible(true);
       field.set(null, null);
+
+      field = WebViewManager.class.getDeclaredField("preloadedInstance");
+      field.setAccessible(true);
+      field.set(null, null);
    }
 }
@@ -3,6 +3,7 @@ package com.test.onesignal;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabaseLockedException;
 
 import com.onesignal.OneSignalPackagePrivateHelper.OSSessionManager;
 import com.onesignal.OneSignalDbHelper;
@@ -10,6 +11,8 @@ import com.onesignal.OneSignalPackagePrivateHelper.NotificationTable;
 import com.onesignal.OneSignalPackagePrivateHelper.OutcomeEventsTable;
 import com.onesignal.OneSignalPackagePrivateHelper.CachedUniqueOutcomeNotificationTable;
 import com.onesignal.OneSignalPackagePrivateHelper.CachedUniqueOutcomeNotification;
+import com.onesignal.OneSignalPackagePrivateHelper.OneSignalDbWriteOperation;
+import com.onesignal.OneSignalShadowPackageManager;
 import com.onesignal.OutcomeEvent;
 import com.onesignal.ShadowOneSignalDbHelper;
 import com.onesignal.StaticResetHelper;
@@ -26,20 +29,30 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLog;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationTableRepository_countRecentUninteracted;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationTableRepository_getAndroidIdForCollapseId;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationTableRepository_markDismissedByAndroidId;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationTableRepository_queryGroupNotifications;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalDbHelper_executeWrite;
+import static com.onesignal.OneSignalPackagePrivateHelper.OutcomeEventsCache_saveOutcomeEvent;
 import static com.test.onesignal.TestHelpers.getAllNotificationRecords;
 import static com.test.onesignal.TestHelpers.getAllOutcomesRecords;
 import static com.test.onesignal.TestHelpers.getAllUniqueOutcomeNotificationRecords;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 @Config(packageName = "com.onesignal.example",
         instrumentedPackages = { "com.onesignal" },
         shadows = {
-            ShadowOneSignalDbHelper.class
+            ShadowOneSignalDbHelper.class,
+            OneSignalShadowPackageManager.class
         },
         sdk = 26
 )
@@ -237,4 +250,260 @@ public class DatabaseRunner {
       writableDatabase.close();
       assertEquals(-1, successful);
    }
+
+   private static final String SQL_CREATE_OUTCOME_REVISION2_ENTRIES =
+      "CREATE TABLE IF NOT EXISTS outcome (" +
+         "_id INTEGER PRIMARY KEY, " +
+         "session TEXT," +
+         "notification_ids TEXT, " +
+         "name TEXT, " +
+         "timestamp TIMESTAMP, " +
+         "weight FLOAT " +
+      ")";
+
+   private static final int DB_LOAD_OPERATIONS_PER_THREAD = 200;
+
+   @Test
+   public void shouldEnableWriteAheadLoggingOnlyWhenOptedIn() {
+      SQLiteDatabase writableDatabase = OneSignalDbHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase();
+      assertFalse(writableDatabase.isWriteAheadLoggingEnabled());
+      writableDatabase.close();
+
+      OneSignalShadowPackageManager.addManifestMetaData("com.onesignal.DatabaseWriteAheadLogging", "ENABLE");
+      ShadowOneSignalDbHelper.restSetStaticFields();
+
+      writableDatabase = OneSignalDbHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase();
+      assertTrue(writableDatabase.isWriteAheadLoggingEnabled());
+      writableDatabase.close();
+   }
+
+   @Test
+   public void shouldHandleParallelReceiveOpenAndOutcomeLoad() throws Exception {
+      runParallelDbLoad("rollback journal");
+
+      // Reopen the same DB file with write-ahead logging and clear the rows from the first run
+      OneSignalDbHelper.getInstance(RuntimeEnvironment.application).close();
+      OneSignalShadowPackageManager.addManifestMetaData("com.onesignal.DatabaseWriteAheadLogging", "ENABLE");
+      ShadowOneSignalDbHelper.restSetStaticFields();
+      OneSignalDbHelper_executeWrite(RuntimeEnvironment.application, "Error clearing tables", new OneSignalDbWriteOperation() {
+         @Override
+         public void run(SQLiteDatabase writableDb) {
+            writableDb.delete(NotificationTable.TABLE_NAME, null, null);
+            writableDb.delete(OutcomeEventsTable.TABLE_NAME, null, null);
+         }
+      });
+
+      runParallelDbLoad("WAL");
+   }
+
+   /**
+    * Runs notification receive, open and outcome writers next to two readers
+    */
+   private static void runParallelDbLoad(final String label) throws Exception {
+      OneSignalDbHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase().execSQL(SQL_CREATE_OUTCOME_REVISION2_ENTRIES);
+
+      final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+      Runnable receive = new Runnable() {
+         @Override
+         public void run() {
+            for (int i = 0; i < DB_LOAD_OPERATIONS_PER_THREAD; i++) {
+               final int androidId = i;
+               boolean saved = OneSignalDbHelper_executeWrite(RuntimeEnvironment.application, "Error saving notification", new OneSignalDbWriteOperation() {
+                  @Override
+                  public void run(SQLiteDatabase writableDb) {
+                     ContentValues values = new ContentValues();
+                     values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, label + androidId);
+                     values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, androidId);
+                     writableDb.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
+                  }
+               });
+               if (!saved)
+                  errors.add(new Exception("Notification " + androidId + " was not saved"));
+            }
+         }
+      };
+
+      Runnable open = new Runnable() {
+         @Override
+         public void run() {
+            for (int i = 0; i < DB_LOAD_OPERATIONS_PER_THREAD; i++) {
+               final int androidId = i;
+               boolean saved = OneSignalDbHelper_executeWrite(RuntimeEnvironment.application, "Error opening notification", new OneSignalDbWriteOperation() {
+                  @Override
+                  public void run(SQLiteDatabase writableDb) {
+                     ContentValues values = new ContentValues();
+                     values.put(NotificationTable.COLUMN_NAME_OPENED, 1);
+                     writableDb.update(NotificationTable.TABLE_NAME, values, NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + androidId, null);
+                  }
+               });
+               if (!saved)
+                  errors.add(new Exception("Notification " + androidId + " was not opened"));
+            }
+         }
+      };
+
+      Runnable outcome = new Runnable() {
+         @Override
+         public void run() {
+            for (int i = 0; i < DB_LOAD_OPERATIONS_PER_THREAD; i++) {
+               OutcomeEvent event = new OutcomeEvent(OSSessionManager.Session.DIRECT, new JSONArray().put(label + i), "outcome", i, 0);
+               OutcomeEventsCache_saveOutcomeEvent(RuntimeEnvironment.application, event);
+            }
+         }
+      };
+
+      final List<Thread> writers = new ArrayList<>();
+      for (Runnable runnable : new Runnable[] { receive, open, outcome })
+         writers.add(newLoadThread(runnable, errors));
+
+      Runnable read = new Runnable() {
+         @Override
+         public void run() {
+            while (isAnyAlive(writers)) {
+               SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(RuntimeEnvironment.application).getReadableDatabase();
+               Cursor cursor = readableDb.rawQuery("SELECT COUNT(*) FROM " + NotificationTable.TABLE_NAME + " WHERE " + NotificationTable.COLUMN_NAME_OPENED + " = 0", null);
+               cursor.moveToFirst();
+               cursor.close();
+            }
+         }
+      };
+
+      List<Thread> readers = new ArrayList<>();
+      for (int i = 0; i < 2; i++)
+         readers.add(newLoadThread(read, errors));
+
+      for (Thread thread : writers)
+         thread.start();
+      for (Thread thread : readers)
+         thread.start();
+      for (Thread thread : writers)
+         thread.join();
+      for (Thread thread : readers)
+         thread.join();
+
+      for (Throwable t : errors)
+         assertFalse(label + " lock error: " + t, t instanceof SQLiteDatabaseLockedException);
+      assertEquals(label + " errors: " + errors, 0, errors.size());
+      assertEquals(DB_LOAD_OPERATIONS_PER_THREAD, getAllNotificationRecords().size());
+      assertEquals(DB_LOAD_OPERATIONS_PER_THREAD, getAllOutcomesRecords().size());
+   }
+
+   private static final int TEST_NOTIFICATION_ROWS = 1_000;
+   private static final int TEST_NOTIFICATION_GROUPS = 10;
+
+   private static SQLiteDatabase insertTestNotifications() {
+      SQLiteDatabase writableDb = OneSignalDbHelper.getInstance(RuntimeEnvironment.application).getWritableDatabase();
+      long createdTime = System.currentTimeMillis() / 1_000L;
+      writableDb.beginTransaction();
+      for (int i = 0; i < TEST_NOTIFICATION_ROWS; i++) {
+         ContentValues values = new ContentValues();
+         values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, "id" + i);
+         values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, i);
+         values.put(NotificationTable.COLUMN_NAME_GROUP_ID, "group" + (i % TEST_NOTIFICATION_GROUPS));
+         values.put(NotificationTable.COLUMN_NAME_COLLAPSE_ID, "collapse" + i);
+         values.put(NotificationTable.COLUMN_NAME_TITLE, "title" + i);
+         values.put(NotificationTable.COLUMN_NAME_MESSAGE, "message" + i);
+         values.put(NotificationTable.COLUMN_NAME_CREATED_TIME, createdTime);
+         values.put(NotificationTable.COLUMN_NAME_EXPIRE_TIME, createdTime + 259_200L);
+         writableDb.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
+      }
+      writableDb.setTransactionSuccessful();
+      writableDb.endTransaction();
+      return writableDb;
+   }
+
+   @Test
+   public void testNotificationTableRepositoryMatchesHandBuiltQueries() {
+      SQLiteDatabase db = insertTestNotifications();
+
+      assertEquals(handBuiltCollapseIdQuery(db, "collapse5"), NotificationTableRepository_getAndroidIdForCollapseId(db, "collapse5"));
+      assertNull(NotificationTableRepository_getAndroidIdForCollapseId(db, "unknown"));
+      // The hand built query was capped to the max badge count
+      assertEquals(handBuiltBadgeCountQuery(db), Math.min(49, NotificationTableRepository_countRecentUninteracted(db)));
+
+      Cursor handBuilt = handBuiltGroupQuery(db, "group1", 11);
+      Cursor repository = NotificationTableRepository_queryGroupNotifications(db, "group1", 11);
+      assertEquals(TEST_NOTIFICATION_ROWS / TEST_NOTIFICATION_GROUPS - 1, repository.getCount());
+      assertEquals(handBuilt.getCount(), repository.getCount());
+      while (handBuilt.moveToNext() && repository.moveToNext()) {
+         assertEquals(handBuilt.getInt(0), repository.getInt(repository.getColumnIndex(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID)));
+      }
+      handBuilt.close();
+      repository.close();
+
+      assertEquals(1, NotificationTableRepository_markDismissedByAndroidId(db, 5));
+      // Already dismissed rows aren't counted again
+      assertEquals(0, NotificationTableRepository_markDismissedByAndroidId(db, 5));
+      assertNull(NotificationTableRepository_getAndroidIdForCollapseId(db, "collapse5"));
+   }
+
+   private static Integer handBuiltCollapseIdQuery(SQLiteDatabase db, String collapseId) {
+      Cursor cursor = db.query(
+         NotificationTable.TABLE_NAME,
+         new String[]{ NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID },
+         NotificationTable.COLUMN_NAME_COLLAPSE_ID + " = ? AND " +
+            NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+            NotificationTable.COLUMN_NAME_OPENED + " = 0 ",
+         new String[] { collapseId },
+         null, null, null);
+      Integer androidId = cursor.moveToFirst() ? cursor.getInt(0) : null;
+      cursor.close();
+      return androidId;
+   }
+
+   private static int handBuiltBadgeCountQuery(SQLiteDatabase db) {
+      long currentTimeSec = System.currentTimeMillis() / 1_000L;
+      Cursor cursor = db.query(
+         NotificationTable.TABLE_NAME,
+         null,
+         NotificationTable.COLUMN_NAME_CREATED_TIME + " > " + (currentTimeSec - 604_800L) + " AND " +
+            NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+            NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
+            NotificationTable.COLUMN_NAME_IS_SUMMARY + " = 0 AND " +
+            NotificationTable.COLUMN_NAME_EXPIRE_TIME + " > " + currentTimeSec,
+         null, null, null, null,
+         "49");
+      int count = cursor.getCount();
+      cursor.close();
+      return count;
+   }
+
+   private static Cursor handBuiltGroupQuery(SQLiteDatabase db, String group, int excludeAndroidId) {
+      return db.query(
+         NotificationTable.TABLE_NAME,
+         new String[] { NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID,
+            NotificationTable.COLUMN_NAME_FULL_DATA,
+            NotificationTable.COLUMN_NAME_IS_SUMMARY,
+            NotificationTable.COLUMN_NAME_TITLE,
+            NotificationTable.COLUMN_NAME_MESSAGE },
+         NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
+            NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+            NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
+            NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " <> " + excludeAndroidId,
+         new String[] { group },
+         null, null,
+         NotificationTable._ID + " DESC");
+   }
+
+   private static Thread newLoadThread(final Runnable runnable, final List<Throwable> errors) {
+      return new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               runnable.run();
+            } catch (Throwable t) {
+               errors.add(t);
+            }
+         }
+      });
+   }
+
+   private static boolean isAnyAlive(List<Thread> threads) {
+      for (Thread thread : threads) {
+         if (thread.isAlive())
+            return true;
+      }
+      return false;
+   }
 }
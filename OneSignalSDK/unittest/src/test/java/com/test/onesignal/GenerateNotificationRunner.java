@@ -33,12 +33,14 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.app.job.JobScheduler;
 import android.content.ComponentName;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ResolveInfo;
 import android.content.pm.ServiceInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -60,12 +62,16 @@ import com.onesignal.OneSignal;
 import com.onesignal.OneSignalDbHelper;
 import com.onesignal.OneSignalNotificationManagerPackageHelper;
 import com.onesignal.OneSignalPackagePrivateHelper;
+import com.onesignal.OneSignalPackagePrivateHelper.NotificationDisplayTimings;
+import com.onesignal.OneSignalPackagePrivateHelper.NotificationRestoreMetrics;
 import com.onesignal.OneSignalPackagePrivateHelper.NotificationRestorer;
 import com.onesignal.OneSignalPackagePrivateHelper.NotificationTable;
+import com.onesignal.OneSignalPackagePrivateHelper.OneSignalDbWriteOperation;
 import com.onesignal.OneSignalPackagePrivateHelper.OneSignalPrefs;
 import com.onesignal.RestoreJobService;
 import com.onesignal.ShadowBadgeCountUpdater;
 import com.onesignal.ShadowGcmBroadcastReceiver;
+import com.onesignal.ShadowNotificationRestorer;
 import com.onesignal.ShadowNotificationManagerCompat;
 import com.onesignal.ShadowOSUtils;
 import com.onesignal.ShadowOSViewUtils;
@@ -93,18 +99,34 @@ import org.robolectric.android.controller.ActivityController;
 import org.robolectric.android.controller.ServiceController;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowAlertDialog;
+import org.robolectric.shadows.ShadowBitmapFactory;
 import org.robolectric.shadows.ShadowLog;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.lang.reflect.Field;
 import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationBundleProcessor_OSNotificationPayloadFrom;
 import static com.onesignal.OneSignalPackagePrivateHelper.NotificationBundleProcessor_ProcessFromGCMIntentService;
+import static com.onesignal.OneSignalPackagePrivateHelper.ParsedPushPayload_fromBundle;
 import static com.onesignal.OneSignalPackagePrivateHelper.NotificationBundleProcessor_ProcessFromGCMIntentService_NoWrap;
 import static com.onesignal.OneSignalPackagePrivateHelper.NotificationOpenedProcessor_processFromContext;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalDbHelper_executeWrite;
+import static com.onesignal.OneSignalPackagePrivateHelper.GenerateNotification_updateSummaryNotification;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationImageLoader_clearMemoryCache;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationImageLoader_getBitmap;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationImageLoader_getDiskCacheFile;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationSummaryManager_getGroupNotificationCount;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationSummaryManager_getGroupSummaryLines;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationSummaryManager_invalidateAllGroups;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationSummaryManager_onNotificationConsumed;
 import static com.onesignal.OneSignalPackagePrivateHelper.NotificationSummaryManager_updateSummaryNotificationAfterChildRemoved;
+import static com.onesignal.OneSignalPackagePrivateHelper.NotificationTableRepository_getMarkDismissedStatement;
 import static com.onesignal.OneSignalPackagePrivateHelper.createInternalPayloadBundle;
 import static com.onesignal.ShadowRoboNotificationManager.getNotificationsInGroup;
 import static com.test.onesignal.RestClientAsserts.assertReportReceivedAtIndex;
@@ -116,6 +138,7 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertThat;
@@ -611,6 +634,224 @@ public class GenerateNotificationRunner {
       assertEquals(0, postedNotifs.size());
    }
 
+   @Test
+   public void shouldKeepGroupSummaryCacheInSyncWithNotificationTable() throws Exception {
+      // Setup - Init
+      OneSignal.setInFocusDisplaying(OneSignal.OSInFocusDisplayOption.Notification);
+      OneSignal.init(blankActivity, "123456789", "b2f7f966-d8cc-11e4-bed1-df8f05be55ba");
+      threadAndTaskWait();
+      runImplicitServices();
+
+      // Setup - More notifications than summary lines are cached
+      for (int i = 0; i < 10; i++) {
+         Bundle bundle = getBaseNotifBundle("UUID" + i);
+         bundle.putString("alert", "Message " + i);
+         bundle.putString("grp", "test1");
+         NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, bundle, null);
+      }
+      assertGroupSummaryCacheMatchesNotificationTable("test1", 10);
+      assertEquals("Message 9", NotificationSummaryManager_getGroupSummaryLines(blankActivity, "test1").get(0));
+
+      // Test - Dismissing a cached line
+      OneSignal.cancelNotification(getPostedNotificationId("Message 9"));
+      assertGroupSummaryCacheMatchesNotificationTable("test1", 9);
+
+      // Test - Opening a notification
+      NotificationOpenedProcessor_processFromContext(blankActivity, createOpenIntent(getPostedNotificationId("Message 8"), getBaseNotifBundle("UUID8")));
+      assertGroupSummaryCacheMatchesNotificationTable("test1", 8);
+
+      // Test - Dismissing a notification too old to be in the cached lines
+      OneSignal.cancelNotification(getPostedNotificationId("Message 0"));
+      assertGroupSummaryCacheMatchesNotificationTable("test1", 7);
+
+      // Test - New notification goes to the top of the summary
+      Bundle bundle = getBaseNotifBundle("UUID10");
+      bundle.putString("alert", "Message 10");
+      bundle.putString("grp", "test1");
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, bundle, null);
+      assertGroupSummaryCacheMatchesNotificationTable("test1", 8);
+      assertEquals("Message 10", NotificationSummaryManager_getGroupSummaryLines(blankActivity, "test1").get(0));
+   }
+
+   private void assertGroupSummaryCacheMatchesNotificationTable(String group, int expectedCount) {
+      int cachedCount = NotificationSummaryManager_getGroupNotificationCount(blankActivity, group);
+      List<String> cachedLines = NotificationSummaryManager_getGroupSummaryLines(blankActivity, group);
+
+      NotificationSummaryManager_invalidateAllGroups();
+
+      assertEquals(expectedCount, cachedCount);
+      assertEquals(NotificationSummaryManager_getGroupNotificationCount(blankActivity, group), cachedCount);
+      assertEquals(NotificationSummaryManager_getGroupSummaryLines(blankActivity, group), cachedLines);
+   }
+
+   private int getPostedNotificationId(String message) {
+      for (PostedNotification postedNotification : ShadowRoboNotificationManager.notifications.values()) {
+         if (message.equals(postedNotification.getShadow().getContentText()))
+            return postedNotification.id;
+      }
+      throw new AssertionError("No notification posted with message: " + message);
+   }
+
+   @Test
+   public void shouldBuildSummaryOfLargeGroupsFromCache() throws Exception {
+      for (int groupSize : new int[] { 5, 500 }) {
+         String group = "group" + groupSize;
+         insertGroupNotifications(group, groupSize);
+
+         // First build loads the group from the DB, the second one is built from the cache
+         for (int i = 0; i < 2; i++) {
+            GenerateNotification_updateSummaryNotification(blankActivity, group);
+
+            PostedNotification summary = ShadowRoboNotificationManager.notifications.get(ShadowRoboNotificationManager.lastNotifId);
+            assertEquals(groupSize + " new messages", summary.getShadow().getContentText());
+            assertEquals(Math.min(groupSize, 7), summary.notif.extras.getCharSequenceArray(Notification.EXTRA_TEXT_LINES).length);
+         }
+      }
+   }
+
+   @Test
+   public void shouldNotApplyGroupSummaryChangesOfRolledBackWrite() throws Exception {
+      insertGroupNotifications("test1", 3);
+      assertEquals(3, NotificationSummaryManager_getGroupNotificationCount(blankActivity, "test1"));
+
+      // Android notification id given to the first notification by insertGroupNotifications
+      final int androidNotificationId = "test1".hashCode();
+      boolean committed = OneSignalDbHelper_executeWrite(blankActivity, "Error in rolled back write", new OneSignalDbWriteOperation() {
+         @Override
+         public void run(SQLiteDatabase writableDb) throws Exception {
+            NotificationSummaryManager_onNotificationConsumed(androidNotificationId);
+            throw new Exception("Roll back");
+         }
+      });
+      assertFalse(committed);
+
+      // The cached group still matches the notification table
+      assertGroupSummaryCacheMatchesNotificationTable("test1", 3);
+   }
+
+   @Test
+   public void shouldCacheAndSampleDownNotificationImages() throws Exception {
+      NotificationImageLoader_clearMemoryCache();
+
+      File image = File.createTempFile("notification_image", ".png");
+      FileOutputStream outputStream = new FileOutputStream(image);
+      outputStream.write(new byte[1024]);
+      outputStream.close();
+      String url = image.toURI().toURL().toString();
+
+      File cachedImage = NotificationImageLoader_getDiskCacheFile(blankActivity, url);
+      ShadowBitmapFactory.provideWidthAndHeightHints(cachedImage.getPath(), 1000, 800);
+
+      // Sampled down by the largest power of 2 that keeps it at least the target size
+      Bitmap bitmap = NotificationImageLoader_getBitmap(blankActivity, url, 100, 100);
+      assertEquals(125, bitmap.getWidth());
+      assertEquals(100, bitmap.getHeight());
+      assertTrue(cachedImage.exists());
+
+      // Memory cache
+      assertSame(bitmap, NotificationImageLoader_getBitmap(blankActivity, url, 100, 100));
+
+      // Disk cache, the image is not downloaded again
+      assertTrue(image.delete());
+      NotificationImageLoader_clearMemoryCache();
+      assertTrue(cachedImage.setLastModified(0));
+      assertNotNull(NotificationImageLoader_getBitmap(blankActivity, url, 100, 100));
+
+      // A disk cache hit moves the image to the end of the LRU order
+      assertTrue(cachedImage.lastModified() > 0);
+   }
+
+   @Test
+   @Config(sdk = Build.VERSION_CODES.O)
+   public void shouldRecordNotificationDisplayStageTimings() {
+      Bundle bundle = getBaseNotifBundle("UUID1");
+      bundle.putString("collapse_key", "a_key");
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, bundle, null);
+
+      assertEquals(1, ShadowRoboNotificationManager.notifications.size());
+
+      // Collapse key and channel stages finish before the notification is built
+      long prepareMs = NotificationDisplayTimings.getLastStageMs("prepare");
+      assertTrue(NotificationDisplayTimings.getLastStageMs("collapse_key") >= 0);
+      assertTrue(NotificationDisplayTimings.getLastStageMs("channel") >= 0);
+      assertTrue(NotificationDisplayTimings.getLastStageMs("collapse_key") <= prepareMs);
+      assertTrue(NotificationDisplayTimings.getLastStageMs("channel") <= prepareMs);
+      assertTrue(NotificationDisplayTimings.getLastStageMs("display") >= 0);
+      assertTrue(NotificationDisplayTimings.getLastStageMs("save") >= 0);
+      assertTrue(NotificationDisplayTimings.getLastStageMs("total") >= prepareMs);
+
+      // No remote images in the payload
+      assertEquals(-1, NotificationDisplayTimings.getLastStageMs("images"));
+   }
+
+   @Test
+   public void shouldReadPushPayloadFromBundleWithMinifiedButtons() throws Exception {
+      Bundle bundle = getBaseNotifBundle("UUID1");
+      bundle.putString("custom",
+         "{\"i\": \"UUID1\"," +
+         " \"u\": \"http://google.com\"," +
+         " \"a\": {\"myKey\": \"myValue\"}}");
+      bundle.putString("o", "[{\"n\": \"text1\", \"i\": \"id1\", \"p\": \"ic_1\"}, {\"n\": \"text2\"}]");
+
+      OSNotificationPayload payload = ParsedPushPayload_fromBundle(bundle);
+
+      assertEquals("UUID1", payload.notificationID);
+      assertEquals("http://google.com", payload.launchURL);
+      assertEquals("myValue", payload.additionalData.getString("myKey"));
+      assertEquals(2, payload.actionButtons.size());
+      assertEquals("id1", payload.actionButtons.get(0).id);
+      assertEquals("text1", payload.actionButtons.get(0).text);
+      assertEquals("ic_1", payload.actionButtons.get(0).icon);
+      // Button id defaults to its text
+      assertEquals("text2", payload.actionButtons.get(1).id);
+      assertEquals("text2", payload.actionButtons.get(1).text);
+
+      // Bundle is unminified too, reading it again as JSON gives the same payload
+      assertFalse(bundle.containsKey("o"));
+      OSNotificationPayload fromJson = NotificationBundleProcessor_OSNotificationPayloadFrom(OneSignalPackagePrivateHelper.bundleAsJSONObject(bundle));
+      assertEquals(payload.rawPayload, fromJson.rawPayload);
+      assertEquals(payload.additionalData.toString(), fromJson.additionalData.toString());
+      assertEquals(2, fromJson.actionButtons.size());
+      assertEquals("id1", fromJson.actionButtons.get(0).id);
+   }
+
+   @Test
+   public void shouldNotReadNonOneSignalPushPayloadFromBundle() throws Exception {
+      assertNull(ParsedPushPayload_fromBundle(new Bundle()));
+
+      Bundle noCustom = new Bundle();
+      noCustom.putString("alert", "Message");
+      assertNull(ParsedPushPayload_fromBundle(noCustom));
+
+      Bundle invalidCustom = new Bundle();
+      invalidCustom.putString("custom", "not json");
+      assertNull(ParsedPushPayload_fromBundle(invalidCustom));
+
+      Bundle noNotificationId = new Bundle();
+      noNotificationId.putString("custom", "{\"a\": {\"myKey\": \"myValue\"}}");
+      assertNull(ParsedPushPayload_fromBundle(noNotificationId));
+   }
+
+   private void insertGroupNotifications(String group, int count) {
+      SQLiteDatabase writableDb = OneSignalDbHelper.getInstance(blankActivity).getWritableDatabase();
+      writableDb.beginTransaction();
+      try {
+         for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, group + "-" + i);
+            values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, group.hashCode() + i);
+            values.put(NotificationTable.COLUMN_NAME_GROUP_ID, group);
+            values.put(NotificationTable.COLUMN_NAME_TITLE, "Title " + i);
+            values.put(NotificationTable.COLUMN_NAME_MESSAGE, "Message " + i);
+            values.put(NotificationTable.COLUMN_NAME_FULL_DATA, "{\"alert\": \"Message " + i + "\", \"grp\": \"" + group + "\"}");
+            writableDb.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
+         }
+         writableDb.setTransactionSuccessful();
+      } finally {
+         writableDb.endTransaction();
+      }
+   }
+
    // NOTE: SIDE EFFECT: Consumes non-Implicit without running them.
    private void runImplicitServices() throws Exception {
       do {
@@ -644,6 +885,103 @@ public class GenerateNotificationRunner {
       assertEquals(0, ShadowBadgeCountUpdater.lastCount);
    }
    
+   @Test
+   public void shouldKeepBadgeCountInSyncWithNotificationEvents() {
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID1"), null);
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID2"), null);
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID3"), null);
+      assertEquals(3, ShadowBadgeCountUpdater.lastCount);
+
+      // Dismiss one of the notifications
+      PostedNotification postedNotification = ShadowRoboNotificationManager.notifications.values().iterator().next();
+      Intent intent = Shadows.shadowOf(postedNotification.notif.deleteIntent).getSavedIntent();
+      NotificationOpenedProcessor_processFromContext(blankActivity, intent);
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+
+      // Dismissing it again doesn't change the count
+      NotificationOpenedProcessor_processFromContext(blankActivity, intent);
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+
+      // A full count matches the tracked count
+      SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(blankActivity).getReadableDatabase();
+      OneSignalPackagePrivateHelper.BadgeCountUpdater.invalidateCount();
+      OneSignalPackagePrivateHelper.BadgeCountUpdater.update(readableDb, blankActivity);
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+   }
+
+   @Test
+   public void shouldNotTakeUncountedNotificationsOffBadgeCount() throws Exception {
+      OneSignal.setInFocusDisplaying(OneSignal.OSInFocusDisplayOption.Notification);
+      OneSignal.init(blankActivity, "123456789", "b2f7f966-d8cc-11e4-bed1-df8f05be55ba");
+      threadAndTaskWait();
+
+      Bundle bundle = getBaseNotifBundle("UUID1");
+      bundle.putString("grp", "test1");
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, bundle, null);
+      bundle = getBaseNotifBundle("UUID2");
+      bundle.putString("grp", "test1");
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, bundle, null);
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+
+      // The summary row isn't counted, cancelling it leaves the count as is
+      PostedNotification postedSummaryNotification = ShadowRoboNotificationManager.notifications.values().iterator().next();
+      assertEquals(Notification.FLAG_GROUP_SUMMARY, postedSummaryNotification.notif.flags & Notification.FLAG_GROUP_SUMMARY);
+      OneSignal.cancelNotification(postedSummaryNotification.id);
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+
+      // A full count matches the tracked count
+      SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(blankActivity).getReadableDatabase();
+      OneSignalPackagePrivateHelper.BadgeCountUpdater.invalidateCount();
+      OneSignalPackagePrivateHelper.BadgeCountUpdater.update(readableDb, blankActivity);
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+   }
+
+   @Test
+   public void shouldDismissWithTheSameCompiledStatementForEveryNotification() throws Exception {
+      OneSignal.init(blankActivity, "123456789", "b2f7f966-d8cc-11e4-bed1-df8f05be55ba");
+      threadAndTaskWait();
+
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID1"), null);
+      Object statement = NotificationTableRepository_getMarkDismissedStatement();
+      assertNotNull(statement);
+
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID2"), null);
+      assertSame(statement, NotificationTableRepository_getMarkDismissedStatement());
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+
+      // Cancelling binds the id to the same statement instead of building SQL from it
+      OneSignal.cancelNotification(ShadowRoboNotificationManager.notifications.keySet().iterator().next());
+      assertSame(statement, NotificationTableRepository_getMarkDismissedStatement());
+      assertEquals(1, ShadowBadgeCountUpdater.lastCount);
+
+      SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(blankActivity).getReadableDatabase();
+      Cursor cursor = readableDb.query(NotificationTable.TABLE_NAME, null, NotificationTable.COLUMN_NAME_DISMISSED + " = 1", null, null, null, null);
+      assertEquals(1, cursor.getCount());
+      cursor.close();
+   }
+
+   @Test
+   public void shouldRecountBadgeAfterRolledBackWrite() {
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID1"), null);
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID2"), null);
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+
+      final int androidNotificationId = ShadowRoboNotificationManager.notifications.keySet().iterator().next();
+      boolean committed = OneSignalDbHelper_executeWrite(blankActivity, "Error in rolled back write", new OneSignalDbWriteOperation() {
+         @Override
+         public void run(SQLiteDatabase writableDb) throws Exception {
+            OneSignalPackagePrivateHelper.BadgeCountUpdater.beforeNotificationConsumed(writableDb, androidNotificationId);
+            throw new Exception("Roll back");
+         }
+      });
+      assertFalse(committed);
+
+      // The consumed notification was rolled back so it is still counted
+      SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(blankActivity).getReadableDatabase();
+      OneSignalPackagePrivateHelper.BadgeCountUpdater.update(readableDb, blankActivity);
+      assertEquals(2, ShadowBadgeCountUpdater.lastCount);
+   }
+
    @Test
    public void shouldNotSetBadgesWhenNotificationPermissionIsDisabled() throws Exception {
       ShadowNotificationManagerCompat.enabled = false;
@@ -796,6 +1134,32 @@ public class GenerateNotificationRunner {
       cursor.close();
    }
 
+   @Test
+   public void shouldNotTreatNewNotificationsAsDuplicates() throws Exception {
+      for (int i = 0; i < 20; i++)
+         NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID" + i), null);
+
+      SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(blankActivity).getReadableDatabase();
+      Cursor cursor = readableDb.query(NotificationTable.TABLE_NAME, null, null, null, null, null, null);
+      assertEquals(20, cursor.getCount());
+      cursor.close();
+   }
+
+   @Test
+   public void shouldDetectDuplicateNotificationAfterColdRestart() throws Exception {
+      Bundle bundle = getBaseNotifBundle();
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, bundle, null);
+
+      // In memory duplicate filter is gone, it must be warmed from the notification table
+      fastColdRestartApp();
+
+      NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, bundle, null);
+      SQLiteDatabase readableDb = OneSignalDbHelper.getInstance(blankActivity).getReadableDatabase();
+      Cursor cursor = readableDb.query(NotificationTable.TABLE_NAME, null, null, null, null, null, null);
+      assertEquals(1, cursor.getCount());
+      cursor.close();
+   }
+
    @Test
    public void shouldRestoreNotifications() {
       NotificationRestorer.restore(blankActivity); NotificationRestorer.restored = false;
@@ -815,6 +1179,53 @@ public class GenerateNotificationRunner {
       assertNull(Shadows.shadowOf(blankActivity).getNextStartedService());
    }
 
+   @Test
+   @Config(shadows = { ShadowNotificationRestorer.class })
+   public void shouldRestoreNotificationsInRateLimitedBatches() {
+      ShadowNotificationRestorer.resetStatics();
+
+      for (int i = 0; i < 12; i++)
+         NotificationBundleProcessor_ProcessFromGCMIntentService(blankActivity, getBaseNotifBundle("UUID" + i), null);
+      ShadowRoboNotificationManager.notifications.clear();
+
+      restoreNotifications();
+
+      // 12 notifications fit in 2 jobs instead of 12
+      assertEquals(2, NotificationRestoreMetrics.getBatchCount());
+      assertEquals(10, ShadowNotificationRestorer.enqueuedBatches.get(0).getParcelableArrayListExtra("restore_batch").size());
+      assertEquals(12, ShadowRoboNotificationManager.notifications.size());
+      assertEquals(12, NotificationRestoreMetrics.getRestoredCount());
+
+      // Only notifications past the initial burst wait on the rate limit, within the job of their batch
+      long rateLimitWaitMs = 0;
+      for (long waitMs : ShadowNotificationRestorer.rateLimitWaits) {
+         assertTrue(waitMs <= 200);
+         rateLimitWaitMs += waitMs;
+      }
+      assertEquals(12 - 3, ShadowNotificationRestorer.rateLimitWaits.size());
+      assertEquals(rateLimitWaitMs, NotificationRestoreMetrics.getRateLimitWaitMs());
+      // Batches are never queued again, the job only finishes once its whole batch is restored
+      assertEquals(2, ShadowNotificationRestorer.enqueuedBatches.size());
+   }
+
+   @Test
+   @Config(shadows = { ShadowNotificationRestorer.class })
+   public void shouldRecordRestoreMetricsFromNotificationExtenderService() {
+      ShadowNotificationRestorer.resetStatics();
+
+      BundleCompat bundle = createInternalPayloadBundle(getBaseNotifBundle());
+      Bundle extras = (Bundle)bundle.getBundle();
+      extras.putBoolean("restoring", true);
+      extras.putLong("restore_queued_at", SystemClock.elapsedRealtime());
+      extras.putBoolean("restore_rate_limited", true);
+      extras.putBoolean("restore_last_batch", true);
+      startNotificationExtender(bundle, NotificationExtenderServiceTest.class);
+
+      assertEquals(1, NotificationRestoreMetrics.getRestoredCount());
+      // First restore is within the initial burst
+      assertEquals(0, ShadowNotificationRestorer.rateLimitWaits.size());
+   }
+
    private void assertRestoreRan() {
       Intent intent = Shadows.shadowOf(blankActivity).getNextStartedService();
       assertEquals(RestoreJobService.class.getName(), intent.getComponent().getClassName());
@@ -1179,7 +1590,7 @@ public class GenerateNotificationRunner {
       new GcmBroadcastReceiver().onReceive(blankActivity, intentGcm);
       threadAndTaskWait();
 
-      assertEquals("PGh0bWw+PC9odG1sPg==", ShadowOSWebView.lastData);
+      assertEquals("<html></html>", ShadowOSWebView.lastData);
    }
 
    @Test
@@ -1199,7 +1610,7 @@ public class GenerateNotificationRunner {
       Intent notificationOpenIntent = createOpenIntent(2, inAppPreviewMockPayloadBundle());
       NotificationOpenedProcessor_processFromContext(blankActivity, notificationOpenIntent);
 
-      assertEquals("PGh0bWw+PC9odG1sPg==", ShadowOSWebView.lastData);
+      assertEquals("<html></html>", ShadowOSWebView.lastData);
    }
 
    @Test
@@ -2,9 +2,11 @@ package com.test.onesignal;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.webkit.WebView;
 
 import com.onesignal.InAppMessagingHelpers;
 import com.onesignal.OneSignal;
+import com.onesignal.OneSignalShadowPackageManager;
 import com.onesignal.OneSignalPackagePrivateHelper;
 import com.onesignal.OneSignalPackagePrivateHelper.OSInAppMessageController;
 import com.onesignal.OneSignalPackagePrivateHelper.OSTestInAppMessage;
@@ -16,6 +18,7 @@ import com.onesignal.ShadowDynamicTimer;
 import com.onesignal.ShadowJobService;
 import com.onesignal.ShadowNotificationManagerCompat;
 import com.onesignal.ShadowOSInAppMessageController;
+import com.onesignal.ShadowOSTriggerController;
 import com.onesignal.ShadowOSUtils;
 import com.onesignal.ShadowOSViewUtils;
 import com.onesignal.ShadowOSWebView;
@@ -39,13 +42,16 @@ import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.android.controller.ActivityController;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
 import org.robolectric.shadows.ShadowLog;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static com.onesignal.OneSignalPackagePrivateHelper.OSTestTrigger.OSTriggerKind;
@@ -53,6 +59,10 @@ import static com.test.onesignal.TestHelpers.fastColdRestartApp;
 import static com.test.onesignal.TestHelpers.threadAndTaskWait;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
 
 @Config(packageName = "com.onesignal.example",
         instrumentedPackages = { "com.onesignal" },
@@ -67,8 +77,10 @@ import static junit.framework.Assert.assertFalse;
             ShadowJobService.class,
             ShadowDynamicTimer.class,
             ShadowOSInAppMessageController.class,
+            ShadowOSTriggerController.class,
             ShadowOSWebView.class,
-            ShadowOSViewUtils.class
+            ShadowOSViewUtils.class,
+            OneSignalShadowPackageManager.class
         },
         sdk = 21
 )
@@ -163,6 +175,95 @@ public class InAppMessageIntegrationTests {
         assertEquals(2, ShadowOSInAppMessageController.displayedMessages.size());
     }
 
+    @Test
+    public void testTriggerChangeOnlyEvaluatesMessagesUsingTheKey() throws Exception {
+        final OSTestInAppMessage testFirstMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM,"test_1", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 3);
+        final OSTestInAppMessage testSecondMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM,"test_2", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 2);
+        final OSTestInAppMessage testThirdMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM,"test_2", OSTestTrigger.OSTriggerOperator.GREATER_THAN.toString(), 5);
+
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(testFirstMessage);
+            add(testSecondMessage);
+            add(testThirdMessage);
+        }});
+        OneSignalInit();
+        threadAndTaskWait();
+        ShadowOSTriggerController.evaluatedMessages.clear();
+
+        // Only the messages with a test_2 trigger are evaluated, in their original order
+        OneSignal.addTrigger("test_2", 1);
+        assertEquals(Arrays.asList(testSecondMessage.messageId, testThirdMessage.messageId), ShadowOSTriggerController.evaluatedMessages);
+
+        // No message depends on this key
+        ShadowOSTriggerController.evaluatedMessages.clear();
+        OneSignal.addTrigger("unused_key", 1);
+        assertEquals(0, ShadowOSTriggerController.evaluatedMessages.size());
+
+        // Changes within the debounce window are evaluated once it ends
+        ShadowOSTriggerController.evaluatedMessages.clear();
+        OneSignal.removeTriggerForKey("test_1");
+        threadAndTaskWait();
+        assertEquals(Arrays.asList(testFirstMessage.messageId), ShadowOSTriggerController.evaluatedMessages);
+
+        // Multiple keys still evaluate each affected message once
+        ShadowOSTriggerController.evaluatedMessages.clear();
+        OneSignal.addTriggers(new HashMap<String, Object>() {{
+            put("test_1", 3);
+            put("test_2", 1);
+        }});
+        assertEquals(Arrays.asList(testFirstMessage.messageId, testSecondMessage.messageId, testThirdMessage.messageId), ShadowOSTriggerController.evaluatedMessages);
+        assertEquals(1, ShadowOSInAppMessageController.displayedMessages.size());
+    }
+
+    @Test
+    public void testTriggersEditorEvaluatesMessagesOnce() throws Exception {
+        initializeSdkWithMultiplePendingMessages();
+        ShadowOSTriggerController.evaluatedMessages.clear();
+
+        OneSignal.TriggersEditor editor = OneSignal.editTriggers();
+        for (int i = 0; i < 10; i++)
+            editor.addTrigger("test_1", i);
+        editor.addTrigger("test_2", 2)
+              .addTrigger("test_3", 1)
+              .removeTriggerForKey("test_3");
+
+        // Nothing is applied or evaluated until commit
+        assertNull(OneSignal.getTriggerValueForKey("test_1"));
+        assertEquals(0, ShadowOSTriggerController.evaluatedMessages.size());
+
+        editor.commit();
+
+        // Each message is evaluated once for the whole batch
+        assertEquals(2, ShadowOSTriggerController.evaluatedMessages.size());
+        assertEquals(9, OneSignal.getTriggerValueForKey("test_1"));
+        assertNull(OneSignal.getTriggerValueForKey("test_3"));
+        assertEquals(1, ShadowOSInAppMessageController.displayedMessages.size());
+    }
+
+    @Test
+    public void testRapidTriggerChangesAreCoalesced() throws Exception {
+        final OSTestInAppMessage testMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM,"test_key", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 20);
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(testMessage);
+        }});
+        OneSignalInit();
+        threadAndTaskWait();
+        ShadowOSTriggerController.evaluatedMessages.clear();
+
+        for (int i = 1; i <= 20; i++)
+            OneSignal.addTrigger("test_key", i);
+
+        // First change is evaluated right away, the rest wait for the debounce window
+        assertEquals(1, ShadowOSTriggerController.evaluatedMessages.size());
+        assertEquals(0, ShadowOSInAppMessageController.displayedMessages.size());
+
+        threadAndTaskWait();
+
+        // One more evaluation for the other 19 changes, with the latest value
+        assertEquals(2, ShadowOSTriggerController.evaluatedMessages.size());
+        assertEquals(1, ShadowOSInAppMessageController.displayedMessages.size());
+    }
+
     // This tests both rotating the device or the app being resumed.
     @Test
     public void testMessageDismissingWhileDeviceIsRotating() throws Exception {
@@ -341,6 +442,273 @@ public class InAppMessageIntegrationTests {
         assertFalse(ShadowDynamicTimer.hasScheduledTimer);
     }
 
+    @Test
+    public void testTriggerTimerCancelledWhenMessageDisplayed() throws Exception {
+        final OSTestInAppMessage message = InAppMessagingHelpers.buildTestMessageWithMultipleTriggers(new ArrayList<ArrayList<OSTestTrigger>>() {{
+            add(new ArrayList<OSTestTrigger>() {{
+                add(InAppMessagingHelpers.buildTrigger(OSTriggerKind.SESSION_TIME, null, OSTestTrigger.OSTriggerOperator.GREATER_THAN.toString(), 30));
+            }});
+            add(new ArrayList<OSTestTrigger>() {{
+                add(InAppMessagingHelpers.buildTrigger(OSTriggerKind.CUSTOM, "test_key", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), "squirrel"));
+            }});
+        }});
+
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(message);
+        }});
+
+        OneSignalInit();
+        threadAndTaskWait();
+
+        // waiting on the session time trigger
+        assertEquals(1, ShadowDynamicTimer.pendingTimerCount());
+
+        // displayed by the custom trigger, its session time timer isn't needed anymore
+        OneSignal.addTrigger("test_key", "squirrel");
+        threadAndTaskWait();
+
+        assertEquals(1, ShadowOSInAppMessageController.displayedMessages.size());
+        assertEquals(0, ShadowDynamicTimer.pendingTimerCount());
+    }
+
+    @Test
+    public void testMessageHtmlIsPrefetchedAndDisplayedFromCache() throws Exception {
+        final OSTestInAppMessage message = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_key", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), "squirrel");
+
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(message);
+        }});
+
+        OneSignalInit();
+        threadAndTaskWait();
+
+        // html is downloaded once the message is received
+        assertEquals(1, htmlRequestCount(message));
+
+        OneSignal.addTrigger("test_key", "squirrel");
+        threadAndTaskWait();
+
+        // and displayed from the cache without being requested again
+        assertEquals(1, ShadowOSInAppMessageController.displayedMessages.size());
+        assertEquals(1, htmlRequestCount(message));
+        assertEquals(1, OneSignalPackagePrivateHelper.OSInAppMessageDisplayMetrics.getHtmlCacheHits());
+        assertEquals(0, OneSignalPackagePrivateHelper.OSInAppMessageDisplayMetrics.getHtmlCacheMisses());
+    }
+
+    @Test
+    public void testMessageHtmlAlreadyBeingPrefetchedIsNotQueuedAgain() throws Exception {
+        final OSTestInAppMessage message = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_key", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), "squirrel");
+
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(message);
+        }});
+
+        OneSignalInit();
+        threadAndTaskWait();
+        assertEquals(1, htmlRequestCount(message));
+
+        // Two on_sessions while the prefetch threads are busy queue the variant only once
+        CountDownLatch releaseLatch = InAppMessagingHelpers.holdHtmlPrefetch();
+        InAppMessagingHelpers.prefetchMessageHtml();
+        InAppMessagingHelpers.prefetchMessageHtml();
+        assertEquals(InAppMessagingHelpers.HTML_PREFETCH_MAX_CONCURRENT, InAppMessagingHelpers.htmlPrefetchThreadCount());
+
+        releaseLatch.countDown();
+        threadAndTaskWait();
+
+        assertEquals(2, htmlRequestCount(message));
+    }
+
+    @Test
+    public void testStaleMessageHtmlIsRevalidatedBeforeDisplay() throws Exception {
+        final OSTestInAppMessage message = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_key", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), "squirrel");
+
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(message);
+        }});
+
+        OneSignalInit();
+        threadAndTaskWait();
+        assertEquals(1, htmlRequestCount(message));
+
+        OneSignalPackagePrivateHelper.OSInAppMessageHtmlCache.expireAll();
+        OneSignal.addTrigger("test_key", "squirrel");
+        threadAndTaskWait();
+
+        // requested again before being displayed
+        assertEquals(1, ShadowOSInAppMessageController.displayedMessages.size());
+        assertEquals(2, htmlRequestCount(message));
+        assertEquals(0, OneSignalPackagePrivateHelper.OSInAppMessageDisplayMetrics.getHtmlCacheHits());
+        assertEquals(1, OneSignalPackagePrivateHelper.OSInAppMessageDisplayMetrics.getHtmlCacheMisses());
+    }
+
+    @Test
+    public void testPooledWebViewIsUsedForDisplay() throws Exception {
+        final OSTestInAppMessage message = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_key", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), "squirrel");
+
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(message);
+        }});
+
+        OneSignalInit();
+        threadAndTaskWait();
+
+        // Normally created once the main thread is idle
+        OneSignalPackagePrivateHelper.OSWebViewPool.warmUp(blankActivity);
+        assertTrue(OneSignalPackagePrivateHelper.OSWebViewPool.hasPooledWebView());
+
+        OneSignal.addTrigger("test_key", "squirrel");
+        threadAndTaskWait();
+
+        assertEquals(1, ShadowOSInAppMessageController.displayedMessages.size());
+        assertFalse(OneSignalPackagePrivateHelper.OSWebViewPool.hasPooledWebView());
+    }
+
+    @Test
+    public void testWebViewPoolDisabledFromManifest() throws Exception {
+        OneSignalShadowPackageManager.addManifestMetaData("com.onesignal.InAppMessageWebViewPool", "DISABLE");
+        OneSignalInit();
+        threadAndTaskWait();
+
+        OneSignalPackagePrivateHelper.OSWebViewPool.warmUp(blankActivity);
+        assertFalse(OneSignalPackagePrivateHelper.OSWebViewPool.hasPooledWebView());
+    }
+
+    @Test
+    public void testReplacedPreloadedWebViewIsDestroyed() throws Exception {
+        OneSignalInit();
+        threadAndTaskWait();
+
+        OSTestInAppMessage firstMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_1", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 3);
+        OSTestInAppMessage secondMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_2", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 2);
+
+        OneSignalPackagePrivateHelper.WebViewManager_preloadHTMLString(firstMessage, "<html></html>");
+        threadAndTaskWait();
+        WebView firstWebView = OneSignalPackagePrivateHelper.WebViewManager_getPreloadedWebView();
+        assertNotNull(firstWebView);
+
+        // Only one message is kept rendered off-screen
+        OneSignalPackagePrivateHelper.WebViewManager_preloadHTMLString(secondMessage, "<html></html>");
+        threadAndTaskWait();
+        assertTrue(((ShadowOSWebView) Shadow.extract(firstWebView)).wasDestroyCalled());
+        assertNotSame(firstWebView, OneSignalPackagePrivateHelper.WebViewManager_getPreloadedWebView());
+    }
+
+    @Test
+    public void testQueuedMessageIsPreloaded() throws Exception {
+        initializeSdkWithMultiplePendingMessages();
+
+        OneSignal.addTriggers(new HashMap<String, Object>() {{
+            put("test_1", 3);
+            put("test_2", 2);
+        }});
+        threadAndTaskWait();
+
+        // The displayed message and the queued one rendered off-screen
+        assertEquals(1, ShadowOSInAppMessageController.displayedMessages.size());
+        assertEquals(2, ShadowOSWebView.loadDataCount);
+
+        OneSignalPackagePrivateHelper.dismissCurrentMessage();
+        threadAndTaskWait();
+
+        // Shown from the preloaded WebView without loading it again
+        assertEquals(2, ShadowOSInAppMessageController.displayedMessages.size());
+        assertEquals(2, ShadowOSWebView.loadDataCount);
+    }
+
+    @Test
+    public void testQueuedMessagesDisplayByPriority() throws Exception {
+        final OSTestInAppMessage firstMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_1", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 3);
+        final OSTestInAppMessage lowPriorityMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_2", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 2);
+        final OSTestInAppMessage highPriorityMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_2", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 2);
+        highPriorityMessage.setPriority(10);
+
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(firstMessage);
+            add(lowPriorityMessage);
+            add(highPriorityMessage);
+        }});
+
+        OneSignalInit();
+        threadAndTaskWait();
+
+        OneSignal.addTriggers(new HashMap<String, Object>() {{
+            put("test_1", 3);
+            put("test_2", 2);
+        }});
+        threadAndTaskWait();
+
+        assertEquals(Arrays.asList(firstMessage.messageId), ShadowOSInAppMessageController.displayedMessages);
+
+        // Queued after the low priority message but displayed before it
+        OneSignalPackagePrivateHelper.dismissCurrentMessage();
+        threadAndTaskWait();
+        OneSignalPackagePrivateHelper.dismissCurrentMessage();
+        threadAndTaskWait();
+
+        assertEquals(Arrays.asList(firstMessage.messageId, highPriorityMessage.messageId, lowPriorityMessage.messageId), ShadowOSInAppMessageController.displayedMessages);
+    }
+
+    @Test
+    public void testDismissalEvaluatesAllMessagesAfterSkippedEvaluation() throws Exception {
+        final OSTestInAppMessage firstMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_1", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 3);
+        final OSTestInAppMessage secondMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_2", OSTestTrigger.OSTriggerOperator.EQUAL_TO.toString(), 2);
+
+        setMockRegistrationResponseWithMessages(new ArrayList<OSTestInAppMessage>() {{
+            add(firstMessage);
+            add(secondMessage);
+        }});
+
+        OneSignalInit();
+        threadAndTaskWait();
+
+        OneSignal.addTrigger("test_1", 3);
+        threadAndTaskWait();
+        assertEquals(Arrays.asList(firstMessage.messageId), ShadowOSInAppMessageController.displayedMessages);
+
+        // No activity, the second message isn't evaluated and so isn't queued
+        blankActivityController.pause();
+        OneSignal.addTrigger("test_2", 2);
+        threadAndTaskWait();
+        blankActivityController.resume();
+        threadAndTaskWait();
+
+        OneSignalPackagePrivateHelper.dismissCurrentMessage();
+        threadAndTaskWait();
+
+        assertEquals(Arrays.asList(firstMessage.messageId, secondMessage.messageId), ShadowOSInAppMessageController.displayedMessages);
+    }
+
+    @Test
+    public void testDismissalOnlyEvaluatesMessagesUsingLastInAppTime() throws Exception {
+        initializeSdkWithMultiplePendingMessages();
+
+        OneSignal.addTriggers(new HashMap<String, Object>() {{
+            put("test_1", 3);
+            put("test_2", 2);
+        }});
+        threadAndTaskWait();
+        ShadowOSTriggerController.evaluatedMessages.clear();
+
+        OneSignalPackagePrivateHelper.dismissCurrentMessage();
+        threadAndTaskWait();
+        OneSignalPackagePrivateHelper.dismissCurrentMessage();
+        threadAndTaskWait();
+
+        // Both were displayed and neither depends on the time since the last in-app, nothing is re-evaluated
+        assertEquals(2, ShadowOSInAppMessageController.displayedMessages.size());
+        assertEquals(0, ShadowOSTriggerController.evaluatedMessages.size());
+    }
+
+    private static int htmlRequestCount(OSTestInAppMessage message) {
+        int count = 0;
+        for (ShadowOneSignalRestClient.Request request : ShadowOneSignalRestClient.requests) {
+            if (request.url.startsWith("in_app_messages/" + message.messageId + "/variants/"))
+                count++;
+        }
+        return count;
+    }
+
     @Test
     public void useCachedInAppListOnQuickColdRestart() throws Exception {
         // 1. Start app
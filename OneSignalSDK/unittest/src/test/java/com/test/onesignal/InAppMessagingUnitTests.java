@@ -2,11 +2,14 @@ package com.test.onesignal;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
+import android.webkit.WebView;
 
 import com.onesignal.InAppMessagingHelpers;
 import com.onesignal.OSInAppMessageAction;
 import com.onesignal.OneSignal;
+import com.onesignal.OneSignalPackagePrivateHelper;
 import com.onesignal.OneSignalPackagePrivateHelper.OSInAppMessageController;
 import com.onesignal.OneSignalPackagePrivateHelper.OSTestInAppMessage;
 import com.onesignal.OneSignalPackagePrivateHelper.OSTestInAppMessageAction;
@@ -37,10 +40,16 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.android.controller.ActivityController;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLog;
+import org.robolectric.shadows.ShadowWebView;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.onesignal.OneSignalPackagePrivateHelper.OSTestTrigger.OSTriggerKind;
 import static com.onesignal.OneSignalPackagePrivateHelper.OSTestTrigger.OSTriggerOperator;
@@ -50,7 +59,9 @@ import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
 
 @Config(packageName = "com.onesignal.example",
         instrumentedPackages = { "com.onesignal" },
@@ -141,6 +152,91 @@ public class InAppMessagingUnitTests {
         return InAppMessagingHelpers.evaluateMessage(testMessage);
     }
 
+    @Test
+    public void testCompiledTriggersMatchInterpretedTriggers() throws JSONException {
+        Object[] values = new Object[] { null, 0, 1, 2.5, 3L, "1", "2.5", "abc", "", true, new ArrayList<Object>() {{ add("abc"); add(1); }} };
+        for (OSTriggerOperator operator : OSTriggerOperator.values()) {
+            for (Object triggerValue : values) {
+                if (triggerValue instanceof ArrayList)
+                    continue;
+
+                OSTestInAppMessage testMessage = InAppMessagingHelpers.buildTestMessageWithSingleTrigger(OSTriggerKind.CUSTOM, "test_property", operator.toString(), triggerValue);
+                for (Object localValue : values) {
+                    HashMap<String, Object> triggers = new HashMap<>();
+                    if (localValue != null)
+                        triggers.put("test_property", localValue);
+
+                    assertEquals(
+                        operator + " trigger: " + triggerValue + " local: " + localValue,
+                        InAppMessagingHelpers.evaluateInterpretedTriggers(testMessage, triggers),
+                        InAppMessagingHelpers.evaluateCompiledTriggers(testMessage, triggers)
+                    );
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares evaluating compiled triggers against walking the raw trigger arrays for a set of
+     * messages with OR-of-ANDs custom triggers and several sets of device trigger values.
+     */
+    @Test
+    public void testCompiledMultipleTriggersMatchInterpretedTriggers() throws JSONException {
+        final int messageCount = 50;
+        final String[] operators = new String[] {
+            OSTriggerOperator.GREATER_THAN.toString(),
+            OSTriggerOperator.LESS_THAN_OR_EQUAL_TO.toString(),
+            OSTriggerOperator.EQUAL_TO.toString(),
+            OSTriggerOperator.NOT_EQUAL_TO.toString()
+        };
+
+        ArrayList<OSTestInAppMessage> messages = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            ArrayList<ArrayList<OSTestTrigger>> ors = new ArrayList<>();
+            for (int or = 0; or < 3; or++) {
+                ArrayList<OSTestTrigger> ands = new ArrayList<>();
+                for (int and = 0; and < 3; and++) {
+                    String operator = operators[(i + or + and) % operators.length];
+                    ands.add(InAppMessagingHelpers.buildTrigger(OSTriggerKind.CUSTOM, "key_" + and, operator, i + or));
+                }
+                ors.add(ands);
+            }
+            messages.add(InAppMessagingHelpers.buildTestMessageWithMultipleTriggers(ors));
+        }
+
+        // Mix of numeric and string device values as apps commonly set them, including missing keys
+        ArrayList<HashMap<String, Object>> triggerSets = new ArrayList<>();
+        triggerSets.add(new HashMap<String, Object>() {{
+            put("key_0", 25);
+            put("key_1", "30");
+            put("key_2", 12.5);
+        }});
+        triggerSets.add(new HashMap<String, Object>() {{
+            put("key_0", "3");
+            put("key_1", 3);
+            put("key_2", "not a number");
+        }});
+        triggerSets.add(new HashMap<String, Object>() {{
+            put("key_1", 0);
+        }});
+        triggerSets.add(new HashMap<String, Object>());
+
+        int matches = 0, evaluations = 0;
+        for (HashMap<String, Object> triggers : triggerSets) {
+            for (OSTestInAppMessage testMessage : messages) {
+                boolean interpreted = InAppMessagingHelpers.evaluateInterpretedTriggers(testMessage, triggers);
+                assertEquals(interpreted, InAppMessagingHelpers.evaluateCompiledTriggers(testMessage, triggers));
+                if (interpreted)
+                    matches++;
+                evaluations++;
+            }
+        }
+
+        // Both outcomes are covered
+        assertTrue(matches > 0);
+        assertTrue(matches < evaluations);
+    }
+
     @Test
     public void testBuiltMessage() {
         UUID.fromString(message.messageId); // Throws if invalid
@@ -423,6 +519,169 @@ public class InAppMessagingUnitTests {
         assertTrue(roughlyEqualTimerValues(5.0, ShadowDynamicTimer.mostRecentTimerDelaySeconds()));
     }
 
+    @Test
+    public void testTriggerTimersFiringTogetherAreCoalesced() throws Exception {
+        ShadowDynamicTimer.runTimersManually = true;
+        InAppMessagingHelpers.resetSessionLaunchTime();
+
+        ArrayList<OSTestTrigger> triggers = new ArrayList<>();
+        for (double seconds : new double[] { 10, 20, 30 })
+            triggers.add(InAppMessagingHelpers.buildTrigger(OSTriggerKind.SESSION_TIME, null, OSTriggerOperator.GREATER_THAN.toString(), seconds));
+
+        AtomicInteger conditionChangedCount = new AtomicInteger();
+        InAppMessagingHelpers.dynamicTriggersShouldFire(triggers, conditionChangedCount);
+        assertEquals(3, ShadowDynamicTimer.pendingTimerCount());
+
+        // The first timer is passed on right away, the two firing within the window after it are merged into one call
+        ShadowDynamicTimer.runPendingTimers();
+        assertEquals(1, conditionChangedCount.get());
+        assertEquals(1, ShadowDynamicTimer.pendingTimerCount());
+        assertTrue(roughlyEqualTimerValues(0.1, ShadowDynamicTimer.mostRecentTimerDelaySeconds()));
+
+        // Made at the end of the window
+        SystemClock.sleep(100);
+        ShadowDynamicTimer.runPendingTimers();
+        assertEquals(2, conditionChangedCount.get());
+        assertEquals(0, ShadowDynamicTimer.pendingTimerCount());
+    }
+
+    @Test
+    public void testTriggerTimerSchedulerRunsOneTimerPerTrigger() throws Exception {
+        ShadowDynamicTimer.useRealScheduler = true;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        InAppMessagingHelpers.setTriggerTimerScheduler(scheduler);
+
+        final AtomicInteger firedCount = new AtomicInteger();
+        final CountDownLatch firedLatch = new CountDownLatch(1);
+        TimerTask task = new TimerTask() {
+            @Override
+            public void run() {
+                firedCount.incrementAndGet();
+                firedLatch.countDown();
+            }
+        };
+
+        // A trigger already waiting on a timer isn't scheduled again
+        InAppMessagingHelpers.scheduleTriggerTimer(task, "trigger_1", 60_000);
+        InAppMessagingHelpers.scheduleTriggerTimer(task, "trigger_1", 60_000);
+        assertEquals(1, scheduler.getQueue().size());
+
+        // Cancelled timers are removed from the queue right away
+        InAppMessagingHelpers.cancelTriggerTimer("trigger_1");
+        assertEquals(0, scheduler.getQueue().size());
+
+        InAppMessagingHelpers.scheduleTriggerTimer(task, "trigger_1", 0);
+        assertTrue(firedLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, firedCount.get());
+
+        // Once fired, the trigger can be scheduled again
+        InAppMessagingHelpers.scheduleTriggerTimer(task, "trigger_1", 60_000);
+        assertEquals(1, scheduler.getQueue().size());
+    }
+
+    @Test
+    public void testTriggerTimerSchedulerDoesNotRunCancelledDueTimer() throws Exception {
+        ShadowDynamicTimer.useRealScheduler = true;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        InAppMessagingHelpers.setTriggerTimerScheduler(scheduler);
+
+        // Keeps the scheduler thread busy so the trigger timer is due but not run yet
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException e) {}
+            }
+        });
+
+        final AtomicInteger firedCount = new AtomicInteger();
+        InAppMessagingHelpers.scheduleTriggerTimer(new TimerTask() {
+            @Override
+            public void run() {
+                firedCount.incrementAndGet();
+            }
+        }, "trigger_1", 0);
+        InAppMessagingHelpers.cancelTriggerTimer("trigger_1");
+
+        // Runs after everything queued before it
+        final CountDownLatch drainedLatch = new CountDownLatch(1);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                drainedLatch.countDown();
+            }
+        });
+        releaseLatch.countDown();
+        assertTrue(drainedLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, firedCount.get());
+    }
+
+    @Test
+    public void testBlockedTriggerTimerDoesNotDelayOtherTriggerTimers() throws Exception {
+        ShadowDynamicTimer.useRealScheduler = true;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        InAppMessagingHelpers.setTriggerTimerScheduler(scheduler);
+
+        // Stands in for a message display waiting on its html download
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        InAppMessagingHelpers.scheduleTriggerTimer(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException e) {}
+            }
+        }, "trigger_1", 0);
+
+        final CountDownLatch firedLatch = new CountDownLatch(1);
+        InAppMessagingHelpers.scheduleTriggerTimer(new TimerTask() {
+            @Override
+            public void run() {
+                firedLatch.countDown();
+            }
+        }, "trigger_2", 10);
+
+        try {
+            assertTrue(firedLatch.await(5, TimeUnit.SECONDS));
+        } finally {
+            releaseLatch.countDown();
+        }
+    }
+
+    @Test
+    public void testBlockedScheduledTaskDoesNotDelayTriggerTimers() throws Exception {
+        ShadowDynamicTimer.useRealScheduler = true;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        InAppMessagingHelpers.setTriggerTimerScheduler(scheduler);
+
+        // Stands in for the trigger debounce evaluation waiting on a message html download
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        InAppMessagingHelpers.scheduleTimer(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException e) {}
+            }
+        }, 0);
+
+        final CountDownLatch firedLatch = new CountDownLatch(1);
+        InAppMessagingHelpers.scheduleTriggerTimer(new TimerTask() {
+            @Override
+            public void run() {
+                firedLatch.countDown();
+            }
+        }, "trigger_1", 10);
+
+        try {
+            assertTrue(firedLatch.await(5, TimeUnit.SECONDS));
+        } finally {
+            releaseLatch.countDown();
+        }
+    }
+
     @Test
     public void testShouldTriggerWhen1OutOf3OrsAreMeet() throws JSONException {
         setLocalTriggerValue("prop1", 3);
@@ -503,4 +762,19 @@ public class InAppMessagingUnitTests {
         assertEquals(1, iamImpressionRequest.payload.get("device_type"));
         assertEquals(true, iamImpressionRequest.payload.get("first_impression"));
     }
+
+    @Test
+    public void testHtmlIsLoadedAsIs() {
+        String htmlStr = "<html><body>In-app message \u00e9</body></html>";
+        WebView webView = new WebView(blankActivity);
+
+        OneSignalPackagePrivateHelper.WebViewManager.loadHtml(webView, htmlStr);
+
+        // The html string itself is handed to the WebView, not a base64 copy of it
+        ShadowWebView.LoadDataWithBaseURL loaded = shadowOf(webView).getLastLoadDataWithBaseURL();
+        assertSame(htmlStr, loaded.data);
+        assertEquals("text/html", loaded.mimeType);
+        assertEquals("UTF-8", loaded.encoding);
+        assertNull(shadowOf(webView).getLastLoadData());
+    }
 }
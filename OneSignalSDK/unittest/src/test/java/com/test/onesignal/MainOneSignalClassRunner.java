@@ -119,6 +119,9 @@ import java.util.regex.Pattern;
 import static com.onesignal.OneSignalPackagePrivateHelper.GcmBroadcastReceiver_processBundle;
 import static com.onesignal.OneSignalPackagePrivateHelper.NotificationBundleProcessor_Process;
 import static com.onesignal.OneSignalPackagePrivateHelper.NotificationOpenedProcessor_processFromContext;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_clearWeakPermissionObserver;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_getPermissionObserverCount;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_notifyPermissionObservers;
 import static com.onesignal.OneSignalPackagePrivateHelper.bundleAsJSONObject;
 import static com.onesignal.ShadowOneSignalRestClient.REST_METHOD;
 import static com.test.onesignal.GenerateNotificationRunner.getBaseNotifBundle;
@@ -3390,6 +3393,45 @@ public class MainOneSignalClassRunner {
       assertFalse(ShadowOneSignalRestClient.lastPost.has("notification_types"));
    }
 
+   @Test
+   public void shouldRemoveGarbageCollectedPermissionObservers() throws Exception {
+      OneSignalInit();
+      threadAndTaskWait();
+
+      final int[] keptObserverCalls = new int[1];
+      OSPermissionObserver keptObserver = new OSPermissionObserver() {
+         @Override
+         public void onOSPermissionChanged(OSPermissionStateChanges stateChanges) {
+            keptObserverCalls[0]++;
+         }
+      };
+      OneSignal.addPermissionObserver(keptObserver);
+      List<OSPermissionObserver> collectedObservers = new ArrayList<>();
+      for (int i = 0; i < 99; i++) {
+         OSPermissionObserver observer = new OSPermissionObserver() {
+            @Override
+            public void onOSPermissionChanged(OSPermissionStateChanges stateChanges) {}
+         };
+         collectedObservers.add(observer);
+         OneSignal.addPermissionObserver(observer);
+      }
+      assertEquals(100, OneSignal_getPermissionObserverCount());
+
+      // Same as the observers being garbage collected, OneSignal only holds them weakly
+      for (OSPermissionObserver observer : collectedObservers)
+         OneSignal_clearWeakPermissionObserver(observer);
+
+      // Collected observers are removed as they are found when notifying
+      int keptObserverCallsBefore = keptObserverCalls[0];
+      assertTrue(OneSignal_notifyPermissionObservers(new OSPermissionStateChanges()));
+      assertEquals(keptObserverCallsBefore + 1, keptObserverCalls[0]);
+      assertEquals(1, OneSignal_getPermissionObserverCount());
+
+      OneSignal.removePermissionObserver(keptObserver);
+      assertEquals(0, OneSignal_getPermissionObserverCount());
+      assertFalse(OneSignal_notifyPermissionObservers(new OSPermissionStateChanges()));
+   }
+
    @Test
    public void shouldSetNotificationTypesToZeroWhenUnsubscribeWhenNotificationsAreDisabledIsEnabled() throws Exception {
       ShadowNotificationManagerCompat.enabled = false;
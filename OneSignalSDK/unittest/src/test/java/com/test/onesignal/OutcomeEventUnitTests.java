@@ -50,8 +50,10 @@ import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLog;
 
+import java.util.Arrays;
 import java.util.List;
 
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalCacheCleaner_cleanNotificationCache;
 import static com.test.onesignal.TestHelpers.lockTimeTo;
 import static com.test.onesignal.TestHelpers.threadAndTaskWait;
 import static junit.framework.Assert.assertNull;
@@ -496,6 +498,89 @@ public class OutcomeEventUnitTests {
         assertEquals(0, outcomeEvents.size());
     }
 
+    private void saveOutcomeEvents(final int count) throws Exception {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Saved outcomes are removed by timestamp so each one needs it's own
+                for (int i = 0; i < count; i++)
+                    repository.saveOutcomeEvent(new OutcomeEvent(OSSessionManager.Session.UNATTRIBUTED, null, OUTCOME_NAME + i, i + 1, 0));
+            }
+        }, "OS_SAVE_OUTCOMES_TEST").start();
+        threadAndTaskWait();
+    }
+
+    private void loadSavedOutcomeEvents() throws Exception {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                handler.setOutcomes(repository.getSavedOutcomeEvents());
+            }
+        }, "OS_GET_SAVED_OUTCOMES_FAILS").start();
+        threadAndTaskWait();
+    }
+
+    @Test
+    public void testSendSavedOutcomesInBatches() throws Exception {
+        int savedCount = MockOutcomeEventsController.SAVED_OUTCOMES_BATCH_SIZE * 2 + 5;
+        saveOutcomeEvents(savedCount);
+        service.setSuccess(true);
+
+        controller.sendSavedOutcomes();
+        threadAndTaskWait();
+        loadSavedOutcomeEvents();
+
+        assertEquals(0, outcomeEvents.size());
+        assertEquals(savedCount, service.getSendCount());
+        // Each batch's sent outcomes are removed together
+        assertEquals(Arrays.asList(
+           MockOutcomeEventsController.SAVED_OUTCOMES_BATCH_SIZE,
+           MockOutcomeEventsController.SAVED_OUTCOMES_BATCH_SIZE,
+           5
+        ), repository.getRemovedEventBatchSizes());
+    }
+
+    @Test
+    public void testSendSavedOutcomesStopsAfterFailedBatches() throws Exception {
+        int savedCount = MockOutcomeEventsController.SAVED_OUTCOMES_BATCH_SIZE * 3;
+        saveOutcomeEvents(savedCount);
+        service.setSuccess(false);
+
+        controller.sendSavedOutcomes();
+        threadAndTaskWait();
+        loadSavedOutcomeEvents();
+
+        // Failed batch is retried with backoff instead of sending the whole cache
+        assertEquals(savedCount, outcomeEvents.size());
+        assertEquals(
+           MockOutcomeEventsController.SAVED_OUTCOMES_BATCH_SIZE * MockOutcomeEventsController.SAVED_OUTCOMES_MAX_FAILED_BATCHES,
+           service.getSendCount()
+        );
+        assertEquals(0, repository.getRemovedEventBatchSizes().size());
+    }
+
+    @Test
+    public void testFailedSavedOutcomeIsRetriedWhenAnEqualOutcomeWasSent() throws Exception {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Two equal outcomes, the first send fails and the second succeeds
+                for (int i = 0; i < 2; i++)
+                    repository.saveOutcomeEvent(new OutcomeEvent(OSSessionManager.Session.UNATTRIBUTED, null, OUTCOME_NAME, 1, 0));
+            }
+        }, "OS_SAVE_OUTCOMES_TEST").start();
+        threadAndTaskWait();
+        service.setSuccess(true);
+        service.setFailNextSends(1);
+
+        controller.sendSavedOutcomes();
+        threadAndTaskWait();
+
+        // Only the failed outcome is sent again, the sent one doesn't hide it
+        assertEquals(3, service.getSendCount());
+        assertEquals(Arrays.asList(1, 1), repository.getRemovedEventBatchSizes());
+    }
+
     @Test
     public void testSendFailedOutcomeWithValueOnDB() throws Exception {
         lockTimeTo(0);
@@ -535,6 +620,96 @@ public class OutcomeEventUnitTests {
         assertEquals("{\"id\":\"testing\",\"weight\":1.1,\"device_type\":1}", service.getLastJsonObjectSent());
     }
 
+    @Test
+    public void testAttributedUniqueOutcomeOnlyQueriesDBOnce() throws Exception {
+        service.setSuccess(true);
+        sessionManager.setSessionResult(OSSessionManager.SessionResult.Builder.newInstance()
+                .setNotificationIds(new JSONArray().put(NOTIFICATION_ID))
+                .setSession(OSSessionManager.Session.DIRECT)
+                .build());
+
+        controller.sendUniqueOutcomeEvent(OUTCOME_NAME);
+        threadAndTaskWait();
+        controller.sendUniqueOutcomeEvent(OUTCOME_NAME);
+        controller.sendUniqueOutcomeEvent(OUTCOME_NAME);
+        threadAndTaskWait();
+
+        // Only the first call warms the index from the DB, repeated calls are answered from memory
+        assertEquals(1, service.getSendCount());
+        assertEquals(1, repository.getUniqueOutcomeNotificationQueries());
+    }
+
+    @Test
+    public void testAttributedUniqueOutcomeSentAgainAfterCacheClean() throws Exception {
+        service.setSuccess(true);
+        sessionManager.setSessionResult(OSSessionManager.SessionResult.Builder.newInstance()
+                .setNotificationIds(new JSONArray().put(NOTIFICATION_ID))
+                .setSession(OSSessionManager.Session.DIRECT)
+                .build());
+
+        controller.sendUniqueOutcomeEvent(OUTCOME_NAME);
+        threadAndTaskWait();
+
+        // The notification is not in the notification table so the cleaner drops the cached unique outcome
+        OneSignalCacheCleaner_cleanNotificationCache(dbHelper.getWritableDatabase());
+
+        controller.sendUniqueOutcomeEvent(OUTCOME_NAME);
+        threadAndTaskWait();
+
+        assertEquals(2, service.getSendCount());
+        assertEquals(2, repository.getUniqueOutcomeNotificationQueries());
+    }
+
+    @Test
+    public void testGetNotCachedUniqueOutcomeNotifications() throws Exception {
+        final JSONArray cachedIds = new JSONArray().put(NOTIFICATION_ID + 1).put(NOTIFICATION_ID + 3);
+        final JSONArray requestedIds = new JSONArray();
+        for (int i = 0; i < 5; i++)
+            requestedIds.put(NOTIFICATION_ID + i);
+
+        final JSONArray[] result = new JSONArray[1];
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                repository.saveUniqueOutcomeNotifications(cachedIds, OUTCOME_NAME);
+                result[0] = repository.getNotCachedUniqueOutcomeNotifications(OUTCOME_NAME, requestedIds);
+            }
+        }, "OS_GET_NOT_CACHED_UNIQUE_OUTCOMES").start();
+        threadAndTaskWait();
+
+        assertEquals(new JSONArray().put(NOTIFICATION_ID + 0).put(NOTIFICATION_ID + 2).put(NOTIFICATION_ID + 4).toString(), result[0].toString());
+    }
+
+    /**
+     * More ids than fit in one lookup query, cached ids are spread over every query
+     */
+    @Test
+    public void testGetNotCachedUniqueOutcomeNotificationsAcrossQueries() throws Exception {
+        final int count = 1001;
+        final JSONArray requestedIds = new JSONArray();
+        final JSONArray cachedIds = new JSONArray();
+        final JSONArray expectedIds = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            requestedIds.put(NOTIFICATION_ID + i);
+            if (i % 2 == 0)
+                cachedIds.put(NOTIFICATION_ID + i);
+            else
+                expectedIds.put(NOTIFICATION_ID + i);
+        }
+
+        final JSONArray[] result = new JSONArray[1];
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                repository.saveUniqueOutcomeNotifications(cachedIds, OUTCOME_NAME);
+                result[0] = repository.getNotCachedUniqueOutcomeNotifications(OUTCOME_NAME, requestedIds);
+            }
+        }, "OS_GET_NOT_CACHED_UNIQUE_OUTCOMES").start();
+        threadAndTaskWait();
+
+        assertEquals(expectedIds.toString(), result[0].toString());
+    }
+
     @Test
     public void testIndirectSession() throws Exception {
         notificationData.markLastNotificationReceived(NOTIFICATION_ID);
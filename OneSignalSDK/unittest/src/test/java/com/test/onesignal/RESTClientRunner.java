@@ -30,27 +30,39 @@ package com.test.onesignal;
 import com.onesignal.MockHttpURLConnection;
 import com.onesignal.OneSignal;
 import com.onesignal.OneSignalPackagePrivateHelper.OneSignalRestClient;
+import com.onesignal.OneSignalShadowPackageManager;
+import com.onesignal.ShadowOneSignalRestClient;
 import com.onesignal.ShadowOneSignalRestClientWithMockConnection;
 import com.onesignal.StaticResetHelper;
 
+import org.json.JSONObject;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLog;
 
+import java.io.ByteArrayInputStream;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
 import static com.test.onesignal.TestHelpers.threadAndTaskWait;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 @Config(packageName = "com.onesignal.example",
         instrumentedPackages = { "com.onesignal" },
         shadows = {
-            ShadowOneSignalRestClientWithMockConnection.class
+            ShadowOneSignalRestClientWithMockConnection.class,
+            OneSignalShadowPackageManager.class
         },
         sdk = 26
 )
@@ -68,6 +80,7 @@ public class RESTClientRunner {
    @Before // Before each test
    public void beforeEachTest() throws Exception {
       firstResponse = secondResponse = null;
+      firstJSONResponse = secondJSONResponse = null;
       TestHelpers.beforeTestInitAndCleanup();
    }
 
@@ -118,6 +131,7 @@ public class RESTClientRunner {
    private final static String MOCK_ETAG_VALUE = "MOCK_ETAG_VALUE";
 
    private String firstResponse, secondResponse;
+   private JSONObject firstJSONResponse, secondJSONResponse;
 
    // Note Thread.sleep in the following two tests are used since we can't wait on threads
    //    created from callResponseHandlerOnSuccess due deadlock limitations with Scheduler
@@ -191,6 +205,251 @@ public class RESTClientRunner {
       assertEquals(newMockResponse, secondResponse);
    }
 
+   @Test
+   public void testKeepsConnectionAliveAfterReadingResponse() throws Exception {
+      OneSignalRestClient.getSync("URL", null, null);
+      threadAndTaskWait();
+
+      assertFalse(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidDisconnect());
+   }
+
+   @Test
+   public void testDisconnectsWhenConnectionReuseIsDisabled() throws Exception {
+      OneSignalRestClient.setConnectionReuseEnabled(false);
+      OneSignalRestClient.getSync("URL", null, null);
+      threadAndTaskWait();
+
+      assertTrue(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidDisconnect());
+   }
+
+   @Test
+   public void testDisconnectsOnFailedRequestWithoutBody() throws Exception {
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 500;
+      }};
+      OneSignalRestClient.getSync("URL", null, null);
+      threadAndTaskWait();
+
+      assertTrue(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidDisconnect());
+   }
+
+   @Test
+   public void testTracksRequestTiming() throws Exception {
+      OneSignalRestClient.postSync("players", null, null);
+      threadAndTaskWait();
+
+      assertEquals("players", OneSignalRestClient.getLastRequestTimingUrl());
+      assertTrue(OneSignalRestClient.getLastRequestTimingResponseMs() >= 0);
+      assertTrue(OneSignalRestClient.getLastRequestTimingTotalMs() >= OneSignalRestClient.getLastRequestTimingResponseMs());
+   }
+
+   @Test
+   public void testJSONResponseHandlerParsesResponseStream() throws Exception {
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "{\"in_app_messages\": [{\"id\": \"a\", \"max\": 2147483648, \"ratio\": 0.5, \"on\": true, \"none\": null}]}";
+      }};
+
+      OneSignalRestClient.getSync("URL", new OneSignalRestClient.JSONResponseHandler() {
+         @Override
+         public void onSuccess(JSONObject response) {
+            firstJSONResponse = response;
+         }
+      }, null);
+      threadAndTaskWait();
+
+      JSONObject message = firstJSONResponse.getJSONArray("in_app_messages").getJSONObject(0);
+      assertEquals("a", message.get("id"));
+      assertEquals(2147483648L, message.get("max"));
+      assertEquals(0.5, message.get("ratio"));
+      assertEquals(true, message.get("on"));
+      assertTrue(message.isNull("none"));
+   }
+
+   @Test
+   public void testJSONResponseHandlerSucceedsWithUnparsableBody() throws Exception {
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "not json";
+      }};
+
+      final AtomicInteger successCount = new AtomicInteger();
+      final AtomicInteger failureCount = new AtomicInteger();
+      firstJSONResponse = new JSONObject();
+      OneSignalRestClient.getSync("URL", new OneSignalRestClient.JSONResponseHandler() {
+         @Override
+         public void onSuccess(JSONObject response) {
+            firstJSONResponse = response;
+            successCount.incrementAndGet();
+         }
+
+         @Override
+         public void onFailure(int statusCode, String response, Throwable throwable) {
+            failureCount.incrementAndGet();
+         }
+      }, null);
+      threadAndTaskWait();
+
+      // The server accepted the request, callers must not retry it
+      assertEquals(1, successCount.get());
+      assertEquals(0, failureCount.get());
+      assertNull(firstJSONResponse);
+   }
+
+   @Test
+   public void testJSONResponseHandlerUsesCachedResponseOn304() throws Exception {
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "{\"key1\": \"value1\"}";
+         mockProps.put("etag", MOCK_ETAG_VALUE);
+      }};
+      OneSignalRestClient.getSync("URL", new OneSignalRestClient.JSONResponseHandler() {
+         @Override
+         public void onSuccess(JSONObject response) {
+            firstJSONResponse = response;
+         }
+      }, MOCK_CACHE_KEY);
+      threadAndTaskWait();
+
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 304;
+      }};
+      OneSignalRestClient.getSync("URL", new OneSignalRestClient.JSONResponseHandler() {
+         @Override
+         public void onSuccess(JSONObject response) {
+            secondJSONResponse = response;
+         }
+      }, MOCK_CACHE_KEY);
+      threadAndTaskWait();
+
+      assertEquals("value1", firstJSONResponse.getString("key1"));
+      assertEquals(firstJSONResponse.toString(), secondJSONResponse.toString());
+   }
+
+   private static JSONObject largePlayerUpdatePayload() throws Exception {
+      JSONObject tags = new JSONObject();
+      for (int i = 0; i < 100; i++)
+         tags.put("tag_key_" + i, "tag_value_" + i);
+
+      return new JSONObject()
+         .put("app_id", "b2f7f966-d8cc-11e4-bed1-df8f05be55ba")
+         .put("identifier", ShadowOneSignalRestClient.pushUserId)
+         .put("tags", tags);
+   }
+
+   private static String gunzip(byte[] bytes) throws Exception {
+      Scanner scanner = new Scanner(new GZIPInputStream(new ByteArrayInputStream(bytes)), "UTF-8");
+      String result = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+      scanner.close();
+      return result;
+   }
+
+   @Test
+   public void testGzipsLargeRequestBodiesWhenEnabled() throws Exception {
+      OneSignalShadowPackageManager.addManifestMetaData("com.onesignal.GzipRequests", "ENABLE");
+      OneSignalRestClient.setupGzipRequests(RuntimeEnvironment.application);
+      JSONObject payload = largePlayerUpdatePayload();
+
+      OneSignalRestClient.putSync("players/" + ShadowOneSignalRestClient.pushUserId, payload, null);
+      threadAndTaskWait();
+
+      byte[] sentBytes = ShadowOneSignalRestClientWithMockConnection.lastConnection.getOutputBytes();
+      int uncompressedSize = payload.toString().getBytes("UTF-8").length;
+      assertEquals("gzip", getLastHTTPHeaderProp("Content-Encoding"));
+      assertEquals(payload.toString(), gunzip(sentBytes));
+      // Repeated tag keys compress well, expect at least half the bytes saved
+      assertTrue(sentBytes.length < uncompressedSize / 2);
+   }
+
+   @Test
+   public void testDoesNotGzipRequestBodiesByDefault() throws Exception {
+      OneSignalRestClient.setupGzipRequests(RuntimeEnvironment.application);
+      JSONObject payload = largePlayerUpdatePayload();
+
+      OneSignalRestClient.putSync("players/" + ShadowOneSignalRestClient.pushUserId, payload, null);
+      threadAndTaskWait();
+
+      assertNull(getLastHTTPHeaderProp("Content-Encoding"));
+      assertEquals(payload.toString(), new String(ShadowOneSignalRestClientWithMockConnection.lastConnection.getOutputBytes(), "UTF-8"));
+   }
+
+   @Test
+   public void testDoesNotGzipSmallRequestBodies() throws Exception {
+      OneSignalRestClient.setGzipRequestsEnabled(true);
+      JSONObject payload = new JSONObject().put("app_id", "b2f7f966-d8cc-11e4-bed1-df8f05be55ba");
+      assertTrue(payload.toString().length() < OneSignalRestClient.GZIP_REQUEST_MIN_CHARS);
+
+      OneSignalRestClient.postSync("players", payload, null);
+      threadAndTaskWait();
+
+      assertNull(getLastHTTPHeaderProp("Content-Encoding"));
+      assertEquals(payload.toString(), new String(ShadowOneSignalRestClientWithMockConnection.lastConnection.getOutputBytes(), "UTF-8"));
+   }
+
+   @Test
+   public void testDecodesGzipResponses() throws Exception {
+      final String mockResponseBody = largePlayerUpdatePayload().toString();
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = mockResponseBody;
+         mockProps.put("content-encoding", "gzip");
+      }};
+
+      OneSignalRestClient.getSync("URL", new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            firstResponse = response.replace("\u0000", "");
+         }
+      }, null);
+      threadAndTaskWait();
+
+      assertEquals("gzip", getLastHTTPHeaderProp("Accept-Encoding"));
+      assertEquals(mockResponseBody, firstResponse);
+   }
+
+   @Test
+   public void testQueuedRequestsRunOnBoundedThreadPool() throws Exception {
+      final int requestCount = 500;
+      final AtomicInteger completedRequests = new AtomicInteger();
+      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            completedRequests.incrementAndGet();
+         }
+
+         @Override
+         public void onFailure(int statusCode, String response, Throwable throwable) {
+            completedRequests.incrementAndGet();
+         }
+      };
+
+      for (int i = 0; i < requestCount; i++)
+         OneSignalRestClient.get("URL", responseHandler, null);
+
+      // Fails instead of hanging the run if a queued request is never completed
+      long deadline = System.currentTimeMillis() + 30_000;
+      int maxRestThreads = 0;
+      while (completedRequests.get() < requestCount && System.currentTimeMillis() < deadline) {
+         maxRestThreads = Math.max(maxRestThreads, countRestClientThreads());
+         Thread.sleep(1);
+      }
+      assertEquals(requestCount, completedRequests.get());
+      threadAndTaskWait();
+
+      // One async request thread and one connection thread per concurrent request at most
+      assertTrue(maxRestThreads > 0);
+      assertTrue(maxRestThreads <= OneSignalRestClient.MAX_CONCURRENT_REQUESTS * 2);
+   }
+
+   private static int countRestClientThreads() {
+      int count = 0;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+         if (thread.getName().startsWith("OS_REST_ASYNC_") || thread.getName().startsWith("OS_HTTPConnection_"))
+            count++;
+      }
+      return count;
+   }
+
    private static String getLastHTTPHeaderProp(String prop) {
       return ShadowOneSignalRestClientWithMockConnection.lastConnection.getRequestProperty(prop);
    }